@@ -1,39 +1,160 @@
 package client;
 
+import minisql.QueryResult;
+import minisql.parser.SqlParseException;
+import minisql.parser.SqlParser;
+import org.apache.curator.framework.CuratorFramework;
+import protocol.MuxConnection;
+import protocol.RemoteCursor;
+import util.ZkUtils;
+
 import java.io.*;
 import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 // java -cp target/classes client.Client < Test.sql > run.log
+// java -cp target/classes client.Client binary < Test.sql   （二进制协议，一条长连接）
+// java -cp target/classes client.Client smart < Test.sql    （智能客户端，点操作直连 RegionServer）
+// 二进制与智能客户端模式支持预编译语句：
+//   PREPARE getUser AS SELECT * FROM users WHERE id = ?
+//   EXECUTE getUser (42)
+// 结果边读边打印：文本协议逐行输出，二进制协议以游标逐批读取（-Dclient.fetchRows，默认 1000 行一批）
 
 public class Client {
     private static final String MASTER_HOST = "localhost";
     private static final int MASTER_PORT = 8888;
+    private static final long TIMEOUT_MS = 60_000;
+    private static final int FETCH_ROWS = Integer.getInteger("client.fetchRows", 1000);
+    private static final Pattern PREPARE = Pattern.compile("(?is)\\s*PREPARE\\s+(\\w+)\\s+AS\\s+(.+)");
+    private static final Pattern EXECUTE = Pattern.compile("(?is)\\s*EXECUTE\\s+(\\w+)\\s*(.*)");
 
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equalsIgnoreCase("smart")) {
+            runSmart();
+            return;
+        }
+        boolean binary = args.length > 0 && args[0].equalsIgnoreCase("binary");
+        MuxConnection conn = binary ? new MuxConnection(MASTER_HOST, MASTER_PORT, 3_000) : null;
+        // 语句名 → 语句ID / SQL（二进制模式的预编译语句）
+        Map<String, Long> preparedIds = new HashMap<>();
+        Map<String, String> preparedSql = new HashMap<>();
         Scanner scanner = new Scanner(System.in);
         while (true) {
             System.out.print("Client SQL> ");
             String line = scanner.nextLine();
             if (line.trim().equalsIgnoreCase("exit")) break;
 
+            if (binary) {
+                try {
+                    Matcher m;
+                    QueryResult r;
+                    if ((m = PREPARE.matcher(line)).matches()) {
+                        r = prepare(m.group(2));
+                        if (!r.isError()) {
+                            preparedIds.put(m.group(1), conn.newStatementId());
+                            preparedSql.put(m.group(1), m.group(2));
+                        }
+                    } else if ((m = EXECUTE.matcher(line)).matches() && preparedIds.containsKey(m.group(1))) {
+                        List<String> params = SqlParser.parseValues(m.group(2));
+                        r = conn.executePrepared(preparedIds.get(m.group(1)), preparedSql.get(m.group(1)),
+                                params, TIMEOUT_MS);
+                    } else {
+                        printCursor(conn.openCursor(line, FETCH_ROWS));
+                        continue;
+                    }
+                    System.out.println("[Client] Got response:\n" + r.toText().trim());
+                } catch (SqlParseException e) {
+                    System.out.println("[Client] " + e.getMessage());
+                } catch (IOException e) {
+                    System.err.println("Error communicating with master: " + e.getMessage());
+                    conn = new MuxConnection(MASTER_HOST, MASTER_PORT, 3_000);
+                }
+                continue;
+            }
+
             try (Socket socket = new Socket(MASTER_HOST, MASTER_PORT);
                  PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
                  BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
 
                 out.println(line); // 发送 SQL
 
-                // 循环读取所有行，直到对端关闭
-                StringBuilder sb = new StringBuilder();
+                // 边读边打印，直到对端关闭
+                System.out.println("[Client] Got response:");
                 String respLine;
                 while ((respLine = in.readLine()) != null) {
-                    sb.append(respLine).append(System.lineSeparator());
+                    if (!respLine.isBlank()) System.out.println(respLine);
                 }
-
-                System.out.println("[Client] Got response:\n" + sb.toString().trim());
             } catch (IOException e) {
                 System.err.println("Error communicating with master: " + e.getMessage());
             }
         }
+        if (conn != null) conn.close();
+    }
+
+    /** 逐批读取并打印游标的结果：有结果行时只打印行，最后一批的提示在没有行或出错时打印 */
+    private static void printCursor(RemoteCursor cursor) throws IOException {
+        try (RemoteCursor c = cursor) {
+            System.out.println("[Client] Got response:");
+            long rows = 0;
+            do {
+                QueryResult batch = c.next(TIMEOUT_MS);
+                if (batch.hasRows()) {
+                    for (String l : batch.toLines()) System.out.println(l);
+                    rows += batch.getRows().size();
+                } else if (!c.hasMore() && (rows == 0 || batch.isError())) {
+                    System.out.println(batch.toText().trim());
+                }
+            } while (c.hasMore());
+        }
+    }
+
+    /** 智能客户端模式：从 ZooKeeper 获取路由，点操作直连 RegionServer */
+    private static void runSmart() throws Exception {
+        CuratorFramework zk = ZkUtils.createZkClient();
+        try (SmartClient client = new SmartClient(zk, MASTER_HOST + ":" + MASTER_PORT, TIMEOUT_MS, 3_000)) {
+            client.start();
+            Scanner scanner = new Scanner(System.in);
+            Map<String, SmartClient.Prepared> prepared = new HashMap<>();
+            while (true) {
+                System.out.print("Client SQL> ");
+                String line = scanner.nextLine();
+                if (line.trim().equalsIgnoreCase("exit")) break;
+                try {
+                    Matcher m;
+                    QueryResult r;
+                    if ((m = PREPARE.matcher(line)).matches()) {
+                        r = prepare(m.group(2));
+                        if (!r.isError()) prepared.put(m.group(1), client.prepare(m.group(2)));
+                    } else if ((m = EXECUTE.matcher(line)).matches() && prepared.containsKey(m.group(1))) {
+                        r = client.execute(prepared.get(m.group(1)), SqlParser.parseValues(m.group(2)));
+                    } else {
+                        r = client.execute(line);
+                    }
+                    System.out.println("[Client] Got response:\n" + r.toText().trim());
+                } catch (SqlParseException e) {
+                    System.out.println("[Client] " + e.getMessage());
+                } catch (IOException e) {
+                    System.err.println("Error communicating with master: " + e.getMessage());
+                }
+            }
+            System.out.println("[Client] Routing: " + client.stats());
+        } finally {
+            zk.close();
+        }
+    }
+
+    /** 本地检查 PREPARE 的语句，返回参数个数提示或语法错误 */
+    private static QueryResult prepare(String sql) {
+        try {
+            int n = SqlParser.parse(sql).getParamCount();
+            return QueryResult.message("Prepared (" + n + " parameters).");
+        } catch (SqlParseException e) {
+            return QueryResult.error(e.getMessage());
+        }
     }
 }
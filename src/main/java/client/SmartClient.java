@@ -0,0 +1,250 @@
+package client;
+
+import minisql.QueryResult;
+import minisql.parser.SelectStatement;
+import minisql.parser.SqlParseException;
+import minisql.parser.SqlParser;
+import minisql.parser.Statement;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import protocol.MuxConnection;
+import util.Partitioning;
+import util.RouteKeys;
+import util.SchemaCatalog;
+import util.SlotTable;
+import util.Slots;
+import util.TableSchema;
+import util.ZkUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 智能客户端（客户端库模式）：
+ *  - 订阅 ZooKeeper 的 /regions、/slots 与 /catalog，在本地缓存路由信息
+ *  - 带主键的点操作按主键所在槽直接发往 owner RegionServer（"DIRECT <槽> <SQL>"），省去经 Master 的一跳
+ *  - DDL、广播查询、无主键条件的语句，以及槽未分配、owner 不在线、写请求遇到迁移中或从副本同步中的槽时走 Master
+ *  - 预编译语句（prepare/execute）同样按主键参数直连，只传输语句ID与参数
+ *  - region 返回 MOVED（本地路由过期）或连接失败时，本次请求改走 Master，路由缓存由 watch 自动刷新
+ */
+public class SmartClient implements Closeable {
+    private static final String ZK_REGION_PATH = "/regions";
+    private static final String DEFAULT_PK = "id";
+
+    private final String masterAddr;
+    private final long timeoutMs;
+    private final int connectTimeoutMs;
+    private final CuratorFramework zk;
+    // start() 加载完成后赋值，之前的初始事件忽略（加载完成后统一刷新一次）
+    private volatile CuratorCache regionCache;
+    private volatile CuratorCache slotCache;
+    private final SchemaCatalog catalog;
+    // regionName -> "host:port"
+    private final Map<String, String> regions = new ConcurrentHashMap<>();
+    private volatile SlotTable slots = SlotTable.empty();
+    // "host:port" -> 多路复用连接（含 Master）
+    private final Map<String, MuxConnection> conns = new ConcurrentHashMap<>();
+    private final AtomicLong direct = new AtomicLong();
+    private final AtomicLong viaMaster = new AtomicLong();
+    private final AtomicLong moved = new AtomicLong();
+    private final AtomicLong nextStatementId = new AtomicLong();
+
+    public SmartClient(CuratorFramework zk, String masterAddr, long timeoutMs, int connectTimeoutMs) {
+        this.masterAddr       = masterAddr;
+        this.timeoutMs        = timeoutMs;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.zk               = zk;
+        this.catalog          = new SchemaCatalog(zk);
+    }
+
+    /** 加载路由信息并开始监听变化 */
+    public void start() throws Exception {
+        regionCache = ZkUtils.startCache(zk, ZK_REGION_PATH,
+                CuratorCacheListener.builder().forAll((type, old, d) -> refreshRegions()).build());
+        refreshRegions();
+        slotCache = ZkUtils.startCache(zk, SlotTable.ZK_PATH,
+                CuratorCacheListener.builder().forAll((type, old, d) -> refreshSlots()).build(),
+                CuratorCache.Options.SINGLE_NODE_CACHE);
+        refreshSlots();
+        catalog.start();
+    }
+
+    private void refreshRegions() {
+        CuratorCache cache = regionCache;
+        if (cache == null) return;
+        Map<String, String> tmp = new ConcurrentHashMap<>();
+        cache.stream().filter(d -> d.getPath().startsWith(ZK_REGION_PATH + "/")).forEach(d ->
+                tmp.put(d.getPath().substring(ZK_REGION_PATH.length() + 1),
+                        new String(d.getData(), StandardCharsets.UTF_8)));
+        regions.keySet().retainAll(tmp.keySet());
+        regions.putAll(tmp);
+    }
+
+    private void refreshSlots() {
+        CuratorCache cache = slotCache;
+        if (cache == null) return;
+        slots = cache.get(SlotTable.ZK_PATH).map(d -> SlotTable.decode(d.getData())).orElse(SlotTable.empty());
+    }
+
+    /** 执行一条 SQL：能确定 owner 的点操作直连 RegionServer，其余经 Master */
+    public QueryResult execute(String sql) throws IOException {
+        Statement st = null;
+        try {
+            st = SqlParser.parseCached(sql);
+        } catch (SqlParseException e) {
+            // 语法错误交给 Master 返回提示
+        }
+        String pk = st == null ? null : pkOf(st, List.of());
+        String addr = pk == null ? null : directAddr(st, pk);
+        if (addr != null) {
+            int slot = slotOf(st, pk);
+            try {
+                QueryResult r = connection(addr).execute(Slots.DIRECT_PREFIX + slot + " " + sql, timeoutMs);
+                if (isFinal(r)) return r;
+            } catch (IOException e) {
+                // region 下线或连接断开，交给 Master 路由
+                drop(addr);
+            }
+        }
+        viaMaster.incrementAndGet();
+        try {
+            return connection(masterAddr).execute(sql, timeoutMs);
+        } catch (IOException e) {
+            drop(masterAddr);
+            throw e;
+        }
+    }
+
+    /** 预编译一条带 ? 参数的 SQL（本地解析，语句在各连接上首次执行时才发送 PREPARE） */
+    public Prepared prepare(String sql) {
+        return new Prepared(nextStatementId.incrementAndGet(), sql, SqlParser.parseCached(sql));
+    }
+
+    /** 执行预编译语句：主键参数能确定 owner 时直连 RegionServer，其余经 Master；只传输语句ID与参数 */
+    public QueryResult execute(Prepared ps, List<String> params) throws IOException {
+        if (params.size() != ps.statement.getParamCount()) {
+            return QueryResult.message("Parameter count mismatch: expected "
+                    + ps.statement.getParamCount() + ", got " + params.size() + ".");
+        }
+        String pk = pkOf(ps.statement, params);
+        String addr = pk == null ? null : directAddr(ps.statement, pk);
+        if (addr != null) {
+            try {
+                QueryResult r = await(connection(addr).submitPrepared(ps.id, ps.sql, slotOf(ps.statement, pk), params));
+                if (isFinal(r)) return r;
+            } catch (IOException e) {
+                drop(addr);
+            }
+        }
+        viaMaster.incrementAndGet();
+        try {
+            return connection(masterAddr).executePrepared(ps.id, ps.sql, params, timeoutMs);
+        } catch (IOException e) {
+            drop(masterAddr);
+            throw e;
+        }
+    }
+
+    /** 关闭预编译语句，释放各连接上的服务端资源 */
+    public void close(Prepared ps) {
+        for (MuxConnection c : conns.values()) c.closeStatement(ps.id);
+    }
+
+    /** 直连结果是否可直接返回；MOVED 说明本地路由已过期（迁移中或归属已切换），需改走 Master */
+    private boolean isFinal(QueryResult r) {
+        if (!r.isError() || !r.getMessage().startsWith(Slots.MOVED)) {
+            direct.incrementAndGet();
+            return true;
+        }
+        moved.incrementAndGet();
+        return false;
+    }
+
+    private QueryResult await(CompletableFuture<QueryResult> f) throws IOException {
+        try {
+            return f.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("Request timed out after " + timeoutMs + " ms", e);
+        }
+    }
+
+    /** 点操作的 owner 地址；需经 Master 时返回 null */
+    private String directAddr(Statement st, String pk) {
+        boolean isSelect = st instanceof SelectStatement;
+        SlotTable t = slots;
+        int slot = slotOf(st, pk);
+        String owner = t.owner(slot);
+        if (owner == null || (!isSelect && (t.getMigratingSlot() == slot || t.isSyncing(slot)))) return null;
+        return regions.get(owner);
+    }
+
+    /** 主键所在的槽（按表目录中的分区方式，未登记的表按哈希） */
+    private int slotOf(Statement st, String pk) {
+        TableSchema schema = catalog.get(st.getTable());
+        return (schema != null ? schema.partitioner() : Partitioning.HASH).slotOf(pk);
+    }
+
+    /** 点操作的主键值（DDL 与无主键条件的语句为 null） */
+    private String pkOf(Statement st, List<String> params) {
+        return RouteKeys.extractPK(st, RouteKeys.primaryKeyOf(catalog, st, DEFAULT_PK), params);
+    }
+
+    private MuxConnection connection(String addr) throws IOException {
+        MuxConnection c = conns.get(addr);
+        if (c != null && c.isOpen()) return c;
+        synchronized (conns) {
+            c = conns.get(addr);
+            if (c == null || !c.isOpen()) {
+                c = MuxConnection.connect(addr, connectTimeoutMs);
+                conns.put(addr, c);
+            }
+            return c;
+        }
+    }
+
+    private void drop(String addr) {
+        MuxConnection c = conns.remove(addr);
+        if (c != null) c.close();
+    }
+
+    /** 路由统计：直连次数 / 经 Master 次数 / 遇到 MOVED 的次数 */
+    public String stats() {
+        return String.format("direct=%d viaMaster=%d moved=%d", direct.get(), viaMaster.get(), moved.get());
+    }
+
+    /** 客户端侧的预编译语句句柄 */
+    public static final class Prepared {
+        private final long id;
+        private final String sql;
+        private final Statement statement;
+
+        private Prepared(long id, String sql, Statement statement) {
+            this.id        = id;
+            this.sql       = sql;
+            this.statement = statement;
+        }
+
+        public String getSql() { return sql; }
+        public int getParamCount() { return statement.getParamCount(); }
+    }
+
+    @Override
+    public void close() {
+        for (MuxConnection c : conns.values()) c.close();
+        conns.clear();
+        if (regionCache != null) regionCache.close();
+        if (slotCache != null) slotCache.close();
+        catalog.close();
+    }
+}
@@ -0,0 +1,170 @@
+package master;
+
+import minisql.Column;
+import minisql.QueryResult;
+import minisql.parser.SqlParser;
+import util.Partitioning;
+import util.SlotTable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 批量写入（多行 INSERT 与 LOAD DATA）：行按主键所在槽的 owner 分组，每个 region 每批一条多行 INSERT，
+ * 各批次并行发送；region 对一批只加一次写锁、只写一条预写日志。
+ * 输入按轮处理：每轮至多 roundRows 行，在迁移写闸门内按当前槽归属分组、发送并等待本轮全部返回，
+ * 迁移中的槽与单点写一样同时写入迁移目标（以 owner 的结果为准）。
+ * 非线程安全，一次导入一个实例
+ */
+final class BulkLoader {
+    private static final String INSERTED = "Inserted rows: ";
+
+    private final String table;
+    private final List<String> columns;
+    private final int pkIndex;
+    // 主键列定义（表未登记时为 null），INT 主键按规范形式计算槽，与 region 上一致
+    private final Column pkColumn;
+    private final Partitioning partitioning;
+    private final Supplier<SlotTable> slots;
+    private final BiFunction<SlotTable, Integer, String> ownerOf;
+    private final BiFunction<String, String, CompletableFuture<QueryResult>> sender;
+    // 在迁移写闸门内执行一轮
+    private final Consumer<Runnable> gate;
+    private final int batchRows;
+    private final int roundRows;
+    private final long timeoutMs;
+    private final long startNanos = System.nanoTime();
+
+    private final List<List<String>> round = new ArrayList<>();
+    private long inserted;
+    private long failed;
+    private String firstError;
+
+    BulkLoader(String table, List<String> columns, int pkIndex, Column pkColumn, Partitioning partitioning,
+               Supplier<SlotTable> slots, BiFunction<SlotTable, Integer, String> ownerOf,
+               BiFunction<String, String, CompletableFuture<QueryResult>> sender, Consumer<Runnable> gate,
+               int batchRows, int roundRows, long timeoutMs) {
+        this.table        = table;
+        this.columns      = List.copyOf(columns);
+        this.pkIndex      = pkIndex;
+        this.pkColumn     = pkColumn;
+        this.partitioning = partitioning;
+        this.slots        = slots;
+        this.ownerOf      = ownerOf;
+        this.sender       = sender;
+        this.gate         = gate;
+        this.batchRows    = Math.max(1, batchRows);
+        this.roundRows    = Math.max(this.batchRows, roundRows);
+        this.timeoutMs    = timeoutMs;
+    }
+
+    /** 加入一行（值与 columns 一一对应），攒满一轮时发送 */
+    void add(List<String> values) {
+        round.add(values);
+        if (round.size() >= roundRows) flush();
+    }
+
+    /** 记一行在 Master 上就被拒绝的输入（如 CSV 字段数不符） */
+    void reject(String error) {
+        failed++;
+        if (firstError == null) firstError = error;
+    }
+
+    /** 发送剩余的行并等待完成 */
+    void finish() {
+        flush();
+    }
+
+    long getInserted() { return inserted; }
+    long getFailed() { return failed; }
+    String getFirstError() { return firstError; }
+    long elapsedNanos() { return System.nanoTime() - startNanos; }
+
+    private void flush() {
+        if (round.isEmpty()) return;
+        gate.accept(() -> {
+            SlotTable t = slots.get();
+            Map<String, List<List<String>>> byOwner = new LinkedHashMap<>();
+            Map<String, List<List<String>>> copies = new LinkedHashMap<>();
+            for (List<String> row : round) {
+                int slot = partitioning.slotOf(routingKey(row.get(pkIndex)));
+                byOwner.computeIfAbsent(ownerOf.apply(t, slot), k -> new ArrayList<>()).add(row);
+                if (t.getMigratingSlot() == slot) {
+                    copies.computeIfAbsent(t.getMigrationTarget(), k -> new ArrayList<>()).add(row);
+                }
+            }
+            List<CompletableFuture<?>> pending = new ArrayList<>();
+            byOwner.forEach((region, rows) -> {
+                for (int from = 0; from < rows.size(); from += batchRows) {
+                    List<List<String>> batch = rows.subList(from, Math.min(rows.size(), from + batchRows));
+                    int n = batch.size();
+                    pending.add(send(region, batch).thenAccept(r -> account(n, r)));
+                }
+            });
+            copies.forEach((region, rows) -> {
+                for (int from = 0; from < rows.size(); from += batchRows) {
+                    List<List<String>> batch = rows.subList(from, Math.min(rows.size(), from + batchRows));
+                    pending.add(send(region, batch).thenAccept(r -> {
+                        if (r.isError()) System.err.println("[Master] Dual write to " + region + " failed: " + r.getMessage());
+                    }));
+                }
+            });
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        });
+        round.clear();
+    }
+
+    private CompletableFuture<QueryResult> send(String region, List<List<String>> batch) {
+        CompletableFuture<QueryResult> f;
+        try {
+            f = sender.apply(region, insertStatement(batch));
+        } catch (RuntimeException e) {
+            f = CompletableFuture.failedFuture(e);
+        }
+        return f.completeOnTimeout(QueryResult.error("timeout after " + timeoutMs + "ms"), timeoutMs, TimeUnit.MILLISECONDS)
+                .exceptionally(e -> QueryResult.error(String.valueOf(e.getMessage())));
+    }
+
+    private String routingKey(String pk) {
+        String c = pkColumn == null ? null : pkColumn.canonical(pk);
+        return c != null ? c : pk;
+    }
+
+    /** 一批行的多行 INSERT，值一律加单引号（INT 列由 region 解析） */
+    String insertStatement(List<List<String>> batch) {
+        StringBuilder sb = new StringBuilder(64 + batch.size() * 16 * columns.size());
+        sb.append("INSERT INTO ").append(table).append(" (").append(String.join(", ", columns)).append(") VALUES ");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) sb.append(", ");
+            StringJoiner vals = new StringJoiner(", ", "(", ")");
+            for (String v : batch.get(i)) vals.add(SqlParser.quote(v));
+            sb.append(vals);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 累计一批的结果：单行批次成功时为 "OK"，多行为 "Inserted rows: N[, failed: M (原因)]"
+     * （见 SimpleSQLExecutor.insertedMessage），其他消息或错误视为整批失败
+     */
+    private synchronized void account(int n, QueryResult r) {
+        String msg = r.getMessage();
+        long ok = 0;
+        String error = msg;
+        if (!r.isError() && "OK".equals(msg)) {
+            ok = n;
+        } else if (!r.isError() && msg.startsWith(INSERTED)) {
+            int comma = msg.indexOf(',');
+            ok = Long.parseLong(msg.substring(INSERTED.length(), comma < 0 ? msg.length() : comma));
+            int paren = msg.indexOf('(');
+            error = paren < 0 ? null : msg.substring(paren + 1, msg.length() - 1);
+        }
+        inserted += ok;
+        failed += n - ok;
+        if (n > ok && firstError == null) firstError = error;
+    }
+}
@@ -0,0 +1,87 @@
+package master;
+
+import util.Slots;
+
+import java.util.*;
+
+/**
+ * 带虚拟节点的一致性哈希环（不可变）：
+ *  - 每个 region 在环上放置 vnodes 个点，key 路由到顺时针方向第一个点的 region
+ *  - region 加入/离开时只有约 1/n 的 key 改变归属，而取模路由几乎全部重映射
+ *  - 成员变化时整体重建并替换引用，查询为无锁二分查找
+ */
+public class ConsistentHashRing {
+    private final long[] points;     // 已排序的环上位置
+    private final String[] owners;   // points[i] 对应的 region
+    private final int vnodes;
+
+    private ConsistentHashRing(long[] points, String[] owners, int vnodes) {
+        this.points = points;
+        this.owners = owners;
+        this.vnodes = vnodes;
+    }
+
+    /** 按 region 列表构建环，每个 region 放置 vnodes 个虚拟节点 */
+    public static ConsistentHashRing build(Collection<String> regions, int vnodes) {
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String region : new TreeSet<>(regions)) {
+            for (int i = 0; i < vnodes; i++) {
+                long p = hash(region + "#" + i);
+                // 极少数哈希碰撞时按名称较小者保留，保证构建结果与输入顺序无关
+                ring.merge(p, region, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+        long[] points = new long[ring.size()];
+        String[] owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, String> e : ring.entrySet()) {
+            points[i] = e.getKey();
+            owners[i] = e.getValue();
+            i++;
+        }
+        return new ConsistentHashRing(points, owners, vnodes);
+    }
+
+    /** 返回 key 所属 region，环为空时返回 null */
+    public String route(String key) {
+        return routeHash(hash(key));
+    }
+
+    /** 按预先计算的哈希值路由 */
+    public String routeHash(long h) {
+        if (points.length == 0) return null;
+        int idx = Arrays.binarySearch(points, h);
+        if (idx < 0) idx = -idx - 1;
+        if (idx == points.length) idx = 0;
+        return owners[idx];
+    }
+
+    /**
+     * 从 key 的位置顺时针依次经过的前 n 个不同 region（第一个即 route(key)），
+     * 用于放置副本：某个 region 离开后，它的槽改派给的正是下一个副本所在的 region
+     */
+    public List<String> routeN(String key, int n) {
+        List<String> out = new ArrayList<>(n);
+        if (points.length == 0) return out;
+        int idx = Arrays.binarySearch(points, hash(key));
+        if (idx < 0) idx = -idx - 1;
+        for (int i = 0; i < points.length && out.size() < n; i++) {
+            String region = owners[(idx + i) % points.length];
+            if (!out.contains(region)) out.add(region);
+        }
+        return out;
+    }
+
+    public boolean isEmpty() { return points.length == 0; }
+    public int getVnodes() { return vnodes; }
+
+    /** 环上的 region 集合 */
+    public Set<String> regions() {
+        return new TreeSet<>(Arrays.asList(owners));
+    }
+
+    /** 环上位置使用与哈希槽相同的哈希函数 */
+    public static long hash(String key) {
+        return Slots.hash(key);
+    }
+}
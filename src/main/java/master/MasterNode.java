@@ -1,215 +1,1016 @@
 package master;
 
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.recipes.cache.ChildData;
-import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import minisql.Aggregation;
+import minisql.Column;
+import minisql.QueryResult;
+import minisql.RowOrder;
+import minisql.SimpleSQLExecutor;
+import minisql.parser.*;
+import protocol.BinaryProtocol;
+import protocol.BinaryServer;
+import protocol.PreparedHandler;
+import protocol.RemoteCursor;
+import util.CsvReader;
+import util.SlotTable;
+import util.Slots;
+import util.RouteKeys;
+import util.SchemaCatalog;
+import util.TableSchema;
+import util.ThreadUtils;
 import util.ZkUtils;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.regex.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * 分布式 Master 节点：
- *  1) DDL (CREATE/DROP) 广播到所有 RegionServer
+ *  1) DDL (CREATE/DROP TABLE、CREATE/DROP INDEX) 广播到所有 RegionServer（广播均并行发送，见 ScatterGather）
  *  2) 全表查询 (SELECT * 无 WHERE) 广播
- *  3) 带主键的 DML 操作单点路由
+ *  3) 带主键的 DML 操作按主键所在哈希槽的 owner 单点路由（槽目标归属由一致性哈希环决定，
+ *     region 加入/离开时由 Rebalancer 在线迁移数据）；各表的主键列取自 ZooKeeper 表目录
+ *     /catalog（CREATE/DROP 时维护），未登记的表按列名 id 识别主键
  *  4) 按非主键条件的 DML 操作广播
+ *  5) 多行 INSERT 与 LOAD DATA（Master 本地的 CSV 文件）按主键拆成各 region 的批次并行发送（见 BulkLoader）
+ *  6) 聚合查询（COUNT/SUM/AVG/MIN/MAX、GROUP BY）由各 region 部分聚合，Master 合并（见 Aggregation）
+ *  7) ORDER BY / LIMIT 查询由各 region 返回本地前 K 行，Master 做 k 路归并，取满 LIMIT 即停止（见 RowOrder）
+ *  8) 其余 SELECT 以游标方式分批流式读取：各 region 按批返回，Master 逐批转发给客户端，
+ *     客户端读得慢时暂停向 region 取下一批，结果再大 Master 也只缓存有限的几批（见 streamRead）
+ *  9) 两表 JOIN：两表都按连接列分区时各 region 本地连接，否则由 region 之间直接重分布较小的一侧，
+ *     Master 只协调、转发结果行（见 join）
+ * 10) 主从复制：-Dmaster.replication.factor=R（默认 1）时每个槽有 R-1 个从副本（由 Rebalancer 放置并同步，
+ *     记录在 /slots），主副本把按主键的写入复制给从副本（见 region.Replicator）；单点读在主副本与已同步的
+ *     从副本之间轮流（见 pointRead），-Dmaster.replication.readYourWrites=true 时同一会话写过的槽只读主副本；
+ *     按非主键条件、主键范围的写直接发给每个副本，先等各 region 的复制队列发完，并与单点写互斥
+ *  每个客户端连接在独立线程（JDK 21+ 为虚拟线程）中处理，
+ *  并发连接数上限由 -Dmaster.maxClients 配置
+ *  客户端可使用文本协议（一行 SQL，读到连接关闭）或二进制协议（多请求流水线）；
+ *  二进制客户端可预编译带 ? 参数的语句，Master 按句柄缓存执行计划，转发时只发送参数
  */
 public class MasterNode {
     private static final int PORT = 8888;
     private static final String ZK_REGION_PATH = "/regions";
+    // 同时处理的客户端连接上限，达到上限后 accept 循环阻塞等待
+    private static final int MAX_CLIENTS = Integer.getInteger("master.maxClients", 10000);
+    // 每个 region 在哈希环上的虚拟节点数
+    private static final int VNODES = Integer.getInteger("master.vnodes", 320);
     // regionName -> "host:port"
     private static final Map<String, String> regionMap = Collections.synchronizedMap(new TreeMap<>());
+    // /regions 子节点的缓存，启动完成前为 null
+    private static volatile CuratorCache regionCache;
+    // 哈希槽目标归属用的一致性哈希环，随 regionMap 一起重建
+    private static volatile ConsistentHashRing ring = ConsistentHashRing.build(List.of(), VNODES);
+    // 槽归属与在线迁移
+    private static Rebalancer rebalancer;
+    // 表目录：表名 → 列定义/主键/分区方式
+    private static SchemaCatalog catalog;
+    // 目录中没有记录的表（目录引入之前创建的表）沿用的主键列名
+    private static final String DEFAULT_PK = "id";
+    // binary（默认）: 二进制多路复用通道；text: 文本长连接池
+    private static final boolean BINARY_TO_REGIONS =
+            !"text".equalsIgnoreCase(System.getProperty("master.regionProtocol", "binary"));
+    // 单个 region 请求的超时（广播时各 region 独立计时）
+    private static final long REQUEST_TIMEOUT_MS = Long.getLong("master.requestTimeoutMs", 30_000L);
+    // 单条二进制客户端连接上的最大在途请求数
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("master.maxInFlight", 256);
+    // 到各 RegionServer 的文本长连接池 / 二进制多路复用通道
+    private static final RegionConnectionPool pool = RegionConnectionPool.fromSystemProperties();
+    private static final MuxChannelPool muxPool = MuxChannelPool.fromSystemProperties();
+    // 文本协议下并行广播使用的阻塞 I/O 线程
+    private static final ExecutorService ioExecutor = ThreadUtils.newPerTaskExecutor("master-io");
+    // 批量写入每批（一条多行 INSERT）的行数，与每轮在写闸门内路由、发送的行数
+    private static final int LOAD_BATCH_ROWS = Integer.getInteger("master.load.batchRows", 1000);
+    private static final int LOAD_ROUND_ROWS = Integer.getInteger("master.load.roundRows", 20_000);
+    // 流式读取时每批的行数（Master 向 region 游标取数的批大小）
+    private static final int CURSOR_BATCH_ROWS = Integer.getInteger("master.cursor.batchRows", 1000);
+    // 发往 region 的预编译语句ID，全局唯一（同一条 region 连接被多个客户端句柄共用）
+    private static final AtomicLong regionStatementIds = new AtomicLong();
+    // 每个槽的副本数（含主副本）
+    private static final int REPLICATION_FACTOR = Integer.getInteger("master.replication.factor", 1);
+    // 同一会话（一条二进制客户端连接）写过的槽只从主副本读取
+    private static final boolean READ_YOUR_WRITES = Boolean.getBoolean("master.replication.readYourWrites");
+    // 单点读在各副本之间轮流
+    private static final AtomicLong readTurn = new AtomicLong();
+
+    /** 按 /regions 缓存重建在线 region 表与哈希环，并触发重平衡 */
+    private static void refreshRegions() {
+        CuratorCache cache = regionCache;
+        if (cache == null) return;
+        synchronized (regionMap) {
+            Map<String, String> tmp = new TreeMap<>();
+            cache.stream().filter(d -> d.getPath().startsWith(ZK_REGION_PATH + "/")).forEach(d ->
+                    tmp.put(d.getPath().substring(ZK_REGION_PATH.length() + 1),
+                            new String(d.getData(), StandardCharsets.UTF_8)));
+            regionMap.clear();
+            regionMap.putAll(tmp);
+            // 成员变化时重建哈希环，路由查询无锁读取
+            ring = ConsistentHashRing.build(tmp.keySet(), VNODES);
+            pool.retain(tmp.values());
+            muxPool.retain(tmp.values());
+            System.out.println("[Master] Regions = " + tmp.keySet());
+        }
+        rebalancer.trigger();
+    }
 
     public static void main(String[] args) throws Exception {
-        // 1. 连接 ZooKeeper 并监听 /regions 子节点
+        // 1. 连接 ZooKeeper，加载表目录与槽归属，并监听 /regions 子节点
         CuratorFramework zk = ZkUtils.createZkClient();
-        PathChildrenCache cache = new PathChildrenCache(zk, ZK_REGION_PATH, true);
-        cache.getListenable().addListener((client, event) -> {
-            Map<String, String> tmp = new TreeMap<>();
-            for (ChildData d : cache.getCurrentData()) {
-                String name = d.getPath().substring(ZK_REGION_PATH.length() + 1);
-                String addr = new String(d.getData(), StandardCharsets.UTF_8);
-                tmp.put(name, addr);
-            }
-            synchronized (regionMap) {
-                regionMap.clear();
-                regionMap.putAll(tmp);
-            }
-            System.out.println("[Master] Regions = " + regionMap.keySet());
-        });
-        cache.start();
+        catalog = new SchemaCatalog(zk);
+        catalog.start();
+        rebalancer = new Rebalancer(zk,
+                () -> new TreeSet<>(regionMap.keySet()), () -> ring, MasterNode::forward,
+                Integer.getInteger("master.rebalance.batchRows", 500),
+                Long.getLong("master.rebalance.pauseMs", 20L),
+                Long.getLong("master.rebalance.settleMs", 200L),
+                REPLICATION_FACTOR);
+        rebalancer.load();
+        regionCache = ZkUtils.startCache(zk, ZK_REGION_PATH,
+                CuratorCacheListener.builder().forAll((type, old, d) -> refreshRegions()).build());
+        refreshRegions();
 
-        // 2. 启动 TCP 服务
-        try (ServerSocket server = new ServerSocket(PORT)) {
-            System.out.println("[Master] Listening on port " + PORT);
+        // 2. 启动 TCP 服务，每个连接交给独立线程处理
+        ExecutorService workers = ThreadUtils.newPerTaskExecutor("master-client");
+        Semaphore permits = new Semaphore(MAX_CLIENTS);
+        try (ServerSocket server = new ServerSocket(PORT, MAX_CLIENTS)) {
+            System.out.printf("[Master] Listening on port %d (maxClients=%d, virtualThreads=%b)%n",
+                    PORT, MAX_CLIENTS, ThreadUtils.virtualThreadsAvailable());
             while (true) {
-                Socket client = server.accept();
-                handleClient(client);
-                client.close();
+                permits.acquire();
+                Socket client;
+                try {
+                    client = server.accept();
+                } catch (IOException e) {
+                    permits.release();
+                    System.err.println("[Master] Accept failed: " + e.getMessage());
+                    continue;
+                }
+                workers.execute(() -> {
+                    try (Socket c = client) {
+                        handleClient(c, workers);
+                    } catch (IOException e) {
+                        System.err.println("[Master] Error closing client: " + e.getMessage());
+                    } finally {
+                        permits.release();
+                    }
+                });
             }
+        } finally {
+            workers.shutdownNow();
         }
     }
 
-    private static void handleClient(Socket client) {
-        try (
-                BufferedReader in = new BufferedReader(
-                        new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8)
-                );
-                PrintWriter out = new PrintWriter(
-                        client.getOutputStream(), true, StandardCharsets.UTF_8
-                )
-        ) {
-            String sql = in.readLine();
-            System.out.println("[Master] Received SQL: " + sql);
-            if (sql == null || sql.isBlank()) {
-                out.println("Empty SQL.");
+    /** 按首字节区分协议：二进制握手 MAGIC 或一行文本 SQL */
+    private static void handleClient(Socket client, ExecutorService workers) {
+        try {
+            PushbackInputStream raw = new PushbackInputStream(client.getInputStream(), 1);
+            int first = raw.read();
+            if (first < 0) return;
+            if ((byte) first == BinaryProtocol.MAGIC_FIRST) {
+                BinaryProtocol.readHandshakeRest(raw);
+                Session session = new Session();
+                BinaryServer.serve(raw, client.getOutputStream(),
+                        sql -> {
+                            List<Reply> replies = new ArrayList<>();
+                            dispatch(sql, session, replies::add);
+                            return merge(replies);
+                        }, prepared(session), sql -> new RelayCursor(sink -> dispatch(sql, session, sink), workers),
+                        workers, MAX_IN_FLIGHT);
                 return;
             }
+            raw.unread(first);
+            BufferedReader in = new BufferedReader(new InputStreamReader(raw, StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8);
+            String sql = in.readLine();
+            // 结果按到达顺序立即写出；流式读取时逐批写出，写阻塞即暂停向 region 取数
+            dispatch(sql, Session.perStatement(), r -> {
+                for (String line : r.result.toLines()) {
+                    if (r.region == null) out.println(line);
+                    else out.printf("[%s] %s%n", r.region, line);
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("[Master] Error handling client: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 路由并执行一条 SQL，结果交给 sink（region 为 null 表示单点路由或提示信息，输出不加前缀）
+     */
+    private static void dispatch(String sql, Session session, Consumer<Reply> sink) {
+        System.out.println("[Master] Received SQL: " + sql);
+        if (sql == null || sql.isBlank()) {
+            sink.accept(new Reply(null, QueryResult.message("Empty SQL.")));
+            return;
+        }
+
+        List<String> regions = liveRegions();
+        if (regions.isEmpty()) {
+            sink.accept(new Reply(null, QueryResult.message("No regions available.")));
+            return;
+        }
+
+        // 解析一次（语句缓存），语法错误直接在 Master 返回，不再转发
+        Statement st;
+        try {
+            st = SqlParser.parseCached(sql);
+        } catch (SqlParseException e) {
+            sink.accept(new Reply(null, QueryResult.message(e.getMessage())));
+            return;
+        }
+        execute(QueryPlan.build(0, sql, st, catalog, DEFAULT_PK), List.of(), regions, session, sink);
+    }
+
+    /** snapshot region list */
+    private static List<String> liveRegions() {
+        synchronized (regionMap) {
+            return new ArrayList<>(regionMap.keySet());
+        }
+    }
 
-            // snapshot region list
-            List<String> regions;
-            synchronized (regionMap) {
-                regions = new ArrayList<>(regionMap.keySet());
+    /** 按执行计划路由并执行；params 为预编译语句本次的参数（普通 SQL 为空） */
+    private static void execute(QueryPlan plan, List<String> params, List<String> regions, Session session,
+                                Consumer<Reply> sink) {
+        Statement st = plan.statement;
+        if (params.size() != st.getParamCount()) {
+            sink.accept(new Reply(null, QueryResult.message("Parameter count mismatch: expected "
+                    + st.getParamCount() + ", got " + params.size() + ".")));
+            return;
+        }
+        if (st instanceof SelectStatement && ((SelectStatement) st).isAggregate()) {
+            // 6) 聚合查询：各 region 先做部分聚合，Master 只合并每个 region 每个分组一行
+            sink.accept(new Reply(null, aggregate(plan, params, regions)));
+            return;
+        }
+        if (st instanceof SelectStatement && ((SelectStatement) st).isOrderedOrLimited()) {
+            // 7) ORDER BY / LIMIT：各 region 返回本地前 K 行，Master k 路归并
+            orderedRead(plan, params, regions, sink);
+            return;
+        }
+        switch (plan.route) {
+            case CREATE: {
+                // 1) DDL 广播；先登记表目录，期间新加入的 region 启动时即可建表
+                TableSchema schema = TableSchema.of((CreateTableStatement) st);
+                if (schema != null) {
+                    try {
+                        catalog.register(schema);
+                    } catch (Exception e) {
+                        System.err.println("[Master] Catalog register failed: " + e.getMessage());
+                    }
+                }
+                broadcast(regions, plan, params, sink);
+                break;
             }
-            if (regions.isEmpty()) {
-                out.println("No regions available.");
-                return;
+            case DROP:
+                broadcast(regions, plan, params, sink);
+                try {
+                    catalog.remove(st.getTable());
+                } catch (Exception e) {
+                    System.err.println("[Master] Catalog remove failed: " + e.getMessage());
+                }
+                break;
+            case INDEX:
+                // 索引 DDL 与表 DDL 一样广播，并记入表目录（新 region 启动时据此补建索引）
+                broadcast(regions, plan, params, sink);
+                try {
+                    recordIndex(st);
+                } catch (Exception e) {
+                    System.err.println("[Master] Catalog update failed: " + e.getMessage());
+                }
+                break;
+            case POINT_READ:
+                // 3) 按主键所在槽单点读取（主键列取自表目录），有从副本时在各副本之间轮流
+                sink.accept(new Reply(null, pointRead(plan, params, session)));
+                break;
+            case POINT_WRITE: {
+                String pkVal = plan.pkValue(params);
+                sink.accept(new Reply(null, routeWrite(pkVal, plan, params)));
+                if (READ_YOUR_WRITES) session.wrote(plan.partitioning().slotOf(pkVal));
+                break;
             }
+            case BROADCAST_WRITE:
+                // 4) 按非主键条件的写操作广播，需经过迁移写闸门
+                enterMultiWrite(regions);
+                try {
+                    broadcast(regions, plan, params, sink);
+                } finally {
+                    exitMultiWrite();
+                }
+                break;
+            case RANGE_READ: {
+                // 5) RANGE 分区表的主键范围查询：只发给覆盖区间的槽的 owner
+                List<String> owners = rangeOwners(rebalancer.current(), plan, params, false, regions);
+                if (isStreamed(plan)) streamRead(owners, plan, params, sink);
+                else broadcast(owners, plan, params, sink);
+                break;
+            }
+            case RANGE_WRITE:
+                enterMultiWrite(regions);
+                try {
+                    broadcast(rangeOwners(rebalancer.current(), plan, params, true, regions), plan, params, sink);
+                } finally {
+                    exitMultiWrite();
+                }
+                break;
+            case BULK_INSERT:
+                sink.accept(new Reply(null, bulkInsert(plan, params)));
+                if (READ_YOUR_WRITES) session.wroteAll();
+                break;
+            case LOAD:
+                sink.accept(new Reply(null, load(plan)));
+                if (READ_YOUR_WRITES) session.wroteAll();
+                break;
+            case JOIN:
+                join(plan, params, regions, sink);
+                break;
+            default:
+                // 2) 全表查询及按非主键条件查询广播
+                if (isStreamed(plan)) streamRead(regions, plan, params, sink);
+                else broadcast(regions, plan, params, sink);
+        }
+    }
+
+    /** 广播的 SELECT 以游标方式读取（需二进制 region 协议） */
+    private static boolean isStreamed(QueryPlan plan) {
+        return BINARY_TO_REGIONS && plan.statement instanceof SelectStatement;
+    }
 
-            String up = sql.trim().toUpperCase(Locale.ROOT);
-            boolean isCreate   = up.startsWith("CREATE TABLE");
-            boolean isDrop     = up.startsWith("DROP TABLE");
-            boolean isSelect   = up.startsWith("SELECT");
-            boolean isSelectAll = isSelect && !up.contains("WHERE");
+    /**
+     * 流式读取：在各 region 上打开游标，每个 region 至多一批在途，一批到达即交给 sink（写给客户端），
+     * sink 返回后才向该 region 请求下一批。客户端读得慢时 sink 阻塞，各 region 随之暂停，
+     * 同一查询在 Master 上至多缓存 region 数个批。region 的非结果行提示只在它没有返回任何行时交给 sink；
+     * 与广播一样，有 region 失败时追加汇总行。各 region 的游标不是快照，读取期间迁移的槽中的行可能重复或缺失
+     */
+    private static void streamRead(List<String> regions, QueryPlan plan, List<String> params, Consumer<Reply> sink) {
+        String sql = params.isEmpty() ? plan.sql : SqlParser.bindParameters(plan.sql, params);
+        streamRead(regions, region -> sql, plan.sql, sink);
+    }
 
-            if (isCreate || isDrop) {
-                // 1) DDL 广播
-                for (String region : regions) {
-                    String res = forward(region, sql, true);
-                    out.printf("[%s] %s%n", region, res);
+    /** 流式读取，各 region 执行 sqlOf 给出的语句（JOIN 重分布时各 region 的命令不同） */
+    private static void streamRead(List<String> regions, Function<String, String> sqlOf, String label,
+                                   Consumer<Reply> sink) {
+        long t0 = System.nanoTime();
+        BlockingQueue<Object[]> arrivals = new LinkedBlockingQueue<>();
+        Map<String, RemoteCursor> cursors = new HashMap<>();
+        Set<String> withRows = new HashSet<>();
+        int failed = 0;
+        try {
+            for (String region : regions) {
+                String addr = regionMap.get(region);
+                try {
+                    if (addr == null) throw new IOException("region offline: " + region);
+                    RemoteCursor c = muxPool.openCursor(addr, sqlOf.apply(region), CURSOR_BATCH_ROWS);
+                    cursors.put(region, c);
+                    fetchInto(region, c, arrivals);
+                } catch (IOException e) {
+                    failed++;
+                    sink.accept(new Reply(region, QueryResult.error(String.valueOf(e.getMessage()))));
+                }
+            }
+            for (int active = cursors.size(); active > 0; ) {
+                Object[] a;
+                try {
+                    a = arrivals.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failed += active;
+                    break;
+                }
+                String region = (String) a[0];
+                QueryResult r = (QueryResult) a[1];
+                RemoteCursor c = cursors.get(region);
+                boolean more = !r.isError() && c.hasMore();
+                if (r.isError()) failed++;
+                if (r.hasRows()) {
+                    withRows.add(region);
+                    sink.accept(new Reply(region, r));
+                } else if (!more && (r.isError() || !withRows.contains(region))) {
+                    sink.accept(new Reply(region, r));
                 }
+                if (more) fetchInto(region, c, arrivals);
+                else active--;
+            }
+        } finally {
+            // 提前结束（客户端断开、中断）时释放各 region 上未取完的游标
+            cursors.values().forEach(RemoteCursor::close);
+        }
+        String note = new ScatterGather.Summary(regions.size(), failed,
+                (System.nanoTime() - t0) / 1_000_000).partialFailureNote();
+        if (note != null) {
+            System.err.println("[Master] " + note + ": " + label);
+            sink.accept(new Reply(null, QueryResult.error(note)));
+        }
+    }
 
-            } else if (isSelectAll) {
-                // 2) 全表查询广播
-                for (String region : regions) {
-                    List<String> resLines = forwardAll(region, sql);
-                    for (String line : resLines) {
-                        out.printf("[%s] %s%n", region, line);
-                    }
+    /**
+     * 两表等值 JOIN（region 上的执行见 HashJoin）。表按连接列分区指连接列是表目录中该表的主键，
+     * 此时连接值相同的行都在该值所在槽的 owner 上：
+     *  - 两表都按连接列分区且分区方式、列类型相同：各 region 本地连接（co-located），不传输任何行
+     *  - 只有一表按连接列分区：另一表的行按该表的分区方式重分布，每个槽的 owner 从各 region 取来落在自己槽内的行
+     *    （SHUFFLE JOIN，见 ShuffleCommands）；两表都按连接列分区但方式不同时，重分布行数较少的一表
+     *  - 都不是（含未登记到表目录的表）：行数较少的一表广播到每个 region，与本地的另一表连接
+     * 被重分布的行在 region 之间直接传输，Master 只下发命令、按 streamRead 转发连接结果；
+     * 与其他读取一样不是快照，期间迁移的槽中的行可能重复或缺失
+     */
+    private static void join(QueryPlan plan, List<String> params, List<String> regions, Consumer<Reply> sink) {
+        if (!BINARY_TO_REGIONS) {
+            sink.accept(new Reply(null, QueryResult.message("JOIN requires the binary region protocol.")));
+            return;
+        }
+        JoinStatement st = (JoinStatement) plan.statement;
+        String sql = params.isEmpty() ? plan.sql : SqlParser.bindParameters(plan.sql, params);
+        TableSchema left = plan.schema;
+        TableSchema right = catalog.get(st.getRightTable());
+        String[] keys = joinKeys(st, left, right);
+        boolean leftAligned = partitionedOn(left, keys[0], right, keys[1]);
+        boolean rightAligned = partitionedOn(right, keys[1], left, keys[0]);
+        if (leftAligned && rightAligned && left.getPartitioning().equals(right.getPartitioning())
+                && left.columnType(keys[0]).equals(right.columnType(keys[1]))) {
+            System.out.println("[Master] JOIN co-located: " + sql);
+            streamRead(regions, region -> sql, plan.sql, sink);
+            return;
+        }
+        // 被重分布的一侧：只有一侧按连接列分区时为另一侧，否则为行数较少的一侧
+        boolean shipRight;
+        if (leftAligned != rightAligned) {
+            shipRight = leftAligned;
+        } else {
+            long l = rowCount(st.getTable(), regions);
+            long r = rowCount(st.getRightTable(), regions);
+            shipRight = r <= l;
+        }
+        String side = shipRight ? "R" : "L";
+        TableSchema target = shipRight ? left : right;
+        List<String> targets = regions;
+        Map<String, BitSet> owned = new HashMap<>();
+        String partitioning = "*";
+        if (shipRight ? leftAligned : rightAligned) {
+            // 重分布：按目标表的分区方式，每个 region 取连接列落在自己槽内的行
+            partitioning = target.getPartitioning();
+            SlotTable slots = rebalancer.current();
+            for (int slot = 0; slot < Slots.COUNT; slot++) {
+                owned.computeIfAbsent(ownerOf(slots, slot), r -> new BitSet()).set(slot);
+            }
+            targets = new ArrayList<>(regions);
+            targets.retainAll(owned.keySet());
+        }
+        String part = partitioning;
+        System.out.printf("[Master] JOIN %s %s over %d regions: %s%n", part.equals("*") ? "broadcast" : "shuffle",
+                shipRight ? st.getRightTable() : st.getTable(), targets.size(), sql);
+        streamRead(targets, region -> {
+            StringJoiner peers = new StringJoiner(",");
+            for (String r : regions) {
+                String addr = regionMap.get(r);
+                if (!r.equals(region) && addr != null) peers.add(addr);
+            }
+            return "SHUFFLE JOIN " + side + " " + part + " "
+                    + (part.equals("*") ? "*" : Slots.encodeSet(owned.get(region))) + " "
+                    + (peers.length() == 0 ? "-" : peers.toString()) + " " + sql;
+        }, plan.sql, sink);
+    }
+
+    /**
+     * ON 两侧的列名（去掉表名前缀），左表一侧在前；都没有表名前缀时按表目录中的列判断所属的表，
+     * 无法判断时按书写顺序
+     */
+    private static String[] joinKeys(JoinStatement st, TableSchema left, TableSchema right) {
+        String a = JoinStatement.baseName(st.getLeftColumn());
+        String b = JoinStatement.baseName(st.getRightColumn());
+        boolean qualified = JoinStatement.qualifier(st.getLeftColumn()) != null
+                || JoinStatement.qualifier(st.getRightColumn()) != null;
+        if (!qualified && left != null && right != null && left.columnType(a) == null && right.columnType(a) != null
+                && left.columnType(b) != null) {
+            return new String[]{b, a};
+        }
+        return new String[]{a, b};
+    }
+
+    /**
+     * 表是否按连接列分区（连接列是表目录中的主键），且连接时的值规范化不改变它的取值：
+     * 对端连接列为 INT 时，本表的连接列也须为 INT
+     */
+    private static boolean partitionedOn(TableSchema schema, String column, TableSchema other, String otherColumn) {
+        if (schema == null || !schema.getPrimaryKey().equals(column)) return false;
+        String type = schema.columnType(column);
+        String otherType = other == null ? null : other.columnType(otherColumn);
+        return "INT".equals(type) || !"INT".equals(otherType);
+    }
+
+    /** 表在各 region 上的行数之和（失败的 region 不计） */
+    private static long rowCount(String table, List<String> regions) {
+        String sql = "SELECT COUNT(*) FROM " + table;
+        long[] n = new long[1];
+        ScatterGather.broadcast(regions, region -> forwardAsync(region, sql), REQUEST_TIMEOUT_MS, (region, r) -> {
+            for (Map<String, String> row : r.getRows()) {
+                try {
+                    n[0] += Long.parseLong(row.get("COUNT(*)"));
+                } catch (NumberFormatException ignored) {
+                    // 不是计数结果
                 }
+            }
+        });
+        return n[0];
+    }
 
-            } else {
-                // 3/4) 其余 DML 或带 WHERE
-                // 尝试提取主键值
-                String pkVal = extractPK(sql, "id");
-                if (pkVal != null) {
-                    // 按主键单点路由
-                    int idx = Math.abs(pkVal.hashCode()) % regions.size();
-                    String region = regions.get(idx);
-                    String res = forward(region, sql, false);
-                    out.println(res);
+    /** 向 region 游标请求下一批，到达（或超时、失败）时放入 arrivals */
+    private static void fetchInto(String region, RemoteCursor c, BlockingQueue<Object[]> arrivals) {
+        CompletableFuture<QueryResult> f;
+        try {
+            f = c.fetch();
+        } catch (RuntimeException e) {
+            f = CompletableFuture.failedFuture(e);
+        }
+        f.orTimeout(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS).whenComplete((r, e) -> arrivals.add(
+                new Object[]{region, e == null ? r : QueryResult.error(ScatterGather.describe(e, REQUEST_TIMEOUT_MS))}));
+    }
+
+    /**
+     * 主键范围覆盖的槽的 owner（限于在线 region）；写操作还要加上这些槽的从副本，
+     * 以及落在区间内的迁移中的槽的迁移目标
+     */
+    private static List<String> rangeOwners(SlotTable slots, QueryPlan plan, List<String> params,
+                                            boolean write, List<String> regions) {
+        int[] span = plan.slotSpan(params);
+        Set<String> owners = new LinkedHashSet<>();
+        for (int slot = span[0]; slot <= span[1]; slot++) {
+            owners.add(ownerOf(slots, slot));
+            if (write) owners.addAll(slots.replicas(slot));
+        }
+        int migrating = slots.getMigratingSlot();
+        if (write && migrating >= span[0] && migrating <= span[1]) owners.add(slots.getMigrationTarget());
+        List<String> targets = new ArrayList<>();
+        for (String r : regions) if (owners.contains(r)) targets.add(r);
+        return targets;
+    }
+
+    /**
+     * 聚合查询：按读路由选出 region（单点、主键范围或全部），并行执行部分聚合（AVG 拆成 SUM 与 COUNT），
+     * 在 Master 合并为最终结果；有 region 失败时整体返回错误，不返回不完整的聚合值
+     */
+    private static QueryResult aggregate(QueryPlan plan, List<String> params, List<String> regions) {
+        if (!BINARY_TO_REGIONS) return QueryResult.message("Aggregates require the binary region protocol.");
+        SelectStatement st = (SelectStatement) plan.statement;
+        String sql = Aggregation.partialSql(st, params);
+        List<QueryResult> partials = new ArrayList<>();
+        ScatterGather.Summary summary = ScatterGather.broadcast(readTargets(plan, params, regions),
+                region -> forwardAsync(region, sql),
+                REQUEST_TIMEOUT_MS, (region, result) -> partials.add(result));
+        String note = summary.partialFailureNote();
+        if (note != null) {
+            System.err.println("[Master] " + note + ": " + sql);
+            return QueryResult.error(note);
+        }
+        List<Column> columns = null;
+        for (QueryResult r : partials) {
+            if (r.hasRows()) {
+                columns = r.getColumns();
+                break;
+            }
+        }
+        // 各 region 均无结果行（表不存在、没有分组等），返回 region 的提示
+        if (columns == null) return partials.isEmpty() ? QueryResult.message("Empty result.") : partials.get(0);
+        try {
+            Aggregation agg = new Aggregation(st.getItems(), st.getGroupBy(), columns, true);
+            for (QueryResult r : partials) agg.addAll(r.getRows());
+            // 分组可能分布在多个 region，ORDER BY / LIMIT 只能在合并后应用
+            return RowOrder.apply(st, agg.result());
+        } catch (IllegalArgumentException e) {
+            return QueryResult.message(e.getMessage());
+        }
+    }
+
+    /**
+     * ORDER BY / LIMIT 查询：每个 region 返回本地已排序的前 offset + limit 行（OFFSET 改写进 LIMIT），
+     * Master 对各 region 的结果做 k 路归并，跳过 offset 行、取满 limit 行即停止；
+     * 与广播一样，有 region 失败时返回其余 region 的合并结果并追加汇总行
+     */
+    private static void orderedRead(QueryPlan plan, List<String> params, List<String> regions, Consumer<Reply> sink) {
+        if (!BINARY_TO_REGIONS) {
+            sink.accept(new Reply(null, QueryResult.message("ORDER BY/LIMIT require the binary region protocol.")));
+            return;
+        }
+        SelectStatement st = (SelectStatement) plan.statement;
+        SelectStatement pushed = st.pushdown();
+        String sql = pushed == st ? null : pushed.toSql(params);
+        List<QueryResult> results = new ArrayList<>();
+        ScatterGather.Summary summary = ScatterGather.broadcast(readTargets(plan, params, regions),
+                region -> sql == null ? forwardAsync(region, plan, params) : forwardAsync(region, sql),
+                REQUEST_TIMEOUT_MS, (region, result) -> results.add(result));
+        List<Column> columns = null;
+        List<List<Map<String, String>>> runs = new ArrayList<>();
+        QueryResult first = null;
+        for (QueryResult r : results) {
+            if (r.hasRows()) {
+                if (columns == null) columns = r.getColumns();
+                runs.add(r.getRows());
+            } else if (first == null && !r.isError()) {
+                first = r;
+            }
+        }
+        if (columns != null) {
+            Comparator<Map<String, String>> order = st.getOrderBy() == null ? null
+                    : RowOrder.comparator(st, columns);
+            QueryResult merged = QueryResult.rows(columns,
+                    RowOrder.merge(runs, order, st.getOffset(), st.getLimit()), "Empty result.");
+            if (pushed.getItems().size() != st.getItems().size()) {
+                // 去掉为归并而加上的排序列
+                List<String> labels = new ArrayList<>();
+                for (SelectItem item : st.getItems()) labels.add(item.label());
+                merged = merged.project(labels);
+            }
+            sink.accept(new Reply(null, merged));
+        } else if (first != null) {
+            // 各 region 均无结果行（空表、表不存在、列不存在等），返回 region 的提示
+            sink.accept(new Reply(null, first));
+        }
+        String note = summary.partialFailureNote();
+        if (note != null) {
+            System.err.println("[Master] " + note + ": " + plan.sql);
+            sink.accept(new Reply(null, QueryResult.error(note)));
+        }
+    }
+
+    /** 读操作的目标 region：单点读为主键所在槽的 owner，主键范围读为覆盖区间的 owner，其余为全部 region */
+    private static List<String> readTargets(QueryPlan plan, List<String> params, List<String> regions) {
+        switch (plan.route) {
+            case POINT_READ:
+                return List.of(ownerOf(rebalancer.current(), plan.partitioning().slotOf(plan.pkValue(params))));
+            case RANGE_READ:
+                return rangeOwners(rebalancer.current(), plan, params, false, regions);
+            default:
+                return regions;
+        }
+    }
+
+    /** 多行 INSERT：按主键拆成各 region 的批次并行写入，返回插入行数（跳过的行附第一个原因） */
+    private static QueryResult bulkInsert(QueryPlan plan, List<String> params) {
+        InsertStatement st = (InsertStatement) plan.statement;
+        for (List<Value> vals : st.getRows()) {
+            if (vals.size() != st.getColumns().size()) return QueryResult.message("Column/value count mismatch.");
+        }
+        BulkLoader loader = newLoader(plan, st.getColumns());
+        if (loader == null) return QueryResult.message("Primary key column missing: " + primaryKeyOf(plan));
+        for (List<Value> vals : st.getRows()) {
+            List<String> row = new ArrayList<>(vals.size());
+            for (Value v : vals) row.add(v.resolve(params));
+            loader.add(row);
+        }
+        loader.finish();
+        return QueryResult.message(SimpleSQLExecutor.insertedMessage(loader.getInserted(), loader.getFailed(),
+                loader.getFirstError()));
+    }
+
+    /** LOAD DATA：读取 Master 本地的 CSV 文件，边读边按轮分批发送，返回导入行数与吞吐 */
+    private static QueryResult load(QueryPlan plan) {
+        LoadDataStatement st = (LoadDataStatement) plan.statement;
+        BulkLoader loader = null;
+        try (CsvReader in = CsvReader.open(Paths.get(st.getFile()))) {
+            List<String> cols = st.getColumns().isEmpty() ? in.next() : st.getColumns();
+            if (cols == null) return QueryResult.message("Empty file: " + st.getFile());
+            loader = newLoader(plan, cols);
+            if (loader == null) return QueryResult.message("Primary key column missing: " + primaryKeyOf(plan));
+            for (List<String> fields = in.next(); fields != null; fields = in.next()) {
+                if (fields.size() != cols.size()) {
+                    loader.reject("Line " + in.getLine() + ": expected " + cols.size() + " fields, got " + fields.size());
                 } else {
-                    // 按非主键条件广播（DELETE/UPDATE/SELECT WHERE non-pk）
-                    for (String region : regions) {
-                        String res = forward(region, sql, false);
-                        out.printf("[%s] %s%n", region, res);
-                    }
+                    loader.add(fields);
                 }
             }
+            loader.finish();
+        } catch (IOException | IllegalArgumentException e) {
+            return QueryResult.message("LOAD DATA failed after " + (loader == null ? 0 : loader.getInserted())
+                    + " rows: " + e.getMessage());
+        }
+        String msg = SimpleSQLExecutor.loadedMessage(st.getTable(), loader.getInserted(), loader.getFailed(),
+                loader.getFirstError(), loader.elapsedNanos());
+        System.out.println("[Master] " + msg);
+        return QueryResult.message(msg);
+    }
 
-        } catch (IOException e) {
-            System.err.println("[Master] Error handling client: " + e.getMessage());
+    /** 按表目录中的主键与分区方式创建批量写入器；列中没有主键时返回 null */
+    private static BulkLoader newLoader(QueryPlan plan, List<String> columns) {
+        String pk = primaryKeyOf(plan);
+        int pkIndex = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).equalsIgnoreCase(pk)) pkIndex = i;
+        }
+        if (pkIndex < 0) return null;
+        Column pkColumn = plan.schema == null ? null : plan.schema.getColumns().stream()
+                .filter(c -> c.getName().equals(pk)).findFirst().orElse(null);
+        return new BulkLoader(plan.statement.getTable(), columns, pkIndex, pkColumn, plan.partitioning(),
+                rebalancer::current, MasterNode::ownerOf, MasterNode::forwardAsync,
+                round -> {
+                    rebalancer.enterWrite();
+                    try {
+                        round.run();
+                    } finally {
+                        rebalancer.exitWrite();
+                    }
+                }, LOAD_BATCH_ROWS, LOAD_ROUND_ROWS, REQUEST_TIMEOUT_MS);
+    }
+
+    private static String primaryKeyOf(QueryPlan plan) {
+        return plan.schema != null ? plan.schema.getPrimaryKey() : DEFAULT_PK;
+    }
+
+    /** 把 CREATE/DROP INDEX 记入表目录（表未登记或列不存在时忽略） */
+    private static void recordIndex(Statement st) throws Exception {
+        if (st instanceof CreateIndexStatement) {
+            CreateIndexStatement ci = (CreateIndexStatement) st;
+            TableSchema schema = catalog.get(ci.getTable());
+            if (schema != null && schema.columnType(ci.getColumn()) != null
+                    && !schema.getIndexes().containsKey(ci.getIndexName())) {
+                catalog.update(schema.withIndex(ci.getIndexName(), ci.getColumn()));
+            }
+            return;
+        }
+        String index = ((DropIndexStatement) st).getIndexName();
+        Collection<String> tables = st.getTable() != null ? List.of(st.getTable()) : catalog.names();
+        for (String t : tables) {
+            TableSchema schema = catalog.get(t);
+            if (schema != null && schema.getIndexes().containsKey(index)) {
+                catalog.update(schema.withoutIndex(index));
+                return;
+            }
         }
     }
 
     /**
-     * 单行请求：发送 SQL 并读取第一行响应
-     * @param regionName
-     * @param sql
-     * @param readAllLines if true, read until socket close, then join with \n
-     * @return response text (single line or multi-line joined)
+     * 单点写：发往槽的当前 owner；若该槽正在迁移，同时写入迁移目标（双写），
+     * 以 owner 的结果为准
      */
-    private static String forward(String regionName, String sql, boolean readAllLines) {
-        String addr = regionMap.get(regionName);
-        String[] hp = addr.split(":");
-        try (Socket rs = new Socket(hp[0], Integer.parseInt(hp[1]));
-             PrintWriter rout = new PrintWriter(rs.getOutputStream(), true);
-             BufferedReader rin = new BufferedReader(
-                     new InputStreamReader(rs.getInputStream(), StandardCharsets.UTF_8))
-        ) {
-            rout.println(sql);
-            if (!readAllLines) {
-                String line = rin.readLine();
-                return line != null ? line : "";
-            } else {
-                // 读取所有行
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = rin.readLine()) != null) {
-                    if (sb.length()>0) sb.append("\n");
-                    sb.append(line);
+    private static QueryResult routeWrite(String pkVal, QueryPlan plan, List<String> params) {
+        rebalancer.enterWrite();
+        try {
+            SlotTable slots = rebalancer.current();
+            int slot = plan.partitioning().slotOf(pkVal);
+            QueryResult res = forward(ownerOf(slots, slot), plan, params);
+            if (slots.getMigratingSlot() == slot) {
+                QueryResult copy = forward(slots.getMigrationTarget(), plan, params);
+                if (copy.isError()) {
+                    System.err.println("[Master] Dual write to " + slots.getMigrationTarget()
+                            + " failed: " + copy.getMessage());
                 }
-                return sb.toString();
             }
-        } catch (IOException e) {
-            return "Error: " + e.getMessage();
+            return res;
+        } finally {
+            rebalancer.exitWrite();
         }
     }
 
     /**
-     * 广播全表查询：读取所有行，保持行顺序
+     * 单点读：在槽的 owner 与已同步的在线从副本之间轮流；开启 read-your-writes 时本会话写过的槽只读 owner。
+     * 从副本以直连请求（带槽号）读取，它的 /slots 视图尚未跟上而拒绝（MOVED）时改读 owner。
+     * 异步复制下从副本可能落后于 owner
      */
-    private static List<String> forwardAll(String regionName, String sql) {
-        String addr = regionMap.get(regionName);
-        String[] hp = addr.split(":");
-        List<String> list = new ArrayList<>();
-        try (Socket rs = new Socket(hp[0], Integer.parseInt(hp[1]));
-             PrintWriter rout = new PrintWriter(rs.getOutputStream(), true);
-             BufferedReader rin = new BufferedReader(
-                     new InputStreamReader(rs.getInputStream(), StandardCharsets.UTF_8))
-        ) {
-            rout.println(sql);
-            String line;
-            while ((line = rin.readLine()) != null) {
-                list.add(line);
+    private static QueryResult pointRead(QueryPlan plan, List<String> params, Session session) {
+        SlotTable slots = rebalancer.current();
+        int slot = plan.partitioning().slotOf(plan.pkValue(params));
+        String owner = ownerOf(slots, slot);
+        List<String> candidates = new ArrayList<>();
+        candidates.add(owner);
+        if (!(READ_YOUR_WRITES && session.hasWritten(slot))) {
+            for (String r : slots.readReplicas(slot)) {
+                if (regionMap.containsKey(r) && !candidates.contains(r)) candidates.add(r);
             }
-        } catch (IOException e) {
-            list.add("Error: " + e.getMessage());
         }
-        return list;
+        String region = candidates.get((int) Math.floorMod(readTurn.getAndIncrement(), (long) candidates.size()));
+        if (region.equals(owner)) return forward(owner, plan, params);
+        QueryResult r = await(forwardDirect(region, slot, plan, params));
+        if (r.isError() && r.getMessage().startsWith(Slots.MOVED)) return forward(owner, plan, params);
+        return r;
     }
 
     /**
-     * 尝试从 SQL 中提取主键列的值（只针对 INSERT 及 WHERE id=...）
+     * 按非主键条件、主键范围的写进入写闸门。有从副本时这些写直接作用于每个副本，
+     * 须与单点写互斥，并先等各 region 复制队列中已有的写入发给从副本，使各副本上的执行顺序一致
      */
-    private static String extractPK(String sql, String pkCol) {
-        // 1) INSERT INTO tbl (cols) VALUES (vals)
-        Pattern pIns = Pattern.compile(
-                "INSERT INTO \\w+ \\(([^)]+)\\)\\s+VALUES\\s*\\(([^)]+)\\)",
-                Pattern.CASE_INSENSITIVE);
-        Matcher mIns = pIns.matcher(sql);
-        if (mIns.find()) {
-            String[] cols = mIns.group(1).split("\\s*,\\s*");
-            String[] vals = mIns.group(2).split("\\s*,\\s*");
-            for (int i = 0; i < cols.length; i++) {
-                if (cols[i].equalsIgnoreCase(pkCol)) {
-                    return vals[i].replaceAll("'", "").trim();
-                }
+    private static void enterMultiWrite(List<String> regions) {
+        if (REPLICATION_FACTOR <= 1) {
+            rebalancer.enterWrite();
+            return;
+        }
+        rebalancer.enterExclusiveWrite();
+        ScatterGather.broadcast(regions, region -> forwardAsync(region, "REPLICATE FLUSH"), REQUEST_TIMEOUT_MS,
+                (region, r) -> {
+                    if (r.isError()) System.err.println("[Master] Replication flush on " + region + ": " + r.getMessage());
+                });
+    }
+
+    private static void exitMultiWrite() {
+        if (REPLICATION_FACTOR <= 1) rebalancer.exitWrite();
+        else rebalancer.exitExclusiveWrite();
+    }
+
+    /** 槽的当前 owner；槽未分配或 owner 已下线时按哈希环目标路由 */
+    private static String ownerOf(SlotTable slots, int slot) {
+        String owner = slots.owner(slot);
+        if (owner != null && regionMap.containsKey(owner)) return owner;
+        return Rebalancer.targetOf(ring, slot);
+    }
+
+    /** 并行广播到所有 region，结果按到达顺序交给 sink，有失败时追加汇总行 */
+    private static void broadcast(List<String> regions, QueryPlan plan, List<String> params,
+                                  Consumer<Reply> sink) {
+        ScatterGather.Summary summary = ScatterGather.broadcast(regions,
+                region -> forwardAsync(region, plan, params), REQUEST_TIMEOUT_MS,
+                (region, result) -> sink.accept(new Reply(region, result)));
+        String note = summary.partialFailureNote();
+        if (note != null) {
+            System.err.println("[Master] " + note + ": " + plan.sql);
+            sink.accept(new Reply(null, QueryResult.error(note)));
+        }
+    }
+
+    /**
+     * 合并多个 region 的结果供二进制客户端使用：
+     * 结果行按到达顺序拼接，非结果行的消息加 region 前缀后合并
+     */
+    static QueryResult merge(List<Reply> replies) {
+        if (replies.size() == 1 && replies.get(0).region == null) {
+            return replies.get(0).result;
+        }
+        List<Column> columns = null;
+        List<Map<String, String>> rows = new ArrayList<>();
+        StringBuilder messages = new StringBuilder();
+        boolean allError = true;
+        for (Reply r : replies) {
+            allError &= r.result.isError();
+            if (r.result.hasRows()) {
+                if (columns == null) columns = r.result.getColumns();
+                rows.addAll(r.result.getRows());
+            } else {
+                if (messages.length() > 0) messages.append("\n");
+                if (r.region != null) messages.append("[").append(r.region).append("] ");
+                messages.append(r.result.toText());
             }
         }
-        // 2) WHERE id = val
-        Pattern pWhere = Pattern.compile(
-                "WHERE\\s+" + pkCol + "\\s*=\\s*('?\\w+'?)",
-                Pattern.CASE_INSENSITIVE);
-        Matcher mWhere = pWhere.matcher(sql);
-        if (mWhere.find()) {
-            return mWhere.group(1).replaceAll("'", "").trim();
+        if (allError) return QueryResult.error(messages.toString());
+        if (columns == null) return QueryResult.message(messages.toString());
+        return QueryResult.rows(columns, rows, messages.toString());
+    }
+
+    /** 同步发送到单个 region */
+    private static QueryResult forward(String regionName, String sql) {
+        return await(forwardAsync(regionName, sql));
+    }
+
+    private static QueryResult forward(String regionName, QueryPlan plan, List<String> params) {
+        return await(forwardAsync(regionName, plan, params));
+    }
+
+    private static QueryResult await(CompletableFuture<QueryResult> f) {
+        return f.completeOnTimeout(QueryResult.error("timeout after " + REQUEST_TIMEOUT_MS + "ms"),
+                        REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .join();
+    }
+
+    /**
+     * 异步发送 SQL 到单个 region：默认走二进制多路复用通道，
+     * -Dmaster.regionProtocol=text 时回退到文本长连接池（在 I/O 线程上阻塞执行）。
+     * 返回的 Future 不会异常结束，失败以错误结果表示
+     */
+    private static CompletableFuture<QueryResult> forwardAsync(String regionName, String sql) {
+        String addr = regionMap.get(regionName);
+        if (addr == null) {
+            return CompletableFuture.completedFuture(QueryResult.error("region offline: " + regionName));
+        }
+        CompletableFuture<QueryResult> f;
+        if (BINARY_TO_REGIONS) {
+            f = muxPool.submit(addr, sql);
+        } else {
+            f = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return QueryResult.message(String.join("\n", pool.execute(addr, sql)));
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, ioExecutor);
+        }
+        return recover(f);
+    }
+
+    /**
+     * 按执行计划发送到单个 region：预编译语句在二进制通道上只发送语句ID与参数
+     * （各连接首次使用时自动 PREPARE）；文本协议下把参数代入 SQL 文本
+     */
+    private static CompletableFuture<QueryResult> forwardAsync(String regionName, QueryPlan plan,
+                                                               List<String> params) {
+        if (plan.id == 0 || !BINARY_TO_REGIONS) {
+            return forwardAsync(regionName, params.isEmpty() ? plan.sql : SqlParser.bindParameters(plan.sql, params));
+        }
+        String addr = regionMap.get(regionName);
+        if (addr == null) {
+            return CompletableFuture.completedFuture(QueryResult.error("region offline: " + regionName));
+        }
+        return recover(muxPool.submitPrepared(addr, plan.id, plan.sql, params));
+    }
+
+    /** 以直连请求（带槽号）发送到单个 region，region 按槽归属校验（读从副本时使用） */
+    private static CompletableFuture<QueryResult> forwardDirect(String regionName, int slot, QueryPlan plan,
+                                                                List<String> params) {
+        if (plan.id == 0 || !BINARY_TO_REGIONS) {
+            return forwardAsync(regionName, Slots.DIRECT_PREFIX + slot + " "
+                    + (params.isEmpty() ? plan.sql : SqlParser.bindParameters(plan.sql, params)));
+        }
+        String addr = regionMap.get(regionName);
+        if (addr == null) {
+            return CompletableFuture.completedFuture(QueryResult.error("region offline: " + regionName));
+        }
+        return recover(muxPool.submitPrepared(addr, plan.id, plan.sql, slot, params));
+    }
+
+    /** 连接失败、超时等异常转为错误结果 */
+    private static CompletableFuture<QueryResult> recover(CompletableFuture<QueryResult> f) {
+        return f.exceptionally(e -> QueryResult.error(
+                String.valueOf((e instanceof CompletionException && e.getCause() != null ? e.getCause() : e).getMessage())));
+    }
+
+    /** 客户端的一个预编译语句句柄：执行计划只生成一次，表定义变化时重建 */
+    private static final class PreparedQuery {
+        volatile QueryPlan plan;
+
+        PreparedQuery(QueryPlan plan) {
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * 客户端会话（一条二进制客户端连接；文本协议每条语句一个连接）：read-your-writes 时记录写过的槽
+     */
+    private static final class Session {
+        private final BitSet written = new BitSet(Slots.COUNT);
+
+        /**
+         * 文本协议的会话：每条语句一个连接，记不住客户端之前写过哪些槽，
+         * read-your-writes 时视为所有槽都写过，单点读总是读主副本
+         */
+        static Session perStatement() {
+            Session s = new Session();
+            s.wroteAll();
+            return s;
+        }
+
+        synchronized void wrote(int slot) {
+            written.set(slot);
+        }
+
+        /** 批量写入涉及的槽不逐一记录，之后本会话的单点读都读主副本 */
+        synchronized void wroteAll() {
+            written.set(0, Slots.COUNT);
+        }
+
+        synchronized boolean hasWritten(int slot) {
+            return written.get(slot);
+        }
+    }
+
+    /** 二进制客户端连接的 PREPARE/EXECUTE/CLOSE */
+    private static PreparedHandler<PreparedQuery> prepared(Session session) {
+        return new PreparedHandler<>() {
+            @Override
+            public PreparedQuery prepare(String sql) {
+                System.out.println("[Master] Prepare: " + sql);
+                Statement st = SqlParser.parseCached(sql);
+                return new PreparedQuery(QueryPlan.build(regionStatementIds.incrementAndGet(), sql, st,
+                        catalog, DEFAULT_PK));
+            }
+
+            @Override
+            public QueryResult execute(PreparedQuery q, int slot, List<String> params) {
+                QueryPlan plan = q.plan;
+                if (plan.isStale(catalog)) q.plan = plan = plan.rebuild(catalog, DEFAULT_PK);
+                List<String> regions = liveRegions();
+                if (regions.isEmpty()) return QueryResult.message("No regions available.");
+                List<Reply> replies = new ArrayList<>();
+                MasterNode.execute(plan, params, regions, session, replies::add);
+                return merge(replies);
+            }
+
+            @Override
+            public void release(PreparedQuery q) {
+                muxPool.closeStatement(q.plan.id);
+            }
+        };
+    }
+
+    /** 单个 region 的执行结果（流式读取时为其中一批） */
+    static class Reply {
+        final String region;
+        final QueryResult result;
+
+        Reply(String region, QueryResult result) {
+            this.region = region;
+            this.result = result;
         }
-        return null;
     }
 }
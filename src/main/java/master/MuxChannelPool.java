@@ -0,0 +1,128 @@
+package master;
+
+import minisql.QueryResult;
+import protocol.MuxConnection;
+import protocol.RemoteCursor;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Master → RegionServer 的二进制多路复用通道：
+ *  每个 region 保持 connsPerRegion 条 MuxConnection，请求轮询分配，
+ *  单条连接上可同时有多个在途请求；断开的连接在下次使用时重建
+ */
+public class MuxChannelPool {
+    private final int connsPerRegion;
+    private final int connectTimeoutMs;
+    // "host:port" → 该 region 的连接槽
+    private final Map<String, Channels> channels = new ConcurrentHashMap<>();
+
+    public MuxChannelPool(int connsPerRegion, int connectTimeoutMs) {
+        this.connsPerRegion   = connsPerRegion;
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    /** 按系统属性创建 */
+    public static MuxChannelPool fromSystemProperties() {
+        return new MuxChannelPool(
+                Integer.getInteger("master.mux.connsPerRegion", 2),
+                Integer.getInteger("master.pool.connectTimeoutMs", 3_000));
+    }
+
+    /** 异步发送一条 SQL 到指定 region */
+    public CompletableFuture<QueryResult> submit(String addr, String sql) {
+        try {
+            return channels.computeIfAbsent(addr, Channels::new).next().submit(sql);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /** 异步执行预编译语句（各连接按需预编译），只发送语句ID与参数 */
+    public CompletableFuture<QueryResult> submitPrepared(String addr, long statementId, String sql,
+                                                         List<String> params) {
+        return submitPrepared(addr, statementId, sql, -1, params);
+    }
+
+    /** 同上，slot >= 0 时为直连请求，region 按槽归属校验 */
+    public CompletableFuture<QueryResult> submitPrepared(String addr, long statementId, String sql, int slot,
+                                                         List<String> params) {
+        try {
+            return channels.computeIfAbsent(addr, Channels::new).next()
+                    .submitPrepared(statementId, sql, slot, params);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /** 在指定 region 上打开游标，其后各批都在同一条连接上读取 */
+    public RemoteCursor openCursor(String addr, String sql, int batchRows) throws IOException {
+        return channels.computeIfAbsent(addr, Channels::new).next().openCursor(sql, batchRows);
+    }
+
+    /** 在所有 region 连接上关闭预编译语句 */
+    public void closeStatement(long statementId) {
+        for (Channels ch : channels.values()) ch.closeStatement(statementId);
+    }
+
+    /** 同步执行，超时或连接失败抛出 IOException */
+    public QueryResult execute(String addr, String sql, long timeoutMs) throws IOException {
+        return channels.computeIfAbsent(addr, Channels::new).next().execute(sql, timeoutMs);
+    }
+
+    /** 关闭已下线 region 的连接 */
+    public void retain(Collection<String> liveAddrs) {
+        Set<String> live = new HashSet<>(liveAddrs);
+        channels.entrySet().removeIf(e -> {
+            if (live.contains(e.getKey())) return false;
+            e.getValue().close();
+            return true;
+        });
+    }
+
+    public void close() {
+        channels.values().forEach(Channels::close);
+        channels.clear();
+    }
+
+    /** 单个 region 的一组连接 */
+    private class Channels {
+        final String addr;
+        final MuxConnection[] conns = new MuxConnection[connsPerRegion];
+        final AtomicInteger rr = new AtomicInteger();
+
+        Channels(String addr) {
+            this.addr = addr;
+        }
+
+        MuxConnection next() throws IOException {
+            int i = Math.floorMod(rr.getAndIncrement(), conns.length);
+            MuxConnection c = conns[i];
+            if (c != null && c.isOpen()) return c;
+            synchronized (this) {
+                c = conns[i];
+                if (c == null || !c.isOpen()) {
+                    c = MuxConnection.connect(addr, connectTimeoutMs);
+                    conns[i] = c;
+                }
+                return c;
+            }
+        }
+
+        synchronized void closeStatement(long statementId) {
+            for (MuxConnection c : conns) {
+                if (c != null) c.closeStatement(statementId);
+            }
+        }
+
+        synchronized void close() {
+            for (MuxConnection c : conns) {
+                if (c != null) c.close();
+            }
+        }
+    }
+}
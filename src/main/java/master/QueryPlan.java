@@ -0,0 +1,133 @@
+package master;
+
+import minisql.parser.*;
+import util.Partitioning;
+import util.RouteKeys;
+import util.SchemaCatalog;
+import util.TableSchema;
+
+import java.util.List;
+
+/**
+ * 一条语句在 Master 上的执行计划：路由方式与主键取值（字面量或 ? 参数）。
+ * 预编译语句按句柄缓存计划，每次执行只需按参数算出主键所在槽，不再解析 SQL、查表目录；
+ * 生成计划时记下所用的表定义，目录中的定义变化后由调用方重建
+ */
+final class QueryPlan {
+    enum Route {
+        /** DDL：先登记表目录再广播 */
+        CREATE,
+        /** DDL：广播后从表目录删除 */
+        DROP,
+        /** 索引 DDL（CREATE/DROP INDEX）：广播后更新表目录中的索引 */
+        INDEX,
+        /** 全表查询或按非主键条件查询，广播 */
+        BROADCAST_READ,
+        /** 按非主键条件的写操作，经迁移写闸门后广播 */
+        BROADCAST_WRITE,
+        /** 按主键单点读取 */
+        POINT_READ,
+        /** 按主键单点写入（迁移中的槽双写） */
+        POINT_WRITE,
+        /** RANGE 分区表的主键范围查询：只发给覆盖该区间的槽的 owner */
+        RANGE_READ,
+        /** RANGE 分区表的主键范围写操作：只发给覆盖该区间的槽的 owner（及迁移目标），经迁移写闸门 */
+        RANGE_WRITE,
+        /** 多行 INSERT：按主键拆成各 region 的批次并行发送（见 BulkLoader） */
+        BULK_INSERT,
+        /** LOAD DATA：Master 读取 CSV 文件，按 BULK_INSERT 同样的方式分批发送 */
+        LOAD,
+        /** 两表 JOIN：按两表的分区方式选择本地连接或由 region 之间重分布（见 MasterNode.join） */
+        JOIN
+    }
+
+    /** 发往 RegionServer 的预编译语句ID，普通 SQL 为 0 */
+    final long id;
+    final String sql;
+    final Statement statement;
+    final Route route;
+    /** POINT_* 路由的主键值，其余为 null */
+    final Value pk;
+    /** RANGE_* 路由的主键范围条件，其余为 null */
+    final Condition range;
+    /** 生成计划时表目录中的表定义（未登记为 null；JOIN 为左表，右表在执行时查目录） */
+    final TableSchema schema;
+
+    private QueryPlan(long id, String sql, Statement statement, Route route, Value pk, TableSchema schema) {
+        this(id, sql, statement, route, pk, null, schema);
+    }
+
+    private QueryPlan(long id, String sql, Statement statement, Route route, Value pk, Condition range,
+                      TableSchema schema) {
+        this.id        = id;
+        this.sql       = sql;
+        this.statement = statement;
+        this.route     = route;
+        this.pk        = pk;
+        this.range     = range;
+        this.schema    = schema;
+    }
+
+    static QueryPlan build(long id, String sql, Statement st, SchemaCatalog catalog, String defaultPk) {
+        TableSchema schema = catalog.get(st.getTable());
+        if (st instanceof CreateTableStatement) return new QueryPlan(id, sql, st, Route.CREATE, null, schema);
+        if (st instanceof DropTableStatement) return new QueryPlan(id, sql, st, Route.DROP, null, schema);
+        if (st instanceof CreateIndexStatement || st instanceof DropIndexStatement) {
+            return new QueryPlan(id, sql, st, Route.INDEX, null, schema);
+        }
+        if (st instanceof LoadDataStatement) return new QueryPlan(id, sql, st, Route.LOAD, null, schema);
+        if (st instanceof JoinStatement) return new QueryPlan(id, sql, st, Route.JOIN, null, schema);
+        if (st instanceof InsertStatement && ((InsertStatement) st).isMultiRow()) {
+            return new QueryPlan(id, sql, st, Route.BULK_INSERT, null, schema);
+        }
+        boolean isSelect = st instanceof SelectStatement;
+        if (isSelect && ((SelectStatement) st).getWhere() == null) {
+            return new QueryPlan(id, sql, st, Route.BROADCAST_READ, null, schema);
+        }
+        Value pk = RouteKeys.pkValue(st, schema != null ? schema.getPrimaryKey() : defaultPk);
+        Condition where = RouteKeys.whereOf(st);
+        if (pk == null && where != null && !where.isEquality() && !where.isCompound() && schema != null
+                && schema.partitioner().isRange() && where.getColumn().equalsIgnoreCase(schema.getPrimaryKey())) {
+            return new QueryPlan(id, sql, st, isSelect ? Route.RANGE_READ : Route.RANGE_WRITE, null, where, schema);
+        }
+        Route route;
+        if (pk != null) route = isSelect ? Route.POINT_READ : Route.POINT_WRITE;
+        else route = isSelect ? Route.BROADCAST_READ : Route.BROADCAST_WRITE;
+        return new QueryPlan(id, sql, st, route, pk, schema);
+    }
+
+    /** 表目录中的定义是否已与生成计划时不同（表被重建、主键变化等） */
+    boolean isStale(SchemaCatalog catalog) {
+        return catalog.get(statement.getTable()) != schema;
+    }
+
+    /** 按当前表目录重建计划，保留语句ID */
+    QueryPlan rebuild(SchemaCatalog catalog, String defaultPk) {
+        return build(id, sql, statement, catalog, defaultPk);
+    }
+
+    /** 本次执行的主键值 */
+    String pkValue(List<String> params) {
+        return pk.resolve(params);
+    }
+
+    /** 表的分区方式（未登记的表按哈希分区） */
+    Partitioning partitioning() {
+        return schema != null ? schema.partitioner() : Partitioning.HASH;
+    }
+
+    /** 本次执行的主键范围覆盖的槽 [first, last] */
+    int[] slotSpan(List<String> params) {
+        String v = range.getValue().resolve(params);
+        switch (range.getOp()) {
+            case LT:
+            case LE:
+                return partitioning().slotSpan(null, v);
+            case GT:
+            case GE:
+                return partitioning().slotSpan(v, null);
+            default:
+                return partitioning().slotSpan(v, range.getHigh().resolve(params));
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package master;
+
+import minisql.QueryResult;
+import minisql.parser.SqlParser;
+import org.apache.curator.framework.CuratorFramework;
+import util.SlotTable;
+import util.Slots;
+import util.TableSchema;
+import util.ThreadUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * 在线数据重平衡（由 Master 驱动）：
+ *  - 槽的目标归属由一致性哈希环决定，当前归属保存在 ZooKeeper /slots
+ *  - region 加入/离开后，逐个迁移归属变化的槽：从旧 owner 分批读取、写入新 owner，
+ *    批次之间暂停 pauseMs 限速，迁移进度写入 /migration
+ *  - 迁移期间该槽的写请求同时发往新旧 owner（双写），读请求仍由旧 owner 提供；
+ *    每个复制批次持有写闸门的写锁，与前台写请求互斥，保证不丢更新
+ *  - 槽复制完成后在写锁内原子切换归属，随后清理旧 owner 上的副本
+ *  - 发布迁移状态与切换归属后各等待 settleMs，让 region 与智能客户端的 /slots 缓存跟上，
+ *    期间直连到 region 的写请求会被拒绝（MOVED）并改走 Master
+ *  - owner 已下线的槽提升第一个已同步的在线从副本为 owner（主副本尚未复制出去的写入丢失），
+ *    没有从副本时直接改派给目标 region（该槽数据丢失）
+ *  - 复制因子 R > 1 时每个槽在 owner（主副本）之外还有 R-1 个从副本，放在哈希环上该槽顺时针方向
+ *    owner 之外的前 R-1 个 region（见 replicaTargets）。新的从副本先清掉该槽的旧数据（重新加入的 region
+ *    下线期间错过了复制），再标记为同步中，开始接收主副本复制的写入，然后从 owner 分批全量复制，完成后才提供读取；不再需要的从副本先从 /slots 中去掉，再清理数据
+ *  - 切换归属、清理从副本前让相关 region 把复制队列中的写入发完（REPLICATE FLUSH），
+ *    避免迟到的复制写入覆盖新 owner 上更新的值
+ */
+public class Rebalancer {
+    private final CuratorFramework zk;
+    private final Supplier<Set<String>> liveRegions;
+    private final Supplier<ConsistentHashRing> ring;
+    // (region, sql) → 结果
+    private final BiFunction<String, String, QueryResult> rpc;
+    private final int batchRows;
+    private final long pauseMs;
+    private final long settleMs;
+    // 每个槽的副本数（含主副本），1 为不复制
+    private final int replicationFactor;
+
+    private volatile SlotTable slots = SlotTable.empty();
+    // 写闸门：前台写请求持读锁，迁移复制批次与归属切换持写锁
+    private final ReentrantReadWriteLock writeGate = new ReentrantReadWriteLock();
+    private final ExecutorService worker =
+            Executors.newSingleThreadExecutor(ThreadUtils.daemonFactory("rebalancer"));
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // 每次成员变化递增，进行中的重平衡发现变化后提前结束，由下一轮按新成员继续
+    private final AtomicLong generation = new AtomicLong();
+
+    public Rebalancer(CuratorFramework zk, Supplier<Set<String>> liveRegions,
+                      Supplier<ConsistentHashRing> ring, BiFunction<String, String, QueryResult> rpc,
+                      int batchRows, long pauseMs, long settleMs, int replicationFactor) {
+        this.zk          = zk;
+        this.liveRegions = liveRegions;
+        this.ring        = ring;
+        this.rpc         = rpc;
+        this.batchRows   = batchRows;
+        this.pauseMs     = pauseMs;
+        this.settleMs    = settleMs;
+        this.replicationFactor = Math.max(1, replicationFactor);
+    }
+
+    /** 槽在哈希环上的目标 region */
+    public static String targetOf(ConsistentHashRing ring, int slot) {
+        return ring.route("slot#" + slot);
+    }
+
+    /**
+     * 槽的目标从副本：哈希环上该槽顺时针方向 owner 之外的前 factor - 1 个 region。
+     * owner 为环上目标时，它离开后槽改派给的正是第一个从副本
+     */
+    public static List<String> replicaTargets(ConsistentHashRing ring, int slot, String owner, int factor) {
+        if (factor <= 1) return List.of();
+        List<String> regions = ring.routeN("slot#" + slot, factor);
+        regions.remove(owner);
+        return regions.size() < factor ? regions : regions.subList(0, factor - 1);
+    }
+
+    public int getReplicationFactor() {
+        return replicationFactor;
+    }
+
+    /** 当前槽归属快照 */
+    public SlotTable current() {
+        return slots;
+    }
+
+    /** 前台写请求进入/离开写闸门 */
+    public void enterWrite() { writeGate.readLock().lock(); }
+    public void exitWrite()  { writeGate.readLock().unlock(); }
+
+    /** 与所有写请求及迁移批次互斥的写操作（有从副本时的广播写）进入/离开写闸门 */
+    public void enterExclusiveWrite() { writeGate.writeLock().lock(); }
+    public void exitExclusiveWrite()  { writeGate.writeLock().unlock(); }
+
+    /** 从 ZooKeeper 读取已有的槽归属（Master 重启后继续使用） */
+    public void load() throws Exception {
+        if (zk.checkExists().forPath(SlotTable.ZK_PATH) != null) {
+            slots = SlotTable.decode(zk.getData().forPath(SlotTable.ZK_PATH));
+            System.out.println("[Rebalancer] Loaded slot table v" + slots.getVersion()
+                    + " " + slots.slotCounts());
+        }
+    }
+
+    /** 成员变化后触发一轮重平衡（合并连续触发） */
+    public void trigger() {
+        generation.incrementAndGet();
+        if (scheduled.compareAndSet(false, true)) {
+            worker.execute(() -> {
+                scheduled.set(false);
+                try {
+                    rebalance();
+                } catch (Exception e) {
+                    System.err.println("[Rebalancer] Pass failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void rebalance() throws Exception {
+        long gen = generation.get();
+        ConsistentHashRing r = ring.get();
+        Set<String> live = liveRegions.get();
+        if (r.isEmpty()) return;
+
+        // 上一任 Master 遗留的未完成迁移：归属未切换，直接放弃
+        if (slots.getMigratingSlot() >= 0) {
+            publish(slots.abortMigration());
+        }
+
+        // 1) 未分配或 owner 已下线的槽：有已同步的在线从副本时提升为 owner，否则直接改派
+        Map<Integer, String> direct = new HashMap<>();
+        int promoted = 0;
+        for (int slot = 0; slot < Slots.COUNT; slot++) {
+            String owner = slots.owner(slot);
+            if (owner != null && live.contains(owner)) continue;
+            String replica = null;
+            for (String rep : slots.readReplicas(slot)) {
+                if (live.contains(rep)) {
+                    replica = rep;
+                    break;
+                }
+            }
+            if (replica != null) promoted++;
+            direct.put(slot, replica != null ? replica : targetOf(r, slot));
+        }
+        if (!direct.isEmpty()) {
+            publish(slots.withOwners(direct));
+            System.out.println("[Rebalancer] Assigned " + direct.size() + " unowned slots ("
+                    + promoted + " promoted from replicas)");
+        }
+
+        // 2) 逐槽迁移归属发生变化的数据
+        int moved = 0;
+        for (int slot = 0; slot < Slots.COUNT; slot++) {
+            if (generation.get() != gen) {
+                System.out.println("[Rebalancer] Membership changed, restarting pass");
+                trigger();
+                return;
+            }
+            String owner = slots.owner(slot);
+            String target = targetOf(r, slot);
+            if (owner.equals(target)) continue;
+            if (migrateSlot(slot, owner, target)) moved++;
+        }
+
+        // 3) 按复制因子补齐、清理从副本
+        if (!syncReplicas(gen)) {
+            System.out.println("[Rebalancer] Membership changed, restarting pass");
+            trigger();
+            return;
+        }
+        writeProgress("idle");
+        if (moved > 0) {
+            System.out.println("[Rebalancer] Pass done, moved " + moved + " slots, owners="
+                    + slots.slotCounts());
+        }
+    }
+
+    /** 迁移一个槽，成功返回 true；失败时放弃迁移并清理目标上的部分副本 */
+    private boolean migrateSlot(int slot, String from, String to) throws Exception {
+        writeGate.writeLock().lock();
+        try {
+            publish(slots.withMigration(slot, to));
+        } finally {
+            writeGate.writeLock().unlock();
+        }
+        Thread.sleep(settleMs);
+
+        List<String> tables = new ArrayList<>();
+        try {
+            // 目标已是同步完成的从副本时数据已在目标上，不必复制
+            if (slots.isReadReplica(slot, to)) tables.addAll(tablesOf(from));
+            else copySlot(slot, from, to, tables, "");
+        } catch (Exception e) {
+            System.err.println("[Rebalancer] Slot " + slot + " " + from + "->" + to
+                    + " aborted: " + e.getMessage());
+            writeGate.writeLock().lock();
+            try {
+                publish(slots.abortMigration());
+            } finally {
+                writeGate.writeLock().unlock();
+            }
+            // 目标是该槽的从副本时保留它的数据
+            if (!slots.replicas(slot).contains(to)) {
+                for (String table : tables) rpc.apply(to, "SLOT DELETE " + table + " " + slot);
+            }
+            return false;
+        }
+
+        // 原子切换归属，之后读写都只发往新 owner；切换前旧 owner 把已复制出去的写入发完
+        writeGate.writeLock().lock();
+        try {
+            if (!slots.replicas(slot).isEmpty()) flushReplication(List.of(from));
+            publish(slots.completeMigration());
+        } finally {
+            writeGate.writeLock().unlock();
+        }
+        Thread.sleep(Math.max(settleMs, pauseMs));
+        for (String table : tables) rpc.apply(from, "SLOT DELETE " + table + " " + slot);
+        return true;
+    }
+
+    /**
+     * 从 from 分批复制一个槽的全部行到 to（to 缺少的表按源表定义补建），复制的表名加入 tables。
+     * 每个批次持有写闸门的写锁，与前台写请求互斥；进度写入 /migration，kind 为进度前缀
+     */
+    private void copySlot(int slot, String from, String to, List<String> tables, String kind) throws Exception {
+        long copied = 0;
+        tables.addAll(tablesOf(from));
+
+        for (String table : tables) {
+            String schema = call(from, "SLOT SCHEMA " + table).getMessage();
+            // 新加入的 region 可能缺少该表，按源表定义补建（已存在时忽略）
+            rpc.apply(to, schema);
+            TableSchema def = TableSchema.parseCreate(schema);
+            if (def == null) throw new IllegalStateException("Bad schema: " + schema);
+            String pk = def.getPrimaryKey();
+
+            String after = null;
+            while (true) {
+                List<Map<String, String>> rows;
+                writeGate.writeLock().lock();
+                try {
+                    rows = call(from, scanCommand(table, slot, after, batchRows)).getRows();
+                    // 整批一条多行 INSERT；双写或复制可能已先写入目标，重复主键的行被跳过，视为已复制。
+                    // 经复制命令写入：目标是迁移目标时不再把这些行复制给从副本（从副本已有）
+                    if (!rows.isEmpty()) {
+                        String insert = insertStatement(table, rows, def);
+                        rpc.apply(to, "REPLICATE FROM " + from + " " + insert.length() + ":" + insert);
+                    }
+                } finally {
+                    writeGate.writeLock().unlock();
+                }
+                copied += rows.size();
+                writeProgress(kind + String.format("slot=%d from=%s to=%s table=%s copied=%d",
+                        slot, from, to, table, copied));
+                if (rows.size() < batchRows) break;
+                after = rows.get(rows.size() - 1).get(pk);
+                Thread.sleep(pauseMs);
+            }
+        }
+    }
+
+    /**
+     * 按复制因子补齐、清理各槽的从副本：先去掉多余与已下线的从副本并清理其数据，
+     * 再逐个同步缺少的从副本。期间成员变化时提前结束并返回 false
+     */
+    private boolean syncReplicas(long gen) throws Exception {
+        ConsistentHashRing r = ring.get();
+        Set<String> live = liveRegions.get();
+        Map<Integer, List<String>> changes = new HashMap<>();
+        Map<String, List<Integer>> dropped = new TreeMap<>();
+        for (int slot = 0; slot < Slots.COUNT; slot++) {
+            String owner = slots.owner(slot);
+            List<String> have = slots.replicas(slot);
+            List<String> keep = new ArrayList<>(have);
+            keep.retainAll(replicaTargets(r, slot, owner, replicationFactor));
+            if (keep.size() == have.size()) continue;
+            changes.put(slot, keep);
+            for (String rep : have) {
+                if (!keep.contains(rep) && live.contains(rep)) dropped.computeIfAbsent(rep, x -> new ArrayList<>()).add(slot);
+            }
+        }
+        if (!changes.isEmpty()) {
+            publish(slots.withReplicas(changes));
+            Thread.sleep(settleMs);
+            // 主副本队列中发往被去掉的从副本的写入发完后再清理，避免清理后又被写入
+            flushReplication(live);
+            for (Map.Entry<String, List<Integer>> e : dropped.entrySet()) {
+                for (String table : tablesOf(e.getKey())) {
+                    for (int slot : e.getValue()) rpc.apply(e.getKey(), "SLOT DELETE " + table + " " + slot);
+                }
+            }
+            System.out.println("[Rebalancer] Dropped replicas of " + changes.size() + " slots");
+        }
+
+        // 缺少（或上一轮未同步完）的从副本一起标记为同步中，等各 owner 看到后逐槽全量复制，
+        // 此后的写入都会复制过去
+        Map<Integer, List<String>> additions = new TreeMap<>();
+        for (int slot = 0; slot < Slots.COUNT; slot++) {
+            List<String> missing = new ArrayList<>(replicaTargets(r, slot, slots.owner(slot), replicationFactor));
+            missing.removeAll(slots.readReplicas(slot));
+            if (!missing.isEmpty()) additions.put(slot, missing);
+        }
+        if (additions.isEmpty()) return true;
+        // 重新加入的 region 可能还留着下线前该槽的数据，期间的写入没有复制过去；全量复制时主键重复的行被跳过，
+        // 旧值与已删除的行会留下。标记为同步中（开始接收复制）之前先清掉
+        Map<String, List<String>> tablesByRegion = new HashMap<>();
+        int cleared = 0;
+        for (Map.Entry<Integer, List<String>> e : additions.entrySet()) {
+            for (Iterator<String> it = e.getValue().iterator(); it.hasNext(); ) {
+                String to = it.next();
+                if (slots.replicas(e.getKey()).contains(to)) continue;
+                try {
+                    for (String table : tablesByRegion.computeIfAbsent(to, this::tablesOf)) {
+                        call(to, "SLOT DELETE " + table + " " + e.getKey());
+                    }
+                    cleared++;
+                } catch (IllegalStateException ex) {
+                    // 清不掉旧数据的 region 本轮不作为从副本，下一轮再试
+                    System.err.println("[Rebalancer] Replica of slot " + e.getKey() + " on " + to + " skipped: "
+                            + ex.getMessage());
+                    it.remove();
+                }
+            }
+        }
+        additions.values().removeIf(List::isEmpty);
+        if (additions.isEmpty()) return true;
+        if (cleared > 0) System.out.println("[Rebalancer] Cleared stale data of " + cleared + " new replicas");
+        writeGate.writeLock().lock();
+        try {
+            publish(slots.withSyncingReplicas(additions));
+        } finally {
+            writeGate.writeLock().unlock();
+        }
+        Thread.sleep(settleMs);
+        int added = 0;
+        for (Map.Entry<Integer, List<String>> e : additions.entrySet()) {
+            if (generation.get() != gen) return false;
+            for (String to : e.getValue()) if (addReplica(e.getKey(), slots.owner(e.getKey()), to)) added++;
+        }
+        System.out.println("[Rebalancer] Synced " + added + " replicas, replicas=" + slots.replicaCounts());
+        return true;
+    }
+
+    /** 从 owner 全量复制一个同步中的从副本，完成后开始提供读取；失败时去掉并清理 */
+    private boolean addReplica(int slot, String owner, String to) throws Exception {
+        List<String> tables = new ArrayList<>();
+        try {
+            copySlot(slot, owner, to, tables, "replica ");
+        } catch (Exception e) {
+            System.err.println("[Rebalancer] Replica of slot " + slot + " on " + to + " failed: " + e.getMessage());
+            List<String> rest = slots.replicas(slot);
+            rest.remove(to);
+            publish(slots.withReplicas(Map.of(slot, rest)));
+            for (String table : tables) rpc.apply(to, "SLOT DELETE " + table + " " + slot);
+            return false;
+        }
+        publish(slots.replicaReady(slot, to));
+        return true;
+    }
+
+    /** 等待各 region 把复制队列中已有的写入发给从副本（失败只记录） */
+    private void flushReplication(Collection<String> regions) {
+        for (String region : regions) {
+            QueryResult r = rpc.apply(region, "REPLICATE FLUSH");
+            if (r.isError()) System.err.println("[Rebalancer] Replication flush on " + region + ": " + r.getMessage());
+        }
+    }
+
+    /** region 上的全部表名 */
+    private List<String> tablesOf(String region) {
+        List<String> tables = new ArrayList<>();
+        for (String t : call(region, "SLOT TABLES").getMessage().split(",")) if (!t.isBlank()) tables.add(t);
+        return tables;
+    }
+
+    private QueryResult call(String region, String sql) {
+        QueryResult r = rpc.apply(region, sql);
+        if (r.isError()) throw new IllegalStateException(region + ": " + r.getMessage());
+        return r;
+    }
+
+    /** 更新内存中的槽归属并持久化到 ZooKeeper */
+    private void publish(SlotTable t) throws Exception {
+        if (zk.checkExists().forPath(SlotTable.ZK_PATH) == null) {
+            zk.create().creatingParentsIfNeeded().forPath(SlotTable.ZK_PATH, t.encode());
+        } else {
+            zk.setData().forPath(SlotTable.ZK_PATH, t.encode());
+        }
+        slots = t;
+    }
+
+    private void writeProgress(String progress) throws Exception {
+        byte[] data = progress.getBytes(StandardCharsets.UTF_8);
+        if (zk.checkExists().forPath(SlotTable.ZK_MIGRATION_PATH) == null) {
+            zk.create().creatingParentsIfNeeded().forPath(SlotTable.ZK_MIGRATION_PATH, data);
+        } else {
+            zk.setData().forPath(SlotTable.ZK_MIGRATION_PATH, data);
+        }
+    }
+
+    /** 按槽分批读取的命令，after 为上一批最后的主键（null 表示从头），按 长度:主键 传递以保留空格等字符 */
+    static String scanCommand(String table, int slot, String after, int n) {
+        String cmd = "SLOT SCAN " + table + " " + slot + " " + n;
+        return after == null ? cmd : cmd + " " + after.length() + ":" + after;
+    }
+
+    /** 由一批行（列相同）生成多行 INSERT 语句，TEXT 值加单引号（内部单引号写成 ''） */
+    static String insertStatement(String table, List<Map<String, String>> rows, TableSchema def) {
+        StringJoiner cols = new StringJoiner(", ");
+        for (String c : rows.get(0).keySet()) cols.add(c);
+        StringJoiner values = new StringJoiner(", ");
+        for (Map<String, String> row : rows) {
+            StringJoiner vals = new StringJoiner(", ", "(", ")");
+            for (Map.Entry<String, String> e : row.entrySet()) {
+                vals.add("INT".equals(def.columnType(e.getKey())) ? e.getValue() : SqlParser.quote(e.getValue()));
+            }
+            values.add(vals.toString());
+        }
+        return "INSERT INTO " + table + " (" + cols + ") VALUES " + values;
+    }
+}
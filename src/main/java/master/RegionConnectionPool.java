@@ -0,0 +1,237 @@
+package master;
+
+import util.TextProtocol;
+import util.ThreadUtils;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Master → RegionServer 的长连接池：
+ *  - 每个 region 地址维护一组空闲连接，请求之间复用，省去每条语句的 TCP 握手/挥手
+ *  - 连接建立后发送 KEEPALIVE 握手，RegionServer 进入多语句模式，
+ *    每个响应以 "#行数" 开头，随后是对应行数的结果
+ *  - 空闲超过 healthCheckMs 的连接在借出前先 PING 检查
+ *  - 后台线程定期关闭空闲超过 idleTimeoutMs 的连接
+ */
+public class RegionConnectionPool {
+    private final int maxIdlePerRegion;
+    private final long idleTimeoutMs;
+    private final long healthCheckMs;
+    private final int connectTimeoutMs;
+    // "host:port" → 空闲连接（栈式复用，最近归还的最先借出）
+    private final Map<String, Deque<Connection>> idle = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor =
+            Executors.newSingleThreadScheduledExecutor(ThreadUtils.daemonFactory("pool-evictor"));
+
+    public RegionConnectionPool(int maxIdlePerRegion, long idleTimeoutMs,
+                                long healthCheckMs, int connectTimeoutMs) {
+        this.maxIdlePerRegion = maxIdlePerRegion;
+        this.idleTimeoutMs    = idleTimeoutMs;
+        this.healthCheckMs    = healthCheckMs;
+        this.connectTimeoutMs = connectTimeoutMs;
+        long period = Math.max(1000, idleTimeoutMs / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** 按系统属性创建连接池 */
+    public static RegionConnectionPool fromSystemProperties() {
+        return new RegionConnectionPool(
+                Integer.getInteger("master.pool.maxIdle", 32),
+                Long.getLong("master.pool.idleTimeoutMs", 60_000L),
+                Long.getLong("master.pool.healthCheckMs", 5_000L),
+                Integer.getInteger("master.pool.connectTimeoutMs", 3_000));
+    }
+
+    /**
+     * 在指定 region 上执行一条 SQL，返回所有结果行。
+     * 复用的连接在读到响应前被对端关闭（读到 EOF）时，请求可能已被执行，
+     * 只有只读语句换新连接重试一次，写语句直接失败，避免重复执行。
+     */
+    public List<String> execute(String addr, String sql) throws IOException {
+        Connection conn = borrow(addr);
+        try {
+            List<String> lines = conn.request(sql);
+            release(conn);
+            return lines;
+        } catch (StaleConnectionException e) {
+            conn.close();
+            if (!isReadOnly(sql)) {
+                throw new IOException(e.getMessage() + " before reply, statement may have been applied");
+            }
+            Connection fresh = connect(addr);
+            try {
+                List<String> lines = fresh.request(sql);
+                release(fresh);
+                return lines;
+            } catch (IOException ex) {
+                fresh.close();
+                throw ex;
+            }
+        } catch (IOException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    /** 重复执行无副作用、可以安全重试的语句 */
+    static boolean isReadOnly(String sql) {
+        String s = sql.trim();
+        for (String prefix : new String[]{"SELECT ", "SLOT SCAN ", "SLOT SCHEMA ", "SLOT TABLES", TextProtocol.PING}) {
+            if (s.regionMatches(true, 0, prefix, 0, prefix.length())) return true;
+        }
+        return false;
+    }
+
+    /** 关闭不在给定地址集合中的所有空闲连接（region 下线时调用） */
+    public void retain(Collection<String> liveAddrs) {
+        Set<String> live = new HashSet<>(liveAddrs);
+        for (Iterator<Map.Entry<String, Deque<Connection>>> it = idle.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Deque<Connection>> e = it.next();
+            if (!live.contains(e.getKey())) {
+                it.remove();
+                closeAll(e.getValue());
+            }
+        }
+    }
+
+    /** 当前空闲连接总数 */
+    public int idleCount() {
+        int n = 0;
+        for (Deque<Connection> q : idle.values()) n += q.size();
+        return n;
+    }
+
+    public void close() {
+        evictor.shutdownNow();
+        for (Deque<Connection> q : idle.values()) closeAll(q);
+        idle.clear();
+    }
+
+    private Connection borrow(String addr) throws IOException {
+        Deque<Connection> q = idle.get(addr);
+        if (q != null) {
+            Connection c;
+            while ((c = q.pollFirst()) != null) {
+                if (System.currentTimeMillis() - c.lastUsed < healthCheckMs || c.ping()) {
+                    return c;
+                }
+                c.close();
+            }
+        }
+        return connect(addr);
+    }
+
+    private void release(Connection conn) {
+        conn.lastUsed = System.currentTimeMillis();
+        Deque<Connection> q = idle.computeIfAbsent(conn.addr, k -> new ConcurrentLinkedDeque<>());
+        if (q.size() < maxIdlePerRegion) {
+            q.offerFirst(conn);
+        } else {
+            conn.close();
+        }
+    }
+
+    private Connection connect(String addr) throws IOException {
+        String[] hp = addr.split(":");
+        Socket s = new Socket();
+        try {
+            s.connect(new InetSocketAddress(hp[0], Integer.parseInt(hp[1])), connectTimeoutMs);
+            s.setTcpNoDelay(true);
+            s.setKeepAlive(true);
+            Connection c = new Connection(addr, s);
+            c.out.write(TextProtocol.KEEPALIVE);
+            c.out.write('\n');
+            return c;
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Deque<Connection> q : idle.values()) {
+            for (Connection c : q) {
+                if (now - c.lastUsed > idleTimeoutMs && q.remove(c)) {
+                    c.close();
+                }
+            }
+        }
+    }
+
+    private static void closeAll(Deque<Connection> q) {
+        Connection c;
+        while ((c = q.pollFirst()) != null) c.close();
+    }
+
+    /** 复用连接在读到第一行前即被对端关闭 */
+    private static class StaleConnectionException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        StaleConnectionException(String addr) {
+            super("Connection closed by " + addr);
+        }
+    }
+
+    /** 一条到 RegionServer 的长连接（同一时刻只被一个请求持有） */
+    private static class Connection {
+        final String addr;
+        final Socket socket;
+        final BufferedReader in;
+        final Writer out;
+        volatile long lastUsed = System.currentTimeMillis();
+        // 已完成过至少一次请求，EOF 时视为陈旧连接
+        boolean used;
+
+        Connection(String addr, Socket socket) throws IOException {
+            this.addr   = addr;
+            this.socket = socket;
+            this.in  = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        List<String> request(String sql) throws IOException {
+            out.write(sql);
+            out.write('\n');
+            out.flush();
+            String header = in.readLine();
+            if (header == null) {
+                if (used) throw new StaleConnectionException(addr);
+                throw new EOFException("Connection closed by " + addr);
+            }
+            if (!header.startsWith("#")) {
+                throw new IOException("Protocol error from " + addr + ": " + header);
+            }
+            int n = Integer.parseInt(header.substring(1));
+            List<String> lines = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                String line = in.readLine();
+                if (line == null) throw new EOFException("Truncated response from " + addr);
+                lines.add(line);
+            }
+            used = true;
+            return lines;
+        }
+
+        boolean ping() {
+            try {
+                List<String> r = request(TextProtocol.PING);
+                return r.size() == 1 && TextProtocol.PONG.equals(r.get(0));
+            } catch (IOException | NumberFormatException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package master;
+
+import minisql.Column;
+import minisql.QueryResult;
+import minisql.ResultCursor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 二进制客户端在 Master 上的游标（OPEN）：查询在后台线程上执行，结果（流式读取时为各 region 的批）
+ * 经容量很小的队列交给客户端的 FETCH。客户端不取时生产者阻塞在队列上，流式读取随之暂停向 region 取数；
+ * 含结果行的批逐批返回，各 region 的提示与错误在最后一批按 MasterNode.merge 的规则合并
+ */
+final class RelayCursor implements ResultCursor {
+    // 生产者最多领先客户端的批数
+    private static final int QUEUE_BATCHES = 2;
+    private static final MasterNode.Reply END = new MasterNode.Reply(null, null);
+
+    private final BlockingQueue<MasterNode.Reply> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+    private final List<MasterNode.Reply> messages = new ArrayList<>();
+    private List<Column> columns;
+    private volatile boolean closed;
+    private boolean done;
+
+    /** query 把结果交给传入的 sink，在 executor 上执行 */
+    RelayCursor(Consumer<Consumer<MasterNode.Reply>> query, Executor executor) {
+        executor.execute(() -> {
+            try {
+                try {
+                    query.accept(this::put);
+                } catch (CancellationException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    put(new MasterNode.Reply(null, QueryResult.error(String.valueOf(e.getMessage()))));
+                }
+                put(END);
+            } catch (CancellationException e) {
+                // 游标已关闭，查询中止
+            }
+        });
+    }
+
+    /** 放入一批，队列满时等待客户端取走；游标已关闭时以 CancellationException 中止查询 */
+    private void put(MasterNode.Reply r) {
+        try {
+            while (!queue.offer(r, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) throw new CancellationException();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    @Override
+    public QueryResult next(int batchRows) {
+        while (!done) {
+            MasterNode.Reply r;
+            try {
+                r = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+            if (r == END) {
+                done = true;
+                break;
+            }
+            if (r.result.hasRows()) {
+                if (columns == null) columns = r.result.getColumns();
+                return r.result;
+            }
+            messages.add(r);
+        }
+        if (columns == null) return messages.isEmpty() ? QueryResult.message("Empty result.") : MasterNode.merge(messages);
+        // 已返回过结果行：最后一批只带提示，有错误时以错误结束
+        QueryResult merged = messages.isEmpty() ? null : MasterNode.merge(messages);
+        if (messages.stream().anyMatch(m -> m.result.isError())) {
+            return QueryResult.error(merged.getMessage());
+        }
+        return QueryResult.rows(columns, List.of(), merged == null ? "" : merged.getMessage());
+    }
+
+    @Override
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+    }
+}
@@ -0,0 +1,81 @@
+package master;
+
+import minisql.QueryResult;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 并行广播：同时向所有 region 发出请求，按到达顺序回调结果。
+ *  - 每个 region 独立超时，超时或连接失败记为该 region 的错误结果，不影响其他 region
+ *  - 回调在调用线程上串行执行，调用方可直接写输出流
+ *  - 广播总耗时约等于最慢 region 的耗时（上限为 timeoutMs），而非各 region 之和
+ */
+public class ScatterGather {
+
+    /** 一次广播的统计 */
+    public static class Summary {
+        public final int total;
+        public final int failed;
+        public final long elapsedMs;
+
+        Summary(int total, int failed, long elapsedMs) {
+            this.total     = total;
+            this.failed    = failed;
+            this.elapsedMs = elapsedMs;
+        }
+
+        /** 有 region 失败时的说明行，全部成功返回 null */
+        public String partialFailureNote() {
+            if (failed == 0) return null;
+            return String.format("Partial failure: %d/%d regions failed (%d ms)", failed, total, elapsedMs);
+        }
+    }
+
+    /**
+     * 向 regions 并行发送请求
+     * @param sender   region → 异步结果
+     * @param onReply  每个 region 完成时回调（到达顺序）
+     */
+    public static Summary broadcast(List<String> regions,
+                                    Function<String, CompletableFuture<QueryResult>> sender,
+                                    long timeoutMs,
+                                    BiConsumer<String, QueryResult> onReply) {
+        long t0 = System.nanoTime();
+        BlockingQueue<Object[]> arrivals = new LinkedBlockingQueue<>();
+        for (String region : regions) {
+            CompletableFuture<QueryResult> f;
+            try {
+                f = sender.apply(region);
+            } catch (RuntimeException e) {
+                f = CompletableFuture.failedFuture(e);
+            }
+            f.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((r, e) ->
+                    arrivals.add(new Object[]{region, e == null ? r : QueryResult.error(describe(e, timeoutMs))}));
+        }
+
+        int failed = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            Object[] a;
+            try {
+                a = arrivals.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed += regions.size() - i;
+                break;
+            }
+            QueryResult r = (QueryResult) a[1];
+            if (r.isError()) failed++;
+            onReply.accept((String) a[0], r);
+        }
+        return new Summary(regions.size(), failed, (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    static String describe(Throwable e, long timeoutMs) {
+        Throwable c = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (c instanceof TimeoutException) return "timeout after " + timeoutMs + "ms";
+        return String.valueOf(c.getMessage());
+    }
+}
@@ -0,0 +1,267 @@
+package minisql;
+
+import minisql.parser.SelectItem;
+import minisql.parser.SelectItem.Function;
+import minisql.parser.SelectStatement;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * 聚合计算（COUNT/SUM/AVG/MIN/MAX 与 GROUP BY）：
+ *  - 明细模式：region（或单机执行器）对本地的行逐行累加
+ *  - 合并模式：Master 合并各 region 的部分聚合，输入为各 region 每个分组一行的结果；
+ *    region 执行的是 partialItems 改写后的普通聚合查询（AVG 拆成 SUM 与 COUNT），网络上只传每个分组一行
+ * 结果按分组列排序（INT 按数值）。COUNT 为 INT，SUM 与 AVG 为 TEXT（SUM 可能超出 INT 范围，AVG 为小数），
+ * MIN/MAX 与原列同类型；没有输入行时 SUM/AVG/MIN/MAX 为 null，没有 GROUP BY 时总是返回一行
+ */
+public final class Aggregation {
+    // AVG 结果保留的小数位数（去掉末尾的 0）
+    private static final int AVG_SCALE = 4;
+
+    private final List<SelectItem> items;
+    private final boolean merge;
+    // 输入列名 → 列定义（明细模式为表的列，合并模式为 region 结果的列）
+    private final Map<String, Column> input = new HashMap<>();
+    private final List<Column> groupColumns = new ArrayList<>();
+    private final List<Column> outputColumns = new ArrayList<>();
+    // 分组值 → 各项的累加器
+    private final TreeMap<List<String>, Acc[]> groups;
+
+    /**
+     * @param columns 输入行的列定义
+     * @param merge   true 时输入为 partialItems 的结果（合并模式）
+     * @throws IllegalArgumentException 列不存在或 SUM/AVG 用于非 INT 列
+     */
+    public Aggregation(List<SelectItem> items, List<String> groupBy, List<Column> columns, boolean merge) {
+        this.items = List.copyOf(items);
+        this.merge = merge;
+        for (Column c : columns) input.put(c.getName(), c);
+        for (String g : groupBy) groupColumns.add(column(g));
+        for (SelectItem item : items) {
+            if (!item.isAggregate()) {
+                outputColumns.add(column(item.getColumn()));
+                continue;
+            }
+            if (item.getColumn() != null) {
+                Column source = column(merge ? sourceLabel(item) : item.getColumn());
+                boolean numeric = item.getFunction() == Function.SUM || item.getFunction() == Function.AVG;
+                if (numeric && !merge && !source.isInt()) {
+                    throw new IllegalArgumentException(item.getFunction() + " requires an INT column: " + item.getColumn());
+                }
+            }
+            switch (item.getFunction()) {
+                case COUNT:
+                    outputColumns.add(new Column(item.label(), "INT"));
+                    break;
+                case SUM:
+                case AVG:
+                    outputColumns.add(new Column(item.label(), "TEXT"));
+                    break;
+                default:
+                    outputColumns.add(new Column(item.label(), column(merge ? item.label() : item.getColumn()).getType()));
+            }
+        }
+        this.groups = new TreeMap<>(this::compareKeys);
+        if (groupBy.isEmpty()) groups.put(List.of(), newAccs());
+    }
+
+    /**
+     * region 上执行的部分聚合项：COUNT/SUM/MIN/MAX 原样，AVG(x) 拆成 SUM(x) 与 COUNT(x)，去重；
+     * 这些函数对各 region 结果的合并与对全部行的计算结果相同
+     */
+    public static List<SelectItem> partialItems(List<SelectItem> items) {
+        Set<SelectItem> partial = new LinkedHashSet<>();
+        for (SelectItem item : items) {
+            if (!item.isAggregate()) continue;
+            if (item.getFunction() == Function.AVG) {
+                partial.add(SelectItem.aggregate(Function.SUM, item.getColumn()));
+                partial.add(SelectItem.aggregate(Function.COUNT, item.getColumn()));
+            } else {
+                partial.add(item);
+            }
+        }
+        return new ArrayList<>(partial);
+    }
+
+    /**
+     * 发往 region 的部分聚合 SQL：分组列 + partialItems，保留 WHERE（参数代入为字面量）与 GROUP BY
+     *  SELECT dept, AVG(age) FROM users GROUP BY dept → SELECT dept, SUM(age), COUNT(age) FROM users GROUP BY dept
+     */
+    public static String partialSql(SelectStatement st, List<String> params) {
+        List<String> select = new ArrayList<>(st.getGroupBy());
+        for (SelectItem item : partialItems(st.getItems())) select.add(item.label());
+        StringBuilder sb = new StringBuilder("SELECT ").append(String.join(", ", select))
+                .append(" FROM ").append(st.getTable());
+        if (st.getWhere() != null) sb.append(" WHERE ").append(st.getWhere().toSql(params));
+        if (!st.getGroupBy().isEmpty()) sb.append(" GROUP BY ").append(String.join(", ", st.getGroupBy()));
+        return sb.toString();
+    }
+
+    /** 累加一行（合并模式下为一个 region 的一个分组） */
+    public void add(Map<String, String> row) {
+        List<String> key = new ArrayList<>(groupColumns.size());
+        for (Column g : groupColumns) key.add(row.get(g.getName()));
+        Acc[] accs = groups.computeIfAbsent(key, k -> newAccs());
+        for (int i = 0; i < items.size(); i++) {
+            SelectItem item = items.get(i);
+            if (item.isAggregate()) {
+                if (merge) accs[i].merge(item, row);
+                else accs[i].add(item, item.getColumn() == null ? null : row.get(item.getColumn()));
+            }
+        }
+    }
+
+    public void addAll(List<Map<String, String>> rows) {
+        for (Map<String, String> row : rows) add(row);
+    }
+
+    public List<Column> getColumns() {
+        return Collections.unmodifiableList(outputColumns);
+    }
+
+    /** 每个分组一行，列序与 SELECT 列表一致 */
+    public List<Map<String, String>> rows() {
+        List<Map<String, String>> out = new ArrayList<>(groups.size());
+        for (Map.Entry<List<String>, Acc[]> g : groups.entrySet()) {
+            Map<String, String> row = new LinkedHashMap<>();
+            for (int i = 0; i < items.size(); i++) {
+                SelectItem item = items.get(i);
+                String label = item.label();
+                if (!item.isAggregate()) {
+                    row.put(label, g.getKey().get(groupIndex(item.getColumn())));
+                } else {
+                    row.put(label, g.getValue()[i].result(item));
+                }
+            }
+            out.add(row);
+        }
+        return out;
+    }
+
+    public QueryResult result() {
+        return QueryResult.rows(getColumns(), rows(), "Empty result.");
+    }
+
+    private Column column(String name) {
+        Column c = input.get(name);
+        if (c == null) throw new IllegalArgumentException("Unknown column: " + name);
+        return c;
+    }
+
+    private int groupIndex(String name) {
+        for (int i = 0; i < groupColumns.size(); i++) {
+            if (groupColumns.get(i).getName().equals(name)) return i;
+        }
+        throw new IllegalArgumentException("Column " + name + " must appear in GROUP BY");
+    }
+
+    /** 合并模式下 MIN/MAX/SUM/COUNT 取同名部分结果列，AVG 取 SUM 列（类型校验用） */
+    private static String sourceLabel(SelectItem item) {
+        return item.getFunction() == Function.AVG
+                ? SelectItem.aggregate(Function.SUM, item.getColumn()).label() : item.label();
+    }
+
+    private int compareKeys(List<String> a, List<String> b) {
+        for (int i = 0; i < groupColumns.size(); i++) {
+            int c = groupColumns.get(i).compareValues(a.get(i), b.get(i));
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    private Acc[] newAccs() {
+        Acc[] accs = new Acc[items.size()];
+        for (int i = 0; i < accs.length; i++) {
+            SelectItem item = items.get(i);
+            if (!item.isAggregate()) continue;
+            String source = item.getColumn() == null ? null : merge ? sourceLabel(item) : item.getColumn();
+            accs[i] = new Acc(source == null ? null : input.get(source));
+        }
+        return accs;
+    }
+
+    /** 一个分组中一个聚合项的累加状态 */
+    private static final class Acc {
+        // MIN/MAX 比较用的列定义
+        private final Column column;
+        private long count;
+        private long sum;
+        private boolean any;
+        private String min;
+        private String max;
+
+        Acc(Column column) {
+            this.column = column;
+        }
+
+        /** v 为 null（列值为空）时按 SQL 语义忽略，COUNT(*) 传入 item.getColumn() == null 总是计数 */
+        void add(SelectItem item, String v) {
+            if (v == null && item.getColumn() != null) return;
+            count++;
+            switch (item.getFunction()) {
+                case SUM:
+                case AVG:
+                    sum += Long.parseLong(v);
+                    any = true;
+                    break;
+                case MIN:
+                    if (min == null || column.compareValues(v, min) < 0) min = v;
+                    break;
+                case MAX:
+                    if (max == null || column.compareValues(v, max) > 0) max = v;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void merge(SelectItem item, Map<String, String> row) {
+            String v = row.get(item.label());
+            switch (item.getFunction()) {
+                case COUNT:
+                    count += Long.parseLong(v);
+                    break;
+                case SUM:
+                    if (v != null) {
+                        sum += Long.parseLong(v);
+                        any = true;
+                    }
+                    break;
+                case AVG: {
+                    String s = row.get(SelectItem.aggregate(Function.SUM, item.getColumn()).label());
+                    String c = row.get(SelectItem.aggregate(Function.COUNT, item.getColumn()).label());
+                    if (s != null) {
+                        sum += Long.parseLong(s);
+                        any = true;
+                    }
+                    count += Long.parseLong(c);
+                    break;
+                }
+                case MIN:
+                    if (v != null && (min == null || column.compareValues(v, min) < 0)) min = v;
+                    break;
+                default:
+                    if (v != null && (max == null || column.compareValues(v, max) > 0)) max = v;
+            }
+        }
+
+        String result(SelectItem item) {
+            switch (item.getFunction()) {
+                case COUNT:
+                    return String.valueOf(count);
+                case SUM:
+                    return any ? String.valueOf(sum) : null;
+                case AVG:
+                    if (!any || count == 0) return null;
+                    return BigDecimal.valueOf(sum).divide(BigDecimal.valueOf(count), AVG_SCALE, RoundingMode.HALF_UP)
+                            .stripTrailingZeros().toPlainString();
+                case MIN:
+                    return min;
+                default:
+                    return max;
+            }
+        }
+    }
+}
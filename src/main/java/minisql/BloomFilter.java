@@ -0,0 +1,70 @@
+package minisql;
+
+import util.Slots;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 布隆过滤器（SSTable 的主键过滤）：每个键约 10 位、7 个哈希位置（由 64 位哈希的高低两半双重哈希得到），
+ * 误判率约 1%。mightContain 为 false 时该文件一定不含此键，点查不必读盘
+ */
+final class BloomFilter {
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 7;
+
+    private final long[] words;
+    private final int hashes;
+
+    BloomFilter(int expectedKeys) {
+        this(new long[Math.max(1, (int) (((long) Math.max(1, expectedKeys) * BITS_PER_KEY + 63) / 64))], HASHES);
+    }
+
+    private BloomFilter(long[] words, int hashes) {
+        this.words  = words;
+        this.hashes = hashes;
+    }
+
+    void add(String key) {
+        long h = Slots.hash(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        long bits = (long) words.length * 64;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(String key) {
+        long h = Slots.hash(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        long bits = (long) words.length * 64;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /** 堆上占用的字节数 */
+    long sizeInBytes() {
+        return (long) words.length * 8;
+    }
+
+    /** 格式：[哈希个数 int][long 个数 int][long]* */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(hashes);
+        out.writeInt(words.length);
+        for (long w : words) out.writeLong(w);
+    }
+
+    static BloomFilter readFrom(ByteBuffer buf) {
+        int hashes = buf.getInt();
+        long[] words = new long[buf.getInt()];
+        for (int i = 0; i < words.length; i++) words[i] = buf.getLong();
+        return new BloomFilter(words, hashes);
+    }
+}
@@ -19,4 +19,35 @@ public class Column {
     public String getType() {
         return type;
     }
+
+    public boolean isInt() {
+        return "INT".equals(type);
+    }
+
+    /**
+     * 值的规范形式：INT 列为十进制整数（"007"、"+7" 均为 "7"），不是合法整数时返回 null；
+     * TEXT 列原样返回
+     */
+    public String canonical(String value) {
+        if (!isInt() || value == null) return value;
+        try {
+            return Integer.toString(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** 按列类型比较两个规范形式的值：INT 按数值（不必解析），TEXT 按字典序 */
+    public int compareValues(String a, String b) {
+        return isInt() ? compareInts(a, b) : a.compareTo(b);
+    }
+
+    /** 比较两个规范十进制整数：先比符号，再比位数，位数相同时按字典序 */
+    static int compareInts(String a, String b) {
+        boolean negA = a.startsWith("-");
+        boolean negB = b.startsWith("-");
+        if (negA != negB) return negA ? -1 : 1;
+        int c = a.length() != b.length() ? Integer.compare(a.length(), b.length()) : a.compareTo(b);
+        return negA ? -c : c;
+    }
 }
@@ -0,0 +1,691 @@
+package minisql;
+
+import util.Slots;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * 列式存储：行以行号寻址，每列一个原始类型数组，不再为每行保存列名与装箱的字符串
+ *  - INT 列：int[]（按数值存储，读出为规范的十进制文本）
+ *  - TEXT 列：UTF-8 字节紧凑排列在一个 byte[] 中，按行记录偏移与长度；
+ *    更新后变长的值追加写入，废弃字节超过一半时整理
+ *  - 主键索引：开放寻址的行号数组，比较时直接读主键列，不另存主键字符串
+ *  - 主键有序索引：以行号为节点的跳表（第 0 层 next 为 int[]，更高层按节点分配小数组），
+ *    按主键列原始值比较（INT 按数值，TEXT 按 UTF-8 字节），范围扫描先逐层定位到下界再沿第 0 层读取
+ *  - 每个槽一个行号列表，供迁移按槽扫描
+ * 等值扫描先把查询值编码一次（INT 解析为 int，TEXT 编码为字节），逐行比较原始值；
+ * 删除的行号进入空闲列表复用
+ */
+final class ColumnarRowStore implements RowStore {
+    private static final int INITIAL_CAPACITY = 16;
+    // 主键索引中已删除的位置
+    private static final int TOMBSTONE = -1;
+    // 跳表：最大层数、表头节点与空指针
+    private static final int MAX_LEVEL = 16;
+    private static final int HEAD = -2;
+    private static final int NIL = -1;
+
+    private final List<Column> columns;
+    private final Col[] cols;
+    // 列名 → 列下标
+    private final Map<String, Integer> colIndex = new HashMap<>();
+    private final Col pkCol;
+
+    private int capacity = INITIAL_CAPACITY;
+    // 已分配过的最大行号 + 1
+    private int highWater;
+    private int size;
+    private final BitSet live = new BitSet();
+    private final IntList free = new IntList();
+    // 主键索引：元素为 行号+1，0 为空位
+    private int[] index = new int[32];
+    // 非空位置数（含 TOMBSTONE）
+    private int indexUsed;
+    // 主键值 → 槽（由表的分区方式决定）
+    private final ToIntFunction<String> slotOf;
+    // 槽 → 槽内行号（无序）
+    private final IntList[] slotRows = new IntList[Slots.COUNT];
+    // 跳表：表头各层的后继、各行第 0 层的后继、各行第 1 层起的后继（只有 1 层的行为 null）
+    private final int[] head = new int[MAX_LEVEL];
+    private int[] next0 = new int[INITIAL_CAPACITY];
+    private int[][] upper = new int[INITIAL_CAPACITY][];
+    private int levels = 1;
+    private long seed = 0x9E3779B97F4A7C15L;
+
+    ColumnarRowStore(List<Column> columns, String primaryKey, ToIntFunction<String> slotOf) {
+        this.slotOf  = slotOf;
+        Arrays.fill(head, NIL);
+        this.columns = List.copyOf(columns);
+        this.cols = new Col[columns.size()];
+        for (int i = 0; i < cols.length; i++) {
+            Column c = columns.get(i);
+            cols[i] = "INT".equals(c.getType()) ? new IntCol() : new TextCol();
+            colIndex.put(c.getName(), i);
+        }
+        this.pkCol = cols[colIndex.get(primaryKey)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(String pk) {
+        return find(pk) >= 0;
+    }
+
+    @Override
+    public Map<String, String> get(String pk) {
+        int r = find(pk);
+        return r < 0 ? null : materialize(r);
+    }
+
+    @Override
+    public void insert(String pk, Map<String, String> row) {
+        int r = allocate();
+        for (int i = 0; i < cols.length; i++) {
+            cols[i].set(r, row.get(columns.get(i).getName()));
+        }
+        live.set(r);
+        size++;
+        indexAdd(r);
+        skipInsert(r);
+        int slot = slotOf.applyAsInt(pkCol.get(r));
+        if (slotRows[slot] == null) slotRows[slot] = new IntList();
+        slotRows[slot].add(r);
+    }
+
+    @Override
+    public void update(String pk, Map<String, String> newValues) {
+        int r = find(pk);
+        if (r < 0) return;
+        for (Map.Entry<String, String> e : newValues.entrySet()) {
+            cols[colIndex.get(e.getKey())].set(r, e.getValue());
+        }
+    }
+
+    @Override
+    public boolean remove(String pk) {
+        int r = find(pk);
+        if (r < 0) return false;
+        removeRow(r, true);
+        return true;
+    }
+
+    @Override
+    public List<String> keysWhere(String col, String val) {
+        IntList rows = matching(col, val);
+        List<String> keys = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) keys.add(pkCol.get(rows.get(i)));
+        return keys;
+    }
+
+    @Override
+    public List<Map<String, String>> selectWhere(String col, String val) {
+        IntList rows = matching(col, val);
+        List<Map<String, String>> result = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) result.add(materialize(rows.get(i)));
+        return result;
+    }
+
+    @Override
+    public List<String> keysInRange(String col, KeyRange range) {
+        IntList rows = inRange(col, range);
+        List<String> keys = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) keys.add(pkCol.get(rows.get(i)));
+        return keys;
+    }
+
+    @Override
+    public List<Map<String, String>> selectRange(String col, KeyRange range) {
+        IntList rows = inRange(col, range);
+        List<Map<String, String>> result = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) result.add(materialize(rows.get(i)));
+        return result;
+    }
+
+    @Override
+    public List<Map<String, String>> selectAll() {
+        List<Map<String, String>> result = new ArrayList<>(size);
+        for (int r = head[0]; r != NIL; r = next0[r]) {
+            result.add(materialize(r));
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachAfter(String afterPk, Predicate<Map<String, String>> visitor) {
+        Object probe = afterPk == null ? null : pkCol.probe(afterPk);
+        if (afterPk != null && probe == null) return;
+        for (int r = seek(probe, false); r != NIL; r = next0[r]) {
+            if (!visitor.test(materialize(r))) return;
+        }
+    }
+
+    @Override
+    public int clear() {
+        int n = size;
+        capacity  = INITIAL_CAPACITY;
+        highWater = 0;
+        size      = 0;
+        live.clear();
+        free.clear();
+        index     = new int[32];
+        indexUsed = 0;
+        Arrays.fill(slotRows, null);
+        Arrays.fill(head, NIL);
+        next0  = new int[capacity];
+        upper  = new int[capacity][];
+        levels = 1;
+        for (Col c : cols) c.reset(capacity);
+        return n;
+    }
+
+    @Override
+    public List<Map<String, String>> scanSlot(int slot, String afterPk, int limit) {
+        List<Map<String, String>> result = new ArrayList<>();
+        IntList rows = slotRows[slot];
+        if (rows == null) return result;
+        // 槽内行数约为总行数的 1/Slots.COUNT，每批排序一次
+        TreeMap<String, Integer> sorted = new TreeMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            String k = pkCol.get(rows.get(i));
+            if (afterPk == null || k.compareTo(afterPk) > 0) sorted.put(k, rows.get(i));
+        }
+        for (int r : sorted.values()) {
+            if (result.size() >= limit) break;
+            result.add(materialize(r));
+        }
+        return result;
+    }
+
+    @Override
+    public int deleteSlot(int slot) {
+        IntList rows = slotRows[slot];
+        if (rows == null) return 0;
+        slotRows[slot] = null;
+        for (int i = 0; i < rows.size(); i++) removeRow(rows.get(i), false);
+        return rows.size();
+    }
+
+    /** 列值等于 val 的存活行号 */
+    private IntList matching(String col, String val) {
+        IntList out = new IntList();
+        Integer ci = colIndex.get(col);
+        if (ci == null) return out;
+        Col c = cols[ci];
+        Object probe = c.probe(val);
+        if (probe == null) return out;
+        if (c == pkCol) {
+            int r = find(probe);
+            if (r >= 0) out.add(r);
+        } else {
+            c.scan(probe, out);
+        }
+        return out;
+    }
+
+    /** 列值落在范围内的存活行号；主键列经跳表按主键顺序读取 */
+    private IntList inRange(String col, KeyRange range) {
+        IntList out = new IntList();
+        Integer ci = colIndex.get(col);
+        if (ci == null) return out;
+        Col c = cols[ci];
+        Object low = range.getLow() == null ? null : c.probe(range.getLow());
+        Object high = range.getHigh() == null ? null : c.probe(range.getHigh());
+        if ((range.getLow() != null && low == null) || (range.getHigh() != null && high == null)) return out;
+        if (c == pkCol) {
+            for (int r = seek(low, range.isLowInclusive()); r != NIL; r = next0[r]) {
+                if (high != null) {
+                    int cmp = c.compare(r, high);
+                    if (cmp > 0 || (cmp == 0 && !range.isHighInclusive())) break;
+                }
+                out.add(r);
+            }
+        } else {
+            for (int r = live.nextSetBit(0); r >= 0; r = live.nextSetBit(r + 1)) {
+                if (low != null) {
+                    int cmp = c.compare(r, low);
+                    if (cmp < 0 || (cmp == 0 && !range.isLowInclusive())) continue;
+                }
+                if (high != null) {
+                    int cmp = c.compare(r, high);
+                    if (cmp > 0 || (cmp == 0 && !range.isHighInclusive())) continue;
+                }
+                out.add(r);
+            }
+        }
+        return out;
+    }
+
+    private Map<String, String> materialize(int r) {
+        Map<String, String> row = new LinkedHashMap<>(cols.length * 2);
+        for (int i = 0; i < cols.length; i++) {
+            row.put(columns.get(i).getName(), cols[i].get(r));
+        }
+        return row;
+    }
+
+    private int allocate() {
+        if (free.size() > 0) return free.pop();
+        if (highWater == capacity) {
+            capacity = capacity + (capacity >> 1);
+            for (Col c : cols) c.grow(capacity);
+            next0 = Arrays.copyOf(next0, capacity);
+            upper = Arrays.copyOf(upper, capacity);
+        }
+        return highWater++;
+    }
+
+    private void removeRow(int r, boolean fromSlot) {
+        // 先摘除索引、跳表与槽列表（需要读主键列），再释放列数据
+        indexRemove(r);
+        skipRemove(r);
+        if (fromSlot) {
+            int slot = slotOf.applyAsInt(pkCol.get(r));
+            IntList rows = slotRows[slot];
+            if (rows != null && rows.remove(r) && rows.size() == 0) slotRows[slot] = null;
+        }
+        for (Col c : cols) c.release(r);
+        live.clear(r);
+        size--;
+        free.add(r);
+    }
+
+    // ---- 主键索引（线性探测） ----
+
+    private int find(String pk) {
+        return find(pkCol.probe(pk));
+    }
+
+    private int find(Object probe) {
+        if (probe == null) return -1;
+        int mask = index.length - 1;
+        for (int i = pkCol.hashProbe(probe) & mask; ; i = (i + 1) & mask) {
+            int e = index[i];
+            if (e == 0) return -1;
+            if (e > 0 && pkCol.matches(e - 1, probe)) return e - 1;
+        }
+    }
+
+    private void indexAdd(int r) {
+        // 装载率（含删除标记）超过 2/3 时重建
+        if ((indexUsed + 1) * 3 > index.length * 2) rehash();
+        int mask = index.length - 1;
+        int i = pkCol.hashRow(r) & mask;
+        while (index[i] > 0) i = (i + 1) & mask;
+        if (index[i] == 0) indexUsed++;
+        index[i] = r + 1;
+    }
+
+    private void indexRemove(int r) {
+        int mask = index.length - 1;
+        for (int i = pkCol.hashRow(r) & mask; index[i] != 0; i = (i + 1) & mask) {
+            if (index[i] == r + 1) {
+                index[i] = TOMBSTONE;
+                return;
+            }
+        }
+    }
+
+    private void rehash() {
+        int cap = 32;
+        while (cap < (size + 1) * 3) cap <<= 1;
+        int[] old = index;
+        index = new int[cap];
+        indexUsed = 0;
+        int mask = cap - 1;
+        for (int e : old) {
+            if (e <= 0) continue;
+            int i = pkCol.hashRow(e - 1) & mask;
+            while (index[i] != 0) i = (i + 1) & mask;
+            index[i] = e;
+            indexUsed++;
+        }
+    }
+
+    // ---- 主键有序索引（跳表，节点为行号） ----
+
+    private int next(int node, int level) {
+        if (node == HEAD) return head[level];
+        return level == 0 ? next0[node] : upper[node][level - 1];
+    }
+
+    private void setNext(int node, int level, int to) {
+        if (node == HEAD) head[level] = to;
+        else if (level == 0) next0[node] = to;
+        else upper[node][level - 1] = to;
+    }
+
+    private int levelOf(int r) {
+        return upper[r] == null ? 1 : upper[r].length + 1;
+    }
+
+    /** 层数按 1/4 的概率逐层递增（xorshift 随机数） */
+    private int randomLevel() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        long x = seed;
+        int level = 1;
+        while ((x & 3) == 0 && level < MAX_LEVEL) {
+            level++;
+            x >>>= 2;
+        }
+        return level;
+    }
+
+    private void skipInsert(int r) {
+        int[] prev = new int[MAX_LEVEL];
+        int x = HEAD;
+        for (int i = levels - 1; i >= 0; i--) {
+            int n;
+            while ((n = next(x, i)) != NIL && pkCol.compareRows(n, r) < 0) x = n;
+            prev[i] = x;
+        }
+        int level = randomLevel();
+        for (int i = levels; i < level; i++) prev[i] = HEAD;
+        levels = Math.max(levels, level);
+        upper[r] = level > 1 ? new int[level - 1] : null;
+        for (int i = 0; i < level; i++) {
+            setNext(r, i, next(prev[i], i));
+            setNext(prev[i], i, r);
+        }
+    }
+
+    private void skipRemove(int r) {
+        int x = HEAD;
+        for (int i = levels - 1; i >= 0; i--) {
+            int n;
+            while ((n = next(x, i)) != NIL && n != r && pkCol.compareRows(n, r) < 0) x = n;
+            if (i < levelOf(r) && next(x, i) == r) setNext(x, i, next(r, i));
+        }
+        upper[r] = null;
+        while (levels > 1 && head[levels - 1] == NIL) levels--;
+    }
+
+    /** 第一个主键大于（inclusive 时不小于）probe 的行号，probe 为 null 时从头开始 */
+    private int seek(Object probe, boolean inclusive) {
+        if (probe == null) return head[0];
+        int x = HEAD;
+        for (int i = levels - 1; i >= 0; i--) {
+            int n;
+            while ((n = next(x, i)) != NIL) {
+                int c = pkCol.compare(n, probe);
+                if (c < 0 || (c == 0 && !inclusive)) x = n;
+                else break;
+            }
+        }
+        return next(x, 0);
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // ---- 列 ----
+
+    private abstract static class Col {
+        abstract void reset(int capacity);
+
+        abstract void grow(int capacity);
+
+        abstract void set(int row, String value);
+
+        abstract String get(int row);
+
+        /** 行被删除时释放该行的值 */
+        abstract void release(int row);
+
+        /** 查询值编码为本列的比较形式；不可能匹配（如 INT 列给了非数字）时返回 null */
+        abstract Object probe(String value);
+
+        abstract boolean matches(int row, Object probe);
+
+        abstract int hashRow(int row);
+
+        abstract int hashProbe(Object probe);
+
+        /** 全列扫描：值等于 probe 的存活行号 */
+        abstract void scan(Object probe, IntList out);
+
+        /** 行值与 probe 比较（INT 按数值，TEXT 按 UTF-8 无符号字节序） */
+        abstract int compare(int row, Object probe);
+
+        abstract int compareRows(int a, int b);
+    }
+
+    private final class IntCol extends Col {
+        private int[] values = new int[capacity];
+
+        @Override
+        void reset(int capacity) {
+            values = new int[capacity];
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void set(int row, String value) {
+            values[row] = Integer.parseInt(value);
+        }
+
+        @Override
+        String get(int row) {
+            return Integer.toString(values[row]);
+        }
+
+        @Override
+        void release(int row) {
+        }
+
+        @Override
+        Object probe(String value) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        boolean matches(int row, Object probe) {
+            return values[row] == (Integer) probe;
+        }
+
+        @Override
+        int hashRow(int row) {
+            return mix(values[row]);
+        }
+
+        @Override
+        int hashProbe(Object probe) {
+            return mix((Integer) probe);
+        }
+
+        @Override
+        int compare(int row, Object probe) {
+            return Integer.compare(values[row], (Integer) probe);
+        }
+
+        @Override
+        int compareRows(int a, int b) {
+            return Integer.compare(values[a], values[b]);
+        }
+
+        @Override
+        void scan(Object probe, IntList out) {
+            int v = (Integer) probe;
+            int[] a = values;
+            // 先比较值，命中后再确认行存活（已删除行的旧值可能相等）
+            for (int r = 0; r < highWater; r++) {
+                if (a[r] == v && live.get(r)) out.add(r);
+            }
+        }
+    }
+
+    private final class TextCol extends Col {
+        private byte[] data;
+        private int used;
+        // 被覆盖或删除、尚未整理的字节数
+        private int garbage;
+        private int[] offset;
+        private int[] length;
+
+        TextCol() {
+            reset(capacity);
+        }
+
+        @Override
+        void reset(int capacity) {
+            data    = new byte[256];
+            used    = 0;
+            garbage = 0;
+            offset  = new int[capacity];
+            length  = new int[capacity];
+        }
+
+        @Override
+        void grow(int capacity) {
+            offset = Arrays.copyOf(offset, capacity);
+            length = Arrays.copyOf(length, capacity);
+        }
+
+        @Override
+        void set(int row, String value) {
+            byte[] b = value.getBytes(StandardCharsets.UTF_8);
+            int old = length[row];
+            if (b.length <= old) {
+                // 不变长则原地覆盖
+                System.arraycopy(b, 0, data, offset[row], b.length);
+                garbage += old - b.length;
+                length[row] = b.length;
+                return;
+            }
+            garbage += old;
+            length[row] = 0;
+            ensure(b.length);
+            System.arraycopy(b, 0, data, used, b.length);
+            offset[row] = used;
+            length[row] = b.length;
+            used += b.length;
+        }
+
+        private void ensure(int n) {
+            if (used + n <= data.length) return;
+            if (garbage > used / 2) compact();
+            if (used + n > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length + (data.length >> 1), used + n));
+            }
+        }
+
+        /** 按行号顺序重新紧凑排列存活行的字节 */
+        private void compact() {
+            byte[] packed = new byte[Math.max(256, (used - garbage) + ((used - garbage) >> 1))];
+            int pos = 0;
+            for (int r = live.nextSetBit(0); r >= 0; r = live.nextSetBit(r + 1)) {
+                System.arraycopy(data, offset[r], packed, pos, length[r]);
+                offset[r] = pos;
+                pos += length[r];
+            }
+            data    = packed;
+            used    = pos;
+            garbage = 0;
+        }
+
+        @Override
+        String get(int row) {
+            return new String(data, offset[row], length[row], StandardCharsets.UTF_8);
+        }
+
+        @Override
+        void release(int row) {
+            garbage += length[row];
+            length[row] = 0;
+        }
+
+        @Override
+        Object probe(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        boolean matches(int row, Object probe) {
+            byte[] b = (byte[]) probe;
+            int off = offset[row];
+            return length[row] == b.length && Arrays.equals(data, off, off + b.length, b, 0, b.length);
+        }
+
+        @Override
+        int hashRow(int row) {
+            return hash(data, offset[row], length[row]);
+        }
+
+        @Override
+        int hashProbe(Object probe) {
+            byte[] b = (byte[]) probe;
+            return hash(b, 0, b.length);
+        }
+
+        private int hash(byte[] a, int off, int len) {
+            int h = 1;
+            for (int i = off; i < off + len; i++) h = 31 * h + a[i];
+            return mix(h);
+        }
+
+        @Override
+        int compare(int row, Object probe) {
+            byte[] b = (byte[]) probe;
+            return Arrays.compareUnsigned(data, offset[row], offset[row] + length[row], b, 0, b.length);
+        }
+
+        @Override
+        int compareRows(int a, int b) {
+            return Arrays.compareUnsigned(data, offset[a], offset[a] + length[a], data, offset[b], offset[b] + length[b]);
+        }
+
+        @Override
+        void scan(Object probe, IntList out) {
+            byte[] b = (byte[]) probe;
+            for (int r = live.nextSetBit(0); r >= 0; r = live.nextSetBit(r + 1)) {
+                int off = offset[r];
+                if (length[r] == b.length && Arrays.equals(data, off, off + b.length, b, 0, b.length)) out.add(r);
+            }
+        }
+    }
+
+    /** 可增长的 int 列表 */
+    private static final class IntList {
+        private int[] a = new int[4];
+        private int n;
+
+        void add(int v) {
+            if (n == a.length) a = Arrays.copyOf(a, n * 2);
+            a[n++] = v;
+        }
+
+        int get(int i) { return a[i]; }
+        int size() { return n; }
+        int pop() { return a[--n]; }
+        void clear() { n = 0; }
+
+        /** 删除一个等于 v 的元素（与末尾元素交换，不保持顺序） */
+        boolean remove(int v) {
+            for (int i = 0; i < n; i++) {
+                if (a[i] == v) {
+                    a[i] = a[--n];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package minisql;
+
+import java.util.*;
+
+/**
+ * 非主键列上的哈希二级索引：列值 → 该值所在行的主键（按插入顺序）。
+ * 由 Table 在持有写锁时维护，列值先经存储规范化（列式存储的 INT 按数值比较）
+ */
+final class HashIndex {
+    private final String name;
+    private final String column;
+    private final Map<String, Set<String>> entries = new HashMap<>();
+
+    HashIndex(String name, String column) {
+        this.name   = name;
+        this.column = column;
+    }
+
+    String getName() { return name; }
+    String getColumn() { return column; }
+
+    void add(String value, String pk) {
+        entries.computeIfAbsent(value, k -> new LinkedHashSet<>()).add(pk);
+    }
+
+    void remove(String value, String pk) {
+        Set<String> pks = entries.get(value);
+        if (pks != null && pks.remove(pk) && pks.isEmpty()) entries.remove(value);
+    }
+
+    /** 列值等于 value 的行的主键（副本） */
+    List<String> get(String value) {
+        Set<String> pks = value == null ? null : entries.get(value);
+        return pks == null ? new ArrayList<>() : new ArrayList<>(pks);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+}
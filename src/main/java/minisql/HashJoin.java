@@ -0,0 +1,283 @@
+package minisql;
+
+import minisql.parser.Condition;
+import minisql.parser.JoinStatement;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * 等值内连接（哈希连接）：构建侧的行按连接列放入哈希表，探测侧按主键顺序分批扫描本地表，逐行查哈希表输出连接后的行。
+ *  - 列名在计划时解析到所属的表（带表名或别名，或只在一张表中存在的列名）
+ *  - 两侧都只复制需要的列（结果列、连接列、连接后才能判断的条件列）
+ *  - WHERE 中只涉及一张表的 AND 子条件下推到该表的扫描，其余条件在连接后的行上判断
+ *  - 连接列一侧为 INT 时两侧的值都先规范化再比较（"007" 与 7 相等），不是合法整数的值不参与连接
+ *  - 构建侧的行可以来自本地（见 openLocal），也可以由调用方从其他节点取来后 addBuildRows
+ *    （RegionServer 的 SHUFFLE JOIN）；构建侧超过 -Dminisql.join.maxBuildRows（默认 1000000）行时失败
+ *  - 探测侧与 TableCursor 一样不是快照，批与批之间不持有读锁
+ */
+public final class HashJoin {
+    private static final int MAX_BUILD_ROWS = Integer.getInteger("minisql.join.maxBuildRows", 1_000_000);
+
+    private final Side left;
+    private final Side right;
+    private final Side build;
+    private final Side probe;
+    // 连接列的比较类型：任一侧为 INT 时按 INT 规范化
+    private final Column keyType;
+    // 结果列，以及各结果列在连接后的行中的名字（别名.列）
+    private final List<Column> columns = new ArrayList<>();
+    private final List<String> sources = new ArrayList<>();
+    // 连接后才能判断的条件（列名为 别名.列），没有时为 null
+    private final Predicate<Map<String, String>> residual;
+    // 构建侧：连接列的规范值 → 行
+    private final Map<String, List<Map<String, String>>> hash = new HashMap<>();
+    private int buildRows;
+
+    /** 连接的一侧：表、别名、连接列、扫描时复制的列与逐行判断的条件 */
+    private static final class Side {
+        final Table table;
+        final String alias;
+        final Set<String> needed = new LinkedHashSet<>();
+        final List<Condition> pushed = new ArrayList<>();
+        String key;
+        Predicate<Map<String, String>> filter;
+
+        Side(Table table, String alias) {
+            this.table = table;
+            this.alias = alias;
+        }
+
+        /** 扫描时复制的列及其类型 */
+        List<Column> neededColumns() {
+            List<Column> cols = new ArrayList<>(needed.size());
+            for (String n : needed) cols.add(column(table, n));
+            return cols;
+        }
+    }
+
+    /** 解析到某一侧的列 */
+    private static final class Ref {
+        final Side side;
+        final Column column;
+
+        Ref(Side side, Column column) {
+            this.side   = side;
+            this.column = column;
+        }
+
+        String qualified() {
+            return side.alias + "." + column.getName();
+        }
+    }
+
+    private HashJoin(JoinStatement st, List<String> params, Table leftTable, Table rightTable, boolean buildRight) {
+        this.left  = new Side(leftTable, st.getLeftAlias());
+        this.right = new Side(rightTable, st.getRightAlias());
+        this.build = buildRight ? right : left;
+        this.probe = buildRight ? left : right;
+
+        Ref a = resolve(st.getLeftColumn());
+        Ref b = resolve(st.getRightColumn());
+        if (a.side == b.side) throw new IllegalArgumentException("JOIN condition must compare columns of both tables");
+        Ref leftKey = a.side == left ? a : b;
+        Ref rightKey = a.side == left ? b : a;
+        left.key = leftKey.column.getName();
+        right.key = rightKey.column.getName();
+        left.needed.add(left.key);
+        right.needed.add(right.key);
+        keyType = leftKey.column.isInt() ? leftKey.column : rightKey.column;
+
+        if (st.getColumns().isEmpty()) {
+            for (Side s : List.of(left, right)) {
+                for (Column c : s.table.getColumns()) {
+                    s.needed.add(c.getName());
+                    columns.add(new Column(s.alias + "." + c.getName(), c.getType()));
+                    sources.add(s.alias + "." + c.getName());
+                }
+            }
+        } else {
+            Set<String> labels = new HashSet<>();
+            for (String name : st.getColumns()) {
+                Ref ref = resolve(name);
+                if (!labels.add(name)) continue;
+                ref.side.needed.add(ref.column.getName());
+                columns.add(new Column(name, ref.column.getType()));
+                sources.add(ref.qualified());
+            }
+        }
+
+        // AND 的各子条件：只涉及一张表的下推到该表的扫描，其余在连接后判断
+        List<Condition> rest = new ArrayList<>();
+        Condition where = st.getWhere();
+        if (where != null) {
+            List<Condition> terms = where.getOp() == Condition.Op.AND ? where.getChildren() : List.of(where);
+            for (Condition term : terms) {
+                List<Ref> refs = new ArrayList<>();
+                collect(term, refs);
+                Side only = refs.get(0).side;
+                for (Ref ref : refs) if (ref.side != only) only = null;
+                if (only != null) {
+                    only.pushed.add(term.renamed(n -> resolve(n).column.getName()));
+                } else {
+                    rest.add(term.renamed(n -> resolve(n).qualified()));
+                    for (Ref ref : refs) ref.side.needed.add(ref.column.getName());
+                }
+            }
+        }
+        for (Side s : List.of(left, right)) {
+            Predicate<Map<String, String>> f = SimpleSQLExecutor.visibleFilter(s.table);
+            if (!s.pushed.isEmpty()) f = f.and(RowPredicate.compile(Condition.and(s.pushed), s.table.getColumns(), params));
+            s.filter = f;
+        }
+        if (rest.isEmpty()) {
+            residual = null;
+        } else {
+            List<Column> qualified = new ArrayList<>();
+            for (Side s : List.of(left, right)) {
+                for (Column c : s.table.getColumns()) qualified.add(new Column(s.alias + "." + c.getName(), c.getType()));
+            }
+            residual = RowPredicate.compile(Condition.and(rest), qualified, params);
+        }
+    }
+
+    /**
+     * 按本地的表生成连接计划，buildRight 为 true 时右表为构建侧
+     * @throws IllegalArgumentException 表不存在，或列不存在、有歧义
+     */
+    public static HashJoin plan(JoinStatement st, List<String> params, boolean buildRight) {
+        Table l = TableManager.getTable(st.getTable());
+        if (l == null) throw new IllegalArgumentException("Table not found: " + st.getTable());
+        Table r = TableManager.getTable(st.getRightTable());
+        if (r == null) throw new IllegalArgumentException("Table not found: " + st.getRightTable());
+        return new HashJoin(st, params, l, r, buildRight);
+    }
+
+    /** 两张表都在本地：行数少的一侧为构建侧，另一侧分批探测 */
+    public static ResultCursor openLocal(JoinStatement st, List<String> params) {
+        try {
+            Table l = TableManager.getTable(st.getTable());
+            Table r = TableManager.getTable(st.getRightTable());
+            boolean buildRight = l == null || r == null || r.size() <= l.size();
+            HashJoin join = plan(st, params, buildRight);
+            Side s = join.build;
+            join.addBuildRows(s.table.scan(join.keyFilter(s, k -> true), new ArrayList<>(s.needed)));
+            return join.probe();
+        } catch (IllegalArgumentException e) {
+            return ResultCursor.of(QueryResult.message(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResultCursor.of(QueryResult.error(e.getMessage()));
+        }
+    }
+
+    /**
+     * 分批读取一侧（right 为 true 时为右表）本地的行：只含需要的列，已判断下推的条件，
+     * 且连接列的规范值满足 keys（调用方据此只取发往某个节点的行）
+     */
+    public ResultCursor scanSide(boolean right, Predicate<String> keys) {
+        Side s = right ? this.right : left;
+        return new TableCursor(s.table, keyFilter(s, keys), new ArrayList<>(s.needed), s.neededColumns(),
+                "Empty result.");
+    }
+
+    /** 加入构建侧的行（scanSide 返回的行）；可在多个线程上调用 */
+    public synchronized void addBuildRows(List<Map<String, String>> rows) {
+        for (Map<String, String> row : rows) {
+            String k = keyType.canonical(row.get(build.key));
+            if (k == null) continue;
+            if (++buildRows > MAX_BUILD_ROWS) {
+                throw new IllegalStateException("JOIN build side exceeds " + MAX_BUILD_ROWS + " rows");
+            }
+            hash.computeIfAbsent(k, x -> new ArrayList<>(1)).add(row);
+        }
+    }
+
+    /** 构建侧已加入的行数 */
+    public synchronized int getBuildRows() {
+        return buildRows;
+    }
+
+    /** 构建侧的行全部加入后，分批扫描本地的探测侧并输出连接后的行 */
+    public ResultCursor probe() {
+        TableCursor scan = new TableCursor(probe.table, keyFilter(probe, hash::containsKey),
+                new ArrayList<>(probe.needed), probe.neededColumns(), "");
+        return new ResultCursor() {
+            @Override
+            public QueryResult next(int batchRows) {
+                List<Map<String, String>> out = new ArrayList<>();
+                // 一批探测行可能全部被连接后的条件过滤掉，继续扫描直到有结果或扫描结束
+                while (out.isEmpty() && !scan.isDone()) {
+                    for (Map<String, String> p : scan.next(batchRows).getRows()) {
+                        for (Map<String, String> b : hash.get(keyType.canonical(p.get(probe.key)))) {
+                            Map<String, String> joined = joined(build == right ? p : b, build == right ? b : p);
+                            if (residual == null || residual.test(joined)) out.add(output(joined));
+                        }
+                    }
+                }
+                return QueryResult.rows(columns, out, "Empty result.");
+            }
+
+            @Override
+            public boolean isDone() {
+                return scan.isDone();
+            }
+        };
+    }
+
+    /** 一侧的扫描条件：可见、满足下推条件，且连接列的规范值满足 keys */
+    private Predicate<Map<String, String>> keyFilter(Side s, Predicate<String> keys) {
+        return s.filter.and(row -> {
+            String k = keyType.canonical(row.get(s.key));
+            return k != null && keys.test(k);
+        });
+    }
+
+    /** 连接后的行：列名为 别名.列 */
+    private Map<String, String> joined(Map<String, String> l, Map<String, String> r) {
+        Map<String, String> row = new HashMap<>();
+        for (Map.Entry<String, String> e : l.entrySet()) row.put(left.alias + "." + e.getKey(), e.getValue());
+        for (Map.Entry<String, String> e : r.entrySet()) row.put(right.alias + "." + e.getKey(), e.getValue());
+        return row;
+    }
+
+    private Map<String, String> output(Map<String, String> joined) {
+        Map<String, String> row = new LinkedHashMap<>();
+        for (int i = 0; i < columns.size(); i++) row.put(columns.get(i).getName(), joined.get(sources.get(i)));
+        return row;
+    }
+
+    /**
+     * 列名解析到所属的表：带前缀时按别名查找，否则为唯一含该列的表
+     * @throws IllegalArgumentException 列不存在或有歧义
+     */
+    private Ref resolve(String name) {
+        String q = JoinStatement.qualifier(name);
+        String base = JoinStatement.baseName(name);
+        if (q != null) {
+            Side s = q.equals(left.alias) ? left : q.equals(right.alias) ? right : null;
+            Column c = s == null ? null : column(s.table, base);
+            if (c == null) throw new IllegalArgumentException("Unknown column: " + name);
+            return new Ref(s, c);
+        }
+        Column l = column(left.table, base);
+        Column r = column(right.table, base);
+        if (l != null && r != null) throw new IllegalArgumentException("Ambiguous column: " + name);
+        if (l == null && r == null) throw new IllegalArgumentException("Unknown column: " + name);
+        return l != null ? new Ref(left, l) : new Ref(right, r);
+    }
+
+    private void collect(Condition c, List<Ref> refs) {
+        if (!c.isCompound()) {
+            refs.add(resolve(c.getColumn()));
+            return;
+        }
+        for (Condition child : c.getChildren()) collect(child, refs);
+    }
+
+    private static Column column(Table table, String name) {
+        for (Column c : table.getColumns()) {
+            if (c.getName().equals(name)) return c;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,55 @@
+package minisql;
+
+/**
+ * 范围条件：[low, high] 的上下界可各自开闭，null 表示该侧无界。
+ * 边界值为列的规范形式（见 Column.canonical），按列类型比较
+ */
+public final class KeyRange {
+    private final String low;
+    private final boolean lowInclusive;
+    private final String high;
+    private final boolean highInclusive;
+
+    public KeyRange(String low, boolean lowInclusive, String high, boolean highInclusive) {
+        this.low           = low;
+        this.lowInclusive  = lowInclusive;
+        this.high          = high;
+        this.highInclusive = highInclusive;
+    }
+
+    public String getLow() { return low; }
+    public boolean isLowInclusive() { return lowInclusive; }
+    public String getHigh() { return high; }
+    public boolean isHighInclusive() { return highInclusive; }
+
+    /** 值是否落在范围内 */
+    public boolean contains(Column column, String value) {
+        if (value == null) return false;
+        if (low != null) {
+            int c = column.compareValues(value, low);
+            if (c < 0 || (c == 0 && !lowInclusive)) return false;
+        }
+        return !aboveHigh(column, value);
+    }
+
+    /** 值是否已超出上界（有序扫描据此提前结束） */
+    public boolean aboveHigh(Column column, String value) {
+        if (high == null) return false;
+        int c = column.compareValues(value, high);
+        return c > 0 || (c == 0 && !highInclusive);
+    }
+
+    /** 边界按列类型规范化后的范围；INT 列的边界不是整数时返回 null（不可能匹配） */
+    public KeyRange canonical(Column column) {
+        String lo = column.canonical(low);
+        String hi = column.canonical(high);
+        if ((low != null && lo == null) || (high != null && hi == null)) return null;
+        return new KeyRange(lo, lowInclusive, hi, highInclusive);
+    }
+
+    @Override
+    public String toString() {
+        return (lowInclusive ? "[" : "(") + (low == null ? "-inf" : low) + ", "
+                + (high == null ? "+inf" : high) + (highInclusive ? "]" : ")");
+    }
+}
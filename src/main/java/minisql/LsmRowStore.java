@@ -0,0 +1,675 @@
+package minisql;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * LSM 存储（CREATE TABLE ... ENGINE=LSM）：面向写入密集、数据量超过堆的表
+ *  - 写入（插入/更新/删除）只进内存中的有序 memtable（删除写入删除标记），
+ *    memtable 超过 -Dminisql.lsm.memtableKb（默认 4096）时整体写成一个不可变的 SSTable 文件
+ *  - 点查依次查 memtable 与各 SSTable（新到旧），每个文件先过布隆过滤器，再按稀疏索引只读一个块
+ *  - 有序扫描把 memtable 与各 SSTable 的游标按主键多路归并，同一主键取最新的版本，跳过删除标记
+ *  - SSTable 数达到 -Dminisql.lsm.compactAt（默认 4）时后台线程把它们合并为一个文件并丢弃删除标记，
+ *    合并期间读写照常进行，完成后替换文件列表
+ *  - 按槽扫描/删除（迁移）只读 memtable 与各 SSTable 中含该槽记录的块（见 SSTable 的槽 → 块号）
+ *  - 快照（freeze）先把 memtable 写成 SSTable，再给当前文件加引用；快照线程不持有任何锁归并这些不可变文件，
+ *    其间的写入、合并与清空照常进行，被替换的文件等快照结束才删除
+ * 文件位于 -Dminisql.lsm.dir（默认 data/lsm）下每张表各自的目录；数据的持久化仍由预写日志与快照负责，
+ * 这些文件只是表的工作存储，删表或进程退出时删除
+ */
+final class LsmRowStore implements RowStore {
+    private static final long MEMTABLE_BYTES = Long.getLong("minisql.lsm.memtableKb", 4096) << 10;
+    private static final int COMPACT_AT = Math.max(2, Integer.getInteger("minisql.lsm.compactAt", 4));
+    private static final Path BASE_DIR = Paths.get(System.getProperty("minisql.lsm.dir", "data/lsm"));
+    // 所有 LSM 表共用的后台合并线程
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "lsm-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    // 仍打开的存储，进程退出时删除其目录
+    private static final Set<LsmRowStore> OPEN = Collections.synchronizedSet(new HashSet<>());
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            synchronized (OPEN) {
+                for (LsmRowStore s : new ArrayList<>(OPEN)) s.close();
+            }
+        }, "lsm-cleanup"));
+    }
+
+    private final List<Column> columns;
+    private final Map<String, Integer> colIndex = new HashMap<>();
+    private final Column pkColumn;
+    private final Comparator<String> order;
+    private final ToIntFunction<String> slotOf;
+    private final Path dir;
+    private final long memtableLimit;
+    private final int compactAt;
+
+    private ConcurrentSkipListMap<String, byte[]> memtable;
+    private long memtableBytes;
+    // SSTable，新的在前；替换整个列表（写时复制），读操作持有 files 的读锁
+    private volatile List<SSTable> tables = List.of();
+    private final ReadWriteLock files = new ReentrantReadWriteLock();
+    private int size;
+    private int nextFile;
+    private boolean compacting;
+    // clear/close 时递增，使进行中的合并结果作废
+    private int generation;
+    private long compactions;
+    private boolean closed;
+
+    LsmRowStore(String table, List<Column> columns, String primaryKey, ToIntFunction<String> slotOf) {
+        this(table, columns, primaryKey, slotOf, MEMTABLE_BYTES, COMPACT_AT);
+    }
+
+    LsmRowStore(String table, List<Column> columns, String primaryKey, ToIntFunction<String> slotOf,
+                long memtableLimit, int compactAt) {
+        this.memtableLimit = memtableLimit;
+        this.compactAt     = Math.max(2, compactAt);
+        this.columns = List.copyOf(columns);
+        this.slotOf  = slotOf;
+        for (int i = 0; i < columns.size(); i++) colIndex.put(columns.get(i).getName(), i);
+        this.pkColumn = columns.get(colIndex.get(primaryKey));
+        this.order    = pkColumn::compareValues;
+        this.memtable = new ConcurrentSkipListMap<>(order);
+        try {
+            Files.createDirectories(BASE_DIR);
+            this.dir = Files.createTempDirectory(BASE_DIR, table + "-");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        OPEN.add(this);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(String pk) {
+        byte[] v = lookup(pk);
+        return v != null && v != SSTable.TOMBSTONE;
+    }
+
+    @Override
+    public Map<String, String> get(String pk) {
+        byte[] v = lookup(pk);
+        return v == null || v == SSTable.TOMBSTONE ? null : toMap(decode(v));
+    }
+
+    /** 最新版本的值：null 为不存在，TOMBSTONE 为已删除 */
+    private byte[] lookup(String pk) {
+        byte[] v = memtable.get(pk);
+        if (v != null) return v;
+        files.readLock().lock();
+        try {
+            for (SSTable t : tables) {
+                v = t.get(pk);
+                if (v != null) return v;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            files.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void insert(String pk, Map<String, String> row) {
+        String[] values = new String[columns.size()];
+        for (int i = 0; i < values.length; i++) values[i] = row.get(columns.get(i).getName());
+        put(pk, encode(values));
+        size++;
+    }
+
+    @Override
+    public void update(String pk, Map<String, String> newValues) {
+        byte[] v = lookup(pk);
+        if (v == null || v == SSTable.TOMBSTONE) return;
+        String[] values = decode(v);
+        newValues.forEach((c, val) -> {
+            Integer ci = colIndex.get(c);
+            if (ci != null) values[ci] = val;
+        });
+        put(pk, encode(values));
+    }
+
+    @Override
+    public boolean remove(String pk) {
+        if (!containsKey(pk)) return false;
+        put(pk, SSTable.TOMBSTONE);
+        size--;
+        return true;
+    }
+
+    @Override
+    public List<String> keysWhere(String col, String val) {
+        List<String> keys = new ArrayList<>();
+        Integer ci = colIndex.get(col);
+        if (ci == null) return keys;
+        scan(null, (pk, values) -> {
+            if (val.equals(values[ci])) keys.add(pk);
+            return true;
+        });
+        return keys;
+    }
+
+    @Override
+    public List<Map<String, String>> selectWhere(String col, String val) {
+        List<Map<String, String>> result = new ArrayList<>();
+        Integer ci = colIndex.get(col);
+        if (ci == null) return result;
+        if (columns.get(ci) == pkColumn) {
+            Map<String, String> row = get(val);
+            if (row != null) result.add(row);
+            return result;
+        }
+        scan(null, (pk, values) -> {
+            if (val.equals(values[ci])) result.add(toMap(values));
+            return true;
+        });
+        return result;
+    }
+
+    @Override
+    public List<String> keysInRange(String col, KeyRange range) {
+        List<String> keys = new ArrayList<>();
+        inRange(col, range, (pk, values) -> keys.add(pk));
+        return keys;
+    }
+
+    @Override
+    public List<Map<String, String>> selectRange(String col, KeyRange range) {
+        List<Map<String, String>> result = new ArrayList<>();
+        inRange(col, range, (pk, values) -> result.add(toMap(values)));
+        return result;
+    }
+
+    /** 主键范围从下界开始归并、超出上界即停；其他列全表扫描 */
+    private void inRange(String col, KeyRange range, RowSink sink) {
+        Integer ci = colIndex.get(col);
+        if (ci == null) return;
+        Column c = columns.get(ci);
+        if (c == pkColumn) {
+            scan(range.getLow(), (pk, values) -> {
+                if (range.aboveHigh(c, pk)) return false;
+                if (range.contains(c, pk)) sink.accept(pk, values);
+                return true;
+            });
+        } else {
+            scan(null, (pk, values) -> {
+                if (range.contains(c, values[ci])) sink.accept(pk, values);
+                return true;
+            });
+        }
+    }
+
+    @Override
+    public List<Map<String, String>> selectAll() {
+        List<Map<String, String>> result = new ArrayList<>(size);
+        scan(null, (pk, values) -> {
+            result.add(toMap(values));
+            return true;
+        });
+        return result;
+    }
+
+    @Override
+    public void forEachAfter(String afterPk, Predicate<Map<String, String>> visitor) {
+        scan(afterPk, (pk, values) -> afterPk != null && order.compare(pk, afterPk) == 0
+                || visitor.test(toMap(values)));
+    }
+
+    @Override
+    public int clear() {
+        int n = size;
+        files.writeLock().lock();
+        try {
+            generation++;
+            deleteAll();
+            tables = List.of();
+        } finally {
+            files.writeLock().unlock();
+        }
+        memtable = new ConcurrentSkipListMap<>(order);
+        memtableBytes = 0;
+        size = 0;
+        return n;
+    }
+
+    @Override
+    public List<Map<String, String>> scanSlot(int slot, String afterPk, int limit) {
+        List<Map<String, String>> result = new ArrayList<>();
+        for (Map.Entry<String, byte[]> e : slotVersions(slot, afterPk).entrySet()) {
+            if (result.size() >= limit) break;
+            if (e.getValue() != SSTable.TOMBSTONE) result.add(toMap(decode(e.getValue())));
+        }
+        return result;
+    }
+
+    @Override
+    public int deleteSlot(int slot) {
+        int deleted = 0;
+        for (Map.Entry<String, byte[]> e : slotVersions(slot, null).entrySet()) {
+            if (e.getValue() == SSTable.TOMBSTONE) continue;
+            put(e.getKey(), SSTable.TOMBSTONE);
+            size--;
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * 槽内主键（字典序）在 afterPk 之后的各主键最新版本（可能是删除标记），按字典序排列：
+     * 遍历 memtable，SSTable 只读含该槽记录的块，不做全表归并
+     */
+    private TreeMap<String, byte[]> slotVersions(int slot, String afterPk) {
+        TreeMap<String, byte[]> versions = new TreeMap<>();
+        files.readLock().lock();
+        try {
+            // 从新到旧，先见到的版本最新
+            for (Map.Entry<String, byte[]> e : memtable.entrySet()) {
+                addVersion(versions, slot, afterPk, e.getKey(), e.getValue());
+            }
+            for (SSTable t : tables) {
+                SSTable.Cursor c = t.slotCursor(slot);
+                while (c.next()) addVersion(versions, slot, afterPk, c.key, c.value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            files.readLock().unlock();
+        }
+        return versions;
+    }
+
+    private void addVersion(TreeMap<String, byte[]> versions, int slot, String afterPk, String pk, byte[] value) {
+        if (slotOf.applyAsInt(pk) != slot || (afterPk != null && pk.compareTo(afterPk) <= 0)) return;
+        versions.putIfAbsent(pk, value);
+    }
+
+    @Override
+    public Frozen freeze() {
+        flush();
+        files.readLock().lock();
+        try {
+            List<SSTable> pinned = tables;
+            for (SSTable t : pinned) t.retain();
+            return new View(pinned);
+        } finally {
+            files.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String usage() {
+        long disk = 0;
+        long heap = 0;
+        List<SSTable> current = tables;
+        try {
+            for (SSTable t : current) {
+                disk += t.fileSize();
+                heap += t.heapBytes();
+            }
+        } catch (IOException e) {
+            // 文件刚被合并替换
+        }
+        return String.format("rows=%d memtable=%d KB sstables=%d (%d KB on disk, %d KB bloom+index on heap) compactions=%d",
+                size, memtableBytes >> 10, current.size(), disk >> 10, heap >> 10, compactions);
+    }
+
+    @Override
+    public void close() {
+        files.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            generation++;
+            deleteAll();
+            tables = List.of();
+            Files.deleteIfExists(dir);
+        } catch (DirectoryNotEmptyException e) {
+            // 快照仍持有文件，快照结束时删除
+        } catch (IOException e) {
+            System.err.println("[LSM] Failed to remove " + dir + ": " + e.getMessage());
+        } finally {
+            files.writeLock().unlock();
+        }
+        OPEN.remove(this);
+    }
+
+    /** 快照视图：冻结时的 SSTable（已加引用）按主键归并，写出存活的行 */
+    private final class View implements Frozen {
+        private final List<SSTable> pinned;
+        private final Iterator<Map.Entry<String, byte[]>> rows;
+
+        View(List<SSTable> pinned) {
+            this.pinned = pinned;
+            try {
+                this.rows = live(new Merge(pinned, null, null));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int next(int limit, DataOutput out) throws IOException {
+            int n = 0;
+            try {
+                for (; n < limit && rows.hasNext(); n++) writeRecord(out, rows.next().getValue());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return n;
+        }
+
+        /** 行记录（每列 [长度][UTF-8]）转为快照行格式：TEXT 原样拷出，INT 写 4 字节整数 */
+        private void writeRecord(DataOutput out, byte[] record) throws IOException {
+            ByteBuffer b = ByteBuffer.wrap(record);
+            for (Column c : columns) {
+                int len = b.getInt();
+                if (c.isInt()) {
+                    out.writeInt(Integer.parseInt(new String(record, b.position(), len, StandardCharsets.UTF_8)));
+                } else {
+                    out.writeInt(len);
+                    out.write(record, b.position(), len);
+                }
+                b.position(b.position() + len);
+            }
+        }
+
+        @Override
+        public void release() {
+            for (SSTable t : pinned) {
+                try {
+                    t.release();
+                } catch (IOException e) {
+                    System.err.println("[LSM] Failed to delete SSTable: " + e.getMessage());
+                }
+            }
+            // 表在快照期间被删除时，目录等最后的文件删除后再删
+            files.readLock().lock();
+            try {
+                if (closed) Files.deleteIfExists(dir);
+            } catch (IOException e) {
+                System.err.println("[LSM] Failed to remove " + dir + ": " + e.getMessage());
+            } finally {
+                files.readLock().unlock();
+            }
+        }
+    }
+
+    // ---- 写入与刷盘 ----
+
+    private void put(String pk, byte[] value) {
+        byte[] old = memtable.put(pk, value);
+        memtableBytes += old == null ? 64 + pk.length() * 2L + value.length : value.length - old.length;
+        if (memtableBytes >= memtableLimit) flush();
+    }
+
+    /** memtable 写成新的 SSTable（调用方持有表的写锁），文件数达到阈值时提交后台合并 */
+    private void flush() {
+        if (memtable.isEmpty()) return;
+        try {
+            SSTable t = SSTable.write(newFile(), memtable.entrySet().iterator(), memtable.size(), order, slotOf);
+            files.writeLock().lock();
+            try {
+                List<SSTable> next = new ArrayList<>(tables.size() + 1);
+                next.add(t);
+                next.addAll(tables);
+                tables = List.copyOf(next);
+                if (next.size() >= compactAt && !compacting) {
+                    compacting = true;
+                    COMPACTOR.execute(this::compact);
+                }
+            } finally {
+                files.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        memtable = new ConcurrentSkipListMap<>(order);
+        memtableBytes = 0;
+    }
+
+    /** 把当前所有 SSTable 合并为一个（包含最旧的文件，删除标记可以丢弃） */
+    private void compact() {
+        List<SSTable> inputs;
+        int gen;
+        files.readLock().lock();
+        try {
+            inputs = tables;
+            gen = generation;
+        } finally {
+            files.readLock().unlock();
+        }
+        SSTable merged = null;
+        try {
+            Path out = newFile();
+            long expected = 0;
+            for (SSTable t : inputs) expected += t.getCount();
+            merged = SSTable.write(out, live(new Merge(inputs, null, null)), (int) Math.min(Integer.MAX_VALUE, expected),
+                    order, slotOf);
+            files.writeLock().lock();
+            try {
+                if (gen != generation) {
+                    merged.release();
+                    return;
+                }
+                // 合并期间新写出的文件保留在前面
+                List<SSTable> next = new ArrayList<>(tables);
+                next.removeAll(inputs);
+                next.add(merged);
+                tables = List.copyOf(next);
+                for (SSTable t : inputs) t.release();
+                compactions++;
+            } finally {
+                files.writeLock().unlock();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // 合并期间表被清空或删除时输入文件已关闭，不算失败
+            files.readLock().lock();
+            try {
+                if (gen == generation) System.err.println("[LSM] Compaction failed in " + dir + ": " + e.getMessage());
+            } finally {
+                files.readLock().unlock();
+            }
+        } finally {
+            files.writeLock().lock();
+            try {
+                compacting = false;
+                if (tables.size() >= compactAt && !closed) {
+                    compacting = true;
+                    COMPACTOR.execute(this::compact);
+                }
+            } finally {
+                files.writeLock().unlock();
+            }
+        }
+    }
+
+    /** 归并结果中存活的行（丢弃删除标记），供合并时边读边写，不把整个结果放进堆 */
+    private static Iterator<Map.Entry<String, byte[]>> live(Merge merge) {
+        return new Iterator<>() {
+            private Map.Entry<String, byte[]> next;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (next == null && merge.next()) {
+                        if (merge.value != SSTable.TOMBSTONE) next = Map.entry(merge.key, merge.value);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Map.Entry<String, byte[]> e = next;
+                next = null;
+                return e;
+            }
+        };
+    }
+
+    private synchronized Path newFile() {
+        return dir.resolve(String.format("%08d.sst", nextFile++));
+    }
+
+    private void deleteAll() {
+        for (SSTable t : tables) {
+            try {
+                t.release();
+            } catch (IOException e) {
+                System.err.println("[LSM] Failed to delete SSTable: " + e.getMessage());
+            }
+        }
+    }
+
+    // ---- 多路归并扫描 ----
+
+    /** 扫描回调：返回 false 时提前结束 */
+    private interface RowScan {
+        boolean accept(String pk, String[] values);
+    }
+
+    private interface RowSink {
+        void accept(String pk, String[] values);
+    }
+
+    /** 从 from（含，null 为从头）开始按主键顺序遍历所有存活的行 */
+    private void scan(String from, RowScan visitor) {
+        files.readLock().lock();
+        try {
+            Merge merge = new Merge(tables, memtable, from);
+            while (merge.next()) {
+                if (merge.value == SSTable.TOMBSTONE) continue;
+                if (!visitor.accept(merge.key, decode(merge.value))) return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            files.readLock().unlock();
+        }
+    }
+
+    /**
+     * memtable 与各 SSTable 游标的多路归并：同一主键只输出最新来源（memtable 最新，其次列表靠前的文件）的版本，
+     * 删除标记也会输出，由调用方决定是否跳过
+     */
+    private final class Merge {
+        private final PriorityQueue<Source> heap;
+        String key;
+        byte[] value;
+
+        Merge(List<SSTable> sstables, NavigableMap<String, byte[]> mem, String from) throws IOException {
+            heap = new PriorityQueue<>((a, b) -> {
+                int c = order.compare(a.key, b.key);
+                return c != 0 ? c : Integer.compare(a.rank, b.rank);
+            });
+            if (mem != null) {
+                Iterator<Map.Entry<String, byte[]>> it =
+                        (from == null ? mem : mem.tailMap(from, true)).entrySet().iterator();
+                offer(new Source(-1, null, it));
+            }
+            for (int i = 0; i < sstables.size(); i++) offer(new Source(i, sstables.get(i).cursor(from), null));
+        }
+
+        private void offer(Source s) throws IOException {
+            if (s.advance()) heap.add(s);
+        }
+
+        boolean next() throws IOException {
+            Source top = heap.poll();
+            if (top == null) return false;
+            key   = top.key;
+            value = top.value;
+            offer(top);
+            // 更旧的来源中同一主键的版本被覆盖
+            while (!heap.isEmpty() && order.compare(heap.peek().key, key) == 0) offer(heap.poll());
+            return true;
+        }
+    }
+
+    /** 归并的一路来源：memtable 迭代器或 SSTable 游标，rank 越小越新 */
+    private static final class Source {
+        final int rank;
+        final SSTable.Cursor cursor;
+        final Iterator<Map.Entry<String, byte[]>> it;
+        String key;
+        byte[] value;
+
+        Source(int rank, SSTable.Cursor cursor, Iterator<Map.Entry<String, byte[]>> it) {
+            this.rank   = rank;
+            this.cursor = cursor;
+            this.it     = it;
+        }
+
+        boolean advance() throws IOException {
+            if (it != null) {
+                if (!it.hasNext()) return false;
+                Map.Entry<String, byte[]> e = it.next();
+                key   = e.getKey();
+                value = e.getValue();
+                return true;
+            }
+            if (!cursor.next()) return false;
+            key   = cursor.key;
+            value = cursor.value;
+            return true;
+        }
+    }
+
+    // ---- 行编码：按表定义列序 [长度 int][UTF-8]* ----
+
+    private static byte[] encode(String[] values) {
+        byte[][] parts = new byte[values.length][];
+        int len = 0;
+        for (int i = 0; i < values.length; i++) {
+            parts[i] = values[i].getBytes(StandardCharsets.UTF_8);
+            len += 4 + parts[i].length;
+        }
+        ByteBuffer b = ByteBuffer.allocate(len);
+        for (byte[] p : parts) b.putInt(p.length).put(p);
+        return b.array();
+    }
+
+    private String[] decode(byte[] record) {
+        ByteBuffer b = ByteBuffer.wrap(record);
+        String[] values = new String[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            int len = b.getInt();
+            values[i] = new String(record, b.position(), len, StandardCharsets.UTF_8);
+            b.position(b.position() + len);
+        }
+        return values;
+    }
+
+    private Map<String, String> toMap(String[] values) {
+        Map<String, String> row = new LinkedHashMap<>(values.length * 2);
+        for (int i = 0; i < values.length; i++) row.put(columns.get(i).getName(), values[i]);
+        return row;
+    }
+}
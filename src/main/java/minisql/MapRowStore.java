@@ -0,0 +1,179 @@
+package minisql;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * 行式存储（默认）：主键值 → (列名→列值)，保存在按主键有序的跳表中（INT 主键按数值排序），
+ * 主键范围查询直接截取子表；另维护槽 → 槽内主键（有序）的索引，供按槽迁移数据时分批扫描
+ */
+final class MapRowStore implements RowStore {
+    private final String primaryKey;
+    private final Map<String, Column> columns = new HashMap<>();
+    // 主键值 → (列名→列值)，按主键有序
+    private final ConcurrentSkipListMap<String, Map<String, String>> rows;
+    // 主键值 → 槽（由表的分区方式决定）
+    private final ToIntFunction<String> slotOf;
+    // 槽 → 该槽内的主键（有序）
+    private final Map<Integer, NavigableSet<String>> slotIndex = new HashMap<>();
+
+    MapRowStore(List<Column> columns, String primaryKey, ToIntFunction<String> slotOf) {
+        this.primaryKey = primaryKey;
+        for (Column c : columns) this.columns.put(c.getName(), c);
+        Column pk = this.columns.get(primaryKey);
+        this.rows   = new ConcurrentSkipListMap<>(pk::compareValues);
+        this.slotOf = slotOf;
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public boolean containsKey(String pk) {
+        return rows.containsKey(pk);
+    }
+
+    @Override
+    public Map<String, String> get(String pk) {
+        Map<String, String> row = rows.get(pk);
+        return row == null ? null : new LinkedHashMap<>(row);
+    }
+
+    @Override
+    public void insert(String pk, Map<String, String> row) {
+        rows.put(pk, new LinkedHashMap<>(row));
+        slotIndex.computeIfAbsent(slotOf.applyAsInt(pk), k -> new TreeSet<>()).add(pk);
+    }
+
+    @Override
+    public void update(String pk, Map<String, String> newValues) {
+        Map<String, String> row = rows.get(pk);
+        if (row != null) row.putAll(newValues);
+    }
+
+    @Override
+    public boolean remove(String pk) {
+        if (rows.remove(pk) == null) return false;
+        int slot = slotOf.applyAsInt(pk);
+        NavigableSet<String> keys = slotIndex.get(slot);
+        if (keys != null && keys.remove(pk) && keys.isEmpty()) slotIndex.remove(slot);
+        return true;
+    }
+
+    @Override
+    public List<String> keysWhere(String col, String val) {
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> e : rows.entrySet()) {
+            if (val.equals(e.getValue().get(col))) keys.add(e.getKey());
+        }
+        return keys;
+    }
+
+    @Override
+    public List<Map<String, String>> selectWhere(String col, String val) {
+        List<Map<String, String>> result = new ArrayList<>();
+        if (primaryKey.equals(col)) {
+            Map<String, String> row = get(val);
+            if (row != null) result.add(row);
+            return result;
+        }
+        for (Map<String, String> row : rows.values()) {
+            if (val.equals(row.get(col))) result.add(new LinkedHashMap<>(row));
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> keysInRange(String col, KeyRange range) {
+        if (primaryKey.equals(col)) return new ArrayList<>(subMap(range).keySet());
+        Column c = columns.get(col);
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> e : rows.entrySet()) {
+            if (range.contains(c, e.getValue().get(col))) keys.add(e.getKey());
+        }
+        return keys;
+    }
+
+    @Override
+    public List<Map<String, String>> selectRange(String col, KeyRange range) {
+        List<Map<String, String>> result = new ArrayList<>();
+        if (primaryKey.equals(col)) {
+            for (Map<String, String> row : subMap(range).values()) result.add(new LinkedHashMap<>(row));
+            return result;
+        }
+        Column c = columns.get(col);
+        for (Map<String, String> row : rows.values()) {
+            if (range.contains(c, row.get(col))) result.add(new LinkedHashMap<>(row));
+        }
+        return result;
+    }
+
+    /** 主键范围对应的子表（跳表定位到下界后顺序读取） */
+    private NavigableMap<String, Map<String, String>> subMap(KeyRange range) {
+        NavigableMap<String, Map<String, String>> m = rows;
+        if (range.getLow() != null && range.getHigh() != null) {
+            // 下界大于上界（或相等但有一端不含）时为空区间，子表视图不接受这样的边界
+            int c = rows.comparator().compare(range.getLow(), range.getHigh());
+            if (c > 0 || (c == 0 && !(range.isLowInclusive() && range.isHighInclusive()))) {
+                return Collections.emptyNavigableMap();
+            }
+        }
+        if (range.getLow() != null) m = m.tailMap(range.getLow(), range.isLowInclusive());
+        if (range.getHigh() != null) m = m.headMap(range.getHigh(), range.isHighInclusive());
+        return m;
+    }
+
+    @Override
+    public List<Map<String, String>> selectAll() {
+        List<Map<String, String>> result = new ArrayList<>(rows.size());
+        for (Map<String, String> row : rows.values()) {
+            result.add(new LinkedHashMap<>(row));
+        }
+        return result;
+    }
+
+    @Override
+    public void forEach(Consumer<Map<String, String>> visitor) {
+        for (Map<String, String> row : rows.values()) visitor.accept(row);
+    }
+
+    @Override
+    public void forEachAfter(String afterPk, Predicate<Map<String, String>> visitor) {
+        for (Map<String, String> row : (afterPk == null ? rows : rows.tailMap(afterPk, false)).values()) {
+            if (!visitor.test(row)) return;
+        }
+    }
+
+    @Override
+    public int clear() {
+        int n = rows.size();
+        rows.clear();
+        slotIndex.clear();
+        return n;
+    }
+
+    @Override
+    public List<Map<String, String>> scanSlot(int slot, String afterPk, int limit) {
+        List<Map<String, String>> result = new ArrayList<>();
+        NavigableSet<String> keys = slotIndex.get(slot);
+        if (keys == null) return result;
+        for (String k : afterPk == null ? keys : keys.tailSet(afterPk, false)) {
+            if (result.size() >= limit) break;
+            result.add(new LinkedHashMap<>(rows.get(k)));
+        }
+        return result;
+    }
+
+    @Override
+    public int deleteSlot(int slot) {
+        NavigableSet<String> keys = slotIndex.remove(slot);
+        if (keys == null) return 0;
+        for (String k : keys) rows.remove(k);
+        return keys.size();
+    }
+}
@@ -0,0 +1,548 @@
+package minisql;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * 堆外存储：行内容以紧凑二进制格式保存在堆外 slab 中（见 SlabAllocator），堆上只有主键 → 地址的开放寻址索引，
+ * 千万行级别的表不再产生千万个 Map/String 对象，GC 停顿不随行数增长
+ *  - 行格式：[内容长度 int] 主键列值，其余列按表定义顺序；INT 为 4 字节整数，TEXT 为 [长度 int][UTF-8]
+ *  - 主键索引：线性探测的 long 数组（元素为 地址+1，0 为空位，-1 为已删除）与并行的哈希值数组，
+ *    比较时直接读 slab 中行首的主键字节，不另存主键字符串
+ *  - 更新后块大小级别不变则原地覆盖，否则写入新块、旧块进入空闲链表；删除的块同样复用
+ *  - 快照（freeze）：复制主键索引与 slab 列表，冻结期间更新总是写新块、释放推迟到快照结束，
+ *    快照线程直接从 slab 按列序拷出字段字节；恢复时反过来把快照行的字节直接拷进 slab，都不经过堆上的 Map
+ * 有序操作（selectAll、主键范围、按槽扫描、游标分批读取）遍历索引取出匹配的行后按主键排序，代价与表大小成正比；
+ * 这种存储面向以主键点查与写入为主的大表
+ */
+final class OffHeapRowStore implements RowStore {
+    private static final int HEADER = 4;
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = -1;
+
+    private final List<Column> columns;
+    // 列名 → 表定义中的列下标
+    private final Map<String, Integer> colIndex = new HashMap<>();
+    // 行内字段顺序：主键在前，其余按表定义顺序（元素为表定义中的列下标）
+    private final int[] fieldOrder;
+    // 列下标 → 行内字段序号
+    private final int[] fieldOf;
+    private final Column pkColumn;
+    private final ToIntFunction<String> slotOf;
+    private SlabAllocator slabs = new SlabAllocator();
+    // 进行中的快照，没有时为 null
+    private View view;
+
+    // 主键索引
+    private long[] table = new long[16];
+    private int[] hashes = new int[16];
+    private int size;
+    // 非空位置数（含已删除）
+    private int used;
+
+    OffHeapRowStore(List<Column> columns, String primaryKey, ToIntFunction<String> slotOf) {
+        this.columns = List.copyOf(columns);
+        this.slotOf  = slotOf;
+        for (int i = 0; i < columns.size(); i++) colIndex.put(columns.get(i).getName(), i);
+        int pk = colIndex.get(primaryKey);
+        this.pkColumn   = columns.get(pk);
+        this.fieldOrder = new int[columns.size()];
+        this.fieldOf    = new int[columns.size()];
+        fieldOrder[0] = pk;
+        for (int i = 0, f = 1; i < columns.size(); i++) if (i != pk) fieldOrder[f++] = i;
+        for (int f = 0; f < fieldOrder.length; f++) fieldOf[fieldOrder[f]] = f;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(String pk) {
+        return find(pk) >= 0;
+    }
+
+    @Override
+    public Map<String, String> get(String pk) {
+        int i = find(pk);
+        return i < 0 ? null : toMap(decode(table[i] - 1));
+    }
+
+    @Override
+    public void insert(String pk, Map<String, String> row) {
+        long addr = write(encode(valuesOf(row)));
+        put(hash(encodeField(pkColumn, pk)), addr);
+        size++;
+    }
+
+    @Override
+    public void update(String pk, Map<String, String> newValues) {
+        int i = find(pk);
+        if (i < 0) return;
+        long addr = table[i] - 1;
+        String[] values = decode(addr);
+        newValues.forEach((c, v) -> {
+            Integer ci = colIndex.get(c);
+            if (ci != null) values[ci] = v;
+        });
+        byte[] record = encode(values);
+        int oldSize = recordSize(addr);
+        if (!frozen() && SlabAllocator.blockSize(oldSize) == SlabAllocator.blockSize(record.length)) {
+            slabs.slab(addr).put(SlabAllocator.offset(addr), record);
+            return;
+        }
+        table[i] = write(record) + 1;
+        free(addr);
+    }
+
+    @Override
+    public boolean remove(String pk) {
+        int i = find(pk);
+        if (i < 0) return false;
+        removeAt(i);
+        return true;
+    }
+
+    private void removeAt(int i) {
+        free(table[i] - 1);
+        table[i] = TOMBSTONE;
+        size--;
+    }
+
+    /** 释放一条记录的块；快照仍在读当前分配器时推迟到快照结束 */
+    private void free(long addr) {
+        if (frozen()) view.defer(addr);
+        else slabs.free(addr, recordSize(addr));
+    }
+
+    /** 快照是否仍在读当前分配器中的块 */
+    private boolean frozen() {
+        return view != null && view.allocator == slabs;
+    }
+
+    @Override
+    public List<String> keysWhere(String col, String val) {
+        List<String> keys = new ArrayList<>();
+        Integer ci = colIndex.get(col);
+        if (ci == null) return keys;
+        byte[] probe = encodeProbe(columns.get(ci), val);
+        if (probe == null) return keys;
+        for (long e : table) {
+            if (e > 0 && fieldEquals(e - 1, fieldOf[ci], probe)) keys.add(decodeField(e - 1, 0));
+        }
+        return keys;
+    }
+
+    @Override
+    public List<Map<String, String>> selectWhere(String col, String val) {
+        List<Map<String, String>> result = new ArrayList<>();
+        Integer ci = colIndex.get(col);
+        if (ci == null) return result;
+        if (fieldOf[ci] == 0) {
+            Map<String, String> row = get(val);
+            if (row != null) result.add(row);
+            return result;
+        }
+        byte[] probe = encodeProbe(columns.get(ci), val);
+        if (probe == null) return result;
+        for (long e : table) {
+            if (e > 0 && fieldEquals(e - 1, fieldOf[ci], probe)) result.add(toMap(decode(e - 1)));
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> keysInRange(String col, KeyRange range) {
+        List<String> keys = new ArrayList<>();
+        for (Entry e : inRange(col, range)) keys.add(e.pk);
+        return keys;
+    }
+
+    @Override
+    public List<Map<String, String>> selectRange(String col, KeyRange range) {
+        List<Map<String, String>> result = new ArrayList<>();
+        for (Entry e : inRange(col, range)) result.add(toMap(decode(e.addr)));
+        return result;
+    }
+
+    /** 列值落在范围内的行，主键列时按主键排序 */
+    private List<Entry> inRange(String col, KeyRange range) {
+        List<Entry> result = new ArrayList<>();
+        Integer ci = colIndex.get(col);
+        if (ci == null) return result;
+        Column c = columns.get(ci);
+        int field = fieldOf[ci];
+        for (long e : table) {
+            if (e <= 0) continue;
+            if (range.contains(c, decodeField(e - 1, field))) result.add(new Entry(decodeField(e - 1, 0), e - 1));
+        }
+        if (field == 0) result.sort((a, b) -> pkColumn.compareValues(a.pk, b.pk));
+        return result;
+    }
+
+    @Override
+    public List<Map<String, String>> selectAll() {
+        List<Entry> entries = new ArrayList<>(size);
+        for (long e : table) {
+            if (e > 0) entries.add(new Entry(decodeField(e - 1, 0), e - 1));
+        }
+        entries.sort((a, b) -> pkColumn.compareValues(a.pk, b.pk));
+        List<Map<String, String>> result = new ArrayList<>(size);
+        for (Entry e : entries) result.add(toMap(decode(e.addr)));
+        return result;
+    }
+
+    @Override
+    public void forEachAfter(String afterPk, Predicate<Map<String, String>> visitor) {
+        List<Entry> entries = new ArrayList<>();
+        for (long e : table) {
+            if (e <= 0) continue;
+            String pk = decodeField(e - 1, 0);
+            if (afterPk == null || pkColumn.compareValues(pk, afterPk) > 0) entries.add(new Entry(pk, e - 1));
+        }
+        entries.sort((a, b) -> pkColumn.compareValues(a.pk, b.pk));
+        for (Entry e : entries) {
+            if (!visitor.test(toMap(decode(e.addr)))) return;
+        }
+    }
+
+    @Override
+    public int clear() {
+        int n = size;
+        // 快照仍在读的分配器交给快照，结束时释放
+        if (frozen()) slabs = new SlabAllocator();
+        else slabs.release();
+        table  = new long[16];
+        hashes = new int[16];
+        size = 0;
+        used = 0;
+        return n;
+    }
+
+    @Override
+    public List<Map<String, String>> scanSlot(int slot, String afterPk, int limit) {
+        // 只保留字典序最小的 limit 个（堆顶为其中最大的）
+        PriorityQueue<Entry> top = new PriorityQueue<>((a, b) -> b.pk.compareTo(a.pk));
+        for (long e : table) {
+            if (e <= 0) continue;
+            String pk = decodeField(e - 1, 0);
+            if (slotOf.applyAsInt(pk) != slot || (afterPk != null && pk.compareTo(afterPk) <= 0)) continue;
+            if (top.size() < limit) {
+                top.add(new Entry(pk, e - 1));
+            } else if (pk.compareTo(top.peek().pk) < 0) {
+                top.poll();
+                top.add(new Entry(pk, e - 1));
+            }
+        }
+        List<Entry> entries = new ArrayList<>(top);
+        entries.sort((a, b) -> a.pk.compareTo(b.pk));
+        List<Map<String, String>> result = new ArrayList<>(entries.size());
+        for (Entry e : entries) result.add(toMap(decode(e.addr)));
+        return result;
+    }
+
+    @Override
+    public int deleteSlot(int slot) {
+        int deleted = 0;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] > 0 && slotOf.applyAsInt(decodeField(table[i] - 1, 0)) == slot) {
+                removeAt(i);
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public Frozen freeze() {
+        view = new View();
+        return view;
+    }
+
+    @Override
+    public void restore(ByteBuffer buf, int n, List<Column> columns, String primaryKey) {
+        int[] start = new int[columns.size()];
+        for (int r = 0; r < n; r++) {
+            int pos = buf.position();
+            for (int ci = 0; ci < start.length; ci++) {
+                start[ci] = pos;
+                pos += fieldLength(buf, pos, ci);
+            }
+            int len = pos - buf.position();
+            long addr = slabs.allocate(HEADER + len);
+            ByteBuffer slab = slabs.slab(addr);
+            int off = SlabAllocator.offset(addr);
+            slab.putInt(off, len);
+            off += HEADER;
+            for (int ci : fieldOrder) {
+                int flen = fieldLength(buf, start[ci], ci);
+                slab.put(off, buf, start[ci], flen);
+                off += flen;
+            }
+            byte[] key = new byte[fieldLength(buf, start[fieldOrder[0]], fieldOrder[0])];
+            buf.get(start[fieldOrder[0]], key);
+            put(hash(key), addr);
+            size++;
+            buf.position(pos);
+        }
+    }
+
+    @Override
+    public String usage() {
+        return String.format("rows=%d off-heap slabs=%d reserved=%d KB allocated=%d KB free=%d KB, heap index=%d KB",
+                size, slabs.getSlabCount(), slabs.getReserved() >> 10, slabs.getAllocated() >> 10,
+                slabs.getFreeBytes() >> 10, ((long) table.length * 12) >> 10);
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    // ---- 主键索引 ----
+
+    /** 主键所在的索引位置，不存在时返回 -1 */
+    private int find(String pk) {
+        byte[] key = encodeProbe(pkColumn, pk);
+        if (key == null) return -1;
+        int h = hash(key);
+        int mask = table.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            long e = table[i];
+            if (e == EMPTY) return -1;
+            if (e != TOMBSTONE && hashes[i] == h && keyEquals(e - 1, key)) return i;
+        }
+    }
+
+    private void put(int h, long addr) {
+        if ((used + 1) * 2 > table.length) rehash();
+        int mask = table.length - 1;
+        int i = h & mask;
+        while (table[i] > 0) i = (i + 1) & mask;
+        if (table[i] == EMPTY) used++;
+        table[i] = addr + 1;
+        hashes[i] = h;
+    }
+
+    /** 扩容（或只清理已删除的位置）后重新放置，哈希值已保存，无需读 slab */
+    private void rehash() {
+        long[] oldTable = table;
+        int[] oldHashes = hashes;
+        int capacity = table.length;
+        while ((size + 1) * 2 > capacity) capacity <<= 1;
+        table  = new long[capacity];
+        hashes = new int[capacity];
+        used = 0;
+        int mask = capacity - 1;
+        for (int j = 0; j < oldTable.length; j++) {
+            if (oldTable[j] <= 0) continue;
+            int i = oldHashes[j] & mask;
+            while (table[i] != EMPTY) i = (i + 1) & mask;
+            table[i]  = oldTable[j];
+            hashes[i] = oldHashes[j];
+            used++;
+        }
+    }
+
+    private static int hash(byte[] key) {
+        int h = Arrays.hashCode(key) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** slab 中行首的主键字段与 key 是否相同 */
+    private boolean keyEquals(long addr, byte[] key) {
+        ByteBuffer buf = slabs.slab(addr);
+        int off = SlabAllocator.offset(addr) + HEADER;
+        for (int j = 0; j < key.length; j++) {
+            if (buf.get(off + j) != key[j]) return false;
+        }
+        return true;
+    }
+
+    // ---- 行格式 ----
+
+    private long write(byte[] record) {
+        long addr = slabs.allocate(record.length);
+        slabs.slab(addr).put(SlabAllocator.offset(addr), record);
+        return addr;
+    }
+
+    private String[] valuesOf(Map<String, String> row) {
+        String[] values = new String[columns.size()];
+        for (int i = 0; i < values.length; i++) values[i] = row.get(columns.get(i).getName());
+        return values;
+    }
+
+    /** 按列下标给出的行值编码为一条记录 */
+    private byte[] encode(String[] values) {
+        byte[][] text = new byte[values.length][];
+        int len = 0;
+        for (int ci : fieldOrder) {
+            if (columns.get(ci).isInt()) {
+                len += 4;
+            } else {
+                text[ci] = values[ci].getBytes(StandardCharsets.UTF_8);
+                len += 4 + text[ci].length;
+            }
+        }
+        ByteBuffer b = ByteBuffer.allocate(HEADER + len);
+        b.putInt(len);
+        for (int ci : fieldOrder) {
+            if (text[ci] == null) {
+                b.putInt(Integer.parseInt(values[ci]));
+            } else {
+                b.putInt(text[ci].length);
+                b.put(text[ci]);
+            }
+        }
+        return b.array();
+    }
+
+    /** 单个字段的编码（与记录中的字节相同） */
+    private static byte[] encodeField(Column c, String value) {
+        if (c.isInt()) return ByteBuffer.allocate(4).putInt(Integer.parseInt(value)).array();
+        byte[] b = value.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 + b.length).putInt(b.length).put(b).array();
+    }
+
+    /** 查询值的字段编码；INT 列的值不是整数时不可能匹配，返回 null */
+    private static byte[] encodeProbe(Column c, String value) {
+        if (value == null) return null;
+        try {
+            return encodeField(c, value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** 从 pos 开始的第 ci 列字段的字节数（含 TEXT 的长度前缀） */
+    private int fieldLength(ByteBuffer buf, int pos, int ci) {
+        return columns.get(ci).isInt() ? 4 : 4 + buf.getInt(pos);
+    }
+
+    private int recordSize(long addr) {
+        return HEADER + slabs.slab(addr).getInt(SlabAllocator.offset(addr));
+    }
+
+    /** 第 field 个字段在 slab 中的位置 */
+    private int fieldPos(ByteBuffer buf, long addr, int field) {
+        int pos = SlabAllocator.offset(addr) + HEADER;
+        for (int f = 0; f < field; f++) {
+            pos += columns.get(fieldOrder[f]).isInt() ? 4 : 4 + buf.getInt(pos);
+        }
+        return pos;
+    }
+
+    private boolean fieldEquals(long addr, int field, byte[] probe) {
+        ByteBuffer buf = slabs.slab(addr);
+        int pos = fieldPos(buf, addr, field);
+        for (int j = 0; j < probe.length; j++) {
+            if (buf.get(pos + j) != probe[j]) return false;
+        }
+        return true;
+    }
+
+    private String decodeField(long addr, int field) {
+        ByteBuffer buf = slabs.slab(addr);
+        return readField(buf, fieldPos(buf, addr, field), columns.get(fieldOrder[field]));
+    }
+
+    private static String readField(ByteBuffer buf, int pos, Column c) {
+        if (c.isInt()) return Integer.toString(buf.getInt(pos));
+        byte[] b = new byte[buf.getInt(pos)];
+        buf.get(pos + 4, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** 解码整行，返回按列下标排列的值 */
+    private String[] decode(long addr) {
+        ByteBuffer buf = slabs.slab(addr);
+        String[] values = new String[columns.size()];
+        int pos = SlabAllocator.offset(addr) + HEADER;
+        for (int ci : fieldOrder) {
+            Column c = columns.get(ci);
+            values[ci] = readField(buf, pos, c);
+            pos += c.isInt() ? 4 : 4 + buf.getInt(pos);
+        }
+        return values;
+    }
+
+    private Map<String, String> toMap(String[] values) {
+        Map<String, String> row = new LinkedHashMap<>(values.length * 2);
+        for (int i = 0; i < values.length; i++) row.put(columns.get(i).getName(), values[i]);
+        return row;
+    }
+
+    /**
+     * 快照视图：冻结时刻主键索引与 slab 列表的副本。冻结期间表不再覆盖或回收这些块，
+     * 视图不持有表锁读取；按索引顺序（不是主键顺序）写出，恢复时与顺序无关
+     */
+    private final class View implements Frozen {
+        private final long[] index = table.clone();
+        private final List<ByteBuffer> buffers = slabs.buffers();
+        private final SlabAllocator allocator = slabs;
+        // 推迟到快照结束的释放
+        private long[] deferred = new long[16];
+        private int deferredCount;
+        // 下一个要读的索引位置
+        private int next;
+        private final int[] start = new int[columns.size()];
+        private byte[] scratch = new byte[64];
+
+        void defer(long addr) {
+            if (deferredCount == deferred.length) deferred = Arrays.copyOf(deferred, deferredCount * 2);
+            deferred[deferredCount++] = addr;
+        }
+
+        @Override
+        public int next(int limit, DataOutput out) throws IOException {
+            int n = 0;
+            for (; next < index.length && n < limit; next++) {
+                long e = index[next];
+                if (e <= 0) continue;
+                long addr = e - 1;
+                ByteBuffer buf = buffers.get((int) (addr >>> 32));
+                int pos = SlabAllocator.offset(addr) + HEADER;
+                for (int ci : fieldOrder) {
+                    start[ci] = pos;
+                    pos += fieldLength(buf, pos, ci);
+                }
+                for (int ci = 0; ci < start.length; ci++) {
+                    int len = fieldLength(buf, start[ci], ci);
+                    if (len > scratch.length) scratch = new byte[Math.max(len, scratch.length * 2)];
+                    buf.get(start[ci], scratch, 0, len);
+                    out.write(scratch, 0, len);
+                }
+                n++;
+            }
+            return n;
+        }
+
+        @Override
+        public void release() {
+            if (allocator != slabs) {
+                allocator.release();
+            } else {
+                for (int i = 0; i < deferredCount; i++) slabs.free(deferred[i], recordSize(deferred[i]));
+            }
+            view = null;
+        }
+    }
+
+    /** 排序用：主键与行地址 */
+    private static final class Entry {
+        final String pk;
+        final long addr;
+
+        Entry(String pk, long addr) {
+            this.pk   = pk;
+            this.addr = addr;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package minisql;
+
+import java.util.*;
+
+/**
+ * 执行结果：一条消息，或带列定义的结果行
+ *  - 文本协议使用 toText()，格式与原先 execute() 的返回值一致
+ *  - 二进制协议按列类型编码结果行
+ */
+public class QueryResult {
+    private final boolean error;
+    private final String message;
+    private final List<Column> columns;
+    private final List<Map<String, String>> rows;
+
+    private QueryResult(boolean error, String message,
+                        List<Column> columns, List<Map<String, String>> rows) {
+        this.error   = error;
+        this.message = message;
+        this.columns = columns;
+        this.rows    = rows;
+    }
+
+    /** 普通消息结果（如 "OK"、"Table created: users"） */
+    public static QueryResult message(String message) {
+        return new QueryResult(false, message, List.of(), List.of());
+    }
+
+    /** 错误结果（网络错误、超时等，区别于 SQL 层面的提示信息） */
+    public static QueryResult error(String message) {
+        return new QueryResult(true, message, List.of(), List.of());
+    }
+
+    /** 结果行；rows 为空时 toText() 返回 emptyMessage */
+    public static QueryResult rows(List<Column> columns, List<Map<String, String>> rows, String emptyMessage) {
+        return new QueryResult(false, emptyMessage, columns, rows);
+    }
+
+    public boolean isError() { return error; }
+    public String getMessage() { return message; }
+    public List<Column> getColumns() { return columns; }
+    public List<Map<String, String>> getRows() { return rows; }
+    public boolean hasRows() { return !rows.isEmpty(); }
+
+    /**
+     * 只保留给定的列（按给定顺序，重复的列只保留一次），消息不变
+     * @throws IllegalArgumentException 结果中没有该列
+     */
+    public QueryResult project(List<String> names) {
+        Map<String, Column> byName = new HashMap<>();
+        for (Column c : columns) byName.put(c.getName(), c);
+        List<Column> kept = new ArrayList<>();
+        for (String n : new LinkedHashSet<>(names)) {
+            Column c = byName.get(n);
+            if (c == null) throw new IllegalArgumentException("Unknown column: " + n);
+            kept.add(c);
+        }
+        List<Map<String, String>> out = new ArrayList<>(rows.size());
+        for (Map<String, String> r : rows) {
+            Map<String, String> p = new LinkedHashMap<>();
+            for (Column c : kept) p.put(c.getName(), r.get(c.getName()));
+            out.add(p);
+        }
+        return new QueryResult(error, message, kept, out);
+    }
+
+    /** 文本形式：每行一个 {列=值} 映射，无结果行时为消息 */
+    public String toText() {
+        if (rows.isEmpty()) return error ? "Error: " + message : message;
+        StringBuilder sb = new StringBuilder();
+        for (Map<String, String> r : rows) {
+            if (sb.length() > 0) sb.append("\n");
+            sb.append(r);
+        }
+        return sb.toString();
+    }
+
+    /** 文本结果按行拆分 */
+    public List<String> toLines() {
+        if (rows.isEmpty()) return Arrays.asList(toText().split("\n", -1));
+        List<String> lines = new ArrayList<>(rows.size());
+        for (Map<String, String> r : rows) lines.add(r.toString());
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+}
@@ -0,0 +1,49 @@
+package minisql;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分批读取的查询结果（游标）：每次 next 返回下一批行（各批列定义相同），返回最后一批后 isDone 为 true。
+ * 服务端只在对端请求下一批时才读取，峰值内存与批大小而不是结果总行数成正比
+ */
+public interface ResultCursor extends AutoCloseable {
+
+    /** 下一批，至多约 batchRows 行；没有结果行时返回结果的提示消息 */
+    QueryResult next(int batchRows);
+
+    /** 最后一批是否已经返回 */
+    boolean isDone();
+
+    /** 释放游标（未取完时提前结束） */
+    @Override
+    default void close() {
+    }
+
+    /** 已在内存中的结果按批返回（消息、聚合、ORDER BY 等不能流式执行的语句） */
+    static ResultCursor of(QueryResult result) {
+        return new ResultCursor() {
+            private int pos;
+            private boolean done;
+
+            @Override
+            public QueryResult next(int batchRows) {
+                List<Map<String, String>> rows = result.getRows();
+                if (rows.isEmpty()) {
+                    done = true;
+                    return result;
+                }
+                int end = Math.min(rows.size(), pos + Math.max(1, batchRows));
+                QueryResult batch = QueryResult.rows(result.getColumns(), rows.subList(pos, end), result.getMessage());
+                pos = end;
+                done = pos == rows.size();
+                return batch;
+            }
+
+            @Override
+            public boolean isDone() {
+                return done;
+            }
+        };
+    }
+}
@@ -0,0 +1,129 @@
+package minisql;
+
+import minisql.parser.SelectItem;
+import minisql.parser.SelectItem.Function;
+import minisql.parser.SelectStatement;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * ORDER BY / LIMIT：
+ *  - region（或单机执行器）用大小为 offset + limit 的堆取本地前 K 行并排好序
+ *  - Master 对各 region 已排序的结果做堆上的 k 路归并，取到 offset + limit 行即停止
+ * NULL 视为最小值；没有 ORDER BY 时只截取行数（顺序不保证）
+ */
+public final class RowOrder {
+    private RowOrder() {
+    }
+
+    /**
+     * 按 ORDER BY 项比较结果行；列按 columns 中的类型比较，SUM/AVG 的结果（TEXT）按数值比较
+     * @throws IllegalArgumentException 结果中没有该列
+     */
+    public static Comparator<Map<String, String>> comparator(SelectStatement st, List<Column> columns) {
+        SelectItem item = st.getOrderBy();
+        String label = item.label();
+        Column column = null;
+        for (Column c : columns) {
+            if (c.getName().equals(label)) column = c;
+        }
+        if (column == null) throw new IllegalArgumentException("Unknown column: " + label);
+        boolean numeric = item.getFunction() == Function.SUM || item.getFunction() == Function.AVG;
+        Comparator<String> values = numeric ? Comparator.comparing(BigDecimal::new) : column::compareValues;
+        Comparator<Map<String, String>> c = Comparator.comparing(r -> r.get(label), Comparator.nullsFirst(values));
+        return st.isDescending() ? c.reversed() : c;
+    }
+
+    /** 对完整的结果应用 ORDER BY 与 LIMIT/OFFSET（单机执行器、Master 上合并后的聚合结果） */
+    public static QueryResult apply(SelectStatement st, QueryResult result) {
+        if (!st.isOrderedOrLimited()) return result;
+        Comparator<Map<String, String>> order = st.getOrderBy() == null ? null : comparator(st, result.getColumns());
+        if (!result.hasRows()) return result;
+        return QueryResult.rows(result.getColumns(),
+                topK(result.getRows(), order, st.getOffset(), st.getLimit()), "Empty result.");
+    }
+
+    /**
+     * 跳过前 offset 行后的 limit 行；limit 为 NO_LIMIT 时全部排序，否则只用大小为 offset + limit 的堆
+     * @param order 为 null 时不排序
+     */
+    public static List<Map<String, String>> topK(List<Map<String, String>> rows, Comparator<Map<String, String>> order,
+                                                 int offset, int limit) {
+        long k = limit == SelectStatement.NO_LIMIT ? Long.MAX_VALUE : (long) offset + limit;
+        List<Map<String, String>> sorted;
+        if (order == null) {
+            sorted = rows;
+        } else if (k >= rows.size()) {
+            sorted = new ArrayList<>(rows);
+            sorted.sort(order);
+        } else {
+            // 堆顶为当前第 K 名，新行比它靠前时替换；容量不超过行数，K 很大时不会溢出
+            PriorityQueue<Map<String, String>> heap =
+                    new PriorityQueue<>((int) Math.min(k + 1, rows.size()), order.reversed());
+            for (Map<String, String> r : rows) {
+                if (heap.size() < k) {
+                    heap.add(r);
+                } else if (order.compare(r, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(r);
+                }
+            }
+            sorted = new ArrayList<>(heap);
+            sorted.sort(order);
+        }
+        int from = Math.min(offset, sorted.size());
+        int to = (int) Math.min(k, sorted.size());
+        return new ArrayList<>(sorted.subList(from, to));
+    }
+
+    /**
+     * 合并各 region 已按 order 排好序的结果：堆中每个 region 一个游标，每次取最靠前的一行，
+     * 跳过 offset 行后取满 limit 行即停止，其余行不再比较
+     * @param order 为 null 时按 region 顺序拼接
+     */
+    public static List<Map<String, String>> merge(List<List<Map<String, String>>> runs,
+                                                  Comparator<Map<String, String>> order, int offset, int limit) {
+        long need = limit == SelectStatement.NO_LIMIT ? Long.MAX_VALUE : (long) offset + limit;
+        List<Map<String, String>> out = new ArrayList<>();
+        long taken = 0;
+        if (order == null) {
+            for (List<Map<String, String>> run : runs) {
+                for (Map<String, String> r : run) {
+                    if (taken >= need) return out;
+                    if (taken++ >= offset) out.add(r);
+                }
+            }
+            return out;
+        }
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, runs.size()),
+                (a, b) -> order.compare(a.head(), b.head()));
+        for (List<Map<String, String>> run : runs) {
+            if (!run.isEmpty()) heap.add(new Cursor(run));
+        }
+        while (taken < need && !heap.isEmpty()) {
+            Cursor c = heap.poll();
+            if (taken++ >= offset) out.add(c.head());
+            if (c.advance()) heap.add(c);
+        }
+        return out;
+    }
+
+    /** 一个 region 结果上的读取位置 */
+    private static final class Cursor {
+        private final List<Map<String, String>> rows;
+        private int pos;
+
+        Cursor(List<Map<String, String>> rows) {
+            this.rows = rows;
+        }
+
+        Map<String, String> head() {
+            return rows.get(pos);
+        }
+
+        boolean advance() {
+            return ++pos < rows.size();
+        }
+    }
+}
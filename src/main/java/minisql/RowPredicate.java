@@ -0,0 +1,77 @@
+package minisql;
+
+import minisql.parser.Condition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 在 region 上逐行判断 WHERE 条件（含 AND / OR 组合）：参数在编译时代入，INT 列的值先规范化，
+ * 再按列类型比较（与 Table 的等值、范围查询一致）；列值为 NULL 或比较值不是合法整数时不匹配
+ */
+public final class RowPredicate implements Predicate<Map<String, String>> {
+    private final Condition.Op op;
+    // 单列条件
+    private final String column;
+    private final Column type;
+    private final String value;
+    private final String high;
+    // AND / OR 的子条件
+    private final List<RowPredicate> children;
+
+    private RowPredicate(Condition.Op op, String column, Column type, String value, String high,
+                         List<RowPredicate> children) {
+        this.op       = op;
+        this.column   = column;
+        this.type     = type;
+        this.value    = value;
+        this.high     = high;
+        this.children = children;
+    }
+
+    /**
+     * @throws IllegalArgumentException 条件中的列不在 columns 中
+     */
+    public static RowPredicate compile(Condition c, List<Column> columns, List<String> params) {
+        if (c.isCompound()) {
+            List<RowPredicate> children = new ArrayList<>(c.getChildren().size());
+            for (Condition child : c.getChildren()) children.add(compile(child, columns, params));
+            return new RowPredicate(c.getOp(), null, null, null, null, children);
+        }
+        Column type = null;
+        for (Column col : columns) {
+            if (col.getName().equals(c.getColumn())) type = col;
+        }
+        if (type == null) throw new IllegalArgumentException("Unknown column: " + c.getColumn());
+        String high = c.getHigh() == null ? null : type.canonical(c.getHigh().resolve(params));
+        return new RowPredicate(c.getOp(), c.getColumn(), type, type.canonical(c.getValue().resolve(params)), high,
+                List.of());
+    }
+
+    @Override
+    public boolean test(Map<String, String> row) {
+        switch (op) {
+            case AND:
+                for (RowPredicate p : children) if (!p.test(row)) return false;
+                return true;
+            case OR:
+                for (RowPredicate p : children) if (p.test(row)) return true;
+                return false;
+            default:
+                break;
+        }
+        String v = row.get(column);
+        if (v == null || value == null) return false;
+        int c = type.compareValues(v, value);
+        switch (op) {
+            case EQ: return c == 0;
+            case LT: return c < 0;
+            case LE: return c <= 0;
+            case GT: return c > 0;
+            case GE: return c >= 0;
+            default: return c >= 0 && high != null && type.compareValues(v, high) <= 0;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package minisql;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * 表的存储引擎接口：按主键存取、按列等值/范围扫描、按槽分批扫描。
+ * Table 负责列名/类型校验、值的规范化（见 Column.canonical）与读写锁，
+ * 实现类只需保证多个读操作可以并发执行。
+ * 主键有序：selectAll 与主键范围扫描按主键顺序（INT 按数值）返回，范围扫描先定位到下界再顺序读取。
+ * 返回的行都是副本（forEach 除外），列顺序与表定义一致。
+ * 引擎按表选择（CREATE TABLE ... ENGINE=ROW|COLUMNAR|OFFHEAP|LSM，见 create）
+ */
+interface RowStore {
+    /** 按引擎名（不区分大小写）创建空存储，未知的引擎抛 IllegalArgumentException */
+    static RowStore create(String engine, String table, List<Column> columns, String primaryKey,
+                           ToIntFunction<String> slotOf) {
+        switch (engine.toUpperCase(Locale.ROOT)) {
+            case Table.STORAGE_ROW:
+                return new MapRowStore(columns, primaryKey, slotOf);
+            case Table.STORAGE_COLUMNAR:
+                return new ColumnarRowStore(columns, primaryKey, slotOf);
+            case Table.STORAGE_OFFHEAP:
+                return new OffHeapRowStore(columns, primaryKey, slotOf);
+            case Table.STORAGE_LSM:
+                return new LsmRowStore(table, columns, primaryKey, slotOf);
+            default:
+                throw new IllegalArgumentException("Unknown storage: " + engine);
+        }
+    }
+
+    int size();
+
+    boolean containsKey(String pk);
+
+    /** 主键对应的行，不存在时返回 null */
+    Map<String, String> get(String pk);
+
+    /** 插入新行（主键不存在，row 已按表定义列序且类型合法） */
+    void insert(String pk, Map<String, String> row);
+
+    /** 原地更新非主键列（主键变化由 Table 以删除 + 插入完成） */
+    void update(String pk, Map<String, String> newValues);
+
+    boolean remove(String pk);
+
+    /** 列值等于 val 的所有行的主键 */
+    List<String> keysWhere(String col, String val);
+
+    /** 列值等于 val 的所有行 */
+    List<Map<String, String>> selectWhere(String col, String val);
+
+    /** 列值落在范围内的所有行的主键 */
+    List<String> keysInRange(String col, KeyRange range);
+
+    /** 列值落在范围内的所有行；主键列按主键顺序返回 */
+    List<Map<String, String>> selectRange(String col, KeyRange range);
+
+    /** 所有行，按主键顺序 */
+    List<Map<String, String>> selectAll();
+
+    /**
+     * 按主键顺序逐行访问；行可能是存储内部的对象，visitor 只能读取、不能保留。
+     * 默认经 selectAll，不复制行的引擎可以覆盖以省去整行副本
+     */
+    default void forEach(Consumer<Map<String, String>> visitor) {
+        selectAll().forEach(visitor);
+    }
+
+    /**
+     * 从主键大于 afterPk（null 表示从头）的行开始按主键顺序逐行访问，visitor 返回 false 时停止；
+     * 行的约定同 forEach。游标分批读取用，有序引擎先定位到 afterPk，每批只读到所需的行
+     */
+    void forEachAfter(String afterPk, Predicate<Map<String, String>> visitor);
+
+    /** 清空，返回删除行数 */
+    int clear();
+
+    /** 槽内主键大于 afterPk（null 表示从头）的至多 limit 行，按主键字典序 */
+    List<Map<String, String>> scanSlot(int slot, String afterPk, int limit);
+
+    /** 删除整个槽内的行，返回删除行数 */
+    int deleteSlot(int slot);
+
+    /**
+     * 冻结当前内容供快照读取（调用方持有表的写锁）：此后的写入不再覆盖或回收视图读取的数据，
+     * 视图可以在不持有表锁时遍历。返回 null 表示不支持，由 Table 在修改前保存写前镜像
+     */
+    default Frozen freeze() {
+        return null;
+    }
+
+    /**
+     * 从快照恢复 n 行：buf 当前位置起为快照行格式（见 SnapshotStore.writeRow）的行，读完后位置在其后。
+     * 行按表定义列序、已是规范形式且主键不重复，不校验
+     */
+    default void restore(ByteBuffer buf, int n, List<Column> columns, String primaryKey) {
+        for (int r = 0; r < n; r++) {
+            Map<String, String> row = SnapshotStore.readRow(buf, columns);
+            insert(row.get(primaryKey), row);
+        }
+    }
+
+    /** freeze 返回的快照视图：冻结时刻的全部行 */
+    interface Frozen {
+        /** 按快照行格式（见 SnapshotStore.writeRow）写出至多 limit 行，返回写出的行数，0 表示已写完 */
+        int next(int limit, DataOutput out) throws IOException;
+
+        /** 快照结束或放弃：释放为视图保留的旧版本（调用方持有表的写锁） */
+        void release();
+    }
+
+    /** 存储用量说明 */
+    default String usage() {
+        return "rows=" + size();
+    }
+
+    /** 表被删除时释放存储占用的资源（堆外内存、文件） */
+    default void close() {
+    }
+}
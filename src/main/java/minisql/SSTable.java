@@ -0,0 +1,288 @@
+package minisql;
+
+import util.Slots;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * LSM 存储的不可变有序文件：按主键有序的键值记录，写出后只读，由合并（compaction）整体替换。
+ * 格式：
+ *   数据区   记录*：[键长 int][键 UTF-8][值长 int（-1 为删除标记）][值]
+ *   稀疏索引 [条数 int]（[键长 int][键][记录偏移 long]）*，每 INDEX_INTERVAL 条记录一项
+ *   布隆过滤器（见 BloomFilter）
+ *   尾部     [索引偏移 long][布隆过滤器偏移 long][记录数 long][MAGIC int]
+ * 打开时只把稀疏索引与布隆过滤器读入堆，点查先过布隆过滤器，再二分稀疏索引定位到一个块，只读这一块。
+ * 写出时另在堆上记下每个槽的记录落在哪些块（槽 → 块号），按槽迁移时只读含该槽的块。
+ * 文件由引用计数管理：表的文件列表持有一个引用，快照可以另外持有，最后一个引用释放时关闭并删除
+ */
+final class SSTable {
+    /** 删除标记（值的占位，按引用比较） */
+    static final byte[] TOMBSTONE = new byte[0];
+    private static final int MAGIC = 0x53535442;
+    private static final int FOOTER = 28;
+    private static final int INDEX_INTERVAL = 16;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Comparator<String> order;
+    // 稀疏索引：块首键与块起始偏移
+    private final String[] indexKeys;
+    private final long[] indexOffsets;
+    // 数据区结束位置
+    private final long dataEnd;
+    private final long count;
+    private final BloomFilter bloom;
+    // 槽 → 含该槽记录的块号（升序），没有记录的槽为 null
+    private final int[][] slotBlocks;
+    private int refs = 1;
+
+    private SSTable(Path file, FileChannel channel, Comparator<String> order, String[] indexKeys,
+                    long[] indexOffsets, long dataEnd, long count, BloomFilter bloom, int[][] slotBlocks) {
+        this.file         = file;
+        this.channel      = channel;
+        this.order        = order;
+        this.indexKeys    = indexKeys;
+        this.indexOffsets = indexOffsets;
+        this.dataEnd      = dataEnd;
+        this.count        = count;
+        this.bloom        = bloom;
+        this.slotBlocks   = slotBlocks;
+    }
+
+    /** 把按主键有序的记录写成新文件并打开；值为 TOMBSTONE 的记录写出删除标记，slotOf 给出主键所在的槽 */
+    static SSTable write(Path file, Iterator<Map.Entry<String, byte[]>> entries, int expected,
+                         Comparator<String> order, ToIntFunction<String> slotOf) throws IOException {
+        BloomFilter bloom = new BloomFilter(expected);
+        List<String> keys = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        int[][] slotBlocks = new int[Slots.COUNT][];
+        int[] slotCounts = new int[Slots.COUNT];
+        long n = 0;
+        try (FileOutputStream fos = new FileOutputStream(file.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            while (entries.hasNext()) {
+                Map.Entry<String, byte[]> e = entries.next();
+                byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+                if (n % INDEX_INTERVAL == 0) {
+                    keys.add(e.getKey());
+                    offsets.add((long) out.size());
+                }
+                bloom.add(e.getKey());
+                addBlock(slotBlocks, slotCounts, slotOf.applyAsInt(e.getKey()), keys.size() - 1);
+                out.writeInt(key.length);
+                out.write(key);
+                byte[] value = e.getValue();
+                if (value == TOMBSTONE) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(value.length);
+                    out.write(value);
+                }
+                n++;
+            }
+            // DataOutputStream.size() 为 int，单个文件限制在 2GB 以内
+            long indexOffset = out.size();
+            out.writeInt(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] key = keys.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeLong(offsets.get(i));
+            }
+            long bloomOffset = out.size();
+            bloom.writeTo(out);
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeLong(n);
+            out.writeInt(MAGIC);
+        }
+        for (int slot = 0; slot < slotBlocks.length; slot++) {
+            if (slotBlocks[slot] != null) slotBlocks[slot] = Arrays.copyOf(slotBlocks[slot], slotCounts[slot]);
+        }
+        return open(file, order, slotBlocks);
+    }
+
+    private static void addBlock(int[][] slotBlocks, int[] slotCounts, int slot, int block) {
+        int[] blocks = slotBlocks[slot];
+        int n = slotCounts[slot];
+        if (blocks == null) {
+            blocks = slotBlocks[slot] = new int[4];
+        } else if (blocks[n - 1] == block) {
+            return;
+        } else if (n == blocks.length) {
+            blocks = slotBlocks[slot] = Arrays.copyOf(blocks, n * 2);
+        }
+        blocks[n] = block;
+        slotCounts[slot] = n + 1;
+    }
+
+    /** 打开刚写出的文件：读入尾部、稀疏索引与布隆过滤器 */
+    private static SSTable open(Path file, Comparator<String> order, int[][] slotBlocks) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = ch.size();
+            if (size < FOOTER) throw new IOException("Truncated SSTable " + file);
+            ByteBuffer footer = read(ch, size - FOOTER, FOOTER);
+            long indexOffset = footer.getLong();
+            long bloomOffset = footer.getLong();
+            long count = footer.getLong();
+            if (footer.getInt() != MAGIC) throw new IOException("Bad SSTable " + file);
+            ByteBuffer meta = read(ch, indexOffset, (int) (size - FOOTER - indexOffset));
+            int n = meta.getInt();
+            String[] keys = new String[n];
+            long[] offsets = new long[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = readString(meta);
+                offsets[i] = meta.getLong();
+            }
+            meta.position((int) (bloomOffset - indexOffset));
+            BloomFilter bloom = BloomFilter.readFrom(meta);
+            return new SSTable(file, ch, order, keys, offsets, indexOffset, count, bloom, slotBlocks);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** 主键对应的值；不在本文件中返回 null，删除标记返回 TOMBSTONE */
+    byte[] get(String key) throws IOException {
+        if (!bloom.mightContain(key)) return null;
+        int block = blockOf(key);
+        if (block < 0) return null;
+        ByteBuffer buf = readBlock(block);
+        while (buf.hasRemaining()) {
+            int c = order.compare(readString(buf), key);
+            int len = buf.getInt();
+            if (c == 0) return len < 0 ? TOMBSTONE : readBytes(buf, len);
+            if (c > 0) return null;
+            if (len > 0) buf.position(buf.position() + len);
+        }
+        return null;
+    }
+
+    /** 块首键不大于 key 的最后一个块，key 小于所有键时返回 -1 */
+    private int blockOf(String key) {
+        int lo = 0;
+        int hi = indexKeys.length - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (order.compare(indexKeys[mid], key) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private ByteBuffer readBlock(int block) throws IOException {
+        long start = indexOffsets[block];
+        long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : dataEnd;
+        return read(channel, start, (int) (end - start));
+    }
+
+    /** 从不小于 from 的第一条记录开始顺序读取（from 为 null 时从头），逐块读入 */
+    Cursor cursor(String from) {
+        int block = from == null ? 0 : Math.max(0, blockOf(from));
+        return new Cursor(block, null, from);
+    }
+
+    /** 只读含槽 slot 记录的块（块内其他槽的记录也会读出，由调用方过滤） */
+    Cursor slotCursor(int slot) {
+        int[] blocks = slotBlocks[slot];
+        return new Cursor(0, blocks == null ? new int[0] : blocks, null);
+    }
+
+    /** 顺序游标：next() 为 true 时 key/value 为当前记录（value 可能是 TOMBSTONE） */
+    final class Cursor {
+        // blocks 为 null 时依次读所有块，block 为块号；否则 block 为 blocks 中的下标
+        private int block;
+        private final int[] blocks;
+        private ByteBuffer buf;
+        private final String from;
+        String key;
+        byte[] value;
+
+        private Cursor(int block, int[] blocks, String from) {
+            this.block  = block;
+            this.blocks = blocks;
+            this.from   = from;
+        }
+
+        boolean next() throws IOException {
+            while (true) {
+                if (buf == null || !buf.hasRemaining()) {
+                    if (blocks == null) {
+                        if (block >= indexOffsets.length) return false;
+                        buf = readBlock(block++);
+                    } else {
+                        if (block >= blocks.length) return false;
+                        buf = readBlock(blocks[block++]);
+                    }
+                }
+                key = readString(buf);
+                int len = buf.getInt();
+                value = len < 0 ? TOMBSTONE : readBytes(buf, len);
+                if (from == null || order.compare(key, from) >= 0) return true;
+            }
+        }
+    }
+
+    long getCount() { return count; }
+
+    /** 稀疏索引、布隆过滤器与槽 → 块号在堆上的大致字节数 */
+    long heapBytes() {
+        long bytes = bloom.sizeInBytes() + indexOffsets.length * 8L;
+        for (int[] b : slotBlocks) if (b != null) bytes += 16 + b.length * 4L;
+        for (String k : indexKeys) bytes += 40 + k.length() * 2L;
+        return bytes;
+    }
+
+    long fileSize() throws IOException {
+        return channel.size();
+    }
+
+    /** 增加一个引用（快照持有文件期间不被删除） */
+    synchronized void retain() {
+        refs++;
+    }
+
+    /** 释放一个引用，最后一个引用释放时关闭并删除文件（已被合并替换或表被清空） */
+    synchronized void release() throws IOException {
+        if (--refs > 0) return;
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    private static ByteBuffer read(FileChannel ch, long pos, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) throw new EOFException("Unexpected end of SSTable");
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        String s = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+        buf.position(buf.position() + len);
+        return s;
+    }
+
+    private static byte[] readBytes(ByteBuffer buf, int len) {
+        byte[] b = new byte[len];
+        buf.get(b);
+        return b;
+    }
+}
@@ -1,188 +1,393 @@
 package minisql;
 
+import minisql.parser.*;
+import util.CsvReader;
+import util.Partitioning;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.regex.*;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
 
 /**
- * 简易 SQL 执行器：支持 CREATE, DROP, INSERT, SELECT, DELETE, UPDATE
+ * 简易 SQL 执行器：支持 CREATE, DROP, INSERT（含多行）, SELECT（含两表等值 JOIN，见 HashJoin）, DELETE, UPDATE,
+ * LOAD DATA，以及 CREATE/DROP INDEX
+ * SQL 由 minisql.parser 解析为 AST（相同文本复用语句缓存），再按语句类型执行
  */
 public class SimpleSQLExecutor {
+    // LOAD DATA 每批插入的行数（每批一次写锁、一条预写日志记录）
+    private static final int LOAD_BATCH_ROWS = Integer.getInteger("minisql.load.batchRows", 1000);
+    // 查询结果与写入计数的行可见性过滤（RegionServer 用于隐藏不属于本节点哈希槽的迁移副本与从副本，
+    // 只取决于行主键所在的槽），默认全部可见
+    private static volatile BiPredicate<Table, Map<String, String>> rowFilter = (t, r) -> true;
+
+    /** 设置查询结果的行可见性过滤 */
+    public static void setRowFilter(BiPredicate<Table, Map<String, String>> filter) {
+        rowFilter = filter;
+    }
 
     public static String execute(String sql) {
-        sql = sql.trim();
-        String up = sql.toUpperCase(Locale.ROOT);
-        if (up.startsWith("CREATE TABLE")) {
-            return handleCreate(sql);
-        } else if (up.startsWith("DROP TABLE")) {
-            return handleDrop(sql);
-        } else if (up.startsWith("INSERT INTO")) {
-            return handleInsert(sql);
-        } else if (up.startsWith("SELECT")) {
-            return handleSelect(sql);
-        } else if (up.startsWith("DELETE FROM")) {
-            return handleDelete(sql);
-        } else if (up.startsWith("UPDATE")) {
-            return handleUpdate(sql);
-        }
-        return "Unsupported SQL.";
+        return executeQuery(sql).toText();
+    }
+
+    /** 执行 SQL 并返回结构化结果（查询结果带列定义，供二进制协议编码） */
+    public static QueryResult executeQuery(String sql) {
+        Statement st;
+        try {
+            st = SqlParser.parseCached(sql);
+        } catch (SqlParseException e) {
+            return QueryResult.message(e.getMessage());
+        }
+        return execute(st);
+    }
+
+    /** 执行已解析的语句 */
+    public static QueryResult execute(Statement st) {
+        return execute(st, List.of());
+    }
+
+    /** 执行预编译语句：? 参数按序绑定 params，不再解析 SQL 文本 */
+    public static QueryResult execute(Statement st, List<String> params) {
+        if (params.size() != st.getParamCount()) {
+            return QueryResult.message("Parameter count mismatch: expected " + st.getParamCount()
+                    + ", got " + params.size() + ".");
+        }
+        try {
+            QueryResult result = dispatch(st, params);
+            // 修改类语句按持久化级别等待预写日志落盘后再返回
+            if (!(st instanceof SelectStatement || st instanceof JoinStatement)) WriteAheadLog.awaitDurable();
+            return result;
+        } catch (SqlParseException e) {
+            return QueryResult.message(e.getMessage());
+        } catch (UncheckedIOException e) {
+            return QueryResult.error("WAL write failed: " + e.getCause().getMessage());
+        }
+    }
+
+    /** 以游标方式执行一条 SQL（见 openCursor(Statement, List)） */
+    public static ResultCursor openCursor(String sql) {
+        Statement st;
+        try {
+            st = SqlParser.parseCached(sql);
+        } catch (SqlParseException e) {
+            return ResultCursor.of(QueryResult.message(e.getMessage()));
+        }
+        return openCursor(st, List.of());
+    }
+
+    /**
+     * 以游标方式执行：需要全表扫描、不带聚合与 ORDER BY / LIMIT 的 SELECT 按主键顺序分批读取，
+     * 峰值内存只与批大小有关；JOIN 在构建侧的哈希表建好后分批探测；其余语句照常执行后按批返回
+     */
+    public static ResultCursor openCursor(Statement st, List<String> params) {
+        if (st instanceof SelectStatement && params.size() == st.getParamCount()) {
+            SelectStatement sel = (SelectStatement) st;
+            Table table = TableManager.getTable(sel.getTable());
+            Condition where = sel.getWhere();
+            if (table != null && !sel.isAggregate() && !sel.isOrderedOrLimited()
+                    && (where == null || where.accessPath(table.getPrimaryKey()) == null)) {
+                try {
+                    List<Column> columns = table.getColumns();
+                    List<String> scanColumns = null;
+                    if (sel.isProjection()) {
+                        scanColumns = labels(sel.getItems());
+                        columns = QueryResult.rows(columns, List.of(), "").project(scanColumns).getColumns();
+                    }
+                    return new TableCursor(table, selectFilter(table, where, null, params), scanColumns, columns,
+                            where != null ? "Empty result." : "Empty table.");
+                } catch (IllegalArgumentException e) {
+                    return ResultCursor.of(QueryResult.message(e.getMessage()));
+                }
+            }
+        }
+        if (st instanceof JoinStatement && params.size() == st.getParamCount()) {
+            return HashJoin.openLocal((JoinStatement) st, params);
+        }
+        return ResultCursor.of(execute(st, params));
+    }
+
+    private static QueryResult dispatch(Statement st, List<String> params) {
+        if (st instanceof CreateTableStatement) {
+            return QueryResult.message(handleCreate((CreateTableStatement) st));
+        } else if (st instanceof DropTableStatement) {
+            return QueryResult.message(handleDrop((DropTableStatement) st));
+        } else if (st instanceof CreateIndexStatement) {
+            return QueryResult.message(handleCreateIndex((CreateIndexStatement) st));
+        } else if (st instanceof DropIndexStatement) {
+            return QueryResult.message(handleDropIndex((DropIndexStatement) st));
+        } else if (st instanceof InsertStatement) {
+            return QueryResult.message(handleInsert((InsertStatement) st, params));
+        } else if (st instanceof LoadDataStatement) {
+            return QueryResult.message(handleLoad((LoadDataStatement) st));
+        } else if (st instanceof SelectStatement) {
+            return handleSelect((SelectStatement) st, params);
+        } else if (st instanceof JoinStatement) {
+            return handleJoin((JoinStatement) st, params);
+        } else if (st instanceof DeleteStatement) {
+            return QueryResult.message(handleDelete((DeleteStatement) st, params));
+        } else if (st instanceof UpdateStatement) {
+            return QueryResult.message(handleUpdate((UpdateStatement) st, params));
+        }
+        return QueryResult.message("Unsupported SQL.");
     }
 
     // CREATE TABLE users (id INT, name TEXT, PRIMARY KEY(id))
-    private static String handleCreate(String sql) {
-        Pattern p = Pattern.compile(
-                "CREATE TABLE (\\w+) \\((.+),\\s*PRIMARY KEY\\((\\w+)\\)\\)",
-                Pattern.CASE_INSENSITIVE);
-        Matcher m = p.matcher(sql);
-        if (!m.find()) return "Invalid CREATE syntax.";
-        String tableName = m.group(1);
-        String colsDef   = m.group(2).trim();
-        String pk        = m.group(3);
-
-        List<Column> cols = new ArrayList<>();
-        for (String part : colsDef.split(",")) {
-            String[] kv = part.trim().split("\\s+");
-            if (kv.length < 2) return "Invalid column definition: " + part;
-            cols.add(new Column(kv[0], kv[1]));
-        }
-        boolean ok = TableManager.createTable(tableName, cols, pk);
+    private static String handleCreate(CreateTableStatement st) {
+        String tableName = st.getTable();
+        boolean ok;
+        try {
+            ok = TableManager.createTable(tableName, st.getColumns(), st.getPrimaryKey(),
+                    Partitioning.parse(st.getPartitioning()), st.getEngine());
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
         return ok ? "Table created: " + tableName
                 : "Table already exists: " + tableName;
     }
 
     // DROP TABLE users
-    private static String handleDrop(String sql) {
-        Pattern p = Pattern.compile("DROP TABLE (\\w+)", Pattern.CASE_INSENSITIVE);
-        Matcher m = p.matcher(sql);
-        if (!m.find()) return "Invalid DROP syntax.";
-        String tableName = m.group(1);
+    private static String handleDrop(DropTableStatement st) {
+        String tableName = st.getTable();
         boolean ok = TableManager.dropTable(tableName);
         return ok ? "Table dropped: " + tableName
                 : "Table not found: " + tableName;
     }
 
-    // INSERT INTO users (id, name) VALUES (1, 'Alice')
-    private static String handleInsert(String sql) {
-        Pattern p = Pattern.compile(
-                "INSERT INTO (\\w+) \\(([^)]+)\\) VALUES \\(([^)]+)\\)",
-                Pattern.CASE_INSENSITIVE);
-        Matcher m = p.matcher(sql);
-        if (!m.find()) return "Invalid INSERT syntax.";
-        String tableName = m.group(1);
-        String colsPart  = m.group(2);
-        String valsPart  = m.group(3);
+    // CREATE INDEX idx_name ON users (name)；索引名在本节点内唯一
+    private static synchronized String handleCreateIndex(CreateIndexStatement st) {
+        Table table = TableManager.getTable(st.getTable());
+        if (table == null) return "Table not found: " + st.getTable();
+        if (TableManager.tableOfIndex(st.getIndexName()) != null) return "Index already exists: " + st.getIndexName();
+        return table.createIndex(st.getIndexName(), st.getColumn());
+    }
+
+    // DROP INDEX idx_name [ON users]
+    private static synchronized String handleDropIndex(DropIndexStatement st) {
+        Table table = st.getTable() != null ? TableManager.getTable(st.getTable())
+                : TableManager.tableOfIndex(st.getIndexName());
+        if (table == null || !table.dropIndex(st.getIndexName())) return "Index not found: " + st.getIndexName();
+        return "Index dropped: " + st.getIndexName();
+    }
 
+    // INSERT INTO users (id, name) VALUES (1, 'Alice') [, (2, 'Bob') ...]
+    private static String handleInsert(InsertStatement st, List<String> params) {
+        String tableName = st.getTable();
         Table table = TableManager.getTable(tableName);
         if (table == null) return "Table not found: " + tableName;
 
-        List<String> cols = Arrays.stream(colsPart.split(","))
-                .map(String::trim).toList();
-        List<String> vals = Arrays.stream(valsPart.split(","))
-                .map(String::trim)
-                .map(s -> s.replaceAll("^'(.*)'$", "$1"))
-                .toList();
-
-        if (cols.size() != vals.size()) return "Column/value count mismatch.";
-
-        // 使用 LinkedHashMap 保持插入顺序
-        Map<String, String> row = new LinkedHashMap<>();
-        for (int i = 0; i < cols.size(); i++) {
-            row.put(cols.get(i), vals.get(i));
-        }
-        return table.insertRow(row);
-    }
-
-    // SELECT * FROM users [WHERE col = val]
-    private static String handleSelect(String sql) {
-        // WHERE 条件
-        Pattern pWhere = Pattern.compile(
-                "SELECT \\* FROM (\\w+) WHERE (\\w+)\\s*=\\s*('?\\w+'?)",
-                Pattern.CASE_INSENSITIVE);
-        Matcher mWhere = pWhere.matcher(sql);
-        if (mWhere.find()) {
-            String tableName = mWhere.group(1);
-            String col       = mWhere.group(2);
-            String val       = mWhere.group(3).replaceAll("'", "");
-
-            Table table = TableManager.getTable(tableName);
-            if (table == null) return "Table not found: " + tableName;
-            List<Map<String, String>> rows = table.selectWhere(col, val);
-            if (rows.isEmpty()) return "Empty result.";
-            StringBuilder sb = new StringBuilder();
-            for (Map<String, String> r : rows) {
-                sb.append(r).append("\n");
+        List<String> cols = st.getColumns();
+        for (List<Value> vals : st.getRows()) {
+            if (cols.size() != vals.size()) return "Column/value count mismatch.";
+        }
+        if (!st.isMultiRow()) {
+            // 使用 LinkedHashMap 保持插入顺序
+            Map<String, String> row = new LinkedHashMap<>();
+            for (int i = 0; i < cols.size(); i++) {
+                row.put(cols.get(i), st.getValues().get(i).resolve(params));
             }
-            return sb.toString().trim();
-        }
-
-        // 全表查询
-        Pattern pAll = Pattern.compile("SELECT \\* FROM (\\w+)", Pattern.CASE_INSENSITIVE);
-        Matcher mAll = pAll.matcher(sql);
-        if (mAll.find()) {
-            String tableName = mAll.group(1);
-            Table table = TableManager.getTable(tableName);
-            if (table == null) return "Table not found: " + tableName;
-            List<Map<String, String>> all = table.selectAll();
-            if (all.isEmpty()) return "Empty table.";
-            StringBuilder sb = new StringBuilder();
-            for (Map<String, String> r : all) {
-                sb.append(r).append("\n");
+            return table.insertRow(row);
+        }
+        // 多行：一次写锁、一条日志插入整批，跳过的行报告在结果中
+        List<Map<String, String>> batch = new ArrayList<>(st.getRows().size());
+        for (List<Value> vals : st.getRows()) {
+            Map<String, String> row = new LinkedHashMap<>();
+            for (int i = 0; i < cols.size(); i++) row.put(cols.get(i), vals.get(i).resolve(params));
+            batch.add(row);
+        }
+        List<String> errors = new ArrayList<>();
+        int inserted = table.insertRows(batch, errors);
+        return insertedMessage(inserted, errors.size(), errors.isEmpty() ? null : errors.get(0));
+    }
+
+    /** 多行 INSERT 的结果："Inserted rows: N"，有跳过的行时追加失败数与第一个原因（Master 汇总时按此格式解析） */
+    public static String insertedMessage(long inserted, long failed, String firstError) {
+        return "Inserted rows: " + inserted + (failed == 0 ? "" : ", failed: " + failed + " (" + firstError + ")");
+    }
+
+    // LOAD DATA 'users.csv' INTO users [(id, name)]：读取本节点上的文件，按批插入
+    private static String handleLoad(LoadDataStatement st) {
+        Table table = TableManager.getTable(st.getTable());
+        if (table == null) return "Table not found: " + st.getTable();
+        long t0 = System.nanoTime();
+        long inserted = 0;
+        long failed = 0;
+        String firstError = null;
+        try (CsvReader in = CsvReader.open(Paths.get(st.getFile()))) {
+            List<String> cols = st.getColumns().isEmpty() ? in.next() : st.getColumns();
+            if (cols == null) return "Empty file: " + st.getFile();
+            List<Map<String, String>> batch = new ArrayList<>(LOAD_BATCH_ROWS);
+            List<String> errors = new ArrayList<>();
+            for (List<String> fields = in.next(); ; fields = in.next()) {
+                if (fields != null) {
+                    if (fields.size() != cols.size()) {
+                        errors.add("Line " + in.getLine() + ": expected " + cols.size() + " fields, got " + fields.size());
+                    } else {
+                        Map<String, String> row = new LinkedHashMap<>();
+                        for (int i = 0; i < cols.size(); i++) row.put(cols.get(i), fields.get(i));
+                        batch.add(row);
+                    }
+                }
+                if (batch.size() >= LOAD_BATCH_ROWS || (fields == null && !batch.isEmpty())) {
+                    inserted += table.insertRows(batch, errors);
+                    batch.clear();
+                }
+                if (!errors.isEmpty()) {
+                    if (firstError == null) firstError = errors.get(0);
+                    failed += errors.size();
+                    errors.clear();
+                }
+                if (fields == null) break;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return "LOAD DATA failed after " + inserted + " rows: " + e.getMessage();
+        }
+        return loadedMessage(st.getTable(), inserted, failed, firstError, System.nanoTime() - t0);
+    }
+
+    /** LOAD DATA 的结果：导入行数、耗时与吞吐 */
+    public static String loadedMessage(String table, long inserted, long failed, String firstError, long nanos) {
+        long ms = Math.max(1, nanos / 1_000_000);
+        return String.format("Loaded rows: %d into %s in %d ms (%d rows/s)%s", inserted, table, ms,
+                inserted * 1000 / ms, failed == 0 ? "" : ", failed: " + failed + " (" + firstError + ")");
+    }
+
+    // SELECT * | col, ... FROM users [WHERE col = val | col < val | col BETWEEN a AND b ... [AND|OR ...]]
+    private static QueryResult handleSelect(SelectStatement st, List<String> params) {
+        String tableName = st.getTable();
+        Table table = TableManager.getTable(tableName);
+        if (table == null) return QueryResult.message("Table not found: " + tableName);
+
+        Condition where = st.getWhere();
+        try {
+            // 组合条件：能走主键/索引/范围的子条件先取行，其余条件在本节点逐行判断，不交给 Master
+            Condition access = where == null ? null : where.accessPath(table.getPrimaryKey());
+            Predicate<Map<String, String>> filter = selectFilter(table, where, access, params);
+            List<Map<String, String>> rows;
+            if (access != null) {
+                rows = access.isEquality()
+                        ? table.selectWhere(access.getColumn(), access.getValue().resolve(params))
+                        : table.selectRange(access.getColumn(), rangeOf(access, params));
+                rows.removeIf(filter.negate());
+            } else {
+                // 全表扫描：列投影时只复制所需的列
+                rows = table.scan(filter, st.isProjection() ? scanColumns(st) : null);
             }
-            return sb.toString().trim();
+            QueryResult result;
+            if (st.isAggregate()) {
+                // SELECT dept, COUNT(*), AVG(age) FROM users [WHERE ...] GROUP BY dept：在本节点的行上直接聚合
+                Aggregation agg = new Aggregation(st.getItems(), st.getGroupBy(), table.getColumns(), false);
+                agg.addAll(rows);
+                result = agg.result();
+            } else {
+                result = QueryResult.rows(table.getColumns(), rows, where != null ? "Empty result." : "Empty table.");
+            }
+            // ORDER BY / LIMIT：LIMIT 时只保留前 offset + limit 行（堆），Master 再做 k 路归并
+            result = RowOrder.apply(st, result);
+            return st.isProjection() ? result.project(labels(st.getItems())) : result;
+        } catch (IllegalArgumentException e) {
+            return QueryResult.message(e.getMessage());
         }
+    }
 
-        return "Invalid SELECT syntax.";
+    // SELECT ... FROM orders o JOIN users u ON o.uid = u.id [WHERE ...]：两张表都取本节点的行
+    private static QueryResult handleJoin(JoinStatement st, List<String> params) {
+        try (ResultCursor cursor = HashJoin.openLocal(st, params)) {
+            QueryResult first = cursor.next(Integer.MAX_VALUE);
+            if (cursor.isDone() || first.isError()) return first;
+            List<Map<String, String>> rows = new ArrayList<>(first.getRows());
+            while (!cursor.isDone()) rows.addAll(cursor.next(Integer.MAX_VALUE).getRows());
+            return QueryResult.rows(first.getColumns(), rows, "Empty result.");
+        }
     }
 
-    // DELETE FROM users [WHERE col = val]
-    private static String handleDelete(String sql) {
-        Pattern p = Pattern.compile(
-                "DELETE FROM (\\w+)(?: WHERE (\\w+)\\s*=\\s*('?\\w+'?))?",
-                Pattern.CASE_INSENSITIVE);
-        Matcher m = p.matcher(sql);
-        if (!m.find()) return "Invalid DELETE syntax.";
-        String tableName = m.group(1);
-        String col       = m.group(2);
-        String rawVal    = m.group(3);
+    /** 列投影扫描时复制的列：SELECT 的列，加上不在其中的排序列 */
+    private static List<String> scanColumns(SelectStatement st) {
+        List<String> columns = labels(st.getItems());
+        if (st.getOrderBy() != null && !columns.contains(st.getOrderBy().getColumn())) {
+            columns.add(st.getOrderBy().getColumn());
+        }
+        return columns;
+    }
 
+    private static List<String> labels(List<SelectItem> items) {
+        List<String> labels = new ArrayList<>(items.size());
+        for (SelectItem item : items) labels.add(item.label());
+        return labels;
+    }
+
+    /** 范围条件 → KeyRange（BETWEEN 两端都包含） */
+    private static KeyRange rangeOf(Condition where, List<String> params) {
+        String v = where.getValue().resolve(params);
+        switch (where.getOp()) {
+            case LT: return new KeyRange(null, false, v, false);
+            case LE: return new KeyRange(null, false, v, true);
+            case GT: return new KeyRange(v, false, null, false);
+            case GE: return new KeyRange(v, true, null, false);
+            case BETWEEN: return new KeyRange(v, true, where.getHigh().resolve(params), true);
+            default: throw new IllegalArgumentException("Not a range condition: " + where.getOp());
+        }
+    }
+
+    /** SELECT 逐行判断的条件：本节点可见，且满足 access 之外的 WHERE（access 为取行时已走的单列条件） */
+    private static Predicate<Map<String, String>> selectFilter(Table table, Condition where, Condition access,
+                                                               List<String> params) {
+        Predicate<Map<String, String>> filter = visibleFilter(table);
+        if (where != null && where != access) {
+            filter = filter.and(RowPredicate.compile(where, table.getColumns(), params));
+        }
+        return filter;
+    }
+
+    /** 本节点可见的行（rowFilter，隐藏迁移中复制过来的行） */
+    static Predicate<Map<String, String>> visibleFilter(Table table) {
+        BiPredicate<Table, Map<String, String>> f = rowFilter;
+        return r -> f.test(table, r);
+    }
+
+    /**
+     * 写操作计数用：主键所在的行是否本节点可见。迁移副本与从副本中的行照常修改（保持副本一致），
+     * 但不计入返回的行数，否则广播写入时同一行会在多个 region 上各计一次（行过滤只取决于主键所在的槽）
+     */
+    private static Predicate<String> visibleKey(Table table) {
+        BiPredicate<Table, Map<String, String>> f = rowFilter;
+        String pk = table.getPrimaryKey();
+        return k -> f.test(table, Map.of(pk, k));
+    }
+
+    // DELETE FROM users [WHERE cond]
+    private static String handleDelete(DeleteStatement st, List<String> params) {
+        String tableName = st.getTable();
         Table table = TableManager.getTable(tableName);
         if (table == null) return "Table not found: " + tableName;
 
-        if (col != null) {
-            String val = rawVal.replaceAll("'", "");
-            int cnt = table.deleteWhere(col, val);
+        Condition where = st.getWhere();
+        if (where != null) {
+            int cnt = where.isEquality()
+                    ? table.deleteWhere(where.getColumn(), where.getValue().resolve(params), visibleKey(table))
+                    : table.deleteRange(where.getColumn(), rangeOf(where, params), visibleKey(table));
             return "Deleted rows: " + cnt;
         }
-        // 不带 WHERE 则清空整表
-        Set<Column> cols = new LinkedHashSet<>(table.getColumns());
-        String pk = table.getPrimaryKey();
-        TableManager.dropTable(tableName);
-        // 重建一个空表
-        TableManager.createTable(tableName, new ArrayList<>(cols), pk);
+        // 不带 WHERE 则清空整表（原地清空，避免并发下删表重建的竞态）
+        table.clear();
         return "Table cleared: " + tableName;
     }
 
-    // UPDATE users SET col1=val1 [, col2=val2...] WHERE col=val
-    private static String handleUpdate(String sql) {
-        Pattern p = Pattern.compile(
-                "UPDATE (\\w+) SET (.+?) WHERE (\\w+)\\s*=\\s*('?\\w+'?)",
-                Pattern.CASE_INSENSITIVE);
-        Matcher m = p.matcher(sql);
-        if (!m.find()) return "Invalid UPDATE syntax.";
-        String tableName = m.group(1);
-        String setPart   = m.group(2);
-        String colCond   = m.group(3);
-        String rawVal    = m.group(4).replaceAll("'", "");
-
+    // UPDATE users SET col1=val1 [, col2=val2...] WHERE cond
+    private static String handleUpdate(UpdateStatement st, List<String> params) {
+        String tableName = st.getTable();
         Table table = TableManager.getTable(tableName);
         if (table == null) return "Table not found: " + tableName;
 
+        Condition where = st.getWhere();
         Map<String, String> newValues = new HashMap<>();
-        for (String assign : setPart.split(",")) {
-            String[] kv = assign.trim().split("=");
-            newValues.put(kv[0].trim(), kv[1].trim().replaceAll("'", ""));
+        for (Map.Entry<String, Value> e : st.getAssignments().entrySet()) {
+            newValues.put(e.getKey(), e.getValue().resolve(params));
         }
-
-        int updated = table.updateWhere(colCond, rawVal, newValues);
+        int updated = where.isEquality()
+                ? table.updateWhere(where.getColumn(), where.getValue().resolve(params), newValues, visibleKey(table))
+                : table.updateRange(where.getColumn(), rangeOf(where, params), newValues, visibleKey(table));
         if (updated < 0) return "Update error (type or column mismatch).";
         return "Updated rows: " + updated;
     }
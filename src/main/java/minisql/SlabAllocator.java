@@ -0,0 +1,165 @@
+package minisql;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 堆外内存分配器：从 slab（ByteBuffer.allocateDirect，或 -Dminisql.offheap.dir 下的内存映射文件）中切出块。
+ *  - 块大小按 2 的幂分级（最小 16 字节），每级一个空闲链表，释放的块头 8 字节存放下一个空闲块的地址，
+ *    删除与变长更新腾出的块由同级的新分配直接复用
+ *  - 空闲链表为空时在当前 slab 末尾顺序切分；slab 从 64KB 起逐个翻倍，至多 -Dminisql.offheap.slabMb（默认 64）
+ *  - 地址为 long：高 32 位 slab 下标，低 32 位 slab 内偏移
+ * 读操作只用绝对位置的 get，多个读线程可以并发；分配与释放由调用方（持有表写锁）串行执行
+ */
+final class SlabAllocator {
+    /** 空闲链表的结束标记 */
+    static final long NIL = -1;
+    private static final int MIN_BLOCK_SHIFT = 4;
+    private static final int FIRST_SLAB = 64 << 10;
+    private static final int MAX_SLAB = Math.max(FIRST_SLAB, Integer.getInteger("minisql.offheap.slabMb", 64) << 20);
+    private static final String MMAP_DIR = System.getProperty("minisql.offheap.dir");
+
+    // 所有分配器合计：已申请的 slab 字节数、分配出去的块字节数
+    private static final AtomicLong TOTAL_RESERVED = new AtomicLong();
+    private static final AtomicLong TOTAL_ALLOCATED = new AtomicLong();
+
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    // 当前 slab 中尚未切分部分的起点
+    private int cursor;
+    // 各级空闲链表的头
+    private final long[] freeHeads = new long[32];
+    private long reserved;
+    private long allocated;
+    private long freeBytes;
+
+    SlabAllocator() {
+        Arrays.fill(freeHeads, NIL);
+    }
+
+    /** size 字节的数据实际占用的块大小 */
+    static int blockSize(int size) {
+        return 1 << classOf(size);
+    }
+
+    private static int classOf(int size) {
+        if (size > MAX_SLAB) throw new IllegalArgumentException("Row too large for off-heap storage: " + size + " bytes");
+        return Math.max(MIN_BLOCK_SHIFT, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    /** 分配能容纳 size 字节的块，返回地址 */
+    long allocate(int size) {
+        int c = classOf(size);
+        int block = 1 << c;
+        long addr = freeHeads[c];
+        if (addr != NIL) {
+            freeHeads[c] = slab(addr).getLong(offset(addr));
+            freeBytes -= block;
+        } else {
+            if (slabs.isEmpty() || cursor + block > slabs.get(slabs.size() - 1).capacity()) newSlab(block);
+            addr = ((long) (slabs.size() - 1) << 32) | cursor;
+            cursor += block;
+        }
+        allocated += block;
+        TOTAL_ALLOCATED.addAndGet(block);
+        return addr;
+    }
+
+    /** 释放 allocate(size) 得到的块，放入同级空闲链表 */
+    void free(long addr, int size) {
+        int c = classOf(size);
+        int block = 1 << c;
+        slab(addr).putLong(offset(addr), freeHeads[c]);
+        freeHeads[c] = addr;
+        allocated -= block;
+        freeBytes += block;
+        TOTAL_ALLOCATED.addAndGet(-block);
+    }
+
+    ByteBuffer slab(long addr) {
+        return slabs.get((int) (addr >>> 32));
+    }
+
+    /** 当前全部 slab 的副本：之后新增 slab 不影响副本，已有 slab 仍是同一块内存 */
+    List<ByteBuffer> buffers() {
+        return List.copyOf(slabs);
+    }
+
+    static int offset(long addr) {
+        return (int) addr;
+    }
+
+    private void newSlab(int block) {
+        // 当前 slab 剩余的尾部按块大小拆进空闲链表，不浪费
+        if (!slabs.isEmpty()) {
+            int tail = slabs.get(slabs.size() - 1).capacity() - cursor;
+            for (int c = 30; c >= MIN_BLOCK_SHIFT && tail > 0; c--) {
+                while (tail >= 1 << c) {
+                    long addr = ((long) (slabs.size() - 1) << 32) | cursor;
+                    slabs.get(slabs.size() - 1).putLong(cursor, freeHeads[c]);
+                    freeHeads[c] = addr;
+                    freeBytes += 1 << c;
+                    cursor += 1 << c;
+                    tail -= 1 << c;
+                }
+            }
+        }
+        int size = slabs.isEmpty() ? FIRST_SLAB : Math.min(MAX_SLAB, slabs.get(slabs.size() - 1).capacity() * 2);
+        size = Math.max(size, block);
+        slabs.add(MMAP_DIR == null ? ByteBuffer.allocateDirect(size) : mapSlab(size));
+        cursor = 0;
+        reserved += size;
+        TOTAL_RESERVED.addAndGet(size);
+    }
+
+    /** 内存映射的 slab：临时文件映射后即删除，映射在 buffer 被回收前一直有效 */
+    private static ByteBuffer mapSlab(int size) {
+        try {
+            Path dir = Paths.get(MMAP_DIR);
+            Files.createDirectories(dir);
+            Path file = Files.createTempFile(dir, "slab-", ".bin");
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** 释放全部 slab（内存在 buffer 被回收时归还） */
+    void release() {
+        TOTAL_RESERVED.addAndGet(-reserved);
+        TOTAL_ALLOCATED.addAndGet(-allocated);
+        slabs.clear();
+        Arrays.fill(freeHeads, NIL);
+        cursor    = 0;
+        reserved  = 0;
+        allocated = 0;
+        freeBytes = 0;
+    }
+
+    long getReserved() { return reserved; }
+
+    long getAllocated() { return allocated; }
+
+    long getFreeBytes() { return freeBytes; }
+
+    int getSlabCount() { return slabs.size(); }
+
+    /** 本进程所有堆外表的合计用量 */
+    static String totalUsage() {
+        return String.format("off-heap reserved=%d KB allocated=%d KB",
+                TOTAL_RESERVED.get() >> 10, TOTAL_ALLOCATED.get() >> 10);
+    }
+}
@@ -0,0 +1,312 @@
+package minisql;
+
+import minisql.parser.DropIndexStatement;
+import minisql.parser.SqlParseException;
+import minisql.parser.SqlParser;
+import minisql.parser.Statement;
+import util.Partitioning;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 快照检查点：定期把所有表（表定义、索引、全部行）写成紧凑的二进制文件，
+ * 重启时用 MappedByteBuffer 顺序读取恢复，只需重放快照之后的日志记录，恢复时间不再随历史增长。
+ *  - 不停写：逐表在该表的写锁内记下日志位置（cut）与行数并冻结存储（见 Table.snapshot），随即释放锁，
+ *    之后分批读出冻结时刻的行直接序列化到文件，期间写入照常进行，也不在堆上复制整张表
+ *  - 重放规则：某表的日志记录只有 LSN 大于该表的 cut 才执行；快照中没有的表以快照开始时的 LSN 为准
+ *  - 文件：<dir>/<name>-<开始时 LSN>.snap，先写 .tmp 再原子改名；保留最近 keep 个，
+ *    更早的快照与已被保留快照完全覆盖的日志段自动删除
+ * 格式：[MAGIC][版本][开始 LSN] 每表 {1 表名 存储方式 分区 主键 列数 (列名 类型)* cut 索引数 (索引名 列名)* 行数 行*} 0
+ *       [CRC32][MAGIC]；INT 列为 4 字节整数，TEXT 列与字符串为 [长度 int][UTF-8]
+ */
+public final class SnapshotStore {
+    private static final int MAGIC = 0x4D53514C;
+    private static final int VERSION = 1;
+    // 每批读出的行数：写前镜像方式的存储每批持有一次表的读锁
+    private static final int BATCH_ROWS = Integer.getInteger("minisql.snapshot.batchRows", 1000);
+
+    private final Path dir;
+    private final String name;
+    private final int keep;
+
+    public SnapshotStore(Path dir, String name, int keep) throws IOException {
+        this.dir  = dir;
+        this.name = name;
+        this.keep = Math.max(1, keep);
+        Files.createDirectories(dir);
+    }
+
+    /** 一次快照的结果 */
+    public static final class Checkpoint {
+        public final Path file;
+        public final long lsn;
+        public final int tables;
+        public final long rows;
+        public final long bytes;
+
+        Checkpoint(Path file, long lsn, int tables, long rows, long bytes) {
+            this.file   = file;
+            this.lsn    = lsn;
+            this.tables = tables;
+            this.rows   = rows;
+            this.bytes  = bytes;
+        }
+    }
+
+    /**
+     * 写一个快照：逐表冻结后分批写出（不阻塞写入），写入临时文件并 fsync 后改名，
+     * 然后删除多余的旧快照，并让日志 roll 出新段、删除已被保留快照覆盖的旧段
+     */
+    public synchronized Checkpoint checkpoint(WriteAheadLog wal) throws IOException {
+        long start = wal.lastLsn();
+        wal.roll();
+        Path file = dir.resolve(String.format("%s-%020d.snap", name, start));
+        Path tmp = dir.resolve(file.getFileName() + ".tmp");
+        int tables = 0;
+        long rows = 0;
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fos, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(start);
+            // 每张表前写一个 1，结尾写 0：复制期间有表被删除时不必预先确定表数
+            for (String t : new TreeSet<>(TableManager.listTables())) {
+                Table table = TableManager.getTable(t);
+                if (table == null) continue;
+                try (Table.Snapshot snap = table.snapshot(wal::lastLsn)) {
+                    out.writeByte(1);
+                    rows += writeTable(out, table, snap);
+                }
+                tables++;
+            }
+            out.writeByte(0);
+            out.flush();
+            int crc = (int) checked.getChecksum().getValue();
+            out.writeInt(crc);
+            out.writeInt(MAGIC);
+            out.flush();
+            fos.getChannel().force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        long bytes = Files.size(file);
+        cleanup(wal);
+        return new Checkpoint(file, start, tables, rows, bytes);
+    }
+
+    /** 写出一张表，返回行数；行按批读入缓冲区（批内可能持有表的读锁），锁外再写入文件 */
+    private static long writeTable(DataOutputStream out, Table table, Table.Snapshot snap) throws IOException {
+        writeString(out, table.getName());
+        writeString(out, table.getStorage());
+        writeString(out, table.getPartitioning().toString());
+        writeString(out, table.getPrimaryKey());
+        List<Column> cols = table.getColumns();
+        out.writeInt(cols.size());
+        for (Column c : cols) {
+            writeString(out, c.getName());
+            writeString(out, c.getType());
+        }
+        out.writeLong(snap.lsn);
+        out.writeInt(snap.indexes.size());
+        for (Map.Entry<String, String> e : snap.indexes.entrySet()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+        out.writeInt(snap.rowCount);
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream batchOut = new DataOutputStream(batch);
+        long written = 0;
+        int n;
+        while ((n = snap.next(BATCH_ROWS, batchOut)) > 0) {
+            batch.writeTo(out);
+            batch.reset();
+            written += n;
+        }
+        if (written != snap.rowCount) {
+            throw new IOException("Snapshot of " + table.getName() + " wrote " + written + " rows, expected " + snap.rowCount);
+        }
+        return written;
+    }
+
+    /** 按快照行格式写出一行：按表定义列序，INT 列为 4 字节整数，TEXT 列为 [长度 int][UTF-8] */
+    static void writeRow(DataOutput out, List<Column> cols, Map<String, String> row) throws IOException {
+        for (Column c : cols) {
+            String v = row.get(c.getName());
+            if (c.isInt()) out.writeInt(Integer.parseInt(v));
+            else writeString(out, v);
+        }
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /** 删除超出保留数的旧快照与残留的临时文件，并删除已被最早保留快照覆盖的日志段 */
+    private void cleanup(WriteAheadLog wal) throws IOException {
+        List<Path> snaps = snapshots();
+        for (int i = 0; i + keep < snaps.size(); i++) Files.deleteIfExists(snaps.get(i));
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String f = p.getFileName().toString();
+                if (f.startsWith(name + "-") && f.endsWith(".snap.tmp")) Files.deleteIfExists(p);
+            }
+        }
+        List<Path> kept = snapshots();
+        if (!kept.isEmpty()) wal.deleteSegmentsUpTo(lsnOf(kept.get(0)));
+    }
+
+    /** 本节点的快照文件，按开始 LSN 排序 */
+    private List<Path> snapshots() throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> lsnOf(p) >= 0).forEach(result::add);
+        }
+        result.sort(Comparator.comparingLong(this::lsnOf));
+        return result;
+    }
+
+    private long lsnOf(Path p) {
+        String f = p.getFileName().toString();
+        if (!f.startsWith(name + "-") || !f.endsWith(".snap")) return -1;
+        try {
+            return Long.parseLong(f.substring(name.length() + 1, f.length() - 5));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** 恢复结果：各表的 cut，决定哪些日志记录需要重放 */
+    public static final class Restored {
+        public final Path file;
+        public final long lsn;
+        public final int tables;
+        public final long rows;
+        private final Map<String, Long> cuts;
+
+        Restored(Path file, long lsn, int tables, long rows, Map<String, Long> cuts) {
+            this.file   = file;
+            this.lsn    = lsn;
+            this.tables = tables;
+            this.rows   = rows;
+            this.cuts   = cuts;
+        }
+
+        /** 没有快照时的空结果：所有记录都需要重放 */
+        static Restored none() {
+            return new Restored(null, 0, 0, 0, Map.of());
+        }
+
+        /** 快照已反映到的最大 LSN，新日志记录从其后编号 */
+        public long lastLsn() {
+            long max = lsn;
+            for (long c : cuts.values()) max = Math.max(max, c);
+            return max;
+        }
+
+        /** 该日志记录是否需要重放（其所属表的 cut 之后） */
+        public boolean shouldApply(String sql, long recordLsn) {
+            String table = tableOf(sql);
+            long cut = table == null ? lsn : cuts.getOrDefault(table, lsn);
+            return recordLsn > cut;
+        }
+
+        private static String tableOf(String sql) {
+            if (sql.regionMatches(true, 0, "SLOT ", 0, 5)) {
+                String[] p = sql.trim().split("\\s+");
+                return p.length > 2 ? p[2] : null;
+            }
+            try {
+                Statement st = SqlParser.parse(sql);
+                if (st.getTable() == null && st instanceof DropIndexStatement) {
+                    Table t = TableManager.tableOfIndex(((DropIndexStatement) st).getIndexName());
+                    return t == null ? null : t.getName();
+                }
+                return st.getTable();
+            } catch (SqlParseException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 从最新的完整快照恢复所有表（mmap 顺序读取）；校验失败的快照被跳过，改用更早的一个。
+     * 没有可用快照时返回 Restored.none()
+     */
+    public Restored restore() throws IOException {
+        List<Path> snaps = snapshots();
+        for (int i = snaps.size() - 1; i >= 0; i--) {
+            Path p = snaps.get(i);
+            try {
+                return load(p);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[Snapshot] Skipping unreadable snapshot " + p + ": " + e.getMessage());
+                for (String t : TableManager.listTables()) TableManager.dropTable(t);
+            }
+        }
+        return Restored.none();
+    }
+
+    private Restored load(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < 25 || size > Integer.MAX_VALUE) throw new IOException("bad size " + size);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int end = (int) size - 8;
+            if (buf.getInt(end + 4) != MAGIC) throw new IOException("missing footer");
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate().limit(end));
+            if ((int) crc.getValue() != buf.getInt(end)) throw new IOException("checksum mismatch");
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) throw new IOException("bad header");
+            long start = buf.getLong();
+            int tables = 0;
+            long rows = 0;
+            Map<String, Long> cuts = new HashMap<>();
+            while (buf.get() != 0) {
+                String tableName = readString(buf);
+                String storage = readString(buf);
+                Partitioning partitioning = Partitioning.parse(readString(buf));
+                String pk = readString(buf);
+                int ncols = buf.getInt();
+                List<Column> cols = new ArrayList<>(ncols);
+                for (int i = 0; i < ncols; i++) cols.add(new Column(readString(buf), readString(buf)));
+                cuts.put(tableName, buf.getLong());
+                Map<String, String> indexes = new LinkedHashMap<>();
+                int nidx = buf.getInt();
+                for (int i = 0; i < nidx; i++) indexes.put(readString(buf), readString(buf));
+                Table table = TableManager.restoreTable(tableName, cols, pk, storage, partitioning);
+                int n = buf.getInt();
+                table.restoreRows(buf, n);
+                // 索引在灌入行之后一次性构建
+                indexes.forEach(table::createIndex);
+                rows += n;
+                tables++;
+            }
+            return new Restored(file, start, tables, rows, cuts);
+        }
+    }
+
+    /** 读出一行快照行格式的行（见 writeRow） */
+    static Map<String, String> readRow(ByteBuffer buf, List<Column> cols) {
+        Map<String, String> row = new LinkedHashMap<>(cols.size() * 2);
+        for (Column c : cols) row.put(c.getName(), c.isInt() ? Integer.toString(buf.getInt()) : readString(buf));
+        return row;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        byte[] b = new byte[len];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
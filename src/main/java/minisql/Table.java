@@ -1,121 +1,806 @@
 package minisql;
 
+import minisql.parser.SqlParser;
+import util.Partitioning;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 
 /**
- * 内存表：列定义、主键列、行数据（主键值 → 行内容）
+ * 内存表：列定义、主键列、行数据
+ * 并发控制：每张表一把读写锁，查询共享读锁，写操作独占写锁
+ * 行数据的存储方式：
+ *  - ROW（默认）：主键值 → (列名→列值)
+ *  - COLUMNAR：列式存储，INT 列为 int[]、TEXT 列为紧凑字节数组，按行号寻址（见 ColumnarRowStore）
+ *  - OFFHEAP：行内容以二进制格式存于堆外 slab，堆上只有主键索引（见 OffHeapRowStore）
+ *  - LSM：memtable + 磁盘上的不可变 SSTable，后台合并（见 LsmRowStore）
+ * 建表时用 ENGINE=... 选择，未指定时为 -Dminisql.storage=row|columnar|offheap|lsm（默认 row）
+ * 非主键列可建哈希二级索引（CREATE INDEX），插入/更新/删除时同步维护，等值条件命中索引列时不再全表扫描
+ * 各存储都按主键有序返回（INT 按数值），主键范围条件（< <= > >= BETWEEN）定位到下界后顺序扫描；
+ * INT 列的值统一保存为规范的十进制形式（"007" 存为 "7"），查询值按同样规则规范化后比较
+ * 行所属的槽由分区方式决定（默认按主键哈希，见 util.Partitioning）
+ * 安装了预写日志时，每次修改在持有写锁时追加一条可重放的 SQL 记录（见 WriteAheadLog）
  */
 public class Table {
+    /** 行式存储 */
+    public static final String STORAGE_ROW = "ROW";
+    /** 列式存储 */
+    public static final String STORAGE_COLUMNAR = "COLUMNAR";
+    /** 堆外存储 */
+    public static final String STORAGE_OFFHEAP = "OFFHEAP";
+    /** LSM 存储 */
+    public static final String STORAGE_LSM = "LSM";
+    private static final Set<String> STORAGES = Set.of(STORAGE_ROW, STORAGE_COLUMNAR, STORAGE_OFFHEAP, STORAGE_LSM);
+    // 新建表默认的存储方式
+    private static final String DEFAULT_STORAGE =
+            System.getProperty("minisql.storage", STORAGE_ROW).toUpperCase(Locale.ROOT);
+
     private final String name;
     private final List<Column> columns;
     private final String primaryKey;
-    // 主键值 → (列名→列值)
-    private final Map<String, Map<String, String>> rows;
+    private final String storage;
+    private final Partitioning partitioning;
+    private final RowStore rows;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // 索引名 → 二级索引
+    private final Map<String, HashIndex> indexes = new LinkedHashMap<>();
+    // 进行中的快照，没有时为 null；preImages 为存储不能冻结时使用的写前镜像
+    private Snapshot snapshot;
+    private PreImages preImages;
 
     public Table(String name, List<Column> columns, String primaryKey) {
+        this(name, columns, primaryKey, DEFAULT_STORAGE);
+    }
+
+    public Table(String name, List<Column> columns, String primaryKey, String storage) {
+        this(name, columns, primaryKey, storage, Partitioning.HASH);
+    }
+
+    public Table(String name, List<Column> columns, String primaryKey, String storage, Partitioning partitioning) {
         this.name       = name;
         this.columns    = new ArrayList<>(columns);
         this.primaryKey = primaryKey;
-        if (columns.stream().noneMatch(c -> c.getName().equals(primaryKey))) {
-            throw new IllegalArgumentException("Primary key must be one of columns");
+        Column pk = columns.stream().filter(c -> c.getName().equals(primaryKey)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Primary key must be one of columns"));
+        if (partitioning.isRange() && !pk.isInt()) {
+            throw new IllegalArgumentException("Range partitioning requires an INT primary key");
         }
-        this.rows = new LinkedHashMap<>();
+        this.partitioning = partitioning;
+        this.storage = storage.toUpperCase(Locale.ROOT);
+        this.rows = RowStore.create(this.storage, name, this.columns, primaryKey, partitioning::slotOf);
     }
 
     public String getName() { return name; }
     public List<Column> getColumns() { return Collections.unmodifiableList(columns); }
     public String getPrimaryKey() { return primaryKey; }
+    public String getStorage() { return storage; }
+
+    /** 新建表默认的存储方式（-Dminisql.storage） */
+    public static String defaultStorage() { return DEFAULT_STORAGE; }
+
+    /** 是否为支持的存储方式（不区分大小写） */
+    public static boolean isStorage(String storage) {
+        return storage != null && STORAGES.contains(storage.toUpperCase(Locale.ROOT));
+    }
+    public Partitioning getPartitioning() { return partitioning; }
+
+    /** 主键值所属的槽 */
+    public int slotOf(String pk) {
+        return partitioning.slotOf(pk);
+    }
 
     /** 插入一行：列名检查、类型检查、主键唯一 */
     public String insertRow(Map<String, String> row) {
-        Set<String> expectedCols = new HashSet<>();
-        for (Column c : columns) expectedCols.add(c.getName());
-        if (!row.keySet().equals(expectedCols)) {
-            return "Column names mismatch. Expected: " + expectedCols;
+        String error = checkRow(row);
+        if (error != null) return error;
+        Map<String, String> copy = canonical(row);
+        String pkVal = copy.get(primaryKey);
+        lock.writeLock().lock();
+        try {
+            if (rows.containsKey(pkVal)) {
+                return "Duplicate primary key: " + pkVal;
+            }
+            preserve(pkVal);
+            rows.insert(pkVal, copy);
+            index(copy);
+            if (WriteAheadLog.isEnabled()) log(insertStatement(List.of(copy)));
+            return "OK";
+        } finally {
+            lock.writeLock().unlock();
         }
-        // 类型检查
-        for (Column c : columns) {
-            String val = row.get(c.getName());
-            switch (c.getType()) {
-                case "INT":
-                    try { Integer.parseInt(val); }
-                    catch (NumberFormatException e) {
-                        return "Type error: column `" + c.getName() + "` expects INT";
-                    }
-                    break;
-                case "TEXT":
-                    // always ok
-                    break;
-                default:
-                    return "Unknown type: " + c.getType();
+    }
+
+    /**
+     * 批量插入：每行与 insertRow 相同的检查，校验在锁外完成，之后只加一次写锁插入全部合法行，
+     * 并只追加一条多行 INSERT 日志。不合法或主键重复的行跳过，原因按行序追加到 errors；返回插入行数
+     */
+    public int insertRows(List<Map<String, String>> batch, List<String> errors) {
+        List<Map<String, String>> valid = new ArrayList<>(batch.size());
+        for (Map<String, String> row : batch) {
+            String error = checkRow(row);
+            if (error != null) errors.add(error);
+            else valid.add(canonical(row));
+        }
+        if (valid.isEmpty()) return 0;
+        List<Map<String, String>> inserted = new ArrayList<>(valid.size());
+        lock.writeLock().lock();
+        try {
+            for (Map<String, String> copy : valid) {
+                String pkVal = copy.get(primaryKey);
+                if (rows.containsKey(pkVal)) {
+                    errors.add("Duplicate primary key: " + pkVal);
+                    continue;
+                }
+                preserve(pkVal);
+                rows.insert(pkVal, copy);
+                index(copy);
+                inserted.add(copy);
             }
+            if (!inserted.isEmpty() && WriteAheadLog.isEnabled()) log(insertStatement(inserted));
+            return inserted.size();
+        } finally {
+            lock.writeLock().unlock();
         }
-        String pkVal = row.get(primaryKey);
-        if (rows.containsKey(pkVal)) {
-            return "Duplicate primary key: " + pkVal;
+    }
+
+    /** 行数 */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows.size();
+        } finally {
+            lock.readLock().unlock();
         }
-        // 深拷贝存储
-        rows.put(pkVal, new LinkedHashMap<>(row));
-        return "OK";
     }
 
-    /** 查询所有行 */
+    /** 查询所有行（返回副本） */
     public List<Map<String, String>> selectAll() {
-        return new ArrayList<>(rows.values());
+        lock.readLock().lock();
+        try {
+            return rows.selectAll();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 全表扫描：逐行判断 filter，只复制匹配行的 columns 列（null 为全部列），
+     * 不满足条件的行与未选的列都不会复制（行式存储）；按主键顺序返回
+     */
+    public List<Map<String, String>> scan(Predicate<Map<String, String>> filter, List<String> columns) {
+        lock.readLock().lock();
+        try {
+            List<Map<String, String>> result = new ArrayList<>();
+            rows.forEach(row -> {
+                if (!filter.test(row)) return;
+                if (columns == null) {
+                    result.add(new LinkedHashMap<>(row));
+                    return;
+                }
+                Map<String, String> copy = new LinkedHashMap<>();
+                for (String c : columns) copy.put(c, row.get(c));
+                result.add(copy);
+            });
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 游标的一批：从主键大于 afterPk（null 为从头）的行起按主键顺序扫描，满足 filter 的行只复制 columns 列
+     * （null 为全部列）追加到 out，取满 limit 行即停止。返回最后一行的主键，扫到表尾时返回 null。
+     * 读锁只在本批内持有，批与批之间的写入对之后的批可见（不是快照）
+     */
+    String scanBatch(String afterPk, int limit, Predicate<Map<String, String>> filter, List<String> columns,
+                     List<Map<String, String>> out) {
+        lock.readLock().lock();
+        try {
+            String[] last = new String[1];
+            int[] n = new int[1];
+            rows.forEachAfter(afterPk, row -> {
+                if (!filter.test(row)) return true;
+                Map<String, String> copy;
+                if (columns == null) {
+                    copy = new LinkedHashMap<>(row);
+                } else {
+                    copy = new LinkedHashMap<>();
+                    for (String c : columns) copy.put(c, row.get(c));
+                }
+                out.add(copy);
+                last[0] = row.get(primaryKey);
+                return ++n[0] < limit;
+            });
+            return n[0] < limit ? null : last[0];
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    /** 按任意列查询（返回匹配的所有行） */
+    /** 按任意列查询（返回匹配的所有行）；主键等值直接定位，索引列经二级索引定位 */
     public List<Map<String, String>> selectWhere(String col, String val) {
-        List<Map<String, String>> result = new ArrayList<>();
-        for (Map<String, String> row : rows.values()) {
-            if (val.equals(row.get(col))) {
-                result.add(new LinkedHashMap<>(row));
+        val = canonical(col, val);
+        if (val == null) return new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            HashIndex idx = indexOn(col);
+            if (idx == null) return rows.selectWhere(col, val);
+            List<Map<String, String>> result = new ArrayList<>();
+            for (String k : idx.get(val)) {
+                Map<String, String> row = rows.get(k);
+                if (row != null) result.add(row);
             }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 按范围条件查询：主键列定位到下界后按主键顺序读取，其他列全表扫描 */
+    public List<Map<String, String>> selectRange(String col, KeyRange range) {
+        range = canonical(col, range);
+        if (range == null) return new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            return rows.selectRange(col, range);
+        } finally {
+            lock.readLock().unlock();
         }
-        return result;
     }
 
     /** 删除单行（按主键） */
     public String deleteByKey(String key) {
-        return rows.remove(key) != null ? "OK" : "NOT FOUND";
+        key = canonical(primaryKey, key);
+        if (key == null) return "NOT FOUND";
+        lock.writeLock().lock();
+        try {
+            if (!removeRow(key)) return "NOT FOUND";
+            log("DELETE FROM " + name + where(primaryKey, key));
+            return "OK";
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /** 删除多行（按任意列） */
     public int deleteWhere(String col, String val) {
-        List<String> toRemove = new ArrayList<>();
-        for (Map.Entry<String, Map<String, String>> e : rows.entrySet()) {
-            if (val.equals(e.getValue().get(col))) {
-                toRemove.add(e.getKey());
+        return deleteWhere(col, val, k -> true);
+    }
+
+    /** 删除多行（按任意列），返回其中主键满足 counted 的行数（所有匹配的行都会删除） */
+    public int deleteWhere(String col, String val, Predicate<String> counted) {
+        val = canonical(col, val);
+        if (val == null) return 0;
+        lock.writeLock().lock();
+        try {
+            List<String> removed = new ArrayList<>();
+            if (primaryKey.equals(col)) {
+                if (removeRow(val)) removed.add(val);
+            } else {
+                removed = keysWhere(col, val);
+                for (String k : removed) removeRow(k);
+            }
+            if (!removed.isEmpty()) log("DELETE FROM " + name + where(col, val));
+            return count(removed, counted);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 删除多行（按范围条件） */
+    public int deleteRange(String col, KeyRange range) {
+        return deleteRange(col, range, k -> true);
+    }
+
+    /** 删除多行（按范围条件），返回其中主键满足 counted 的行数 */
+    public int deleteRange(String col, KeyRange range, Predicate<String> counted) {
+        range = canonical(col, range);
+        if (range == null) return 0;
+        lock.writeLock().lock();
+        try {
+            List<String> toRemove = rows.keysInRange(col, range);
+            for (String k : toRemove) removeRow(k);
+            if (!toRemove.isEmpty() && WriteAheadLog.isEnabled()) {
+                String cond = where(col, range);
+                if (cond != null) {
+                    log("DELETE FROM " + name + cond);
+                } else {
+                    for (String k : toRemove) log("DELETE FROM " + name + where(primaryKey, k));
+                }
             }
+            return count(toRemove, counted);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 清空整表，返回删除行数 */
+    public int clear() {
+        lock.writeLock().lock();
+        try {
+            indexes.values().forEach(HashIndex::clear);
+            if (preImages != null) preImages.preserveRest();
+            int n = rows.clear();
+            if (n > 0) log("DELETE FROM " + name);
+            return n;
+        } finally {
+            lock.writeLock().unlock();
         }
-        for (String k : toRemove) rows.remove(k);
-        return toRemove.size();
     }
 
     /** 更新行（按任意列） */
     public int updateWhere(String colCond, String valCond, Map<String, String> newValues) {
+        return update(colCond, valCond, null, newValues, k -> true);
+    }
+
+    /** 更新行（按任意列），返回其中原主键满足 counted 的行数（所有匹配的行都会更新） */
+    public int updateWhere(String colCond, String valCond, Map<String, String> newValues, Predicate<String> counted) {
+        return update(colCond, valCond, null, newValues, counted);
+    }
+
+    /** 更新行（按范围条件） */
+    public int updateRange(String col, KeyRange range, Map<String, String> newValues) {
+        return update(col, null, range, newValues, k -> true);
+    }
+
+    /** 更新行（按范围条件），返回其中原主键满足 counted 的行数 */
+    public int updateRange(String col, KeyRange range, Map<String, String> newValues, Predicate<String> counted) {
+        return update(col, null, range, newValues, counted);
+    }
+
+    /** 等值（range 为 null）或范围条件的更新 */
+    private int update(String colCond, String valCond, KeyRange range, Map<String, String> newValues,
+                       Predicate<String> counted) {
         // 类型 & 列名校验 for newValues
         Set<String> validCols = new HashSet<>();
         for (Column c : columns) validCols.add(c.getName());
         if (!validCols.containsAll(newValues.keySet())) return -1;
 
+        Map<String, String> canonicalValues = new LinkedHashMap<>();
         for (Column c : columns) {
             if (newValues.containsKey(c.getName())) {
-                String v = newValues.get(c.getName());
-                if ("INT".equals(c.getType())) {
-                    try { Integer.parseInt(v); }
-                    catch (NumberFormatException e) { return -2; }
+                String v = c.canonical(newValues.get(c.getName()));
+                if (v == null) return -2;
+                canonicalValues.put(c.getName(), v);
+            }
+        }
+        newValues = canonicalValues;
+
+        if (range == null) valCond = canonical(colCond, valCond);
+        else range = canonical(colCond, range);
+        if (valCond == null && range == null) return 0;
+
+        lock.writeLock().lock();
+        try {
+            List<String> matched = range == null ? keysWhere(colCond, valCond) : rows.keysInRange(colCond, range);
+            String newPk = newValues.get(primaryKey);
+            if (newPk != null && !matched.isEmpty()) {
+                // 修改主键：不能与其他行冲突，也不能把多行改成同一主键
+                boolean unchanged = matched.size() == 1 && matched.get(0).equals(newPk);
+                if (!unchanged && (matched.size() > 1 || rows.containsKey(newPk))) return -3;
+            }
+            boolean rekey = newPk != null;
+            Map<String, String> values = newValues;
+            boolean reindex = rekey || indexes.values().stream().anyMatch(i -> values.containsKey(i.getColumn()));
+            for (String k : matched) {
+                if (!rekey || newPk.equals(k)) {
+                    preserve(k);
+                    if (reindex) unindex(rows.get(k));
+                    rows.update(k, newValues);
+                    if (reindex) index(rows.get(k));
+                } else {
+                    Map<String, String> row = rows.get(k);
+                    removeRow(k);
+                    row.putAll(newValues);
+                    preserve(newPk);
+                    rows.insert(newPk, row);
+                    index(row);
                 }
             }
+            if (!matched.isEmpty() && WriteAheadLog.isEnabled()) {
+                StringJoiner set = new StringJoiner(", ", "UPDATE " + name + " SET ", "");
+                values.forEach((c, v) -> set.add(c + " = " + SqlParser.quote(v)));
+                String cond = range == null ? where(colCond, valCond) : where(colCond, range);
+                if (cond != null) {
+                    log(set + cond);
+                } else {
+                    for (String k : matched) log(set + where(primaryKey, k));
+                }
+            }
+            return count(matched, counted);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 按哈希槽分批扫描：返回槽内主键大于 afterPk（null 表示从头）的至多 limit 行 */
+    public List<Map<String, String>> scanSlot(int slot, String afterPk, int limit) {
+        lock.readLock().lock();
+        try {
+            return rows.scanSlot(slot, afterPk, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 删除整个哈希槽内的行，返回删除行数 */
+    public int deleteSlot(int slot) {
+        lock.writeLock().lock();
+        try {
+            if (!indexes.isEmpty() || preImages != null) {
+                for (Map<String, String> row : rows.scanSlot(slot, null, Integer.MAX_VALUE)) {
+                    preserve(row.get(primaryKey));
+                    unindex(row);
+                }
+            }
+            int n = rows.deleteSlot(slot);
+            if (n > 0) log("SLOT DELETE " + name + " " + slot);
+            return n;
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        int count = 0;
-        for (Map<String, String> row : rows.values()) {
-            if (valCond.equals(row.get(colCond))) {
-                row.putAll(newValues);
-                count++;
+    /** 在列上建哈希二级索引，按现有行构建 */
+    public String createIndex(String name, String column) {
+        lock.writeLock().lock();
+        try {
+            if (indexes.containsKey(name)) return "Index already exists: " + name;
+            if (columns.stream().noneMatch(c -> c.getName().equals(column))) {
+                return "Column not found: " + column;
+            }
+            HashIndex idx = new HashIndex(name, column);
+            for (Map<String, String> row : rows.selectAll()) {
+                idx.add(row.get(column), row.get(primaryKey));
             }
+            indexes.put(name, idx);
+            log("CREATE INDEX " + name + " ON " + this.name + " (" + column + ")");
+            return "Index created: " + name;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 删除二级索引，不存在时返回 false */
+    public boolean dropIndex(String name) {
+        lock.writeLock().lock();
+        try {
+            if (indexes.remove(name) == null) return false;
+            log("DROP INDEX " + name + " ON " + this.name);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 二级索引：索引名 → 列名 */
+    public Map<String, String> getIndexes() {
+        lock.readLock().lock();
+        try {
+            Map<String, String> result = new LinkedHashMap<>();
+            for (HashIndex idx : indexes.values()) result.put(idx.getName(), idx.getColumn());
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 存储方式与用量（堆外存储报告 slab 的申请、使用与空闲字节） */
+    public String getUsage() {
+        lock.readLock().lock();
+        try {
+            return storage + " " + rows.usage();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 表被删除：释放存储占用的堆外内存或文件，之后不应再访问 */
+    void close() {
+        lock.writeLock().lock();
+        try {
+            rows.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 本进程所有堆外表合计的堆外内存用量 */
+    public static String offHeapUsage() {
+        return SlabAllocator.totalUsage();
+    }
+
+    /** 列值的规范形式（见 Column.canonical），列不存在时原样返回 */
+    private String canonical(String col, String val) {
+        Column c = column(col);
+        return c == null ? val : c.canonical(val);
+    }
+
+    /** 范围边界的规范形式，不可能匹配时返回 null；列不存在时原样返回 */
+    private KeyRange canonical(String col, KeyRange range) {
+        Column c = column(col);
+        return c == null ? range : range.canonical(c);
+    }
+
+    private Column column(String col) {
+        for (Column c : columns) {
+            if (c.getName().equals(col)) return c;
+        }
+        return null;
+    }
+
+    /**
+     * 开始一次快照：持有写锁记下日志位置 lsn（该表 LSN 不大于它的记录都已反映在快照中，之后的都没有）、
+     * 行数与索引定义，并冻结存储 —— 写入只在这一刻暂停。之后由 Snapshot.next 分批读出冻结时刻的行，
+     * 期间写入照常进行：能冻结的存储（堆外、LSM）自行保留旧版本，其余存储由本表在修改前保存写前镜像
+     */
+    Snapshot snapshot(LongSupplier lsn) {
+        lock.writeLock().lock();
+        try {
+            if (snapshot != null) throw new IllegalStateException("Snapshot already in progress: " + name);
+            RowStore.Frozen frozen = rows.freeze();
+            if (frozen == null) frozen = preImages = new PreImages();
+            snapshot = new Snapshot(frozen, rows.size(), getIndexes(), lsn.getAsLong());
+            return snapshot;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 从快照恢复 n 行（buf 当前位置起为快照行格式，行已是规范形式，不校验、不写日志；索引在之后建立） */
+    void restoreRows(ByteBuffer buf, int n) {
+        lock.writeLock().lock();
+        try {
+            rows.restore(buf, n, columns, primaryKey);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 进行中的快照：冻结时刻的行数、索引定义与日志位置，close 时释放保留的旧版本 */
+    final class Snapshot implements AutoCloseable {
+        final int rowCount;
+        // 索引名 → 列名
+        final Map<String, String> indexes;
+        final long lsn;
+        private final RowStore.Frozen frozen;
+
+        private Snapshot(RowStore.Frozen frozen, int rowCount, Map<String, String> indexes, long lsn) {
+            this.frozen   = frozen;
+            this.rowCount = rowCount;
+            this.indexes  = indexes;
+            this.lsn      = lsn;
+        }
+
+        /** 按快照行格式写出至多 limit 行，返回写出的行数，0 表示已写完 */
+        int next(int limit, DataOutput out) throws IOException {
+            return frozen.next(limit, out);
+        }
+
+        @Override
+        public void close() {
+            lock.writeLock().lock();
+            try {
+                frozen.release();
+                snapshot  = null;
+                preImages = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 写前镜像（不能冻结的堆上存储）：快照遍历按主键顺序分批进行，每批只在批内持有读锁；
+     * 快照开始后、遍历经过之前首次被修改的主键，修改前的行（当时不存在则为 ABSENT）保存在 saved 中，
+     * 遍历到该主键（或它已被删除、遍历越过它的位置）时写出保存的版本。遍历经过的主键不再保存
+     */
+    private final class PreImages implements RowStore.Frozen {
+        private final Map<String, String> absent = new HashMap<>();
+        private final TreeMap<String, Map<String, String>> saved = new TreeMap<>(pkColumn()::compareValues);
+        // 已遍历到的最后一个主键，null 为尚未开始
+        private String cursor;
+        private boolean done;
+
+        /** 修改主键 pk 的行之前调用（持有写锁） */
+        void preserve(String pk) {
+            if (done || (cursor != null && saved.comparator().compare(pk, cursor) <= 0) || saved.containsKey(pk)) return;
+            Map<String, String> old = rows.get(pk);
+            saved.put(pk, old == null ? absent : old);
+        }
+
+        /** 清空整表之前保存遍历尚未经过的所有行（持有写锁） */
+        void preserveRest() {
+            List<String> keys = new ArrayList<>();
+            rows.forEachAfter(cursor, row -> keys.add(row.get(primaryKey)));
+            keys.forEach(this::preserve);
+        }
+
+        @Override
+        public int next(int limit, DataOutput out) throws IOException {
+            lock.readLock().lock();
+            try {
+                if (done) return 0;
+                int[] n = new int[1];
+                boolean[] stopped = new boolean[1];
+                IOException[] error = new IOException[1];
+                rows.forEachAfter(cursor, row -> {
+                    String pk = row.get(primaryKey);
+                    try {
+                        // 快照开始后被删除、位于当前行之前的行
+                        n[0] += drain(saved.headMap(pk, false), out);
+                        Map<String, String> old = saved.remove(pk);
+                        if (old != absent) {
+                            SnapshotStore.writeRow(out, columns, old != null ? old : row);
+                            n[0]++;
+                        }
+                    } catch (IOException e) {
+                        error[0] = e;
+                        return !(stopped[0] = true);
+                    }
+                    cursor = pk;
+                    return !(stopped[0] = n[0] >= limit);
+                });
+                if (error[0] != null) throw error[0];
+                if (!stopped[0]) {
+                    n[0] += drain(saved, out);
+                    done = true;
+                }
+                return n[0];
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /** 写出并移除一段保存的版本，返回写出的行数 */
+        private int drain(SortedMap<String, Map<String, String>> part, DataOutput out) throws IOException {
+            int n = 0;
+            for (Map<String, String> old : part.values()) {
+                if (old == absent) continue;
+                SnapshotStore.writeRow(out, columns, old);
+                n++;
+            }
+            part.clear();
+            return n;
+        }
+
+        @Override
+        public void release() {
+            saved.clear();
+        }
+    }
+
+    private static int count(List<String> keys, Predicate<String> counted) {
+        int n = 0;
+        for (String k : keys) if (counted.test(k)) n++;
+        return n;
+    }
+
+    private Column pkColumn() {
+        return column(primaryKey);
+    }
+
+    /** 修改主键 pk 的行之前调用（持有写锁）：进行中的快照需要时保存写前镜像 */
+    private void preserve(String pk) {
+        if (preImages != null) preImages.preserve(pk);
+    }
+
+    /** 行的列名与类型检查，合法时返回 null，否则返回错误消息 */
+    private String checkRow(Map<String, String> row) {
+        if (row.size() != columns.size() || !columns.stream().allMatch(c -> row.containsKey(c.getName()))) {
+            Set<String> expectedCols = new HashSet<>();
+            for (Column c : columns) expectedCols.add(c.getName());
+            return "Column names mismatch. Expected: " + expectedCols;
+        }
+        // 类型检查
+        for (Column c : columns) {
+            String val = row.get(c.getName());
+            switch (c.getType()) {
+                case "INT":
+                    try { Integer.parseInt(val); }
+                    catch (NumberFormatException e) {
+                        return "Type error: column `" + c.getName() + "` expects INT";
+                    }
+                    break;
+                case "TEXT":
+                    // always ok
+                    break;
+                default:
+                    return "Unknown type: " + c.getType();
+            }
+        }
+        return null;
+    }
+
+    /** 深拷贝，列顺序统一为表定义顺序，INT 列取规范形式 */
+    private Map<String, String> canonical(Map<String, String> row) {
+        Map<String, String> copy = new LinkedHashMap<>();
+        for (Column c : columns) copy.put(c.getName(), c.canonical(row.get(c.getName())));
+        return copy;
+    }
+
+    /** 已规范化的行（列序与表定义一致）的 INSERT 语句，多行时为一条多行 INSERT */
+    private String insertStatement(List<Map<String, String>> batch) {
+        StringJoiner cols = new StringJoiner(", ");
+        for (Column c : columns) cols.add(c.getName());
+        StringBuilder sb = new StringBuilder(64 + batch.size() * 16 * columns.size());
+        sb.append("INSERT INTO ").append(name).append(" (").append(cols).append(") VALUES ");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) sb.append(", ");
+            StringJoiner vals = new StringJoiner(", ", "(", ")");
+            for (String v : batch.get(i).values()) vals.add(SqlParser.quote(v));
+            sb.append(vals);
+        }
+        return sb.toString();
+    }
+
+    // 以下方法需在持有锁时调用
+
+    /** 追加一条预写日志记录（需持有写锁，日志顺序即执行顺序） */
+    private static void log(String sql) {
+        WriteAheadLog.record(sql);
+    }
+
+    /** 等值条件的 WHERE 子句 */
+    private static String where(String col, String val) {
+        return " WHERE " + col + " = " + SqlParser.quote(val);
+    }
+
+    /** 范围条件的 WHERE 子句；SQL 无法表达（两端都有界但不都包含、或两端都无界）时返回 null */
+    private static String where(String col, KeyRange r) {
+        if (r.getLow() != null && r.getHigh() != null) {
+            if (!r.isLowInclusive() || !r.isHighInclusive()) return null;
+            return " WHERE " + col + " BETWEEN " + SqlParser.quote(r.getLow()) + " AND " + SqlParser.quote(r.getHigh());
+        }
+        if (r.getLow() != null) return " WHERE " + col + (r.isLowInclusive() ? " >= " : " > ") + SqlParser.quote(r.getLow());
+        if (r.getHigh() != null) return " WHERE " + col + (r.isHighInclusive() ? " <= " : " < ") + SqlParser.quote(r.getHigh());
+        return null;
+    }
+
+    /** 列上的二级索引（主键列直接走存储的主键定位），没有时返回 null */
+    private HashIndex indexOn(String col) {
+        if (primaryKey.equals(col)) return null;
+        for (HashIndex idx : indexes.values()) {
+            if (idx.getColumn().equals(col)) return idx;
+        }
+        return null;
+    }
+
+    /** 等值条件匹配的行的主键：有索引时查索引，否则交给存储扫描 */
+    private List<String> keysWhere(String col, String val) {
+        HashIndex idx = indexOn(col);
+        return idx == null ? rows.keysWhere(col, val) : idx.get(val);
+    }
+
+    private boolean removeRow(String pk) {
+        preserve(pk);
+        if (!indexes.isEmpty()) {
+            Map<String, String> old = rows.get(pk);
+            if (old == null) return false;
+            unindex(old);
+        }
+        return rows.remove(pk);
+    }
+
+    private void index(Map<String, String> row) {
+        if (indexes.isEmpty()) return;
+        String pk = row.get(primaryKey);
+        for (HashIndex idx : indexes.values()) {
+            idx.add(row.get(idx.getColumn()), pk);
+        }
+    }
+
+    private void unindex(Map<String, String> row) {
+        if (indexes.isEmpty()) return;
+        String pk = row.get(primaryKey);
+        for (HashIndex idx : indexes.values()) {
+            idx.remove(row.get(idx.getColumn()), pk);
         }
-        return count;
     }
 }
@@ -0,0 +1,45 @@
+package minisql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * region 上的全表扫描游标：按主键顺序分批读取（见 Table.scanBatch），只记住上一批最后一行的主键，
+ * 批与批之间不持有行也不持有读锁；列投影时只复制所需的列
+ */
+final class TableCursor implements ResultCursor {
+    private final Table table;
+    private final Predicate<Map<String, String>> filter;
+    // 复制的列，null 为全部列
+    private final List<String> scanColumns;
+    private final List<Column> columns;
+    private final String emptyMessage;
+    private String afterPk;
+    private boolean done;
+
+    TableCursor(Table table, Predicate<Map<String, String>> filter, List<String> scanColumns,
+                List<Column> columns, String emptyMessage) {
+        this.table        = table;
+        this.filter       = filter;
+        this.scanColumns  = scanColumns;
+        this.columns      = columns;
+        this.emptyMessage = emptyMessage;
+    }
+
+    @Override
+    public QueryResult next(int batchRows) {
+        List<Map<String, String>> rows = new ArrayList<>();
+        if (!done) {
+            afterPk = table.scanBatch(afterPk, Math.max(1, batchRows), filter, scanColumns, rows);
+            done = afterPk == null;
+        }
+        return QueryResult.rows(columns, rows, emptyMessage);
+    }
+
+    @Override
+    public boolean isDone() {
+        return done;
+    }
+}
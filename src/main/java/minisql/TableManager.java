@@ -1,23 +1,61 @@
 package minisql;
 
+import util.Partitioning;
+import util.TableSchema;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 本地表管理：创建、获取、删除
+ * 表目录使用 ConcurrentHashMap，支持多线程并发访问
  */
 public class TableManager {
-    private static final Map<String, Table> tables = new HashMap<>();
+    private static final Map<String, Table> tables = new ConcurrentHashMap<>();
 
     /** 创建表，返回 true 表示新建，false 表示已存在 */
     public static boolean createTable(String name, List<Column> columns, String primaryKey) {
+        return createTable(name, columns, primaryKey, Partitioning.HASH);
+    }
+
+    /** 按指定分区方式、默认存储方式创建表 */
+    public static boolean createTable(String name, List<Column> columns, String primaryKey,
+                                      Partitioning partitioning) {
+        return createTable(name, columns, primaryKey, partitioning, null);
+    }
+
+    /**
+     * 按指定分区方式与存储引擎（null 为默认，见 Table.defaultStorage）创建表；
+     * RANGE 分区要求 INT 主键、引擎须为已知的存储方式，否则抛 IllegalArgumentException。
+     * 建表与删表串行执行，预写日志中的建表记录先于该表的任何修改记录
+     */
+    public static synchronized boolean createTable(String name, List<Column> columns, String primaryKey,
+                                                   Partitioning partitioning, String engine) {
+        if (engine != null && !Table.isStorage(engine)) throw new IllegalArgumentException("Unknown storage: " + engine);
         if (tables.containsKey(name)) return false;
-        tables.put(name, new Table(name, columns, primaryKey));
+        Table table = new Table(name, columns, primaryKey, engine != null ? engine : Table.defaultStorage(), partitioning);
+        WriteAheadLog.record(new TableSchema(name, columns, primaryKey, partitioning.toString(), engine, Map.of())
+                .toCreateStatement());
+        tables.put(name, table);
         return true;
     }
 
+    /** 从快照恢复一张空表（覆盖同名表，不写日志），随后由调用方灌入行 */
+    static synchronized Table restoreTable(String name, List<Column> columns, String primaryKey, String storage,
+                                           Partitioning partitioning) {
+        Table table = new Table(name, columns, primaryKey, storage, partitioning);
+        Table old = tables.put(name, table);
+        if (old != null) old.close();
+        return table;
+    }
+
     /** 删除表，返回 true 表示删除成功 */
-    public static boolean dropTable(String name) {
-        return tables.remove(name) != null;
+    public static synchronized boolean dropTable(String name) {
+        Table table = tables.remove(name);
+        if (table == null) return false;
+        WriteAheadLog.record("DROP TABLE " + name);
+        table.close();
+        return true;
     }
 
     /** 获取表实例或 null */
@@ -25,6 +63,14 @@ public class TableManager {
         return tables.get(name);
     }
 
+    /** 拥有该名称二级索引的表，没有时返回 null */
+    public static Table tableOfIndex(String indexName) {
+        for (Table t : tables.values()) {
+            if (t.getIndexes().containsKey(indexName)) return t;
+        }
+        return null;
+    }
+
     /** 列出所有表名 */
     public static Set<String> listTables() {
         // 返回一个新的 HashSet 副本，修改原表不会影响这里的迭代
@@ -0,0 +1,383 @@
+package minisql;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 预写日志（WAL）：表的每次修改在持有表写锁时追加一条逻辑记录（可重放的 SQL 文本），
+ * 由后台刷盘线程经 FileChannel 批量写入并 fsync（组提交：一次 force 覆盖期间所有并发写入者的记录）。
+ * 每条记录有递增的序号（LSN），格式：[SQL 长度 int][CRC32 int][LSN long][UTF-8 SQL]。
+ * 日志按段存放：<dir>/<name>-<段内首条 LSN>.wal，快照（见 SnapshotStore）完成后 roll 出新段，
+ * 已被快照覆盖的旧段即可删除；启动时按段顺序重放，遇到不完整或校验失败的尾部记录即截断。
+ * 持久化级别：
+ *  - NONE：不写日志（纯内存，与原先一致）
+ *  - ASYNC：写入者不等待，刷盘线程每 flushMs 批量写入并 fsync，崩溃最多丢失最近一个刷盘间隔
+ *  - SYNC：写入者等到自己的记录 fsync 后才返回，并发写入者共享同一次 fsync
+ * 同一时刻只安装一个日志（RegionServer 每进程一个），未安装时 record/awaitDurable 为空操作
+ */
+public final class WriteAheadLog implements AutoCloseable {
+    public enum Durability { NONE, ASYNC, SYNC }
+
+    private static final int HEADER = 16;
+    private static volatile WriteAheadLog installed;
+    // 当前线程最近追加、尚未等待落盘的记录（所属日志与序号），awaitDurable 据此等待
+    private static final ThreadLocal<Pending> PENDING = ThreadLocal.withInitial(Pending::new);
+
+    private final Path dir;
+    private final String name;
+    private final Durability durability;
+    private final long flushMs;
+    private final Object lock = new Object();
+    // 当前写入的段（只由刷盘线程访问；null 表示下一批写入时新建）
+    private FileChannel segment;
+    private Path segmentPath;
+    // 待刷盘的记录（以下字段受 lock 保护）
+    private byte[] buffer = new byte[64 * 1024];
+    private int buffered;
+    private long appendedLsn;
+    private long durableLsn;
+    private IOException failure;
+    private boolean closed;
+    // 下一批写入前切换到新段
+    private boolean rollRequested;
+    // 刷盘线程已退出（关闭或写入失败）
+    private boolean stopped;
+    private final Thread flusher;
+    // 统计：刷盘（fsync）次数与写入的记录数
+    private long flushes;
+    private long records;
+
+    private WriteAheadLog(Path dir, String name, Durability durability, long flushMs) throws IOException {
+        this.dir        = dir;
+        this.name       = name;
+        this.durability = durability;
+        this.flushMs    = flushMs;
+        Files.createDirectories(dir);
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /** 打开 dir 下名为 name 的日志（各段文件不存在则在首次写入时创建）；需先 replay 再 install */
+    public static WriteAheadLog open(Path dir, String name, Durability durability, long flushMs) throws IOException {
+        return new WriteAheadLog(dir, name, durability, flushMs);
+    }
+
+    /** 解析持久化级别（不区分大小写），不合法时抛 IllegalArgumentException */
+    public static Durability parseDurability(String s) {
+        return Durability.valueOf(s.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * 按 LSN 顺序重放各段中的记录（apply 收到 SQL 与 LSN），返回重放条数；
+     * 末尾不完整或校验失败的记录（崩溃时写了一半）被截断，之后的追加接在最后一段末尾
+     */
+    public long replay(ObjLongConsumer<String> apply) throws IOException {
+        long count = 0;
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            Path p = segments.get(i);
+            boolean last = i == segments.size() - 1;
+            FileChannel ch = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long pos = 0;
+            long size = ch.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (pos + HEADER <= size) {
+                header.clear();
+                readFully(ch, header, pos);
+                int len = header.getInt(0);
+                int crc = header.getInt(4);
+                long lsn = header.getLong(8);
+                if (len < 0 || pos + HEADER + len > size) break;
+                ByteBuffer body = ByteBuffer.allocate(len);
+                readFully(ch, body, pos + HEADER);
+                if (crc32(lsn, body.array(), 0, len) != crc) break;
+                apply.accept(new String(body.array(), StandardCharsets.UTF_8), lsn);
+                appendedLsn = Math.max(appendedLsn, lsn);
+                pos += HEADER + len;
+                count++;
+            }
+            if (pos < size) {
+                System.err.println("[WAL] Truncating torn tail of " + p + " at " + pos + " (size " + size + ")");
+                ch.truncate(pos);
+            }
+            if (last) {
+                ch.position(pos);
+                segment = ch;
+                segmentPath = p;
+            } else {
+                ch.close();
+            }
+        }
+        durableLsn = appendedLsn;
+        return count;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            if (ch.read(b, pos + b.position()) < 0) throw new IOException("Unexpected end of log segment");
+        }
+    }
+
+    /** 各段文件，按段内首条 LSN 排序 */
+    private List<Path> segments() throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> baseLsn(p) >= 0).forEach(result::add);
+        }
+        result.sort(Comparator.comparingLong(this::baseLsn));
+        return result;
+    }
+
+    /** 段文件名中的首条 LSN，不是本日志的段时返回 -1 */
+    private long baseLsn(Path p) {
+        String f = p.getFileName().toString();
+        if (!f.startsWith(name + "-") || !f.endsWith(".wal")) return -1;
+        try {
+            return Long.parseLong(f.substring(name.length() + 1, f.length() - 4));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** LSN 至少从 lsn 之后开始（快照中的记录已不在日志里时，接续快照的 LSN） */
+    public void advanceTo(long lsn) {
+        synchronized (lock) {
+            if (lsn > appendedLsn) {
+                appendedLsn = lsn;
+                durableLsn = lsn;
+            }
+        }
+    }
+
+    /** 安装为当前日志并启动刷盘线程（NONE 级别不安装） */
+    public void install() {
+        if (durability == Durability.NONE) return;
+        flusher.start();
+        installed = this;
+    }
+
+    /** 是否已安装日志（调用方据此决定是否需要拼出记录文本） */
+    public static boolean isEnabled() {
+        return installed != null;
+    }
+
+    /**
+     * 追加一条记录；需在持有被修改表的写锁时调用，保证日志顺序与执行顺序一致。
+     * 刷盘失败后任何级别都不再接受记录，抛 UncheckedIOException
+     */
+    public static void record(String sql) {
+        WriteAheadLog wal = installed;
+        if (wal == null) return;
+        long lsn = wal.append(sql);
+        Pending p = PENDING.get();
+        p.wal = wal;
+        p.lsn = lsn;
+    }
+
+    /** SYNC 级别下等待当前线程已追加的记录落盘；刷盘失败时抛 UncheckedIOException */
+    public static void awaitDurable() {
+        Pending p = PENDING.get();
+        WriteAheadLog wal = p.wal;
+        if (wal == null) return;
+        p.wal = null;
+        if (wal.durability == Durability.SYNC) wal.await(p.lsn);
+    }
+
+    /** 最后追加的记录的 LSN（在持有表锁时读取即为该表在日志中的位置） */
+    public long lastLsn() {
+        synchronized (lock) {
+            return appendedLsn;
+        }
+    }
+
+    /** 下一批记录写入新段（快照完成后调用，使旧段可以整体删除） */
+    public void roll() {
+        synchronized (lock) {
+            rollRequested = true;
+        }
+    }
+
+    /**
+     * 删除所有记录都不大于 lsn 的段（已被快照覆盖）；正在写入的段保留。返回删除的段数
+     */
+    public int deleteSegmentsUpTo(long lsn) throws IOException {
+        List<Path> segments = segments();
+        Path current;
+        synchronized (lock) {
+            current = segmentPath;
+        }
+        int deleted = 0;
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            Path p = segments.get(i);
+            // 段内最后一条记录的 LSN = 下一段首条 LSN - 1
+            if (p.equals(current) || baseLsn(segments.get(i + 1)) - 1 > lsn) break;
+            Files.deleteIfExists(p);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private long append(String sql) {
+        byte[] b = sql.getBytes(StandardCharsets.UTF_8);
+        synchronized (lock) {
+            // 刷盘线程已因写入失败退出，继续缓冲只会无限增长且永远不会写出
+            if (failure != null) throw new UncheckedIOException(failure);
+            if (buffered + HEADER + b.length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, buffered + HEADER + b.length));
+            }
+            long lsn = ++appendedLsn;
+            ByteBuffer.wrap(buffer, buffered, HEADER).putInt(b.length).putInt(crc32(lsn, b, 0, b.length)).putLong(lsn);
+            System.arraycopy(b, 0, buffer, buffered + HEADER, b.length);
+            buffered += HEADER + b.length;
+            // SYNC 级别立即唤醒刷盘线程；刷盘进行中到达的记录自然并入下一批
+            if (durability == Durability.SYNC) lock.notifyAll();
+            return lsn;
+        }
+    }
+
+    private void await(long lsn) {
+        synchronized (lock) {
+            while (durableLsn < lsn && failure == null && !stopped) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new IOException("Interrupted waiting for WAL flush"));
+                }
+            }
+            if (durableLsn < lsn) {
+                throw new UncheckedIOException(failure != null ? failure : new IOException("WAL closed"));
+            }
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            flushBatches();
+        } finally {
+            synchronized (lock) {
+                stopped = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /** 刷盘线程：取走缓冲区中的全部记录，一次 write + force，再唤醒等待者 */
+    private void flushBatches() {
+        byte[] spare = new byte[buffer.length];
+        while (true) {
+            byte[] batch;
+            int n;
+            long firstLsn;
+            long lsn;
+            boolean roll;
+            synchronized (lock) {
+                try {
+                    if (durability == Durability.SYNC) {
+                        while (buffered == 0 && !closed) lock.wait(flushMs);
+                    } else if (!closed) {
+                        lock.wait(flushMs);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (buffered == 0) {
+                    if (closed) return;
+                    continue;
+                }
+                batch = buffer;
+                n = buffered;
+                lsn = appendedLsn;
+                firstLsn = durableLsn + 1;
+                roll = rollRequested;
+                rollRequested = false;
+                buffer = spare.length >= batch.length ? spare : new byte[batch.length];
+                buffered = 0;
+            }
+            IOException err = null;
+            try {
+                if (roll || segment == null) openSegment(firstLsn);
+                ByteBuffer bb = ByteBuffer.wrap(batch, 0, n);
+                while (bb.hasRemaining()) segment.write(bb);
+                segment.force(false);
+            } catch (IOException e) {
+                err = e;
+                System.err.println("[WAL] Flush to " + segmentPath + " failed: " + e.getMessage());
+            }
+            synchronized (lock) {
+                if (err == null) {
+                    records += lsn - durableLsn;
+                    durableLsn = lsn;
+                    flushes++;
+                } else {
+                    failure = err;
+                }
+                lock.notifyAll();
+            }
+            spare = batch;
+            if (err != null) return;
+        }
+    }
+
+    /** 关闭当前段，新建以 firstLsn 命名的段 */
+    private void openSegment(long firstLsn) throws IOException {
+        if (segment != null) segment.close();
+        Path p = dir.resolve(String.format("%s-%020d.wal", name, firstLsn));
+        FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        ch.position(ch.size());
+        synchronized (lock) {
+            segment = ch;
+            segmentPath = p;
+        }
+    }
+
+    /** 刷盘次数与已落盘记录数（每次 fsync 平均覆盖的记录数即组提交的效果） */
+    public String stats() {
+        synchronized (lock) {
+            return "records=" + records + " fsyncs=" + flushes
+                    + (flushes == 0 ? "" : String.format(" records/fsync=%.1f", records / (double) flushes));
+        }
+    }
+
+    public Durability getDurability() { return durability; }
+
+    /** 刷出剩余记录后关闭；若为当前安装的日志则一并卸载 */
+    @Override
+    public void close() throws IOException {
+        if (installed == this) installed = null;
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        if (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (segment != null) segment.close();
+    }
+
+    private static final class Pending {
+        WriteAheadLog wal;
+        long lsn;
+    }
+
+    private static int crc32(long lsn, byte[] b, int off, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(0, lsn));
+        crc.update(b, off, len);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,107 @@
+package minisql.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * WHERE 条件：列 op 值（值可以是 ? 参数）
+ *  =、<、<=、>、>=，或 BETWEEN 下界 AND 上界（两端都包含）；
+ *  SELECT 的条件还可以用 AND / OR 与括号组合（AND 优先），组合条件的列、值为 null，子条件见 getChildren
+ */
+public final class Condition {
+    public enum Op { EQ, LT, LE, GT, GE, BETWEEN, AND, OR }
+
+    private final String column;
+    private final Op op;
+    private final Value value;
+    // BETWEEN 的上界，其余为 null
+    private final Value high;
+    // AND/OR 的子条件，其余为空
+    private final List<Condition> children;
+
+    public Condition(String column, Value value) {
+        this(column, Op.EQ, value, null);
+    }
+
+    public Condition(String column, Op op, Value value, Value high) {
+        this.column   = column;
+        this.op       = op;
+        this.value    = value;
+        this.high     = high;
+        this.children = List.of();
+    }
+
+    private Condition(Op op, List<Condition> children) {
+        this.column   = null;
+        this.op       = op;
+        this.value    = null;
+        this.high     = null;
+        this.children = List.copyOf(children);
+    }
+
+    /** 子条件的 AND，只有一个子条件时返回它本身 */
+    public static Condition and(List<Condition> children) {
+        return children.size() == 1 ? children.get(0) : new Condition(Op.AND, children);
+    }
+
+    /** 子条件的 OR，只有一个子条件时返回它本身 */
+    public static Condition or(List<Condition> children) {
+        return children.size() == 1 ? children.get(0) : new Condition(Op.OR, children);
+    }
+
+    public String getColumn() { return column; }
+    public Op getOp() { return op; }
+    /** 比较值；BETWEEN 时为下界 */
+    public Value getValue() { return value; }
+    /** BETWEEN 的上界，其余为 null */
+    public Value getHigh() { return high; }
+    /** AND/OR 的子条件 */
+    public List<Condition> getChildren() { return children; }
+
+    public boolean isEquality() { return op == Op.EQ; }
+
+    public boolean isCompound() { return op == Op.AND || op == Op.OR; }
+
+    /**
+     * 选择行时可走的单列条件：单列条件为自身，AND 取主键等值、其他等值、范围条件中的第一个，
+     * OR 为 null（需全表扫描）；其余子条件在取出的行上逐行判断
+     */
+    public Condition accessPath(String primaryKey) {
+        if (op == Op.OR) return null;
+        if (op != Op.AND) return this;
+        Condition best = null;
+        for (Condition c : children) {
+            if (c.isCompound()) continue;
+            if (c.isEquality() && c.column.equals(primaryKey)) return c;
+            if (best == null || (c.isEquality() && !best.isEquality())) best = c;
+        }
+        return best;
+    }
+
+    /** 各单列条件的列名按 rename 替换后的条件（JOIN 把列名解析到所属的表时使用） */
+    public Condition renamed(UnaryOperator<String> rename) {
+        if (!isCompound()) return new Condition(rename.apply(column), op, value, high);
+        List<Condition> renamed = new ArrayList<>(children.size());
+        for (Condition c : children) renamed.add(c.renamed(rename));
+        return new Condition(op, renamed);
+    }
+
+    /** 条件的 SQL 写法，? 参数按 params 代入为单引号字面量（Master 改写语句后转发时使用） */
+    public String toSql(List<String> params) {
+        if (isCompound()) {
+            List<String> parts = new ArrayList<>(children.size());
+            for (Condition c : children) parts.add(c.isCompound() ? "(" + c.toSql(params) + ")" : c.toSql(params));
+            return String.join(" " + op + " ", parts);
+        }
+        String v = SqlParser.quote(value.resolve(params));
+        switch (op) {
+            case EQ: return column + " = " + v;
+            case LT: return column + " < " + v;
+            case LE: return column + " <= " + v;
+            case GT: return column + " > " + v;
+            case GE: return column + " >= " + v;
+            default: return column + " BETWEEN " + v + " AND " + SqlParser.quote(high.resolve(params));
+        }
+    }
+}
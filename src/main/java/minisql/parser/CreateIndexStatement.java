@@ -0,0 +1,16 @@
+package minisql.parser;
+
+/** CREATE INDEX idx ON t (col) */
+public final class CreateIndexStatement extends Statement {
+    private final String indexName;
+    private final String column;
+
+    public CreateIndexStatement(String table, String indexName, String column) {
+        super(table);
+        this.indexName = indexName;
+        this.column    = column;
+    }
+
+    public String getIndexName() { return indexName; }
+    public String getColumn() { return column; }
+}
@@ -0,0 +1,37 @@
+package minisql.parser;
+
+import minisql.Column;
+
+import java.util.List;
+
+/** CREATE TABLE t (col TYPE, ..., PRIMARY KEY(col)) [PARTITION BY HASH | PARTITION BY RANGE (lo, hi)] [ENGINE=name] */
+public final class CreateTableStatement extends Statement {
+    private final List<Column> columns;
+    private final String primaryKey;
+    // 分区方式描述串："HASH" 或 "RANGE(lo,hi)"（见 util.Partitioning）
+    private final String partitioning;
+    // 存储引擎名（ROW/COLUMNAR/OFFHEAP/LSM），未指定为 null
+    private final String engine;
+
+    public CreateTableStatement(String table, List<Column> columns, String primaryKey) {
+        this(table, columns, primaryKey, "HASH");
+    }
+
+    public CreateTableStatement(String table, List<Column> columns, String primaryKey, String partitioning) {
+        this(table, columns, primaryKey, partitioning, null);
+    }
+
+    public CreateTableStatement(String table, List<Column> columns, String primaryKey, String partitioning,
+                                String engine) {
+        super(table);
+        this.columns      = List.copyOf(columns);
+        this.primaryKey   = primaryKey;
+        this.partitioning = partitioning;
+        this.engine       = engine;
+    }
+
+    public List<Column> getColumns() { return columns; }
+    public String getPrimaryKey() { return primaryKey; }
+    public String getPartitioning() { return partitioning; }
+    public String getEngine() { return engine; }
+}
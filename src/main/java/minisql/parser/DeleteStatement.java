@@ -0,0 +1,14 @@
+package minisql.parser;
+
+/** DELETE FROM t [WHERE col = val] */
+public final class DeleteStatement extends Statement {
+    private final Condition where;
+
+    public DeleteStatement(String table, Condition where) {
+        super(table);
+        this.where = where;
+    }
+
+    /** WHERE 条件，清空整表时为 null */
+    public Condition getWhere() { return where; }
+}
@@ -0,0 +1,13 @@
+package minisql.parser;
+
+/** DROP INDEX idx [ON t]，未写 ON 时表名为 null（按索引名查找所属表） */
+public final class DropIndexStatement extends Statement {
+    private final String indexName;
+
+    public DropIndexStatement(String table, String indexName) {
+        super(table);
+        this.indexName = indexName;
+    }
+
+    public String getIndexName() { return indexName; }
+}
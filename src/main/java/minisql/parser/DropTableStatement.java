@@ -0,0 +1,8 @@
+package minisql.parser;
+
+/** DROP TABLE t */
+public final class DropTableStatement extends Statement {
+    public DropTableStatement(String table) {
+        super(table);
+    }
+}
@@ -0,0 +1,50 @@
+package minisql.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** INSERT INTO t (cols) VALUES (vals) [, (vals) ...]，列数与值个数由执行器校验 */
+public final class InsertStatement extends Statement {
+    private final List<String> columns;
+    private final List<List<Value>> rows;
+
+    public InsertStatement(String table, List<String> columns, List<Value> values) {
+        this(List.of(values), table, columns);
+    }
+
+    /** 多行 INSERT，rows 至少一行 */
+    public static InsertStatement ofRows(String table, List<String> columns, List<List<Value>> rows) {
+        return new InsertStatement(rows, table, columns);
+    }
+
+    private InsertStatement(List<List<Value>> rows, String table, List<String> columns) {
+        super(table);
+        this.columns = List.copyOf(columns);
+        List<List<Value>> copied = new ArrayList<>(rows.size());
+        for (List<Value> r : rows) copied.add(List.copyOf(r));
+        this.rows = List.copyOf(copied);
+    }
+
+    public List<String> getColumns() { return columns; }
+    /** 第一行的值（单行 INSERT 的全部值） */
+    public List<Value> getValues() { return rows.get(0); }
+    /** 所有行的值 */
+    public List<List<Value>> getRows() { return rows; }
+    /** 是否为多行 INSERT */
+    public boolean isMultiRow() { return rows.size() > 1; }
+
+    /** 列名的位置（不区分大小写），不存在时返回 -1 */
+    public int columnIndex(String column) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).equalsIgnoreCase(column)) return i;
+        }
+        return -1;
+    }
+
+    /** 单行 INSERT 中给定列的值；列不存在或为多行 INSERT（没有单一取值）时返回 null */
+    public Value valueOf(String column) {
+        if (isMultiRow()) return null;
+        int i = columnIndex(column);
+        return i >= 0 && i < getValues().size() ? getValues().get(i) : null;
+    }
+}
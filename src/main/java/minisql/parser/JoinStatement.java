@@ -0,0 +1,59 @@
+package minisql.parser;
+
+import java.util.List;
+
+/**
+ * SELECT * | col, ... FROM a [别名] [INNER] JOIN b [别名] ON a.x = b.y [WHERE cond]（内连接，等值连接条件）
+ * 列可以写成 表或别名.列，也可以只写列名（只在一张表中存在时）；SELECT * 的结果列为 别名.列，
+ * 列投影的结果列按原写法。WHERE 的列同样可以带表名，AND / OR 组合，在连接后的行上判断
+ * （只涉及一张表的 AND 子条件在连接前下推到该表的扫描）。
+ * getTable() 为左表
+ */
+public final class JoinStatement extends Statement {
+    private final String leftAlias;
+    private final String rightTable;
+    private final String rightAlias;
+    // ON 两侧的列（按原写法，可能带表名）；带表名时左表一侧在前，都不带表名时按书写顺序
+    private final String leftColumn;
+    private final String rightColumn;
+    private final List<String> columns;
+    private final Condition where;
+
+    public JoinStatement(String leftTable, String leftAlias, String rightTable, String rightAlias,
+                         String leftColumn, String rightColumn, List<String> columns, Condition where) {
+        super(leftTable);
+        this.leftAlias   = leftAlias;
+        this.rightTable  = rightTable;
+        this.rightAlias  = rightAlias;
+        this.leftColumn  = leftColumn;
+        this.rightColumn = rightColumn;
+        this.columns     = List.copyOf(columns);
+        this.where       = where;
+    }
+
+    /** 左表的别名，没有别名时为表名 */
+    public String getLeftAlias() { return leftAlias; }
+    public String getRightTable() { return rightTable; }
+    /** 右表的别名，没有别名时为表名 */
+    public String getRightAlias() { return rightAlias; }
+    /** ON 中左表一侧的列（按原写法） */
+    public String getLeftColumn() { return leftColumn; }
+    /** ON 中右表一侧的列（按原写法） */
+    public String getRightColumn() { return rightColumn; }
+    /** SELECT 的列（按原写法），SELECT * 时为空 */
+    public List<String> getColumns() { return columns; }
+    /** WHERE 条件，没有时为 null */
+    public Condition getWhere() { return where; }
+
+    /** 去掉表名或别名前缀后的列名 */
+    public static String baseName(String column) {
+        int dot = column.indexOf('.');
+        return dot < 0 ? column : column.substring(dot + 1);
+    }
+
+    /** 列的表名或别名前缀，未限定时为 null */
+    public static String qualifier(String column) {
+        int dot = column.indexOf('.');
+        return dot < 0 ? null : column.substring(0, dot);
+    }
+}
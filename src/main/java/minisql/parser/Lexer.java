@@ -0,0 +1,91 @@
+package minisql.parser;
+
+/**
+ * 单遍手写词法分析器：按需逐个产出 Token，不使用正则、不预先拆分字符串
+ *  - 标识符/关键字：字母或下划线开头的 [A-Za-z0-9_]+
+ *  - 数字：可带负号的整数或小数；以数字开头但含字母的单词按标识符处理（兼容原先 \w+ 的取值）
+ *  - 字符串：单引号括起，'' 表示一个单引号
+ *  - 符号：( ) , ; * = ? . 以及 < <= > >= <> !=
+ */
+public final class Lexer {
+    private final String sql;
+    private int pos;
+
+    public Lexer(String sql) {
+        this.sql = sql;
+    }
+
+    public Token next() {
+        int n = sql.length();
+        while (pos < n && Character.isWhitespace(sql.charAt(pos))) pos++;
+        if (pos >= n) return new Token(Token.Type.EOF, "", pos);
+
+        int start = pos;
+        char c = sql.charAt(pos);
+        if (isWordChar(c) || (c == '-' && pos + 1 < n && isDigit(sql.charAt(pos + 1)))) {
+            pos++;
+            boolean numeric = c == '-' || isDigit(c);
+            while (pos < n && isWordChar(sql.charAt(pos))) {
+                numeric &= isDigit(sql.charAt(pos));
+                pos++;
+            }
+            // 小数部分
+            if (numeric && pos + 1 < n && sql.charAt(pos) == '.' && isDigit(sql.charAt(pos + 1))) {
+                pos++;
+                while (pos < n && isDigit(sql.charAt(pos))) pos++;
+            }
+            return new Token(numeric ? Token.Type.NUMBER : Token.Type.IDENT, sql.substring(start, pos), start);
+        }
+        if (c == '\'') {
+            return string(start);
+        }
+        pos++;
+        switch (c) {
+            case '(': case ')': case ',': case ';': case '*': case '=': case '?': case '.':
+                return new Token(Token.Type.SYMBOL, String.valueOf(c), start);
+            case '<':
+                if (pos < n && (sql.charAt(pos) == '=' || sql.charAt(pos) == '>')) pos++;
+                return new Token(Token.Type.SYMBOL, sql.substring(start, pos), start);
+            case '>':
+                if (pos < n && sql.charAt(pos) == '=') pos++;
+                return new Token(Token.Type.SYMBOL, sql.substring(start, pos), start);
+            case '!':
+                if (pos < n && sql.charAt(pos) == '=') {
+                    pos++;
+                    return new Token(Token.Type.SYMBOL, "!=", start);
+                }
+                break;
+            default:
+                break;
+        }
+        throw new SqlParseException("Unexpected character '" + c + "' at " + start);
+    }
+
+    private Token string(int start) {
+        StringBuilder sb = null;
+        int n = sql.length();
+        int from = ++pos;
+        while (pos < n) {
+            char c = sql.charAt(pos++);
+            if (c != '\'') continue;
+            if (pos < n && sql.charAt(pos) == '\'') {
+                // '' 转义：只有出现转义时才拷贝
+                if (sb == null) sb = new StringBuilder();
+                sb.append(sql, from, pos);
+                from = ++pos;
+                continue;
+            }
+            String tail = sql.substring(from, pos - 1);
+            return new Token(Token.Type.STRING, sb == null ? tail : sb.append(tail).toString(), start);
+        }
+        throw new SqlParseException("Unterminated string at " + start);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,22 @@
+package minisql.parser;
+
+import java.util.List;
+
+/**
+ * LOAD DATA 'file.csv' INTO t [(col, ...)]：从 CSV 文件批量导入。
+ * 未写列名时文件第一行为表头（列名），写了列名时文件没有表头、各行按列名顺序取值
+ */
+public final class LoadDataStatement extends Statement {
+    private final String file;
+    private final List<String> columns;
+
+    public LoadDataStatement(String table, String file, List<String> columns) {
+        super(table);
+        this.file    = file;
+        this.columns = List.copyOf(columns);
+    }
+
+    public String getFile() { return file; }
+    /** 指定的列名，为空时从文件表头读取 */
+    public List<String> getColumns() { return columns; }
+}
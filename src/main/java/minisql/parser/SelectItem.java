@@ -0,0 +1,56 @@
+package minisql.parser;
+
+import java.util.Objects;
+
+/**
+ * SELECT 列表中的一项：列名，或聚合函数 COUNT(*)、COUNT(col)、SUM(col)、AVG(col)、MIN(col)、MAX(col)
+ */
+public final class SelectItem {
+    public enum Function { COUNT, SUM, AVG, MIN, MAX }
+
+    // 普通列为 null
+    private final Function function;
+    // COUNT(*) 为 null
+    private final String column;
+
+    private SelectItem(Function function, String column) {
+        this.function = function;
+        this.column   = column;
+    }
+
+    public static SelectItem column(String column) {
+        return new SelectItem(null, column);
+    }
+
+    public static SelectItem aggregate(Function function, String column) {
+        return new SelectItem(function, column);
+    }
+
+    public boolean isAggregate() { return function != null; }
+    public Function getFunction() { return function; }
+    /** 列名，COUNT(*) 为 null */
+    public String getColumn() { return column; }
+
+    /** 结果列名，也是该项的 SQL 写法：name、COUNT(*)、AVG(age) */
+    public String label() {
+        if (function == null) return column;
+        return function + "(" + (column == null ? "*" : column) + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SelectItem)) return false;
+        SelectItem s = (SelectItem) o;
+        return function == s.function && Objects.equals(column, s.column);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(function, column);
+    }
+
+    @Override
+    public String toString() {
+        return label();
+    }
+}
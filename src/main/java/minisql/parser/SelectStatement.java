@@ -0,0 +1,109 @@
+package minisql.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SELECT * | item, ... FROM t [WHERE cond] [GROUP BY col, ...] [ORDER BY item [ASC|DESC]] [LIMIT n [OFFSET m]]
+ * 列表为空表示 *，只有列名时为列投影；带聚合函数或 GROUP BY 时为聚合查询，普通列必须出现在 GROUP BY 中，
+ * ORDER BY 必须是 SELECT 列表中的一项。WHERE 可以是 AND / OR 组合条件，在 region 上逐行判断
+ */
+public final class SelectStatement extends Statement {
+    /** 没有 LIMIT */
+    public static final int NO_LIMIT = -1;
+
+    private final List<SelectItem> items;
+    private final Condition where;
+    private final List<String> groupBy;
+    private final SelectItem orderBy;
+    private final boolean descending;
+    private final int limit;
+    private final int offset;
+
+    public SelectStatement(String table, Condition where) {
+        this(table, List.of(), where, List.of());
+    }
+
+    public SelectStatement(String table, List<SelectItem> items, Condition where, List<String> groupBy) {
+        this(table, items, where, groupBy, null, false, NO_LIMIT, 0);
+    }
+
+    public SelectStatement(String table, List<SelectItem> items, Condition where, List<String> groupBy,
+                           SelectItem orderBy, boolean descending, int limit, int offset) {
+        super(table);
+        this.items      = List.copyOf(items);
+        this.where      = where;
+        this.groupBy    = List.copyOf(groupBy);
+        this.orderBy    = orderBy;
+        this.descending = descending;
+        this.limit      = limit;
+        this.offset     = offset;
+    }
+
+    /** SELECT 列表，SELECT * 时为空 */
+    public List<SelectItem> getItems() { return items; }
+
+    /** WHERE 条件，全表查询时为 null */
+    public Condition getWhere() { return where; }
+
+    /** GROUP BY 的列，没有时为空 */
+    public List<String> getGroupBy() { return groupBy; }
+
+    /** ORDER BY 的项，没有时为 null */
+    public SelectItem getOrderBy() { return orderBy; }
+
+    public boolean isDescending() { return descending; }
+
+    /** LIMIT 行数，没有时为 NO_LIMIT */
+    public int getLimit() { return limit; }
+
+    public int getOffset() { return offset; }
+
+    /** 是否为聚合查询（含聚合函数或 GROUP BY） */
+    public boolean isAggregate() {
+        return !groupBy.isEmpty() || items.stream().anyMatch(SelectItem::isAggregate);
+    }
+
+    /** 是否带 ORDER BY、LIMIT 或 OFFSET */
+    public boolean isOrderedOrLimited() {
+        return orderBy != null || limit != NO_LIMIT || offset > 0;
+    }
+
+    /** 是否为列投影（SELECT col, ... 且不是聚合查询） */
+    public boolean isProjection() {
+        return !items.isEmpty() && !isAggregate();
+    }
+
+    /**
+     * ORDER BY / LIMIT 查询发往 region 的形式：OFFSET 并入 LIMIT（每个 region 返回前 offset + limit 行，
+     * 由 Master 合并后再跳过）；列投影不含排序列时加上该列，供 Master 归并，合并后再去掉。
+     * 不需要改写时返回自身
+     */
+    public SelectStatement pushdown() {
+        boolean addOrderColumn = isProjection() && orderBy != null && !items.contains(orderBy);
+        if (offset == 0 && !addOrderColumn) return this;
+        int k = limit == NO_LIMIT ? NO_LIMIT : (int) Math.min(Integer.MAX_VALUE, (long) limit + offset);
+        List<SelectItem> select = items;
+        if (addOrderColumn) {
+            select = new ArrayList<>(items);
+            select.add(orderBy);
+        }
+        SelectStatement st = new SelectStatement(getTable(), select, where, groupBy, orderBy, descending, k, 0);
+        st.paramCount = paramCount;
+        return st;
+    }
+
+    /** 代入参数后的 SQL 文本（Master 改写后转发给 region） */
+    public String toSql(List<String> params) {
+        List<String> select = new ArrayList<>();
+        for (SelectItem item : items) select.add(item.label());
+        StringBuilder sb = new StringBuilder("SELECT ").append(select.isEmpty() ? "*" : String.join(", ", select))
+                .append(" FROM ").append(getTable());
+        if (where != null) sb.append(" WHERE ").append(where.toSql(params));
+        if (!groupBy.isEmpty()) sb.append(" GROUP BY ").append(String.join(", ", groupBy));
+        if (orderBy != null) sb.append(" ORDER BY ").append(orderBy.label()).append(descending ? " DESC" : "");
+        if (limit != NO_LIMIT) sb.append(" LIMIT ").append(limit);
+        if (offset > 0) sb.append(" OFFSET ").append(offset);
+        return sb.toString();
+    }
+}
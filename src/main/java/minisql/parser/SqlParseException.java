@@ -0,0 +1,12 @@
+package minisql.parser;
+
+/**
+ * SQL 语法错误，消息即返回给客户端的提示（如 "Invalid INSERT syntax."）
+ */
+public class SqlParseException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    public SqlParseException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,553 @@
+package minisql.parser;
+
+import minisql.Column;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * 手写递归下降解析器：一遍词法 + 语法分析，产出类型化的语句 AST
+ *  CREATE TABLE t (col TYPE, ..., PRIMARY KEY(col)) [PARTITION BY HASH | PARTITION BY RANGE (lo, hi)] [ENGINE=name]
+ *  DROP TABLE t
+ *  CREATE INDEX idx ON t (col)
+ *  DROP INDEX idx [ON t]
+ *  INSERT INTO t (col, ...) VALUES (val, ...) [, (val, ...) ...]
+ *  LOAD DATA 'file.csv' INTO t [(col, ...)]
+ *  SELECT * | item, ... FROM t [WHERE cond] [GROUP BY col, ...] [ORDER BY item [ASC|DESC]] [LIMIT n [OFFSET m]]
+ *  SELECT * | col, ... FROM a [别名] [INNER] JOIN b [别名] ON a.x = b.y [WHERE cond]（列可写成 表或别名.列）
+ *  DELETE FROM t [WHERE cond]
+ *  UPDATE t SET col = val [, ...] WHERE cond
+ * item 为列名或聚合函数 COUNT(*)、COUNT|SUM|AVG|MIN|MAX(col)；只有列名时为列投影，聚合查询中的列名必须出现在
+ * GROUP BY 中，聚合查询的 ORDER BY 必须是 SELECT 列表中的一项。
+ * cond 为 col = val、col < val、col <= val、col > val、col >= val 或 col BETWEEN val AND val；
+ * SELECT 的 cond 还可以用 AND、OR（AND 优先）与括号组合。
+ * 关键字不区分大小写，语句末尾可带分号；值可以是数字、单引号字符串、不带引号的单词，
+ * 或预编译语句的 ? 参数（按出现顺序编号，执行时绑定）。
+ * 语法错误抛出 SqlParseException，消息与原先的正则实现一致（如 "Invalid INSERT syntax."）
+ */
+public final class SqlParser {
+    // 解析结果缓存（SQL 文本 → AST），region 与 master 共用，-Dsql.statementCache 配置容量，0 为关闭
+    private static final StatementCache CACHE =
+            new StatementCache(Integer.getInteger("sql.statementCache", 1024));
+
+    private final Lexer lexer;
+    private Token current;
+    private int params;
+    // 是否读到了带表名的列（只有 JOIN 允许）
+    private boolean qualified;
+
+    private SqlParser(String sql) {
+        this.lexer   = new Lexer(sql);
+        this.current = lexer.next();
+    }
+
+    /** 解析一条 SQL（不经过缓存） */
+    public static Statement parse(String sql) {
+        if (sql == null) throw new SqlParseException("Unsupported SQL.");
+        SqlParser p;
+        try {
+            p = new SqlParser(sql);
+        } catch (SqlParseException e) {
+            throw new SqlParseException("Unsupported SQL.");
+        }
+        return p.statement();
+    }
+
+    /** 解析一条 SQL，相同文本直接复用缓存中的 AST（多行 INSERT 文本长且几乎不重复，不放入缓存） */
+    public static Statement parseCached(String sql) {
+        Statement st = CACHE.get(sql);
+        if (st == null) {
+            st = parse(sql);
+            if (!(st instanceof InsertStatement && ((InsertStatement) st).isMultiRow())) CACHE.put(sql, st);
+        }
+        return st;
+    }
+
+    /**
+     * 把 ? 参数替换为单引号字面量，得到可直接执行的 SQL 文本
+     * （Master 到 RegionServer 使用文本协议时的回退路径）
+     */
+    public static String bindParameters(String sql, List<String> params) {
+        Lexer lx = new Lexer(sql);
+        StringBuilder sb = new StringBuilder(sql.length() + 16 * params.size());
+        int from = 0;
+        int i = 0;
+        for (Token t = lx.next(); t.getType() != Token.Type.EOF; t = lx.next()) {
+            if (!t.isSymbol("?")) continue;
+            sb.append(sql, from, t.getPos()).append(quote(Value.param(i++).resolve(params)));
+            from = t.getPos() + 1;
+        }
+        return sb.append(sql, from, sql.length()).toString();
+    }
+
+    /** 解析括号中的值列表，如 "(1, 'a b', x)"（客户端 EXECUTE 命令的参数），返回各值的文本 */
+    public static List<String> parseValues(String text) {
+        try {
+            SqlParser p = new SqlParser(text);
+            List<String> values = new ArrayList<>();
+            p.expect("(");
+            if (!p.accept(")")) {
+                do {
+                    Value v = p.value();
+                    if (v.isParam()) throw new SqlParseException("unexpected ?");
+                    values.add(v.resolve(List.of()));
+                } while (p.accept(","));
+                p.expect(")");
+            }
+            if (p.current.isSymbol(";")) p.advance();
+            if (p.current.getType() != Token.Type.EOF) throw new SqlParseException("trailing input");
+            return values;
+        } catch (SqlParseException e) {
+            throw new SqlParseException("Invalid parameter list.");
+        }
+    }
+
+    /** 单引号字符串字面量，内部单引号写成 '' */
+    public static String quote(String s) {
+        return "'" + s.replace("'", "''") + "'";
+    }
+
+    /** 全局语句缓存（统计命中率用） */
+    public static StatementCache cache() {
+        return CACHE;
+    }
+
+    private Statement statement() {
+        Token first = current;
+        if (first.isKeyword("CREATE")) {
+            advance();
+            if (current.isKeyword("INDEX")) return guarded("Invalid CREATE INDEX syntax.", this::createIndex);
+            if (!current.isKeyword("TABLE")) throw new SqlParseException("Unsupported SQL.");
+            return guarded("Invalid CREATE syntax.", this::createTable);
+        }
+        if (first.isKeyword("DROP")) {
+            advance();
+            if (current.isKeyword("INDEX")) return guarded("Invalid DROP INDEX syntax.", this::dropIndex);
+            if (!current.isKeyword("TABLE")) throw new SqlParseException("Unsupported SQL.");
+            return guarded("Invalid DROP syntax.", this::dropTable);
+        }
+        if (first.isKeyword("INSERT")) {
+            advance();
+            if (!current.isKeyword("INTO")) throw new SqlParseException("Unsupported SQL.");
+            return guarded("Invalid INSERT syntax.", this::insert);
+        }
+        if (first.isKeyword("LOAD")) {
+            advance();
+            if (!current.isKeyword("DATA")) throw new SqlParseException("Unsupported SQL.");
+            return guarded("Invalid LOAD DATA syntax.", this::loadData);
+        }
+        if (first.isKeyword("SELECT")) return guarded("Invalid SELECT syntax.", this::select);
+        if (first.isKeyword("DELETE")) {
+            advance();
+            if (!current.isKeyword("FROM")) throw new SqlParseException("Unsupported SQL.");
+            return guarded("Invalid DELETE syntax.", this::delete);
+        }
+        if (first.isKeyword("UPDATE")) return guarded("Invalid UPDATE syntax.", this::update);
+        throw new SqlParseException("Unsupported SQL.");
+    }
+
+    /** 解析语句主体并要求读到结尾；任何语法错误统一报告为该类语句的 message */
+    private Statement guarded(String message, Supplier<Statement> body) {
+        try {
+            Statement st = body.get();
+            if (qualified && !(st instanceof JoinStatement)) throw new SqlParseException(message);
+            if (current.isSymbol(";")) advance();
+            if (current.getType() != Token.Type.EOF) throw new SqlParseException(message);
+            st.paramCount = params;
+            return st;
+        } catch (SqlParseException e) {
+            throw new SqlParseException(message);
+        }
+    }
+
+    // CREATE TABLE 已读到 TABLE
+    private Statement createTable() {
+        advance();
+        String table = ident();
+        expect("(");
+        List<Column> cols = new ArrayList<>();
+        String pk = null;
+        while (true) {
+            if (current.isKeyword("PRIMARY")) {
+                advance();
+                keyword("KEY");
+                expect("(");
+                pk = ident();
+                expect(")");
+            } else {
+                String name = ident();
+                cols.add(new Column(name, ident()));
+            }
+            if (current.isSymbol(",")) {
+                advance();
+                continue;
+            }
+            expect(")");
+            break;
+        }
+        if (pk == null || cols.isEmpty()) throw new SqlParseException("missing primary key");
+        String partitioning = "HASH";
+        if (current.isKeyword("PARTITION")) {
+            advance();
+            keyword("BY");
+            if (current.isKeyword("HASH")) {
+                advance();
+            } else {
+                keyword("RANGE");
+                expect("(");
+                String lo = integer();
+                expect(",");
+                String hi = integer();
+                expect(")");
+                partitioning = "RANGE(" + lo + "," + hi + ")";
+            }
+        }
+        String engine = null;
+        if (current.isKeyword("ENGINE")) {
+            advance();
+            if (current.isSymbol("=")) advance();
+            engine = ident().toUpperCase(Locale.ROOT);
+        }
+        return new CreateTableStatement(table, cols, pk, partitioning, engine);
+    }
+
+    // DROP TABLE 已读到 TABLE
+    private Statement dropTable() {
+        advance();
+        return new DropTableStatement(ident());
+    }
+
+    // CREATE INDEX 已读到 INDEX
+    private Statement createIndex() {
+        advance();
+        String index = ident();
+        keyword("ON");
+        String table = ident();
+        expect("(");
+        String column = ident();
+        expect(")");
+        return new CreateIndexStatement(table, index, column);
+    }
+
+    // DROP INDEX 已读到 INDEX
+    private Statement dropIndex() {
+        advance();
+        String index = ident();
+        String table = null;
+        if (current.isKeyword("ON")) {
+            advance();
+            table = ident();
+        }
+        return new DropIndexStatement(table, index);
+    }
+
+    // INSERT INTO 已读到 INTO
+    private Statement insert() {
+        advance();
+        String table = ident();
+        expect("(");
+        List<String> cols = new ArrayList<>();
+        do {
+            cols.add(ident());
+        } while (accept(","));
+        expect(")");
+        keyword("VALUES");
+        List<List<Value>> rows = new ArrayList<>();
+        do {
+            expect("(");
+            List<Value> vals = new ArrayList<>(cols.size());
+            do {
+                vals.add(value());
+            } while (accept(","));
+            expect(")");
+            rows.add(vals);
+        } while (accept(","));
+        return InsertStatement.ofRows(table, cols, rows);
+    }
+
+    // LOAD DATA 已读到 DATA
+    private Statement loadData() {
+        advance();
+        Token file = current;
+        if (file.getType() != Token.Type.STRING) throw new SqlParseException("Expected file name but got " + file);
+        advance();
+        keyword("INTO");
+        String table = ident();
+        List<String> cols = new ArrayList<>();
+        if (accept("(")) {
+            do {
+                cols.add(ident());
+            } while (accept(","));
+            expect(")");
+        }
+        return new LoadDataStatement(table, file.getText(), cols);
+    }
+
+    private Statement select() {
+        advance();
+        List<SelectItem> items = new ArrayList<>();
+        if (!accept("*")) {
+            do {
+                items.add(selectItem());
+            } while (accept(","));
+        }
+        keyword("FROM");
+        String table = ident();
+        if (current.getType() == Token.Type.IDENT && !current.isKeyword("WHERE") && !current.isKeyword("GROUP")
+                && !current.isKeyword("ORDER") && !current.isKeyword("LIMIT")) {
+            return join(items, table);
+        }
+        Condition where = optionalWhere(true);
+        List<String> groupBy = new ArrayList<>();
+        if (current.isKeyword("GROUP")) {
+            advance();
+            keyword("BY");
+            do {
+                groupBy.add(ident());
+            } while (accept(","));
+        }
+        SelectItem orderBy = null;
+        boolean descending = false;
+        if (current.isKeyword("ORDER")) {
+            advance();
+            keyword("BY");
+            orderBy = selectItem();
+            if (current.isKeyword("ASC") || current.isKeyword("DESC")) {
+                descending = current.isKeyword("DESC");
+                advance();
+            }
+        }
+        int limit = SelectStatement.NO_LIMIT;
+        int offset = 0;
+        if (current.isKeyword("LIMIT")) {
+            advance();
+            limit = count();
+            if (current.isKeyword("OFFSET")) {
+                advance();
+                offset = count();
+            }
+        }
+        SelectStatement st = new SelectStatement(table, items, where, groupBy, orderBy, descending, limit, offset);
+        // 聚合查询中的普通列必须是分组列，否则为列投影
+        for (SelectItem item : items) {
+            if (st.isAggregate() && !item.isAggregate() && !groupBy.contains(item.getColumn())) {
+                throw new SqlParseException("Column " + item.getColumn() + " must appear in GROUP BY");
+            }
+        }
+        // 聚合查询按结果列排序，普通查询按表的列排序
+        if (orderBy != null && (st.isAggregate() ? !items.contains(orderBy) : orderBy.isAggregate())) {
+            throw new SqlParseException("ORDER BY " + orderBy.label() + " must appear in the SELECT list");
+        }
+        return st;
+    }
+
+    /**
+     * FROM a 之后的 [别名] [INNER] JOIN b [别名] ON a.x = b.y [WHERE cond]；SELECT 列表只能是列，
+     * ON 两侧可以按任意顺序书写，解析后左表一侧在前
+     */
+    private Statement join(List<SelectItem> items, String left) {
+        String leftAlias = alias(left);
+        acceptKeyword("INNER");
+        keyword("JOIN");
+        String right = ident();
+        String rightAlias = alias(right);
+        if (leftAlias.equals(rightAlias)) throw new SqlParseException("duplicate alias " + rightAlias);
+        keyword("ON");
+        String a = qualifiedIdent();
+        expect("=");
+        String b = qualifiedIdent();
+        if (rightAlias.equals(JoinStatement.qualifier(a)) || leftAlias.equals(JoinStatement.qualifier(b))) {
+            String t = a;
+            a = b;
+            b = t;
+        }
+        List<String> columns = new ArrayList<>();
+        for (SelectItem item : items) {
+            if (item.isAggregate()) throw new SqlParseException("JOIN does not support aggregates");
+            columns.add(item.getColumn());
+        }
+        return new JoinStatement(left, leftAlias, right, rightAlias, a, b, columns, optionalWhere(true));
+    }
+
+    /** 表名后可选的别名，没有时为表名本身 */
+    private String alias(String table) {
+        if (current.getType() != Token.Type.IDENT || current.isKeyword("INNER") || current.isKeyword("JOIN")
+                || current.isKeyword("ON") || current.isKeyword("WHERE")) {
+            return table;
+        }
+        acceptKeyword("AS");
+        return ident();
+    }
+
+    /** 列名，可带表名或别名前缀（t.col） */
+    private String qualifiedIdent() {
+        String name = ident();
+        if (!accept(".")) return name;
+        qualified = true;
+        return name + "." + ident();
+    }
+
+    /** SELECT 列表项：列名或聚合函数 */
+    private SelectItem selectItem() {
+        String name = qualifiedIdent();
+        if (!accept("(")) return SelectItem.column(name);
+        SelectItem.Function f;
+        try {
+            f = SelectItem.Function.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new SqlParseException("Unknown function " + name);
+        }
+        String column = null;
+        if (f != SelectItem.Function.COUNT || !accept("*")) column = ident();
+        expect(")");
+        return SelectItem.aggregate(f, column);
+    }
+
+    // DELETE 已读到 FROM
+    private Statement delete() {
+        advance();
+        String table = ident();
+        return new DeleteStatement(table, optionalWhere(false));
+    }
+
+    private Statement update() {
+        advance();
+        String table = ident();
+        keyword("SET");
+        Map<String, Value> assignments = new LinkedHashMap<>();
+        do {
+            String col = ident();
+            expect("=");
+            assignments.put(col, value());
+        } while (accept(","));
+        Condition where = optionalWhere(false);
+        if (where == null) throw new SqlParseException("missing WHERE");
+        return new UpdateStatement(table, assignments, where);
+    }
+
+    /** WHERE 条件；compound 为 true 时（SELECT）可用 AND / OR 与括号组合 */
+    private Condition optionalWhere(boolean compound) {
+        if (!current.isKeyword("WHERE")) return null;
+        advance();
+        return compound ? disjunction() : comparison();
+    }
+
+    // cond OR cond ...
+    private Condition disjunction() {
+        List<Condition> terms = new ArrayList<>();
+        do {
+            terms.add(conjunction());
+        } while (acceptKeyword("OR"));
+        return Condition.or(terms);
+    }
+
+    // cond AND cond ...（BETWEEN 的 AND 在 comparison 中已读掉）
+    private Condition conjunction() {
+        List<Condition> terms = new ArrayList<>();
+        do {
+            if (accept("(")) {
+                terms.add(disjunction());
+                expect(")");
+            } else {
+                terms.add(comparison());
+            }
+        } while (acceptKeyword("AND"));
+        return Condition.and(terms);
+    }
+
+    private Condition comparison() {
+        String col = qualifiedIdent();
+        if (current.isKeyword("BETWEEN")) {
+            advance();
+            Value low = value();
+            keyword("AND");
+            return new Condition(col, Condition.Op.BETWEEN, low, value());
+        }
+        Condition.Op op;
+        switch (current.getType() == Token.Type.SYMBOL ? current.getText() : "") {
+            case "=":  op = Condition.Op.EQ; break;
+            case "<":  op = Condition.Op.LT; break;
+            case "<=": op = Condition.Op.LE; break;
+            case ">":  op = Condition.Op.GT; break;
+            case ">=": op = Condition.Op.GE; break;
+            default:
+                throw new SqlParseException("Expected comparison but got " + current);
+        }
+        advance();
+        return new Condition(col, op, value(), null);
+    }
+
+    /** 整数字面量（分区边界） */
+    private String integer() {
+        Token t = current;
+        if (t.getType() != Token.Type.NUMBER || t.getText().contains(".")) {
+            throw new SqlParseException("Expected integer but got " + t);
+        }
+        advance();
+        return t.getText();
+    }
+
+    /** 非负行数（LIMIT/OFFSET） */
+    private int count() {
+        String n = integer();
+        try {
+            int v = Integer.parseInt(n);
+            if (v >= 0) return v;
+        } catch (NumberFormatException ignored) {
+            // 超出 INT 范围
+        }
+        throw new SqlParseException("Expected row count but got " + n);
+    }
+
+    /** 值：数字、字符串、不带引号的单词或 ? 参数 */
+    private Value value() {
+        Token t = current;
+        if (t.getType() == Token.Type.NUMBER || t.getType() == Token.Type.STRING
+                || t.getType() == Token.Type.IDENT) {
+            advance();
+            return Value.literal(t.getText());
+        }
+        if (t.isSymbol("?")) {
+            advance();
+            return Value.param(params++);
+        }
+        throw new SqlParseException("Expected value but got " + t);
+    }
+
+    private String ident() {
+        Token t = current;
+        if (t.getType() != Token.Type.IDENT) {
+            throw new SqlParseException("Expected identifier but got " + t);
+        }
+        advance();
+        return t.getText();
+    }
+
+    private void keyword(String kw) {
+        if (!current.isKeyword(kw)) throw new SqlParseException("Expected " + kw + " but got " + current);
+        advance();
+    }
+
+    private void expect(String symbol) {
+        if (!current.isSymbol(symbol)) {
+            throw new SqlParseException("Expected '" + symbol + "' but got " + current);
+        }
+        advance();
+    }
+
+    private boolean acceptKeyword(String kw) {
+        if (!current.isKeyword(kw)) return false;
+        advance();
+        return true;
+    }
+
+    private boolean accept(String symbol) {
+        if (!current.isSymbol(symbol)) return false;
+        advance();
+        return true;
+    }
+
+    private void advance() {
+        current = lexer.next();
+    }
+}
@@ -0,0 +1,20 @@
+package minisql.parser;
+
+/**
+ * 语句 AST 的基类：解析结果不可变，可在线程间共享并被语句缓存复用
+ */
+public abstract class Statement {
+    private final String table;
+    // ? 参数个数，由解析器在发布 AST 之前设置
+    int paramCount;
+
+    protected Statement(String table) {
+        this.table = table;
+    }
+
+    /** 语句操作的表名 */
+    public String getTable() { return table; }
+
+    /** ? 参数个数，0 表示普通语句 */
+    public int getParamCount() { return paramCount; }
+}
@@ -0,0 +1,78 @@
+package minisql.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 已解析语句的 LRU 缓存：SQL 文本 → 不可变 AST。
+ * 按 SQL 文本哈希分段加锁，降低多线程并发访问时的锁竞争
+ */
+public final class StatementCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final boolean enabled;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public StatementCache(int capacity) {
+        this.enabled  = capacity > 0;
+        this.segments = new Segment[SEGMENTS];
+        int perSegment = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(perSegment);
+    }
+
+    /** 缓存中的 AST，未命中返回 null */
+    public Statement get(String sql) {
+        if (!enabled || sql == null) return null;
+        Segment seg = segmentFor(sql);
+        Statement st;
+        synchronized (seg) {
+            st = seg.get(sql);
+        }
+        (st == null ? misses : hits).incrementAndGet();
+        return st;
+    }
+
+    public void put(String sql, Statement st) {
+        if (!enabled || sql == null) return;
+        Segment seg = segmentFor(sql);
+        synchronized (seg) {
+            seg.put(sql, st);
+        }
+    }
+
+    public int size() {
+        int n = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                n += seg.size();
+            }
+        }
+        return n;
+    }
+
+    public long hits() { return hits.get(); }
+    public long misses() { return misses.get(); }
+
+    private Segment segmentFor(String sql) {
+        return segments[(sql.hashCode() & 0x7fffffff) % SEGMENTS];
+    }
+
+    /** 访问顺序的 LinkedHashMap，超出容量时淘汰最久未使用的语句 */
+    private static final class Segment extends LinkedHashMap<String, Statement> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package minisql.parser;
+
+/**
+ * 词法单元：类型 + 原文（字符串字面量为去掉引号、还原转义后的内容）+ 在 SQL 中的位置
+ */
+public final class Token {
+    public enum Type { IDENT, NUMBER, STRING, SYMBOL, EOF }
+
+    private final Type type;
+    private final String text;
+    private final int pos;
+
+    Token(Type type, String text, int pos) {
+        this.type = type;
+        this.text = text;
+        this.pos  = pos;
+    }
+
+    public Type getType() { return type; }
+    public String getText() { return text; }
+    public int getPos() { return pos; }
+
+    /** 是否为给定关键字（不区分大小写） */
+    public boolean isKeyword(String kw) {
+        return type == Type.IDENT && text.equalsIgnoreCase(kw);
+    }
+
+    public boolean isSymbol(String s) {
+        return type == Type.SYMBOL && text.equals(s);
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.EOF ? "end of input" : "'" + text + "'";
+    }
+}
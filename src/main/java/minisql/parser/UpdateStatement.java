@@ -0,0 +1,21 @@
+package minisql.parser;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** UPDATE t SET col = val [, ...] WHERE col = val */
+public final class UpdateStatement extends Statement {
+    private final Map<String, Value> assignments;
+    private final Condition where;
+
+    public UpdateStatement(String table, Map<String, Value> assignments, Condition where) {
+        super(table);
+        this.assignments = Collections.unmodifiableMap(new LinkedHashMap<>(assignments));
+        this.where       = where;
+    }
+
+    /** 列名 → 新值（按 SET 中的顺序） */
+    public Map<String, Value> getAssignments() { return assignments; }
+    public Condition getWhere() { return where; }
+}
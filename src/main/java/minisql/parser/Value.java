@@ -0,0 +1,56 @@
+package minisql.parser;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 语句中的一个值：字面量，或预编译语句中的 ? 参数（按出现顺序从 0 编号）
+ */
+public final class Value {
+    private final String literal;
+    private final int paramIndex;
+
+    private Value(String literal, int paramIndex) {
+        this.literal    = literal;
+        this.paramIndex = paramIndex;
+    }
+
+    public static Value literal(String text) {
+        return new Value(text, -1);
+    }
+
+    public static Value param(int index) {
+        return new Value(null, index);
+    }
+
+    public boolean isParam() { return paramIndex >= 0; }
+    public int getParamIndex() { return paramIndex; }
+
+    /** 取值：字面量直接返回，参数从 params 中按序号取；缺少参数时抛出 SqlParseException */
+    public String resolve(List<String> params) {
+        if (paramIndex < 0) return literal;
+        if (params == null || paramIndex >= params.size()) {
+            throw new SqlParseException("Missing value for parameter " + (paramIndex + 1) + ".");
+        }
+        String v = params.get(paramIndex);
+        if (v == null) throw new SqlParseException("NULL parameter " + (paramIndex + 1) + " not supported.");
+        return v;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Value)) return false;
+        Value v = (Value) o;
+        return paramIndex == v.paramIndex && Objects.equals(literal, v.literal);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(literal, paramIndex);
+    }
+
+    @Override
+    public String toString() {
+        return isParam() ? "?" + (paramIndex + 1) : literal;
+    }
+}
@@ -0,0 +1,219 @@
+package protocol;
+
+import minisql.Column;
+import minisql.QueryResult;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 长度前缀的二进制协议编解码：
+ *  - 连接建立后客户端先发送 5 字节握手 MAGIC（0xB1 'M' 'S' 'Q' 版本号），
+ *    首字节不可能是 SQL 文本，服务端据此区分二进制与文本协议
+ *  - 之后双方收发 Frame；请求带请求ID，响应回填同一ID，
+ *    因此一条连接上可以有多个请求同时在途，响应可乱序返回
+ *  - RESULT 负载：消息 | 列数 | (列名, 类型)* | 行数 | 行*，
+ *    INT 列编码为 int32，TEXT 列编码为长度前缀 UTF-8（-1 表示 null）
+ *  - 预编译语句：PREPARE 一次，之后 EXECUTE 只传语句ID与参数值，服务端不再解析 SQL
+ *  - 游标：OPEN 返回第一批，之后每个 FETCH 返回一批（见 Frame），大结果不必编码成一帧
+ */
+public class BinaryProtocol {
+    public static final byte MAGIC_FIRST = (byte) 0xB1;
+    public static final byte[] MAGIC = {MAGIC_FIRST, 'M', 'S', 'Q', 1};
+    private static final int MAX_FRAME = 256 * 1024 * 1024;
+
+    private static final byte TYPE_INT  = 1;
+    private static final byte TYPE_TEXT = 2;
+
+    /** 客户端写出握手 */
+    public static void writeHandshake(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.flush();
+    }
+
+    /** 服务端在读到首字节 MAGIC_FIRST 后校验剩余握手字节 */
+    public static void readHandshakeRest(InputStream in) throws IOException {
+        for (int i = 1; i < MAGIC.length; i++) {
+            int b = in.read();
+            if (b != (MAGIC[i] & 0xFF)) {
+                throw new IOException("Bad binary protocol handshake");
+            }
+        }
+    }
+
+    /** 写出一帧（调用方负责同一输出流上的互斥） */
+    public static void writeFrame(DataOutputStream out, Frame f) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(64);
+        DataOutputStream body = new DataOutputStream(buf);
+        body.writeInt(f.getRequestId());
+        body.writeByte(f.getKind());
+        body.writeByte(f.getStatus());
+        switch (f.getKind()) {
+            case Frame.QUERY:
+                writeString(body, f.getSql());
+                break;
+            case Frame.RESULT:
+                writeResult(body, f.getResult());
+                break;
+            case Frame.PREPARE:
+                body.writeLong(f.getStatementId());
+                writeString(body, f.getSql());
+                break;
+            case Frame.EXECUTE:
+                body.writeLong(f.getStatementId());
+                body.writeInt(f.getSlot());
+                body.writeShort(f.getParams().size());
+                for (String p : f.getParams()) writeString(body, p);
+                break;
+            case Frame.CLOSE:
+                body.writeLong(f.getStatementId());
+                break;
+            case Frame.OPEN:
+                body.writeInt(f.getBatchRows());
+                writeString(body, f.getSql());
+                break;
+            case Frame.FETCH:
+                body.writeLong(f.getCursorId());
+                body.writeInt(f.getBatchRows());
+                break;
+            case Frame.CLOSE_CURSOR:
+                body.writeLong(f.getCursorId());
+                break;
+            default:
+                break;
+        }
+        body.flush();
+        out.writeInt(buf.size());
+        buf.writeTo(out);
+    }
+
+    /** 读取一帧；对端正常关闭时返回 null */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int len;
+        try {
+            len = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (len < 6 || len > MAX_FRAME) throw new IOException("Bad frame length: " + len);
+        byte[] data = new byte[len];
+        in.readFully(data);
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(data));
+        int requestId = body.readInt();
+        byte kind   = body.readByte();
+        byte status = body.readByte();
+        switch (kind) {
+            case Frame.QUERY:
+                return Frame.query(requestId, readString(body));
+            case Frame.RESULT:
+                return Frame.batch(requestId, readResult(body, status == Frame.STATUS_ERROR),
+                        status == Frame.STATUS_MORE);
+            case Frame.PING:
+                return Frame.ping(requestId);
+            case Frame.PONG:
+                return Frame.pong(requestId);
+            case Frame.PREPARE: {
+                long id = body.readLong();
+                return Frame.prepare(requestId, id, readString(body));
+            }
+            case Frame.EXECUTE: {
+                long id = body.readLong();
+                int slot = body.readInt();
+                int n = body.readUnsignedShort();
+                List<String> params = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) params.add(readString(body));
+                return Frame.execute(requestId, id, slot, params);
+            }
+            case Frame.CLOSE:
+                return Frame.close(requestId, body.readLong());
+            case Frame.OPEN: {
+                int batchRows = body.readInt();
+                return Frame.open(requestId, readString(body), batchRows);
+            }
+            case Frame.FETCH: {
+                int cursorId = (int) body.readLong();
+                return Frame.fetch(requestId, cursorId, body.readInt());
+            }
+            case Frame.CLOSE_CURSOR:
+                return Frame.closeCursor(requestId, (int) body.readLong());
+            default:
+                throw new IOException("Unknown frame kind: " + kind);
+        }
+    }
+
+    private static void writeResult(DataOutputStream out, QueryResult r) throws IOException {
+        writeString(out, r.getMessage());
+        List<Column> cols = r.getColumns();
+        out.writeShort(cols.size());
+        for (Column c : cols) {
+            writeString(out, c.getName());
+            out.writeByte("INT".equals(c.getType()) ? TYPE_INT : TYPE_TEXT);
+        }
+        out.writeInt(r.getRows().size());
+        for (Map<String, String> row : r.getRows()) {
+            for (Column c : cols) {
+                String v = row.get(c.getName());
+                if ("INT".equals(c.getType())) {
+                    if (v == null) {
+                        out.writeByte(0);
+                    } else {
+                        out.writeByte(1);
+                        out.writeInt(Integer.parseInt(v));
+                    }
+                } else {
+                    writeString(out, v);
+                }
+            }
+        }
+    }
+
+    private static QueryResult readResult(DataInputStream in, boolean error) throws IOException {
+        String message = readString(in);
+        if (error) {
+            // 错误结果不带行
+            in.readShort();
+            in.readInt();
+            return QueryResult.error(message);
+        }
+        int colCount = in.readShort();
+        List<Column> cols = new ArrayList<>(colCount);
+        for (int i = 0; i < colCount; i++) {
+            String name = readString(in);
+            cols.add(new Column(name, in.readByte() == TYPE_INT ? "INT" : "TEXT"));
+        }
+        int rowCount = in.readInt();
+        if (rowCount == 0 && colCount == 0) return QueryResult.message(message);
+        List<Map<String, String>> rows = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            Map<String, String> row = new LinkedHashMap<>();
+            for (Column c : cols) {
+                if ("INT".equals(c.getType())) {
+                    row.put(c.getName(), in.readByte() == 0 ? null : String.valueOf(in.readInt()));
+                } else {
+                    row.put(c.getName(), readString(in));
+                }
+            }
+            rows.add(row);
+        }
+        return QueryResult.rows(cols, rows, message);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
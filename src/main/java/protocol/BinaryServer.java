@@ -0,0 +1,170 @@
+package protocol;
+
+import minisql.QueryResult;
+import minisql.ResultCursor;
+
+import java.io.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 二进制协议服务端会话：在一条连接上循环读取请求帧，
+ * 每个请求交给执行器并发处理，完成后按请求ID写回（可乱序）。
+ * 单连接在途请求数超过 maxInFlight 时暂停读取，形成背压。
+ * PREPARE/CLOSE 在读线程内同步处理，保证同一连接上其后的 EXECUTE 一定能找到语句。
+ * 游标（OPEN/FETCH）每次只产生一批：对端取走一批后才会请求下一批，连接断开时释放本连接的游标。
+ */
+public class BinaryServer {
+    /** EXECUTE 引用了本连接上不存在的语句ID时的错误消息前缀 */
+    public static final String UNKNOWN_STATEMENT = "Unknown prepared statement";
+    /** FETCH 引用了本连接上不存在（已取完或已关闭）的游标时的错误消息前缀 */
+    public static final String UNKNOWN_CURSOR = "Unknown cursor";
+
+    /** 处理一条已完成握手的连接（不支持预编译语句） */
+    public static void serve(InputStream rawIn, OutputStream rawOut,
+                             Function<String, QueryResult> handler,
+                             Executor executor, int maxInFlight) throws IOException {
+        serve(rawIn, rawOut, handler, null, executor, maxInFlight);
+    }
+
+    /** 处理一条已完成握手的连接（OPEN 的语句照常执行后按批返回） */
+    public static <P> void serve(InputStream rawIn, OutputStream rawOut,
+                                 Function<String, QueryResult> handler, PreparedHandler<P> prepared,
+                                 Executor executor, int maxInFlight) throws IOException {
+        serve(rawIn, rawOut, handler, prepared, sql -> ResultCursor.of(handler.apply(sql)), executor, maxInFlight);
+    }
+
+    /**
+     * 处理一条已完成握手的连接，直到对端关闭；cursors 为 OPEN 的语句打开游标。
+     * 返回前等待在途请求写回，并释放本连接的预编译语句与游标
+     */
+    public static <P> void serve(InputStream rawIn, OutputStream rawOut,
+                                 Function<String, QueryResult> handler, PreparedHandler<P> prepared,
+                                 Function<String, ResultCursor> cursors,
+                                 Executor executor, int maxInFlight) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(rawIn));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(rawOut));
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        // 本连接上的预编译语句：语句ID → 执行计划
+        Map<Long, P> statements = new ConcurrentHashMap<>();
+        // 本连接上未取完的游标：游标ID（OPEN 的请求ID）→ 游标
+        Map<Integer, ResultCursor> open = new ConcurrentHashMap<>();
+        try {
+            Frame f;
+            while ((f = BinaryProtocol.readFrame(in)) != null) {
+                Frame req = f;
+                switch (f.getKind()) {
+                    case Frame.PING:
+                        write(out, Frame.pong(f.getRequestId()));
+                        break;
+                    case Frame.QUERY:
+                        submit(out, executor, inFlight, req.getRequestId(),
+                                () -> Frame.result(req.getRequestId(), handler.apply(req.getSql())));
+                        break;
+                    case Frame.PREPARE: {
+                        QueryResult r;
+                        if (prepared == null) {
+                            r = QueryResult.error("Prepared statements not supported");
+                        } else {
+                            try {
+                                P old = statements.put(f.getStatementId(), prepared.prepare(f.getSql()));
+                                if (old != null) prepared.release(old);
+                                r = QueryResult.message("Prepared");
+                            } catch (RuntimeException e) {
+                                r = QueryResult.error(String.valueOf(e.getMessage()));
+                            }
+                        }
+                        write(out, Frame.result(f.getRequestId(), r));
+                        break;
+                    }
+                    case Frame.EXECUTE: {
+                        P plan = statements.get(f.getStatementId());
+                        submit(out, executor, inFlight, req.getRequestId(), () -> Frame.result(req.getRequestId(),
+                                plan == null ? QueryResult.error(UNKNOWN_STATEMENT + ": " + req.getStatementId())
+                                        : prepared.execute(plan, req.getSlot(), req.getParams())));
+                        break;
+                    }
+                    case Frame.OPEN:
+                        submit(out, executor, inFlight, req.getRequestId(), () -> {
+                            ResultCursor c = cursors.apply(req.getSql());
+                            open.put(req.getRequestId(), c);
+                            return nextBatch(open, req.getRequestId(), c, req);
+                        });
+                        break;
+                    case Frame.FETCH: {
+                        ResultCursor c = open.get(f.getCursorId());
+                        submit(out, executor, inFlight, req.getRequestId(), () -> c == null
+                                ? Frame.result(req.getRequestId(),
+                                        QueryResult.error(UNKNOWN_CURSOR + ": " + req.getCursorId()))
+                                : nextBatch(open, req.getCursorId(), c, req));
+                        break;
+                    }
+                    case Frame.CLOSE_CURSOR: {
+                        ResultCursor c = open.remove(f.getCursorId());
+                        if (c != null) c.close();
+                        write(out, Frame.result(f.getRequestId(), QueryResult.message("Closed")));
+                        break;
+                    }
+                    case Frame.CLOSE: {
+                        P plan = statements.remove(f.getStatementId());
+                        if (plan != null) prepared.release(plan);
+                        write(out, Frame.result(f.getRequestId(), QueryResult.message("Closed")));
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unexpected frame kind: " + f.getKind());
+                }
+            }
+        } finally {
+            inFlight.acquireUninterruptibly(maxInFlight);
+            if (prepared != null) statements.values().forEach(prepared::release);
+            open.values().forEach(ResultCursor::close);
+        }
+    }
+
+    /** 从游标取一批；取完或出错时关闭游标 */
+    private static Frame nextBatch(Map<Integer, ResultCursor> open, int cursorId, ResultCursor c, Frame req) {
+        QueryResult r;
+        try {
+            r = c.next(req.getBatchRows());
+            if (!c.isDone()) return Frame.batch(req.getRequestId(), r, true);
+        } catch (RuntimeException e) {
+            r = QueryResult.error(String.valueOf(e.getMessage()));
+        }
+        open.remove(cursorId);
+        c.close();
+        return Frame.result(req.getRequestId(), r);
+    }
+
+    /** 交给执行器处理并写回响应帧；在途请求数达到上限时阻塞读线程 */
+    private static void submit(DataOutputStream out, Executor executor, Semaphore inFlight,
+                               int requestId, Supplier<Frame> task) {
+        inFlight.acquireUninterruptibly();
+        executor.execute(() -> {
+            Frame r;
+            try {
+                r = task.get();
+            } catch (RuntimeException e) {
+                r = Frame.result(requestId, QueryResult.error(String.valueOf(e.getMessage())));
+            }
+            try {
+                write(out, r);
+            } catch (IOException ignored) {
+                // 对端已断开，丢弃响应
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private static void write(DataOutputStream out, Frame f) throws IOException {
+        synchronized (out) {
+            BinaryProtocol.writeFrame(out, f);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package protocol;
+
+import minisql.QueryResult;
+
+import java.util.List;
+
+/**
+ * 二进制协议的一帧：
+ *  int 长度 | int 请求ID | byte 类型 | byte 状态 | 负载
+ *  QUERY 负载为 SQL 文本，RESULT 负载为编码后的 QueryResult
+ *  预编译语句（语句ID由客户端分配，作用域为单条连接）：
+ *   PREPARE 负载为 long 语句ID | SQL 文本
+ *   EXECUTE 负载为 long 语句ID | int 槽（直连校验用，-1 表示不校验）| short 参数个数 | 参数*
+ *   CLOSE   负载为 long 语句ID
+ *  游标（游标ID为 OPEN 的请求ID，作用域为单条连接）：
+ *   OPEN  负载为 int 批行数 | SQL 文本，响应为第一批
+ *   FETCH 负载为 long 游标ID | int 批行数，响应为下一批
+ *   CLOSE_CURSOR 负载为 long 游标ID（未取完时提前释放）
+ *   每批是一个 RESULT，状态为 STATUS_MORE 表示游标还有后续批，最后一批为 STATUS_OK / STATUS_ERROR
+ */
+public class Frame {
+    public static final byte QUERY  = 1;
+    public static final byte RESULT = 2;
+    public static final byte PING   = 3;
+    public static final byte PONG   = 4;
+    public static final byte PREPARE = 5;
+    public static final byte EXECUTE = 6;
+    public static final byte CLOSE   = 7;
+    public static final byte OPEN    = 8;
+    public static final byte FETCH   = 9;
+    public static final byte CLOSE_CURSOR = 10;
+
+    public static final byte STATUS_OK    = 0;
+    public static final byte STATUS_ERROR = 1;
+    public static final byte STATUS_MORE  = 2;
+
+    private final int requestId;
+    private final byte kind;
+    private final byte status;
+    private final String sql;
+    private final QueryResult result;
+    private final long statementId;
+    private final int slot;
+    private final List<String> params;
+    private final int batchRows;
+
+    private Frame(int requestId, byte kind, byte status, String sql, QueryResult result,
+                  long statementId, int slot, List<String> params) {
+        this(requestId, kind, status, sql, result, statementId, slot, params, 0);
+    }
+
+    private Frame(int requestId, byte kind, byte status, String sql, QueryResult result,
+                  long statementId, int slot, List<String> params, int batchRows) {
+        this.requestId   = requestId;
+        this.kind        = kind;
+        this.status      = status;
+        this.sql         = sql;
+        this.result      = result;
+        this.statementId = statementId;
+        this.slot        = slot;
+        this.params      = params;
+        this.batchRows   = batchRows;
+    }
+
+    public static Frame query(int requestId, String sql) {
+        return new Frame(requestId, QUERY, STATUS_OK, sql, null, 0, -1, List.of());
+    }
+
+    public static Frame result(int requestId, QueryResult result) {
+        return new Frame(requestId, RESULT, result.isError() ? STATUS_ERROR : STATUS_OK, null, result,
+                0, -1, List.of());
+    }
+
+    /** 游标的一批；more 为 true 时还有后续批 */
+    public static Frame batch(int requestId, QueryResult result, boolean more) {
+        if (!more) return result(requestId, result);
+        return new Frame(requestId, RESULT, STATUS_MORE, null, result, 0, -1, List.of());
+    }
+
+    public static Frame ping(int requestId) {
+        return new Frame(requestId, PING, STATUS_OK, null, null, 0, -1, List.of());
+    }
+
+    public static Frame pong(int requestId) {
+        return new Frame(requestId, PONG, STATUS_OK, null, null, 0, -1, List.of());
+    }
+
+    public static Frame prepare(int requestId, long statementId, String sql) {
+        return new Frame(requestId, PREPARE, STATUS_OK, sql, null, statementId, -1, List.of());
+    }
+
+    public static Frame execute(int requestId, long statementId, int slot, List<String> params) {
+        return new Frame(requestId, EXECUTE, STATUS_OK, null, null, statementId, slot, params);
+    }
+
+    public static Frame close(int requestId, long statementId) {
+        return new Frame(requestId, CLOSE, STATUS_OK, null, null, statementId, -1, List.of());
+    }
+
+    public static Frame open(int requestId, String sql, int batchRows) {
+        return new Frame(requestId, OPEN, STATUS_OK, sql, null, 0, -1, List.of(), batchRows);
+    }
+
+    public static Frame fetch(int requestId, int cursorId, int batchRows) {
+        return new Frame(requestId, FETCH, STATUS_OK, null, null, cursorId, -1, List.of(), batchRows);
+    }
+
+    public static Frame closeCursor(int requestId, int cursorId) {
+        return new Frame(requestId, CLOSE_CURSOR, STATUS_OK, null, null, cursorId, -1, List.of());
+    }
+
+    public int getRequestId() { return requestId; }
+    public byte getKind() { return kind; }
+    public byte getStatus() { return status; }
+    public String getSql() { return sql; }
+    public QueryResult getResult() { return result; }
+    public long getStatementId() { return statementId; }
+    public int getSlot() { return slot; }
+    public List<String> getParams() { return params; }
+    /** FETCH / CLOSE_CURSOR 的游标ID */
+    public int getCursorId() { return (int) statementId; }
+    public int getBatchRows() { return batchRows; }
+    /** 游标是否还有后续批 */
+    public boolean hasMore() { return status == STATUS_MORE; }
+}
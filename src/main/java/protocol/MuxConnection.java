@@ -0,0 +1,226 @@
+package protocol;
+
+import minisql.QueryResult;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 二进制协议客户端连接（多路复用）：
+ *  - 任意线程可并发 submit，请求带自增ID写出后立即返回 Future
+ *  - 后台读线程按请求ID完成对应 Future，支持流水线与乱序响应
+ *  - 连接断开时所有在途请求以异常结束
+ *  - 预编译语句：调用方分配语句ID，本连接首次执行某语句时先流水线发送 PREPARE，
+ *    之后只发送语句ID与参数；连接重建后自动重新预编译
+ *  - 游标：openCursor 发送 OPEN，之后由 RemoteCursor 逐批 FETCH（见 RemoteCursor）
+ */
+public class MuxConnection implements Closeable {
+    private final String addr;
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<Frame>> pending = new ConcurrentHashMap<>();
+    // 已在本连接上发送 PREPARE 的语句ID → PREPARE 的结果
+    private final Map<Long, CompletableFuture<QueryResult>> prepared = new ConcurrentHashMap<>();
+    private final AtomicLong nextStatementId = new AtomicLong();
+    private volatile boolean open = true;
+
+    public MuxConnection(String host, int port, int connectTimeoutMs) throws IOException {
+        this.addr = host + ":" + port;
+        this.socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.in  = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            BinaryProtocol.writeHandshake(out);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        Thread reader = new Thread(this::readLoop, "mux-reader-" + addr);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /** 按 "host:port" 建立连接 */
+    public static MuxConnection connect(String addr, int connectTimeoutMs) throws IOException {
+        String[] hp = addr.split(":");
+        return new MuxConnection(hp[0], Integer.parseInt(hp[1]), connectTimeoutMs);
+    }
+
+    /** 异步发送一条 SQL */
+    public CompletableFuture<QueryResult> submit(String sql) {
+        return send(Frame.query(nextId.incrementAndGet(), sql)).thenApply(Frame::getResult);
+    }
+
+    /** 分配一个本连接内唯一的语句ID */
+    public long newStatementId() {
+        return nextStatementId.incrementAndGet();
+    }
+
+    /**
+     * 异步执行预编译语句：本连接首次使用 statementId 时先发送 PREPARE（不等待响应，
+     * 服务端按顺序处理），预编译失败时返回其错误结果。slot >= 0 表示直连请求
+     */
+    public CompletableFuture<QueryResult> submitPrepared(long statementId, String sql, int slot, List<String> params) {
+        return submitPrepared(statementId, sql, slot, params, nextId.incrementAndGet());
+    }
+
+    private CompletableFuture<QueryResult> submitPrepared(long statementId, String sql, int slot, List<String> params,
+                                                          int requestId) {
+        CompletableFuture<QueryResult> prep = prepared.get(statementId);
+        if (prep == null) {
+            // 加锁保证 PREPARE 先于其他线程随后发出的 EXECUTE 写出
+            synchronized (prepared) {
+                prep = prepared.get(statementId);
+                if (prep == null) {
+                    prep = send(Frame.prepare(nextId.incrementAndGet(), statementId, sql)).thenApply(Frame::getResult);
+                    prepared.put(statementId, prep);
+                }
+            }
+        }
+        CompletableFuture<QueryResult> exec = send(Frame.execute(requestId, statementId, slot, params))
+                .thenApply(Frame::getResult);
+        CompletableFuture<QueryResult> p = prep;
+        return p.thenCompose(r -> {
+            if (r.isError()) {
+                prepared.remove(statementId, p);
+                return CompletableFuture.completedFuture(r);
+            }
+            return exec.thenApply(res -> {
+                if (res.isError() && res.getMessage().startsWith(BinaryServer.UNKNOWN_STATEMENT)) {
+                    // 服务端已丢失该语句，下次执行时重新预编译
+                    prepared.remove(statementId, p);
+                }
+                return res;
+            });
+        });
+    }
+
+    /** 同步执行预编译语句 */
+    public QueryResult executePrepared(long statementId, String sql, List<String> params, long timeoutMs)
+            throws IOException {
+        // 超时只放弃 EXECUTE；PREPARE 的结果被本连接上的后续执行共用，留待响应或连接关闭时结束
+        int id = nextId.incrementAndGet();
+        return await(submitPrepared(statementId, sql, -1, params, id), id, timeoutMs);
+    }
+
+    /** 关闭本连接上的预编译语句（未预编译过则忽略） */
+    public void closeStatement(long statementId) {
+        if (prepared.remove(statementId) != null && open) {
+            send(Frame.close(nextId.incrementAndGet(), statementId));
+        }
+    }
+
+    /** 以游标方式执行一条 SQL：立即发送 OPEN，第一批由返回的游标的第一次 fetch 取得 */
+    public RemoteCursor openCursor(String sql, int batchRows) {
+        int id = nextId.incrementAndGet();
+        return new RemoteCursor(this, id, batchRows, send(Frame.open(id, sql, batchRows)));
+    }
+
+    /** 同步执行一条 SQL，超时或连接错误时抛出 IOException */
+    public QueryResult execute(String sql, long timeoutMs) throws IOException {
+        int id = nextId.incrementAndGet();
+        return await(send(Frame.query(id, sql)).thenApply(Frame::getResult), id, timeoutMs);
+    }
+
+    /** 等待请求 requestId 的结果；超时后放弃该请求（从 pending 移除，迟到的响应被忽略） */
+    QueryResult await(CompletableFuture<QueryResult> f, int requestId, long timeoutMs) throws IOException {
+        try {
+            return f.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            pending.remove(requestId);
+            throw new IOException("Timeout after " + timeoutMs + "ms waiting for " + addr);
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            throw c instanceof IOException ? (IOException) c : new IOException(c);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /** 健康检查：在 timeoutMs 内收到 PONG 则返回 true */
+    public boolean ping(long timeoutMs) {
+        int id = nextId.incrementAndGet();
+        try {
+            send(Frame.ping(id)).get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (Exception e) {
+            pending.remove(id);
+            return false;
+        }
+    }
+
+    public boolean isOpen() { return open; }
+    public int inFlight() { return pending.size(); }
+    public String getAddr() { return addr; }
+
+    @Override
+    public void close() {
+        open = false;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        failAll(new IOException("Connection closed: " + addr));
+    }
+
+    int nextRequestId() {
+        return nextId.incrementAndGet();
+    }
+
+    CompletableFuture<Frame> send(Frame f) {
+        CompletableFuture<Frame> fut = new CompletableFuture<>();
+        if (!open) {
+            fut.completeExceptionally(new IOException("Connection closed: " + addr));
+            return fut;
+        }
+        pending.put(f.getRequestId(), fut);
+        if (!open && pending.remove(f.getRequestId()) != null) {
+            // 与 close() 竞争：连接已关闭，failAll 可能已错过本请求
+            fut.completeExceptionally(new IOException("Connection closed: " + addr));
+            return fut;
+        }
+        try {
+            synchronized (out) {
+                BinaryProtocol.writeFrame(out, f);
+                out.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(f.getRequestId());
+            fut.completeExceptionally(e);
+            close();
+        }
+        return fut;
+    }
+
+    private void readLoop() {
+        try {
+            Frame f;
+            while ((f = BinaryProtocol.readFrame(in)) != null) {
+                CompletableFuture<Frame> fut = pending.remove(f.getRequestId());
+                if (fut != null) fut.complete(f);
+            }
+        } catch (IOException e) {
+            // 连接异常，统一在 close() 中失败所有在途请求
+        }
+        close();
+    }
+
+    private void failAll(IOException e) {
+        for (Integer id : pending.keySet()) {
+            CompletableFuture<Frame> fut = pending.remove(id);
+            if (fut != null) fut.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package protocol;
+
+import minisql.QueryResult;
+
+import java.util.List;
+
+/**
+ * 二进制协议服务端的预编译语句处理：
+ * PREPARE 时由 prepare 生成执行计划并按连接保存，EXECUTE 时只带参数值调用 execute
+ *
+ * @param <P> 执行计划类型（RegionServer 为语句 AST，Master 为带路由决策的计划）
+ */
+public interface PreparedHandler<P> {
+
+    /** 预编译一条 SQL；语法错误等以 RuntimeException 抛出，消息返回给客户端 */
+    P prepare(String sql);
+
+    /** 执行计划；slot >= 0 时为智能客户端的直连请求，需校验槽归属 */
+    QueryResult execute(P plan, int slot, List<String> params);
+
+    /** 语句被关闭或连接断开时释放计划 */
+    default void release(P plan) {
+    }
+}
@@ -0,0 +1,75 @@
+package protocol;
+
+import minisql.QueryResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 服务端游标的客户端句柄（见 MuxConnection.openCursor）：第一次 fetch 取得 OPEN 返回的第一批，
+ * 之后每次 fetch 发送一个 FETCH。调用方在上一批返回后才取下一批，服务端也只在被请求时才读取下一批，
+ * 读得慢的一方自然限制另一方（拉取式背压）；未取完就 close 时通知服务端释放游标
+ */
+public class RemoteCursor implements Closeable {
+    private final MuxConnection conn;
+    private final int cursorId;
+    private final int batchRows;
+    // 最近一次请求（OPEN 或 FETCH）的请求ID与响应
+    private int lastId;
+    private CompletableFuture<Frame> last;
+    private boolean firstTaken;
+    private boolean closed;
+    private volatile boolean more = true;
+
+    RemoteCursor(MuxConnection conn, int cursorId, int batchRows, CompletableFuture<Frame> first) {
+        this.conn      = conn;
+        this.cursorId  = cursorId;
+        this.batchRows = batchRows;
+        this.lastId    = cursorId;
+        this.last      = first;
+    }
+
+    /** 异步取下一批；须在上一批返回且 hasMore() 为 true 时调用 */
+    public synchronized CompletableFuture<QueryResult> fetch() {
+        if (closed || (firstTaken && !more)) throw new IllegalStateException("Cursor closed: " + cursorId);
+        if (firstTaken) {
+            lastId = conn.nextRequestId();
+            last = conn.send(Frame.fetch(lastId, cursorId, batchRows));
+        }
+        firstTaken = true;
+        return last.thenApply(f -> {
+            more = f.hasMore();
+            return f.getResult();
+        });
+    }
+
+    /** 同步取下一批，超时或连接错误时抛出 IOException */
+    public QueryResult next(long timeoutMs) throws IOException {
+        CompletableFuture<QueryResult> f;
+        int id;
+        synchronized (this) {
+            f = fetch();
+            id = lastId;
+        }
+        return conn.await(f, id, timeoutMs);
+    }
+
+    /** 服务端是否还有后续批（第一批返回前为 true） */
+    public boolean hasMore() {
+        return more;
+    }
+
+    /** 释放游标：最近一次请求返回后若服务端仍有后续批，发送 CLOSE_CURSOR */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        last.whenComplete((f, e) -> {
+            if (e == null && f.hasMore() && conn.isOpen()) {
+                more = false;
+                conn.send(Frame.closeCursor(conn.nextRequestId(), cursorId));
+            }
+        });
+    }
+}
@@ -2,14 +2,70 @@ package region;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.zookeeper.CreateMode;
+import protocol.BinaryProtocol;
+import protocol.BinaryServer;
+import protocol.PreparedHandler;
+import util.Slots;
+import util.TableSchema;
+import util.TextProtocol;
+import util.ThreadUtils;
 import util.ZkUtils;
+import minisql.QueryResult;
+import minisql.ResultCursor;
 import minisql.SimpleSQLExecutor;
+import minisql.SnapshotStore;
+import minisql.WriteAheadLog;
+import minisql.parser.JoinStatement;
+import minisql.parser.SelectStatement;
+import minisql.parser.SqlParseException;
+import minisql.parser.SqlParser;
+import minisql.parser.Statement;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * RegionServer：注册到 ZooKeeper，并发执行来自 Master 的 SQL 请求
+ *  -Dregion.threads=virtual  每个连接一个线程（JDK 21+ 为虚拟线程，默认）
+ *  -Dregion.threads=N        固定 N 个工作线程的线程池
+ *  连接首字节为二进制握手时使用二进制协议（请求可流水线/乱序返回）；
+ *  否则为文本协议：首行为 KEEPALIVE 时进入长连接模式，其余按单语句模式处理后关闭；
+ *  二进制连接上的全表扫描查询可以游标方式分批读取（OPEN/FETCH，见 SimpleSQLExecutor.openCursor）；
+ *  JOIN 的构建侧在 region 之间直接重分布（SHUFFLE SCAN/JOIN，见 ShuffleCommands）；
+ *  本节点为主副本的槽的按主键写入复制到从副本（REPLICATE，见 Replicator）
+ *  -Dregion.replication=async|semisync 复制方式（默认 async，见 Replicator）
+ *  -Dregion.idleTimeoutMs     长连接空闲超时（默认 300000）
+ *  -Dregion.wal=none|async|sync 预写日志持久化级别（默认 async，见 WriteAheadLog），
+ *                              日志段为 <region.wal.dir>/<regionName>-<LSN>.wal（默认目录 data），启动时先重放
+ *  -Dregion.wal.flushMs        刷盘间隔（默认 10）：async 下为批量 fsync 的周期，sync 下写入者到达即刷盘
+ *  -Dregion.snapshot.intervalMs 快照检查点间隔（默认 60000，0 为关闭，见 SnapshotStore），
+ *                              启动时先从最新快照恢复，只重放快照之后的日志
+ *  -Dregion.snapshot.keep      保留的快照个数（默认 2），更早的快照与被覆盖的日志段自动删除
+ */
 public class RegionServer {
+    private static final String THREADS = System.getProperty("region.threads", "virtual");
+    private static final int IDLE_TIMEOUT_MS = Integer.getInteger("region.idleTimeoutMs", 300_000);
+    // 单条二进制连接上的最大在途请求数
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("region.maxInFlight", 256);
+    private static final String WAL = System.getProperty("region.wal", "async");
+    private static final String WAL_DIR = System.getProperty("region.wal.dir", "data");
+    private static final int WAL_FLUSH_MS = Integer.getInteger("region.wal.flushMs", 10);
+    private static final long SNAPSHOT_INTERVAL_MS = Long.getLong("region.snapshot.intervalMs", 60_000);
+    private static final int SNAPSHOT_KEEP = Integer.getInteger("region.snapshot.keep", 2);
+    // 本节点的槽归属视图（未连接 ZooKeeper 时为 null，直连请求不做校验）
+    private static volatile SlotOwnership ownership;
+    // 主从复制（未连接 ZooKeeper 时为 null，写入不复制）
+    private static volatile Replicator replicator;
+
     public static void main(String[] args) throws Exception {
         if (args.length < 2) {
             System.err.println("Usage: java RegionServer <regionName> <port>");
@@ -20,7 +76,9 @@ public class RegionServer {
         String regionName = args[0];
         int port = Integer.parseInt(args[1]);
 
+        openWal(regionName);
         CuratorFramework zkClient = ZkUtils.createZkClient();
+        createCatalogTables(zkClient, regionName);
         String path = "/regions/" + regionName;
         if (zkClient.checkExists().forPath(path) == null) {
             zkClient.create()
@@ -30,21 +88,232 @@ public class RegionServer {
 
             System.out.println("[RegionServer] Registered at " + path);
         }
+        ownership = SlotOwnership.start(zkClient, regionName);
+        replicator = Replicator.start(zkClient, regionName, ownership);
 
         try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("[" + regionName + "] Listening on port " + port);
-            while (true) {
+            System.out.println("[" + regionName + "] Listening on port " + port + " (threads=" + THREADS + ")");
+            serve(regionName, serverSocket);
+        }
+    }
+
+    /**
+     * 恢复本节点上次退出前的表与数据：先载入最新快照，再重放快照之后的日志记录，之后的修改写入日志；
+     * 开启快照时按间隔在后台做检查点（期间写入照常进行）
+     */
+    private static void openWal(String regionName) throws IOException {
+        WriteAheadLog.Durability durability = WriteAheadLog.parseDurability(WAL);
+        if (durability == WriteAheadLog.Durability.NONE) return;
+        long t0 = System.nanoTime();
+        SnapshotStore snapshots = new SnapshotStore(Paths.get(WAL_DIR), regionName, SNAPSHOT_KEEP);
+        SnapshotStore.Restored restored = snapshots.restore();
+        if (restored.file != null) {
+            System.out.printf("[%s] Snapshot %s: %d tables, %d rows in %d ms%n", regionName, restored.file,
+                    restored.tables, restored.rows, (System.nanoTime() - t0) / 1_000_000);
+        }
+        WriteAheadLog wal = WriteAheadLog.open(Paths.get(WAL_DIR), regionName, durability, WAL_FLUSH_MS);
+        long[] applied = new long[1];
+        long n = wal.replay((sql, lsn) -> {
+            if (!restored.shouldApply(sql, lsn)) return;
+            applied[0]++;
+            QueryResult r = SlotCommands.isSlotCommand(sql) ? SlotCommands.execute(sql) : SimpleSQLExecutor.executeQuery(sql);
+            if (r.isError()) System.err.println("[" + regionName + "] WAL replay: " + sql + " -> " + r.getMessage());
+        });
+        wal.advanceTo(restored.lastLsn());
+        wal.install();
+        System.out.printf("[%s] WAL %s: replayed %d of %d records in %d ms (durability=%s)%n", regionName,
+                WAL_DIR, applied[0], n, (System.nanoTime() - t0) / 1_000_000, durability);
+        if (SNAPSHOT_INTERVAL_MS > 0) scheduleCheckpoints(regionName, snapshots, wal, restored.lsn);
+    }
+
+    /** 后台定期做快照检查点，自上个快照以来没有新的日志记录时跳过 */
+    private static void scheduleCheckpoints(String regionName, SnapshotStore snapshots, WriteAheadLog wal,
+                                            long snapshotLsn) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+                ThreadUtils.daemonFactory(regionName + "-snapshot"));
+        long[] last = { snapshotLsn };
+        timer.scheduleWithFixedDelay(() -> {
+            if (wal.lastLsn() == last[0]) return;
+            try {
+                long t0 = System.nanoTime();
+                SnapshotStore.Checkpoint c = snapshots.checkpoint(wal);
+                last[0] = c.lsn;
+                System.out.printf("[%s] Snapshot %s: %d tables, %d rows, %d bytes in %d ms%n", regionName,
+                        c.file.getFileName(), c.tables, c.rows, c.bytes, (System.nanoTime() - t0) / 1_000_000);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[" + regionName + "] Snapshot failed: " + e.getMessage());
+            }
+        }, SNAPSHOT_INTERVAL_MS, SNAPSHOT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** 按 ZooKeeper 表目录建出集群中已有的表及其索引，新加入的 region 不必等到迁移才有表 */
+    private static void createCatalogTables(CuratorFramework zk, String regionName) throws Exception {
+        if (zk.checkExists().forPath(TableSchema.ZK_PATH) == null) return;
+        for (String name : zk.getChildren().forPath(TableSchema.ZK_PATH)) {
+            byte[] data = zk.getData().forPath(TableSchema.ZK_PATH + "/" + name);
+            TableSchema schema = TableSchema.decode(name, data);
+            System.out.println("[" + regionName + "] " + SimpleSQLExecutor.execute(schema.toCreateStatement()));
+            for (String sql : schema.toIndexStatements()) {
+                System.out.println("[" + regionName + "] " + SimpleSQLExecutor.execute(sql));
+            }
+        }
+    }
+
+    /** accept 循环：每个连接交给工作线程处理，直到 serverSocket 关闭 */
+    static void serve(String regionName, ServerSocket serverSocket) throws IOException {
+        ExecutorService workers = createWorkers(regionName + "-conn");
+        // 二进制连接上的请求单独调度，避免读线程占满固定线程池导致死锁
+        ExecutorService executors = createWorkers(regionName + "-exec");
+        try {
+            while (!serverSocket.isClosed()) {
                 Socket socket = serverSocket.accept();
-                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                String sql = in.readLine();
-                System.out.println("[" + regionName + "] Received: " + sql);
+                workers.execute(() -> handle(regionName, socket, executors));
+            }
+        } finally {
+            workers.shutdownNow();
+            executors.shutdownNow();
+        }
+    }
+
+    private static ExecutorService createWorkers(String namePrefix) {
+        if ("virtual".equalsIgnoreCase(THREADS)) {
+            return ThreadUtils.newPerTaskExecutor(namePrefix);
+        }
+        return Executors.newFixedThreadPool(Integer.parseInt(THREADS),
+                ThreadUtils.daemonFactory(namePrefix));
+    }
+
+    /** 按首字节区分协议：二进制握手 MAGIC 或文本 SQL */
+    private static void handle(String regionName, Socket socket, ExecutorService executors) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            PushbackInputStream raw = new PushbackInputStream(s.getInputStream(), 1);
+            int first = raw.read();
+            if (first < 0) return;
+            if ((byte) first == BinaryProtocol.MAGIC_FIRST) {
+                BinaryProtocol.readHandshakeRest(raw);
+                s.setSoTimeout(IDLE_TIMEOUT_MS);
+                BinaryServer.serve(raw, s.getOutputStream(), sql -> {
+                    System.out.println("[" + regionName + "] Received: " + sql);
+                    return execute(sql);
+                }, PREPARED, sql -> {
+                    System.out.println("[" + regionName + "] Open cursor: " + sql);
+                    return openCursor(sql);
+                }, executors, MAX_IN_FLIGHT);
+                return;
+            }
+            raw.unread(first);
+            BufferedReader in = new BufferedReader(new InputStreamReader(raw, StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(
+                    new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+            String sql = in.readLine();
+            if (sql == null) return;
+            if (TextProtocol.KEEPALIVE.equals(sql)) {
+                serveKeepAlive(regionName, s, in, out);
+                return;
+            }
+            // 单语句模式：执行一条 SQL 后关闭连接
+            System.out.println("[" + regionName + "] Received: " + sql);
+            out.write(execute(sql).toText());
+            out.newLine();
+            out.flush();
+        } catch (SocketTimeoutException e) {
+            // 空闲超时，关闭连接释放线程
+        } catch (IOException e) {
+            System.err.println("[" + regionName + "] Error handling request: " + e.getMessage());
+        }
+    }
+
+    /** 执行一条请求：直连请求、内部槽迁移命令、JOIN 重分布命令、复制命令或普通 SQL */
+    private static QueryResult execute(String sql) {
+        if (Slots.isDirect(sql)) {
+            SlotOwnership own = ownership;
+            if (own == null) return QueryResult.error(Slots.MOVED + " (slot ownership unknown)");
+            return own.executeDirect(sql, RegionServer::executeSql);
+        }
+        if (SlotCommands.isSlotCommand(sql)) {
+            return SlotCommands.execute(sql);
+        }
+        if (ShuffleCommands.isShuffleCommand(sql)) {
+            return ShuffleCommands.execute(sql);
+        }
+        if (Replicator.isReplicateCommand(sql)) {
+            Replicator rep = replicator;
+            return rep == null ? QueryResult.error("Replication unavailable.") : rep.command(sql);
+        }
+        return executeSql(sql);
+    }
 
-                String result = SimpleSQLExecutor.execute(sql);
+    private static QueryResult executeSql(String sql) {
+        try {
+            return executeStatement(SqlParser.parseCached(sql), List.of());
+        } catch (SqlParseException e) {
+            return QueryResult.message(e.getMessage());
+        }
+    }
 
-                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                out.println(result);
-                socket.close();
+    /** 执行已解析的语句，本节点为主副本的按主键写入经 Replicator 复制到从副本 */
+    private static QueryResult executeStatement(Statement st, List<String> params) {
+        Replicator rep = replicator;
+        return rep == null ? SimpleSQLExecutor.execute(st, params) : rep.execute(st, params);
+    }
+
+    /** 以游标方式执行：查询分批读取，JOIN 重分布命令分批返回，其余请求照常执行后按批返回 */
+    private static ResultCursor openCursor(String sql) {
+        if (ShuffleCommands.isShuffleCommand(sql)) return ShuffleCommands.open(sql);
+        if (Slots.isDirect(sql) || SlotCommands.isSlotCommand(sql) || Replicator.isReplicateCommand(sql)) {
+            return ResultCursor.of(execute(sql));
+        }
+        Statement st;
+        try {
+            st = SqlParser.parseCached(sql);
+        } catch (SqlParseException e) {
+            return ResultCursor.of(QueryResult.message(e.getMessage()));
+        }
+        if (st instanceof SelectStatement || st instanceof JoinStatement) return SimpleSQLExecutor.openCursor(st, List.of());
+        return ResultCursor.of(executeStatement(st, List.of()));
+    }
+
+    /**
+     * 预编译语句：PREPARE 时解析一次，EXECUTE 只携带参数；
+     * slot >= 0 为直连请求（智能客户端，或 Master 发往从副本的单点读），按 DIRECT 同样的规则校验槽归属
+     */
+    private static final PreparedHandler<Statement> PREPARED = new PreparedHandler<>() {
+        @Override
+        public Statement prepare(String sql) {
+            return SqlParser.parseCached(sql);
+        }
+
+        @Override
+        public QueryResult execute(Statement st, int slot, List<String> params) {
+            if (slot >= 0) {
+                SlotOwnership own = ownership;
+                if (own == null) return QueryResult.error(Slots.MOVED + " (slot ownership unknown)");
+                QueryResult moved = own.checkDirect(slot, !(st instanceof SelectStatement));
+                if (moved != null) return moved;
+                return own.serving(slot, () -> executeStatement(st, params));
+            }
+            return executeStatement(st, params);
+        }
+    };
+
+    /**
+     * 长连接模式：循环读取 SQL，每个响应写成 "#行数" + 各行，
+     * 直到对端关闭或空闲超时
+     */
+    private static void serveKeepAlive(String regionName, Socket s, BufferedReader in, BufferedWriter out)
+            throws IOException {
+        s.setSoTimeout(IDLE_TIMEOUT_MS);
+        String sql;
+        while ((sql = in.readLine()) != null) {
+            String result;
+            if (TextProtocol.PING.equals(sql)) {
+                result = TextProtocol.PONG;
+            } else {
+                System.out.println("[" + regionName + "] Received: " + sql);
+                result = execute(sql).toText();
             }
+            TextProtocol.writeFramed(out, result);
         }
     }
 }
@@ -0,0 +1,409 @@
+package region;
+
+import minisql.Column;
+import minisql.QueryResult;
+import minisql.SimpleSQLExecutor;
+import minisql.Table;
+import minisql.TableManager;
+import minisql.parser.*;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import util.SlotTable;
+import util.Slots;
+import util.ThreadUtils;
+import util.ZkUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 槽的主从复制（见 SlotTable 中各槽的从副本）：
+ *  - 本节点为槽的 owner（主副本）或迁移目标时，按主键写入该槽的语句（WHERE 主键 = 值的 UPDATE/DELETE、
+ *    INSERT 的各行）在本地执行后复制到该槽的全部从副本（含同步中的）；
+ *    按非主键条件、主键范围的写由 Master 直接发给持有副本的每个 region，不在此复制
+ *  - 每个从副本一条有序的复制流：后台线程把队列中的语句按批发给从副本，从副本按序执行后确认；
+ *    发送失败或从副本下线（离开 /regions）时每隔 -Dregion.replication.retryMs（默认 500）重试，队列保留。
+ *    只有 Master 已把它从本节点负责的槽的副本中去掉后才丢弃队列：它重新加入时由 Master 清掉该槽的旧数据、
+ *    全量复制（见 Rebalancer.syncReplicas），不会带着缺失的写入继续提供读取
+ *  - 同一槽的写入从本地执行到进入复制队列期间持有该槽的锁，复制顺序与本地执行顺序一致
+ *  - -Dregion.replication=async（默认）：写入在本地执行后即返回，从副本的读取可能落后；
+ *    semisync：等到至少一个从副本确认后才返回，超过 -Dregion.replication.timeoutMs（默认 1000）
+ *    仍未确认时退化为异步并记录日志，之后的写入不再等待，直到有从副本确认了某次写入才恢复半同步
+ *    （与 MySQL 半同步复制的退化方式相同）；退化状态与各队列长度见 REPLICATE STATUS
+ * 内部命令（不对客户端开放）：
+ *  REPLICATE FROM <来源> <长度>:<语句>...    从副本按序执行各语句，不再复制（Master 全量复制槽时也经此写入）
+ *  REPLICATE FLUSH                          等待复制队列中已有的语句都发给从副本（Master 切换归属、清理从副本前调用）
+ *  REPLICATE STATUS                         复制模式、半同步是否退化、退化期间的写入数与各从副本的队列长度
+ */
+public class Replicator {
+    public static final String PREFIX = "REPLICATE ";
+    private static final boolean SEMI_SYNC =
+            "semisync".equalsIgnoreCase(System.getProperty("region.replication", "async"));
+    private static final long TIMEOUT_MS = Long.getLong("region.replication.timeoutMs", 1_000L);
+    private static final long RETRY_MS = Long.getLong("region.replication.retryMs", 500L);
+    // 每批发送的语句数上限
+    private static final int BATCH = Integer.getInteger("region.replication.batchStatements", 256);
+    private static final long SEND_TIMEOUT_MS = Long.getLong("region.replication.sendTimeoutMs", 30_000L);
+    private static final long FLUSH_TIMEOUT_MS = Long.getLong("region.replication.flushTimeoutMs", 10_000L);
+
+    private final String regionName;
+    private final SlotOwnership ownership;
+    // regionName → "host:port"，来自 /regions
+    private final Map<String, String> addrs = new ConcurrentHashMap<>();
+    // 从副本 → 复制流，首次复制到该 region 时创建
+    private final Map<String, Stream> streams = new ConcurrentHashMap<>();
+    private final ReentrantLock[] slotLocks = new ReentrantLock[Slots.COUNT];
+    // 半同步是否已退化为异步，累计没有等到确认的写入数，以及本次退化开始时的累计值
+    private final AtomicBoolean degraded = new AtomicBoolean();
+    private final AtomicLong degradedWrites = new AtomicLong();
+    private volatile long degradedSince;
+
+    private Replicator(String regionName, SlotOwnership ownership) {
+        this.regionName = regionName;
+        this.ownership  = ownership;
+        for (int i = 0; i < slotLocks.length; i++) slotLocks[i] = new ReentrantLock();
+    }
+
+    /** 开始监听 /regions（从副本的地址） */
+    public static Replicator start(CuratorFramework zk, String regionName, SlotOwnership ownership) throws Exception {
+        Replicator rep = new Replicator(regionName, ownership);
+        ZkUtils.startCache(zk, "/regions", CuratorCacheListener.builder()
+                .forCreatesAndChanges((old, d) -> {
+                    String name = nameOf(d);
+                    if (name != null) rep.addrs.put(name, new String(d.getData(), StandardCharsets.UTF_8));
+                })
+                .forDeletes(d -> {
+                    String name = nameOf(d);
+                    if (name != null) rep.addrs.remove(name);
+                })
+                .build());
+        return rep;
+    }
+
+    /** region 节点对应的 region 名，/regions 本身返回 null */
+    private static String nameOf(ChildData d) {
+        return d.getPath().startsWith("/regions/") ? d.getPath().substring("/regions/".length()) : null;
+    }
+
+    /** 是否为内部复制命令 */
+    public static boolean isReplicateCommand(String sql) {
+        return sql.regionMatches(true, 0, PREFIX, 0, PREFIX.length());
+    }
+
+    /** 执行内部复制命令 */
+    public QueryResult command(String sql) {
+        String rest = sql.substring(PREFIX.length()).trim();
+        if (rest.equalsIgnoreCase("FLUSH")) return flush();
+        if (rest.equalsIgnoreCase("STATUS")) return QueryResult.message(status());
+        if (rest.regionMatches(true, 0, "FROM ", 0, 5)) return apply(rest.substring(5));
+        return QueryResult.error("Invalid REPLICATE command.");
+    }
+
+    /**
+     * 执行一条语句：涉及本节点为主副本且有从副本的槽时，持有这些槽的锁执行并放入复制队列，
+     * 半同步时等待从副本确认；其余语句直接执行
+     */
+    public QueryResult execute(Statement st, List<String> params) {
+        Table table = st.getTable() == null ? null : TableManager.getTable(st.getTable());
+        if (table == null || params.size() != st.getParamCount()) return SimpleSQLExecutor.execute(st, params);
+        SortedMap<Integer, List<Integer>> slots = slotsOf(st, params, table);
+        SlotTable t = ownership.current();
+        SortedMap<Integer, List<String>> targets = new TreeMap<>();
+        for (int slot : slots.keySet()) {
+            if (!leads(t, slot)) continue;
+            List<String> reps = t.replicas(slot);
+            reps.remove(regionName);
+            if (!reps.isEmpty()) targets.put(slot, reps);
+        }
+        if (targets.isEmpty()) return SimpleSQLExecutor.execute(st, params);
+
+        QueryResult result;
+        List<CompletableFuture<Boolean>> acks = new ArrayList<>();
+        // 按槽号顺序加锁，避免多行 INSERT 之间死锁
+        for (int slot : targets.keySet()) slotLocks[slot].lock();
+        try {
+            result = SimpleSQLExecutor.execute(st, params);
+            if (!result.isError()) {
+                for (Map.Entry<String, String> e : render(st, params, slots, targets).entrySet()) {
+                    acks.add(stream(e.getKey()).enqueue(e.getValue()));
+                }
+            }
+        } finally {
+            for (int slot : targets.keySet()) slotLocks[slot].unlock();
+        }
+        if (SEMI_SYNC && !acks.isEmpty()) awaitSemiSync(acks);
+        return result;
+    }
+
+    /** 半同步：等任一从副本确认；超时退化为异步，退化期间不等待，有从副本确认后恢复 */
+    private void awaitSemiSync(List<CompletableFuture<Boolean>> acks) {
+        if (degraded.get()) {
+            degradedWrites.incrementAndGet();
+            for (CompletableFuture<Boolean> a : acks) {
+                a.thenAccept(ok -> {
+                    if (ok && degraded.compareAndSet(true, false)) {
+                        System.out.println("[" + regionName + "] Semi-sync: replica caught up after "
+                                + (degradedWrites.get() - degradedSince) + " unacknowledged writes, resuming semi-sync");
+                    }
+                });
+            }
+            return;
+        }
+        if (!awaitAny(acks, TIMEOUT_MS)) {
+            long total = degradedWrites.incrementAndGet();
+            if (degraded.compareAndSet(false, true)) {
+                degradedSince = total - 1;
+                System.err.println("[" + regionName + "] Semi-sync: no replica ack within " + TIMEOUT_MS
+                        + " ms, degrading to async until a replica catches up");
+            }
+        }
+    }
+
+    /** REPLICATE STATUS 的内容 */
+    private String status() {
+        Map<String, Integer> backlog = new TreeMap<>();
+        streams.forEach((r, s) -> backlog.put(r, s.queue.size()));
+        return "mode=" + (SEMI_SYNC ? "semisync" : "async") + " degraded=" + degraded.get()
+                + " degradedWrites=" + degradedWrites.get() + " backlog=" + backlog;
+    }
+
+    /** replica 是否仍是本节点负责复制的某个槽的副本 */
+    private boolean replicatesTo(String replica) {
+        SlotTable t = ownership.current();
+        for (int slot = 0; slot < Slots.COUNT; slot++) {
+            if (leads(t, slot) && t.replicas(slot).contains(replica)) return true;
+        }
+        return false;
+    }
+
+    /** 本节点是否负责复制槽的写入：owner，或迁移目标（切换归属前后都不漏复制） */
+    private boolean leads(SlotTable t, int slot) {
+        return regionName.equals(t.owner(slot))
+                || (t.getMigratingSlot() == slot && regionName.equals(t.getMigrationTarget()));
+    }
+
+    /**
+     * 语句按主键写入的槽 → 该槽的行在 INSERT 中的下标（UPDATE/DELETE 为空列表）；
+     * 不是按主键写入的语句返回空
+     */
+    static SortedMap<Integer, List<Integer>> slotsOf(Statement st, List<String> params, Table table) {
+        SortedMap<Integer, List<Integer>> slots = new TreeMap<>();
+        Column pk = null;
+        for (Column c : table.getColumns()) if (c.getName().equals(table.getPrimaryKey())) pk = c;
+        if (pk == null) return slots;
+        if (st instanceof InsertStatement) {
+            InsertStatement ins = (InsertStatement) st;
+            int idx = ins.columnIndex(pk.getName());
+            if (idx < 0) return slots;
+            for (int i = 0; i < ins.getRows().size(); i++) {
+                List<Value> row = ins.getRows().get(i);
+                String key = idx < row.size() ? pk.canonical(row.get(idx).resolve(params)) : null;
+                if (key != null) slots.computeIfAbsent(table.slotOf(key), s -> new ArrayList<>()).add(i);
+            }
+            return slots;
+        }
+        Condition where = st instanceof UpdateStatement ? ((UpdateStatement) st).getWhere()
+                : st instanceof DeleteStatement ? ((DeleteStatement) st).getWhere() : null;
+        if (where != null && where.isEquality() && where.getColumn().equalsIgnoreCase(pk.getName())) {
+            String key = pk.canonical(where.getValue().resolve(params));
+            if (key != null) slots.put(table.slotOf(key), List.of());
+        }
+        return slots;
+    }
+
+    /** 发往各从副本的语句（参数代入为字面量）：INSERT 只含落在该从副本所在槽的行 */
+    static Map<String, String> render(Statement st, List<String> params, SortedMap<Integer, List<Integer>> slots,
+                                      SortedMap<Integer, List<String>> targets) {
+        Map<String, String> out = new LinkedHashMap<>();
+        if (st instanceof InsertStatement) {
+            InsertStatement ins = (InsertStatement) st;
+            Map<String, SortedSet<Integer>> rows = new LinkedHashMap<>();
+            targets.forEach((slot, reps) -> {
+                for (String r : reps) rows.computeIfAbsent(r, x -> new TreeSet<>()).addAll(slots.get(slot));
+            });
+            rows.forEach((r, idx) -> {
+                StringJoiner values = new StringJoiner(", ");
+                for (int i : idx) {
+                    StringJoiner vals = new StringJoiner(", ", "(", ")");
+                    for (Value v : ins.getRows().get(i)) vals.add(SqlParser.quote(v.resolve(params)));
+                    values.add(vals.toString());
+                }
+                out.put(r, "INSERT INTO " + st.getTable() + " (" + String.join(", ", ins.getColumns()) + ") VALUES "
+                        + values);
+            });
+            return out;
+        }
+        String sql;
+        if (st instanceof UpdateStatement) {
+            UpdateStatement up = (UpdateStatement) st;
+            StringJoiner sets = new StringJoiner(", ");
+            up.getAssignments().forEach((col, v) -> sets.add(col + " = " + SqlParser.quote(v.resolve(params))));
+            sql = "UPDATE " + st.getTable() + " SET " + sets + " WHERE " + up.getWhere().toSql(params);
+        } else {
+            sql = "DELETE FROM " + st.getTable() + " WHERE " + ((DeleteStatement) st).getWhere().toSql(params);
+        }
+        for (List<String> reps : targets.values()) for (String r : reps) out.put(r, sql);
+        return out;
+    }
+
+    /** 从副本一侧：按序执行主副本发来的语句（失败的语句只记录，与主副本上同样失败的语句一致） */
+    private QueryResult apply(String body) {
+        int sp = body.indexOf(' ');
+        String source = sp < 0 ? body : body.substring(0, sp);
+        List<String> statements;
+        try {
+            statements = sp < 0 ? List.of() : decode(body.substring(sp + 1));
+        } catch (IllegalArgumentException e) {
+            return QueryResult.error("Invalid REPLICATE command.");
+        }
+        for (String sql : statements) {
+            QueryResult r = SimpleSQLExecutor.executeQuery(sql);
+            if (r.isError()) System.err.println("[" + regionName + "] Replicated from " + source + ": " + r.getMessage());
+        }
+        return QueryResult.message("Replicated: " + statements.size());
+    }
+
+    /** 等待各复制流中已有的语句都发给从副本 */
+    private QueryResult flush() {
+        List<CompletableFuture<Boolean>> marks = new ArrayList<>();
+        for (Stream s : streams.values()) marks.add(s.enqueue(null));
+        try {
+            CompletableFuture.allOf(marks.toArray(new CompletableFuture<?>[0])).get(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            return QueryResult.message("Flushed: " + marks.size());
+        } catch (TimeoutException e) {
+            return QueryResult.error("Replication flush timeout after " + FLUSH_TIMEOUT_MS + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return QueryResult.error("Replication flush interrupted");
+        } catch (ExecutionException e) {
+            return QueryResult.error(String.valueOf(e.getCause().getMessage()));
+        }
+    }
+
+    /** 任一确认为成功、全部失败或超时为止，有从副本确认时返回 true */
+    private static boolean awaitAny(List<CompletableFuture<Boolean>> acks, long timeoutMs) {
+        CompletableFuture<Boolean> any = new CompletableFuture<>();
+        AtomicInteger left = new AtomicInteger(acks.size());
+        for (CompletableFuture<Boolean> a : acks) {
+            a.thenAccept(ok -> {
+                if (ok) any.complete(true);
+                else if (left.decrementAndGet() == 0) any.complete(false);
+            });
+        }
+        try {
+            return any.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** 一批语句的编码：各语句写成 长度:语句 依次拼接（语句中可能有换行） */
+    static String encode(List<String> statements) {
+        StringBuilder sb = new StringBuilder();
+        for (String sql : statements) sb.append(sql.length()).append(':').append(sql);
+        return sb.toString();
+    }
+
+    static List<String> decode(String text) {
+        List<String> out = new ArrayList<>();
+        int pos = 0;
+        while (pos < text.length()) {
+            int colon = text.indexOf(':', pos);
+            if (colon < 0) throw new IllegalArgumentException("bad batch");
+            int end = colon + 1 + Integer.parseInt(text.substring(pos, colon));
+            if (end > text.length()) throw new IllegalArgumentException("bad batch");
+            out.add(text.substring(colon + 1, end));
+            pos = end;
+        }
+        return out;
+    }
+
+    private Stream stream(String replica) {
+        return streams.computeIfAbsent(replica, Stream::new);
+    }
+
+    /** 到一个从副本的有序复制流 */
+    private final class Stream implements Runnable {
+        final String replica;
+        // 语句为 null 的项是 flush 的标记，不发送
+        final BlockingQueue<Object[]> queue = new LinkedBlockingQueue<>();
+
+        Stream(String replica) {
+            this.replica = replica;
+            ThreadUtils.daemonFactory(regionName + "-replicate-" + replica).newThread(this).start();
+        }
+
+        CompletableFuture<Boolean> enqueue(String sql) {
+            CompletableFuture<Boolean> ack = new CompletableFuture<>();
+            queue.add(new Object[]{sql, ack});
+            return ack;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            while (true) {
+                List<Object[]> batch = new ArrayList<>();
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.drainTo(batch, BATCH - 1);
+                List<String> statements = new ArrayList<>(batch.size());
+                for (Object[] e : batch) if (e[0] != null) statements.add((String) e[0]);
+                boolean ok = statements.isEmpty() || send(statements);
+                for (Object[] e : batch) ((CompletableFuture<Boolean>) e[1]).complete(ok);
+            }
+        }
+
+        /**
+         * 发送一批直到从副本确认。从副本下线期间保留这批（及其后排队的）语句等它回来；
+         * Master 已把它从副本中去掉时放弃并返回 false（它重新加入时会全量复制）
+         */
+        private boolean send(List<String> statements) {
+            String cmd = PREFIX + "FROM " + regionName + " " + encode(statements);
+            boolean offline = false;
+            while (true) {
+                String addr = addrs.get(replica);
+                if (addr == null) {
+                    if (!replicatesTo(replica)) {
+                        System.err.println("[" + regionName + "] Replica " + replica + " removed while offline, dropped "
+                                + statements.size() + " statements (it is fully resynced if it rejoins)");
+                        return false;
+                    }
+                    if (!offline) {
+                        offline = true;
+                        System.err.println("[" + regionName + "] Replica " + replica + " offline, holding "
+                                + (statements.size() + queue.size()) + " statements until it returns or is removed");
+                    }
+                } else {
+                    try {
+                        QueryResult r = ShuffleCommands.peer(addr).submit(cmd).get(SEND_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                        if (!r.isError()) return true;
+                        // 从副本拒绝（命令不合法等），重试也不会成功
+                        System.err.println("[" + regionName + "] Replica " + replica + " rejected batch: " + r.getMessage());
+                        return false;
+                    } catch (Exception e) {
+                        System.err.println("[" + regionName + "] Replicate to " + replica + " failed, retrying: " + e.getMessage());
+                    }
+                }
+                try {
+                    Thread.sleep(RETRY_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+}
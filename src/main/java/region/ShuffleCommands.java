@@ -0,0 +1,152 @@
+package region;
+
+import minisql.HashJoin;
+import minisql.QueryResult;
+import minisql.ResultCursor;
+import minisql.parser.JoinStatement;
+import minisql.parser.SqlParser;
+import minisql.parser.Statement;
+import protocol.MuxConnection;
+import protocol.RemoteCursor;
+import util.Partitioning;
+import util.Slots;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+/**
+ * Master 协调的 JOIN 重分布使用的内部命令（不对客户端开放），region 之间直接传输构建侧的行，不经过 Master：
+ *  SHUFFLE SCAN <L|R> <分区方式> <槽集合> <JOIN 语句>
+ *      分批返回本地左表（L）或右表（R）中连接列落在槽集合内的行（只含需要的列，已判断下推的条件）
+ *  SHUFFLE JOIN <L|R> <分区方式> <槽集合> <对端地址,...> <JOIN 语句>
+ *      构建侧为左表（L）或右表（R）：从本地和各对端（SHUFFLE SCAN）取来连接列落在槽集合内的构建侧行，
+ *      建好哈希表后分批探测本地的另一张表
+ * 分区方式为 Partitioning 的描述串，槽集合见 Slots.encodeSet；二者为 * 时不按连接列筛选（构建侧广播到每个 region）。
+ * 对端地址为 - 时没有对端。对端的游标并行读取，任一对端失败或超过 -Dregion.shuffle.timeoutMs（默认 30000）时整个 JOIN 失败。
+ * 等待对端期间占用一个执行线程，-Dregion.threads=N 时 N 应大于同时执行的 JOIN 数
+ */
+public class ShuffleCommands {
+    public static final String PREFIX = "SHUFFLE ";
+    // 每批传输的构建侧行数
+    private static final int BATCH_ROWS = Integer.getInteger("region.shuffle.batchRows", 1000);
+    private static final long TIMEOUT_MS = Long.getLong("region.shuffle.timeoutMs", 30_000L);
+    private static final int CONNECT_TIMEOUT_MS = Integer.getInteger("region.shuffle.connectTimeoutMs", 3_000);
+    // 对端地址 → 二进制多路复用连接，断开后下次使用时重建（主从复制也使用）
+    private static final Map<String, MuxConnection> peers = new ConcurrentHashMap<>();
+
+    /** 是否为内部重分布命令 */
+    public static boolean isShuffleCommand(String sql) {
+        return sql.regionMatches(true, 0, PREFIX, 0, PREFIX.length());
+    }
+
+    /** 执行后一次返回全部结果 */
+    public static QueryResult execute(String sql) {
+        try (ResultCursor cursor = open(sql)) {
+            QueryResult first = cursor.next(Integer.MAX_VALUE);
+            if (cursor.isDone() || first.isError()) return first;
+            List<Map<String, String>> rows = new ArrayList<>(first.getRows());
+            while (!cursor.isDone()) rows.addAll(cursor.next(Integer.MAX_VALUE).getRows());
+            return QueryResult.rows(first.getColumns(), rows, "Empty result.");
+        }
+    }
+
+    /** 以游标方式执行 */
+    public static ResultCursor open(String sql) {
+        String[] p = sql.trim().split("\\s+", 3);
+        if (p.length < 3) return ResultCursor.of(QueryResult.error("Invalid SHUFFLE command."));
+        String cmd = p[1].toUpperCase(Locale.ROOT);
+        String[] a = p[2].split("\\s+", cmd.equals("JOIN") ? 5 : 4);
+        if (!(cmd.equals("SCAN") || cmd.equals("JOIN")) || a.length < (cmd.equals("JOIN") ? 5 : 4)
+                || !(a[0].equalsIgnoreCase("L") || a[0].equalsIgnoreCase("R"))) {
+            return ResultCursor.of(QueryResult.error("Invalid SHUFFLE command."));
+        }
+        boolean right = a[0].equalsIgnoreCase("R");
+        String joinSql = a[a.length - 1];
+        try {
+            Predicate<String> keys = keysOf(a[1], a[2]);
+            Statement st = SqlParser.parseCached(joinSql);
+            if (!(st instanceof JoinStatement)) return ResultCursor.of(QueryResult.error("Not a JOIN: " + joinSql));
+            HashJoin join = HashJoin.plan((JoinStatement) st, List.of(), right);
+            if (cmd.equals("SCAN")) return join.scanSide(right, keys);
+            List<String> addrs = a[3].equals("-") ? List.of() : List.of(a[3].split(","));
+            return shuffleJoin(join, right, keys, addrs, "SHUFFLE SCAN " + a[0] + " " + a[1] + " " + a[2] + " " + joinSql);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResultCursor.of(QueryResult.error(e.getMessage()));
+        }
+    }
+
+    /** 连接列的规范值是否发往本节点：按分区方式算出槽，在槽集合内 */
+    private static Predicate<String> keysOf(String partitioning, String slots) {
+        if (partitioning.equals("*")) return k -> true;
+        Partitioning p = Partitioning.parse(partitioning);
+        BitSet owned = Slots.decodeSet(slots);
+        return k -> owned.get(p.slotOf(k));
+    }
+
+    /** 取来本地与各对端的构建侧行，建好哈希表后返回探测本地另一张表的游标 */
+    private static ResultCursor shuffleJoin(HashJoin join, boolean right, Predicate<String> keys, List<String> addrs,
+                                            String scanSql) {
+        long t0 = System.nanoTime();
+        List<RemoteCursor> cursors = new ArrayList<>();
+        try {
+            List<CompletableFuture<Void>> pulls = new ArrayList<>();
+            for (String addr : addrs) {
+                RemoteCursor c;
+                try {
+                    c = peer(addr).openCursor(scanSql, BATCH_ROWS);
+                } catch (IOException e) {
+                    return ResultCursor.of(QueryResult.error("Shuffle from " + addr + " failed: " + e.getMessage()));
+                }
+                cursors.add(c);
+                pulls.add(pull(addr, c, join));
+            }
+            // 对端传输期间扫描本地的构建侧
+            try (ResultCursor local = join.scanSide(right, keys)) {
+                while (!local.isDone()) join.addBuildRows(local.next(BATCH_ROWS).getRows());
+            }
+            CompletableFuture.allOf(pulls.toArray(new CompletableFuture<?>[0])).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+            return ResultCursor.of(QueryResult.error(String.valueOf(c.getMessage())));
+        } catch (TimeoutException e) {
+            return ResultCursor.of(QueryResult.error("Shuffle timeout after " + TIMEOUT_MS + "ms"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResultCursor.of(QueryResult.error("Shuffle interrupted"));
+        } catch (IllegalStateException e) {
+            return ResultCursor.of(QueryResult.error(e.getMessage()));
+        } finally {
+            // 失败时释放对端未取完的游标，成功时均已取完
+            cursors.forEach(RemoteCursor::close);
+        }
+        System.out.printf("[RegionServer] Shuffle join: %d build rows from %d peers in %d ms%n",
+                join.getBuildRows(), addrs.size(), (System.nanoTime() - t0) / 1_000_000);
+        return join.probe();
+    }
+
+    /** 逐批读完一个对端的游标，每批加入哈希表后再请求下一批 */
+    private static CompletableFuture<Void> pull(String addr, RemoteCursor c, HashJoin join) {
+        return c.fetch().thenCompose(r -> {
+            if (r.isError()) throw new CompletionException(new IOException(addr + ": " + r.getMessage()));
+            join.addBuildRows(r.getRows());
+            return c.hasMore() ? pull(addr, c, join) : CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /** 到另一个 region 的二进制多路复用连接（JOIN 重分布与主从复制共用） */
+    static MuxConnection peer(String addr) throws IOException {
+        MuxConnection conn = peers.get(addr);
+        if (conn != null && conn.isOpen()) return conn;
+        synchronized (peers) {
+            conn = peers.get(addr);
+            if (conn == null || !conn.isOpen()) {
+                conn = MuxConnection.connect(addr, CONNECT_TIMEOUT_MS);
+                peers.put(addr, conn);
+            }
+            return conn;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package region;
+
+import minisql.QueryResult;
+import minisql.Table;
+import minisql.TableManager;
+import minisql.WriteAheadLog;
+import util.TableSchema;
+
+import java.util.*;
+
+/**
+ * Master 数据迁移使用的内部命令（不对客户端开放）：
+ *  SLOT TABLES                          列出本地所有表
+ *  SLOT SCHEMA <table>                  返回建表语句
+ *  SLOT SCAN <table> <slot> <n> [<len>:<after>]
+ *                                       按槽分批读取，after 为上一批最后的主键，写成 长度:主键（可含空格），省略时从头读
+ *  SLOT DELETE <table> <slot>           删除本地该槽全部行（迁移切换后清理旧副本）
+ *  SLOT MEMORY                          各表的存储方式与用量，及堆外内存合计
+ */
+public class SlotCommands {
+    public static final String PREFIX = "SLOT ";
+
+    /** 是否为内部槽命令 */
+    public static boolean isSlotCommand(String sql) {
+        return sql.regionMatches(true, 0, PREFIX, 0, PREFIX.length());
+    }
+
+    public static QueryResult execute(String sql) {
+        String[] p = sql.trim().split("\\s+");
+        if (p.length < 2) return QueryResult.error("Invalid SLOT command.");
+        String cmd = p[1].toUpperCase(Locale.ROOT);
+        if (cmd.equals("TABLES")) {
+            return QueryResult.message(String.join(",", new TreeSet<>(TableManager.listTables())));
+        }
+        if (cmd.equals("MEMORY")) {
+            StringJoiner out = new StringJoiner("\n");
+            for (String name : new TreeSet<>(TableManager.listTables())) {
+                Table table = TableManager.getTable(name);
+                if (table != null) out.add(name + ": " + table.getUsage());
+            }
+            out.add(Table.offHeapUsage());
+            return QueryResult.message(out.toString());
+        }
+        if (p.length < 3) return QueryResult.error("Invalid SLOT command.");
+        Table table = TableManager.getTable(p[2]);
+        if (table == null) return QueryResult.error("Table not found: " + p[2]);
+        switch (cmd) {
+            case "SCHEMA":
+                return QueryResult.message(new TableSchema(table.getName(), table.getColumns(), table.getPrimaryKey(),
+                        table.getPartitioning().toString(), table.getStorage(), Map.of()).toCreateStatement());
+            case "SCAN":
+                if (p.length < 5) return QueryResult.error("Invalid SLOT SCAN.");
+                String after = null;
+                if (p.length > 5) {
+                    // 主键原样取自命令末尾，不能按空白切分或去掉首尾空白
+                    String tail = sql.stripLeading().split("\\s+", 6)[5];
+                    int colon = tail.indexOf(':');
+                    int end = colon < 0 ? -1 : colon + 1 + Integer.parseInt(tail.substring(0, colon));
+                    if (end < 0 || end > tail.length()) return QueryResult.error("Invalid SLOT SCAN.");
+                    after = tail.substring(colon + 1, end);
+                }
+                List<Map<String, String>> rows =
+                        table.scanSlot(Integer.parseInt(p[3]), after, Integer.parseInt(p[4]));
+                return QueryResult.rows(table.getColumns(), rows, "Empty result.");
+            case "DELETE":
+                if (p.length < 4) return QueryResult.error("Invalid SLOT DELETE.");
+                int deleted = table.deleteSlot(Integer.parseInt(p[3]));
+                WriteAheadLog.awaitDurable();
+                return QueryResult.message("Deleted rows: " + deleted);
+            default:
+                return QueryResult.error("Invalid SLOT command.");
+        }
+    }
+}
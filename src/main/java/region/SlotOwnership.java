@@ -0,0 +1,102 @@
+package region;
+
+import minisql.QueryResult;
+import minisql.SimpleSQLExecutor;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import util.SlotTable;
+import util.Slots;
+import util.ZkUtils;
+
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * RegionServer 侧的槽归属视图：监听 ZooKeeper /slots，
+ * 查询结果只返回本节点拥有的槽内的行，隐藏迁移过程中的副本
+ * （迁移目标在切换前、迁移源在切换后、清理前都持有副本）与本节点持有的从副本。
+ * /slots 尚不存在或槽未分配时，行全部可见。
+ * 同时校验直连请求（智能客户端，以及 Master 发往从副本的单点读）：写只接受本节点拥有的槽，
+ * 迁移中或有从副本正在同步的槽不接受直连写（写请求须经 Master 的写闸门）；
+ * 读还接受本节点为已同步从副本的槽，执行期间该槽的行可见。否则返回 MOVED，由调用方改走 Master 或 owner。
+ */
+public class SlotOwnership {
+    private final String regionName;
+    private volatile SlotTable table = SlotTable.empty();
+    // 当前线程正以从副本身份提供读取的槽，-1 为没有
+    private final ThreadLocal<int[]> serving = ThreadLocal.withInitial(() -> new int[]{-1});
+
+    private SlotOwnership(String regionName) {
+        this.regionName = regionName;
+    }
+
+    /** 开始监听 /slots 并安装到执行器的行过滤 */
+    public static SlotOwnership start(CuratorFramework zk, String regionName) throws Exception {
+        SlotOwnership own = new SlotOwnership(regionName);
+        ZkUtils.startCache(zk, SlotTable.ZK_PATH, CuratorCacheListener.builder()
+                .forCreatesAndChanges((old, d) -> own.table = SlotTable.decode(d.getData()))
+                .forDeletes(d -> own.table = SlotTable.empty())
+                .build(), CuratorCache.Options.SINGLE_NODE_CACHE);
+        SimpleSQLExecutor.setRowFilter((t, row) -> own.visible(t.slotOf(row.get(t.getPrimaryKey()))));
+        return own;
+    }
+
+    /** 当前槽归属快照 */
+    public SlotTable current() {
+        return table;
+    }
+
+    /** 槽的行在当前线程的查询中是否可见：本节点拥有，或正以从副本身份读取该槽 */
+    private boolean visible(int slot) {
+        return ownsSlot(slot) || serving.get()[0] == slot;
+    }
+
+    /** 以从副本身份读取槽 slot：执行 action 期间该槽的行可见 */
+    public <T> T serving(int slot, Supplier<T> action) {
+        int[] s = serving.get();
+        int prev = s[0];
+        s[0] = slot;
+        try {
+            return action.get();
+        } finally {
+            s[0] = prev;
+        }
+    }
+
+    /** 槽是否由本节点拥有（未分配视为拥有） */
+    public boolean ownsSlot(int slot) {
+        String owner = table.owner(slot);
+        return owner == null || owner.equals(regionName);
+    }
+
+    /**
+     * 执行直连请求 "DIRECT <槽> <SQL>"：槽归本节点且（写请求时）未在迁移中才交给 executor 执行
+     */
+    public QueryResult executeDirect(String request, Function<String, QueryResult> executor) {
+        String[] p = request.trim().split("\\s+", 3);
+        if (p.length < 3) return QueryResult.error("Invalid DIRECT request.");
+        int slot;
+        try {
+            slot = Integer.parseInt(p[1]);
+        } catch (NumberFormatException e) {
+            return QueryResult.error("Invalid DIRECT request.");
+        }
+        String sql = p[2];
+        QueryResult moved = checkDirect(slot, !sql.toUpperCase(Locale.ROOT).startsWith("SELECT"));
+        return moved != null ? moved : serving(slot, () -> executor.apply(sql));
+    }
+
+    /** 校验直连请求的槽：可在本节点执行时返回 null，否则返回 MOVED 错误 */
+    public QueryResult checkDirect(int slot, boolean write) {
+        SlotTable t = table;
+        boolean owner = regionName.equals(t.owner(slot));
+        boolean ok = write ? owner && t.getMigratingSlot() != slot && !t.isSyncing(slot)
+                : owner || t.isReadReplica(slot, regionName);
+        if (!ok) {
+            return QueryResult.error(Slots.MOVED + " " + slot + " v" + t.getVersion());
+        }
+        return null;
+    }
+}
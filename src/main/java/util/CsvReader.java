@@ -0,0 +1,80 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 逐行读取 CSV（LOAD DATA 使用）：字段以逗号分隔，可用双引号括起（内部 "" 表示一个双引号），
+ * 未加引号的字段去掉首尾空白；空行跳过。一条记录不能跨行
+ */
+public final class CsvReader implements Closeable {
+    private final BufferedReader in;
+    private long line;
+
+    public CsvReader(BufferedReader in) {
+        this.in = in;
+    }
+
+    public static CsvReader open(Path file) throws IOException {
+        return new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+    }
+
+    /** 下一条记录的字段，读到文件末尾返回 null */
+    public List<String> next() throws IOException {
+        String s;
+        do {
+            s = in.readLine();
+            if (s == null) return null;
+            line++;
+        } while (s.isBlank());
+        return parseLine(s);
+    }
+
+    /** 已读取的行号（从 1 开始，含空行） */
+    public long getLine() { return line; }
+
+    /** 解析一行；引号未闭合时抛 IllegalArgumentException */
+    public static List<String> parseLine(String s) {
+        List<String> fields = new ArrayList<>();
+        int n = s.length();
+        int i = 0;
+        while (true) {
+            while (i < n && s.charAt(i) == ' ') i++;
+            if (i < n && s.charAt(i) == '"') {
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= n) throw new IllegalArgumentException("Unterminated quoted field");
+                    char c = s.charAt(i++);
+                    if (c != '"') {
+                        sb.append(c);
+                    } else if (i < n && s.charAt(i) == '"') {
+                        sb.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                fields.add(sb.toString());
+                while (i < n && s.charAt(i) != ',') i++;
+            } else {
+                int start = i;
+                while (i < n && s.charAt(i) != ',') i++;
+                fields.add(s.substring(start, i).trim());
+            }
+            if (i >= n) return fields;
+            i++;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
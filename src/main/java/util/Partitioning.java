@@ -0,0 +1,90 @@
+package util;
+
+import java.util.Locale;
+
+/**
+ * 表的分区方式：主键值 → 槽
+ *  - HASH（默认）：Slots.slotOf，相邻主键分散到不同槽，点查与写入负载均匀
+ *  - RANGE(lo,hi)：INT 主键的区间 [lo, hi) 均分为 Slots.COUNT 段，依次对应槽 0..COUNT-1，
+ *    小于 lo 的落在槽 0、不小于 hi 的落在最后一个槽；槽号随主键单调不减，
+ *    主键范围查询只需发给覆盖该区间的槽的 owner
+ * 描述串保存在表目录的 partition 项中（"HASH" 或 "RANGE(lo,hi)"）
+ */
+public final class Partitioning {
+    public static final Partitioning HASH = new Partitioning(false, 0, 0);
+
+    private final boolean range;
+    private final long lo;
+    private final long hi;
+
+    private Partitioning(boolean range, long lo, long hi) {
+        this.range = range;
+        this.lo    = lo;
+        this.hi    = hi;
+    }
+
+    /** 按 INT 主键区间 [lo, hi) 分区 */
+    public static Partitioning range(long lo, long hi) {
+        if (hi <= lo) throw new IllegalArgumentException("Invalid partition range: " + lo + ", " + hi);
+        return new Partitioning(true, lo, hi);
+    }
+
+    /** 解析描述串；null 视为 HASH，不合法时抛 IllegalArgumentException */
+    public static Partitioning parse(String spec) {
+        if (spec == null) return HASH;
+        String s = spec.trim().toUpperCase(Locale.ROOT);
+        if (s.equals(TableSchema.PARTITION_HASH)) return HASH;
+        if (s.startsWith("RANGE(") && s.endsWith(")")) {
+            String[] p = s.substring(6, s.length() - 1).split(",");
+            if (p.length == 2) {
+                try {
+                    return range(Long.parseLong(p[0].trim()), Long.parseLong(p[1].trim()));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        throw new IllegalArgumentException("Invalid partitioning: " + spec);
+    }
+
+    public boolean isRange() { return range; }
+    public long getLow() { return lo; }
+    public long getHigh() { return hi; }
+
+    /** 主键值所属的槽；RANGE 分区下非整数的主键按哈希处理（这样的行不会存在，只用于路由探测值） */
+    public int slotOf(String pk) {
+        if (!range) return Slots.slotOf(pk);
+        long v;
+        try {
+            v = Long.parseLong(pk.trim());
+        } catch (NumberFormatException e) {
+            return Slots.slotOf(pk);
+        }
+        return slotOfValue(v);
+    }
+
+    private int slotOfValue(long v) {
+        if (v < lo) return 0;
+        if (v >= hi) return Slots.COUNT - 1;
+        return (int) ((v - lo) * Slots.COUNT / (hi - lo));
+    }
+
+    /**
+     * RANGE 分区下主键区间覆盖的槽 [first, last]（边界为 null 表示该侧无界，开闭不影响结果）；
+     * HASH 分区或边界不是整数时返回全部槽
+     */
+    public int[] slotSpan(String low, String high) {
+        if (!range) return new int[]{0, Slots.COUNT - 1};
+        try {
+            int first = low == null ? 0 : slotOfValue(Long.parseLong(low.trim()));
+            int last = high == null ? Slots.COUNT - 1 : slotOfValue(Long.parseLong(high.trim()));
+            return first <= last ? new int[]{first, last} : new int[]{first, first};
+        } catch (NumberFormatException e) {
+            return new int[]{0, Slots.COUNT - 1};
+        }
+    }
+
+    @Override
+    public String toString() {
+        return range ? "RANGE(" + lo + "," + hi + ")" : TableSchema.PARTITION_HASH;
+    }
+}
@@ -0,0 +1,79 @@
+package util;
+
+import minisql.parser.*;
+
+import java.util.List;
+
+/**
+ * 从语句中提取路由信息（表名、主键值），Master 与智能客户端共用
+ */
+public final class RouteKeys {
+
+    private RouteKeys() {
+    }
+
+    /** 语句操作的表名，无法解析时返回 null */
+    public static String tableOf(String sql) {
+        Statement st = tryParse(sql);
+        return st == null ? null : st.getTable();
+    }
+
+    /** 语句所操作表的主键列名，表不在目录中时为 defaultPk */
+    public static String primaryKeyOf(SchemaCatalog catalog, Statement st, String defaultPk) {
+        TableSchema schema = catalog.get(st.getTable());
+        return schema != null ? schema.getPrimaryKey() : defaultPk;
+    }
+
+    /**
+     * 尝试从 SQL 中提取主键列的值（只针对 INSERT 及 WHERE pk=...）
+     */
+    public static String extractPK(String sql, String pkCol) {
+        Statement st = tryParse(sql);
+        return st == null ? null : extractPK(st, pkCol, List.of());
+    }
+
+    /** 语句中主键列的取值，为 ? 参数时从 params 中取；无法确定时返回 null */
+    public static String extractPK(Statement st, String pkCol, List<String> params) {
+        Value v = pkValue(st, pkCol);
+        if (v == null || (v.isParam() && v.getParamIndex() >= params.size())) return null;
+        return v.resolve(params);
+    }
+
+    /**
+     * 语句中的主键值（字面量或参数）：INSERT 的该列值，或 SELECT/UPDATE/DELETE 的 WHERE pk = 值
+     * （含 pk = 值 AND ... 的组合条件；范围条件与 OR 不算）
+     */
+    public static Value pkValue(Statement st, String pkCol) {
+        if (st instanceof InsertStatement) {
+            return ((InsertStatement) st).valueOf(pkCol);
+        }
+        Condition where = whereOf(st);
+        if (where != null && where.getOp() == Condition.Op.AND) {
+            for (Condition c : where.getChildren()) {
+                if (isPkEquality(c, pkCol)) return c.getValue();
+            }
+        }
+        if (where != null && isPkEquality(where, pkCol)) return where.getValue();
+        return null;
+    }
+
+    private static boolean isPkEquality(Condition c, String pkCol) {
+        return c.isEquality() && c.getColumn().equalsIgnoreCase(pkCol);
+    }
+
+    /** SELECT/UPDATE/DELETE 的 WHERE 条件，其他语句或没有条件时返回 null */
+    public static Condition whereOf(Statement st) {
+        if (st instanceof SelectStatement) return ((SelectStatement) st).getWhere();
+        if (st instanceof UpdateStatement) return ((UpdateStatement) st).getWhere();
+        if (st instanceof DeleteStatement) return ((DeleteStatement) st).getWhere();
+        return null;
+    }
+
+    private static Statement tryParse(String sql) {
+        try {
+            return SqlParser.parseCached(sql);
+        } catch (SqlParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package util;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import org.apache.zookeeper.KeeperException;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 集群表目录（Master 与智能客户端共用）：ZooKeeper /catalog 下每张表一个节点，
+ * 通过 CuratorCache 监听并缓存在内存中，路由时无需访问 ZooKeeper
+ */
+public class SchemaCatalog {
+    private final CuratorFramework zk;
+    private CuratorCache cache;
+    // 表名 → 表定义
+    private final Map<String, TableSchema> tables = new ConcurrentHashMap<>();
+
+    public SchemaCatalog(CuratorFramework zk) {
+        this.zk = zk;
+    }
+
+    /** 加载已有表定义并开始监听变化 */
+    public void start() throws Exception {
+        cache = ZkUtils.startCache(zk, TableSchema.ZK_PATH, CuratorCacheListener.builder()
+                .forCreatesAndChanges((old, d) -> {
+                    String name = nameOf(d);
+                    if (name != null) tables.put(name, TableSchema.decode(name, d.getData()));
+                })
+                .forDeletes(d -> {
+                    String name = nameOf(d);
+                    if (name != null) tables.remove(name);
+                })
+                .build());
+        System.out.println("[Catalog] Tables = " + names());
+    }
+
+    /** 表节点对应的表名，/catalog 本身返回 null */
+    private static String nameOf(ChildData d) {
+        String prefix = TableSchema.ZK_PATH + "/";
+        return d.getPath().startsWith(prefix) ? d.getPath().substring(prefix.length()) : null;
+    }
+
+    /** 表定义，未登记时返回 null */
+    public TableSchema get(String table) {
+        return table == null ? null : tables.get(table);
+    }
+
+    public Set<String> names() {
+        return new TreeSet<>(tables.keySet());
+    }
+
+    /** 登记新表（已存在时保留原定义），同时更新本地缓存 */
+    public void register(TableSchema schema) throws Exception {
+        try {
+            zk.create().creatingParentsIfNeeded()
+                    .forPath(TableSchema.ZK_PATH + "/" + schema.getName(), schema.encode());
+            tables.put(schema.getName(), schema);
+        } catch (KeeperException.NodeExistsException ignored) {
+        }
+    }
+
+    /** 覆盖已登记的表定义（如增删索引），表未登记时忽略 */
+    public void update(TableSchema schema) throws Exception {
+        try {
+            zk.setData().forPath(TableSchema.ZK_PATH + "/" + schema.getName(), schema.encode());
+            tables.put(schema.getName(), schema);
+        } catch (KeeperException.NoNodeException ignored) {
+        }
+    }
+
+    /** 删除表定义 */
+    public void remove(String table) throws Exception {
+        try {
+            zk.delete().forPath(TableSchema.ZK_PATH + "/" + table);
+        } catch (KeeperException.NoNodeException ignored) {
+        }
+        tables.remove(table);
+    }
+
+    public void close() {
+        if (cache != null) cache.close();
+    }
+}
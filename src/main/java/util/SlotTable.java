@@ -0,0 +1,216 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 哈希槽归属表（不可变快照）：槽 → 当前拥有数据的 region（主副本），各槽的从副本，
+ * 以及正在迁移的槽与迁移目标。保存在 ZooKeeper 的 /slots 节点中，
+ * Master、RegionServer 与客户端都从该节点读取。
+ * 从副本由主副本异步或半同步复制写入（见 region.Replicator）；正在同步（全量复制中）的从副本
+ * 接收复制的写入，但尚不提供读取，也不能在主副本下线时被提升
+ *  编码格式：版本号\n迁移槽,迁移目标\nowner0,owner1,...（未分配为空串）
+ *           \n从副本0,从副本1,...（同一槽的多个从副本以 ; 分隔，同步中的加后缀 *；没有从副本时省略该行）
+ */
+public class SlotTable {
+    public static final String ZK_PATH = "/slots";
+    public static final String ZK_MIGRATION_PATH = "/migration";
+    private static final String[] NONE = new String[0];
+
+    private final long version;
+    private final String[] owners;
+    private final int migratingSlot;      // -1 表示没有迁移
+    private final String migrationTarget;
+    // 各槽的从副本（不含主副本），名称后缀 * 表示同步中
+    private final String[][] replicas;
+
+    private SlotTable(long version, String[] owners, int migratingSlot, String migrationTarget,
+                      String[][] replicas) {
+        this.version         = version;
+        this.owners          = owners;
+        this.migratingSlot   = migratingSlot;
+        this.migrationTarget = migrationTarget;
+        this.replicas        = replicas;
+    }
+
+    /** 所有槽均未分配 */
+    public static SlotTable empty() {
+        String[][] replicas = new String[Slots.COUNT][];
+        Arrays.fill(replicas, NONE);
+        return new SlotTable(0, new String[Slots.COUNT], -1, null, replicas);
+    }
+
+    public long getVersion() { return version; }
+    public String owner(int slot) { return owners[slot]; }
+    public String ownerOf(String key) { return owners[Slots.slotOf(key)]; }
+    public int getMigratingSlot() { return migratingSlot; }
+    public String getMigrationTarget() { return migrationTarget; }
+
+    /** 是否所有槽均未分配 */
+    public boolean isEmpty() {
+        for (String o : owners) if (o != null) return false;
+        return true;
+    }
+
+    /** 槽的全部从副本（含同步中的），主副本的写入复制到这些 region */
+    public List<String> replicas(int slot) {
+        List<String> names = new ArrayList<>(replicas[slot].length);
+        for (String r : replicas[slot]) names.add(nameOf(r));
+        return names;
+    }
+
+    /** 槽已同步完成、可提供读取的从副本 */
+    public List<String> readReplicas(int slot) {
+        List<String> names = new ArrayList<>(replicas[slot].length);
+        for (String r : replicas[slot]) if (!r.endsWith("*")) names.add(r);
+        return names;
+    }
+
+    /** region 是否为槽已同步完成的从副本 */
+    public boolean isReadReplica(int slot, String region) {
+        for (String r : replicas[slot]) if (r.equals(region)) return true;
+        return false;
+    }
+
+    /** 槽是否有正在同步的从副本（期间写请求须经 Master，与迁移中的槽一样） */
+    public boolean isSyncing(int slot) {
+        for (String r : replicas[slot]) if (r.endsWith("*")) return true;
+        return false;
+    }
+
+    /** 批量修改槽归属，返回新版本；新 owner 原为该槽的从副本时（提升）从从副本中去掉 */
+    public SlotTable withOwners(Map<Integer, String> changes) {
+        String[] copy = owners.clone();
+        String[][] reps = replicas.clone();
+        changes.forEach((slot, owner) -> {
+            copy[slot] = owner;
+            reps[slot] = without(reps[slot], owner);
+        });
+        return new SlotTable(version + 1, copy, migratingSlot, migrationTarget, reps);
+    }
+
+    /** 标记槽开始迁移到 target（迁移期间写请求双写） */
+    public SlotTable withMigration(int slot, String target) {
+        return new SlotTable(version + 1, owners, slot, target, replicas);
+    }
+
+    /** 迁移完成：原子地切换归属并清除迁移标记（迁移目标原为从副本时从从副本中去掉） */
+    public SlotTable completeMigration() {
+        String[] copy = owners.clone();
+        copy[migratingSlot] = migrationTarget;
+        String[][] reps = replicas.clone();
+        reps[migratingSlot] = without(reps[migratingSlot], migrationTarget);
+        return new SlotTable(version + 1, copy, -1, null, reps);
+    }
+
+    /** 放弃迁移，归属不变 */
+    public SlotTable abortMigration() {
+        return new SlotTable(version + 1, owners, -1, null, replicas);
+    }
+
+    /** 批量替换槽的从副本列表（保留列表中仍在的 region 的同步状态） */
+    public SlotTable withReplicas(Map<Integer, List<String>> changes) {
+        String[][] reps = replicas.clone();
+        changes.forEach((slot, names) -> {
+            String[] next = new String[names.size()];
+            for (int i = 0; i < next.length; i++) {
+                String n = names.get(i);
+                next[i] = Arrays.asList(replicas[slot]).contains(n + "*") ? n + "*" : n;
+            }
+            reps[slot] = next;
+        });
+        return new SlotTable(version + 1, owners, migratingSlot, migrationTarget, reps);
+    }
+
+    /** 为各槽加入同步中的从副本（开始接收复制的写入），已是从副本的改为同步中 */
+    public SlotTable withSyncingReplicas(Map<Integer, List<String>> additions) {
+        String[][] reps = replicas.clone();
+        additions.forEach((slot, names) -> {
+            String[] next = reps[slot];
+            for (String region : names) {
+                String[] kept = without(next, region);
+                next = Arrays.copyOf(kept, kept.length + 1);
+                next[kept.length] = region + "*";
+            }
+            reps[slot] = next;
+        });
+        return new SlotTable(version + 1, owners, migratingSlot, migrationTarget, reps);
+    }
+
+    /** 从副本同步完成，开始提供读取 */
+    public SlotTable replicaReady(int slot, String region) {
+        String[][] reps = replicas.clone();
+        reps[slot] = reps[slot].clone();
+        for (int i = 0; i < reps[slot].length; i++) {
+            if (reps[slot][i].equals(region + "*")) reps[slot][i] = region;
+        }
+        return new SlotTable(version + 1, owners, migratingSlot, migrationTarget, reps);
+    }
+
+    /** 各 region 拥有的槽数 */
+    public Map<String, Integer> slotCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (String o : owners) if (o != null) counts.merge(o, 1, Integer::sum);
+        return counts;
+    }
+
+    /** 各 region 持有的从副本槽数 */
+    public Map<String, Integer> replicaCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (String[] reps : replicas) for (String r : reps) counts.merge(nameOf(r), 1, Integer::sum);
+        return counts;
+    }
+
+    public byte[] encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(version).append('\n');
+        sb.append(migratingSlot).append(',').append(migrationTarget == null ? "" : migrationTarget).append('\n');
+        for (int i = 0; i < owners.length; i++) {
+            if (i > 0) sb.append(',');
+            if (owners[i] != null) sb.append(owners[i]);
+        }
+        boolean any = false;
+        for (String[] reps : replicas) any |= reps.length > 0;
+        if (any) {
+            sb.append('\n');
+            for (int i = 0; i < replicas.length; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(String.join(";", replicas[i]));
+            }
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static SlotTable decode(byte[] data) {
+        if (data == null || data.length == 0) return empty();
+        String[] lines = new String(data, StandardCharsets.UTF_8).split("\n", -1);
+        long version = Long.parseLong(lines[0]);
+        String[] mig = lines[1].split(",", -1);
+        int migratingSlot = Integer.parseInt(mig[0]);
+        String target = mig[1].isEmpty() ? null : mig[1];
+        String[] parts = lines[2].split(",", -1);
+        String[] owners = new String[Slots.COUNT];
+        for (int i = 0; i < owners.length && i < parts.length; i++) {
+            owners[i] = parts[i].isEmpty() ? null : parts[i];
+        }
+        String[][] replicas = new String[Slots.COUNT][];
+        Arrays.fill(replicas, NONE);
+        if (lines.length > 3) {
+            String[] reps = lines[3].split(",", -1);
+            for (int i = 0; i < replicas.length && i < reps.length; i++) {
+                if (!reps[i].isEmpty()) replicas[i] = reps[i].split(";");
+            }
+        }
+        return new SlotTable(version, owners, migratingSlot, target, replicas);
+    }
+
+    private static String nameOf(String replica) {
+        return replica.endsWith("*") ? replica.substring(0, replica.length() - 1) : replica;
+    }
+
+    private static String[] without(String[] reps, String region) {
+        List<String> kept = new ArrayList<>(reps.length);
+        for (String r : reps) if (!nameOf(r).equals(region)) kept.add(r);
+        return kept.size() == reps.length ? reps : kept.toArray(NONE);
+    }
+}
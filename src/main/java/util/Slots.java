@@ -0,0 +1,73 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * 哈希槽：主键值 → 固定数量的槽，槽是数据迁移与路由切换的最小单位。
+ * Master、RegionServer 与客户端必须使用同一哈希函数与槽数。
+ */
+public class Slots {
+    public static final int COUNT = 1024;
+    /** 智能客户端直连 RegionServer 的请求前缀："DIRECT <槽> <SQL>" */
+    public static final String DIRECT_PREFIX = "DIRECT ";
+    /** RegionServer 不再（或尚未）负责该槽时的错误消息前缀，客户端据此改走 Master */
+    public static final String MOVED = "MOVED";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** 是否为直连请求 */
+    public static boolean isDirect(String sql) {
+        return sql.regionMatches(true, 0, DIRECT_PREFIX, 0, DIRECT_PREFIX.length());
+    }
+
+    /** 槽集合的文本形式（位图的十六进制，空集合为 "-"），用于在命令中传递一个 region 拥有的槽 */
+    public static String encodeSet(BitSet slots) {
+        if (slots.isEmpty()) return "-";
+        byte[] bytes = slots.toByteArray();
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+        }
+        return sb.toString();
+    }
+
+    /** 解析 encodeSet 的结果，不合法时抛 IllegalArgumentException */
+    public static BitSet decodeSet(String text) {
+        if (text.equals("-")) return new BitSet();
+        if (text.isEmpty() || text.length() % 2 != 0) {
+            throw new IllegalArgumentException("Invalid slot set: " + text);
+        }
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int hi = Character.digit(text.charAt(2 * i), 16);
+            int lo = Character.digit(text.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) throw new IllegalArgumentException("Invalid slot set: " + text);
+            bytes[i] = (byte) (hi << 4 | lo);
+        }
+        return BitSet.valueOf(bytes);
+    }
+
+    /** 主键值所属的槽 */
+    public static int slotOf(String key) {
+        return (int) Math.floorMod(hash(key), (long) COUNT);
+    }
+
+    /**
+     * 64 位哈希：FNV-1a 累加后做 MurmurHash3 fmix64 雪崩，
+     * 保证相近的 key（如连续整数主键）均匀分散
+     */
+    public static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
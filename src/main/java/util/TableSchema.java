@@ -0,0 +1,181 @@
+package util;
+
+import minisql.Column;
+import minisql.Table;
+import minisql.parser.CreateTableStatement;
+import minisql.parser.SqlParseException;
+import minisql.parser.SqlParser;
+import minisql.parser.Statement;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 集群表目录中的一张表：列定义、主键列、分区方式、存储引擎、二级索引。
+ * 保存在 ZooKeeper /catalog/<表名>，CREATE TABLE 时写入、DROP TABLE 时删除，
+ * Master 据此找到每张表真正的主键列用于路由。
+ * 序列化格式（每项一行）：
+ *   pk=<主键列>
+ *   partition=HASH 或 RANGE(lo,hi)（见 Partitioning）
+ *   engine=ROW|COLUMNAR|OFFHEAP|LSM（建表时未指定 ENGINE 时省略，各 region 用各自的默认存储）
+ *   columns=<列名 类型>,<列名 类型>,...
+ *   indexes=<索引名:列名>,...（没有索引时省略）
+ */
+public final class TableSchema {
+    public static final String ZK_PATH = "/catalog";
+    /** 按主键哈希槽分区 */
+    public static final String PARTITION_HASH = "HASH";
+
+    private final String name;
+    private final List<Column> columns;
+    private final String primaryKey;
+    private final String partitioning;
+    private final Partitioning partitioner;
+    // 存储引擎，null 表示未指定
+    private final String engine;
+    // 索引名 → 列名
+    private final Map<String, String> indexes;
+
+    public TableSchema(String name, List<Column> columns, String primaryKey, String partitioning) {
+        this(name, columns, primaryKey, partitioning, Map.of());
+    }
+
+    public TableSchema(String name, List<Column> columns, String primaryKey, String partitioning,
+                       Map<String, String> indexes) {
+        this(name, columns, primaryKey, partitioning, null, indexes);
+    }
+
+    public TableSchema(String name, List<Column> columns, String primaryKey, String partitioning, String engine,
+                       Map<String, String> indexes) {
+        this.name         = name;
+        this.columns      = List.copyOf(columns);
+        this.primaryKey   = primaryKey;
+        this.partitioning = partitioning;
+        this.partitioner  = Partitioning.parse(partitioning);
+        this.engine       = engine == null ? null : engine.toUpperCase(Locale.ROOT);
+        this.indexes      = Collections.unmodifiableMap(new LinkedHashMap<>(indexes));
+    }
+
+    /** 解析 CREATE TABLE 语句，语法不合法或主键不在列中时返回 null */
+    public static TableSchema parseCreate(String sql) {
+        try {
+            Statement st = SqlParser.parseCached(sql);
+            return st instanceof CreateTableStatement ? of((CreateTableStatement) st) : null;
+        } catch (SqlParseException e) {
+            return null;
+        }
+    }
+
+    /** 由 CREATE TABLE 语句的 AST 生成表定义，主键不在列中、分区方式或存储引擎不合法时返回 null */
+    public static TableSchema of(CreateTableStatement st) {
+        String pk = st.getPrimaryKey();
+        Column pkCol = st.getColumns().stream().filter(c -> c.getName().equals(pk)).findFirst().orElse(null);
+        if (pkCol == null) return null;
+        Partitioning p;
+        try {
+            p = Partitioning.parse(st.getPartitioning());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (p.isRange() && !pkCol.isInt()) return null;
+        if (st.getEngine() != null && !Table.isStorage(st.getEngine())) return null;
+        return new TableSchema(st.getTable(), st.getColumns(), pk, p.toString(), st.getEngine(), Map.of());
+    }
+
+    public String getName() { return name; }
+    public List<Column> getColumns() { return columns; }
+    public String getPrimaryKey() { return primaryKey; }
+    public String getPartitioning() { return partitioning; }
+    public Partitioning partitioner() { return partitioner; }
+    /** 存储引擎，建表时未指定为 null */
+    public String getEngine() { return engine; }
+    public Map<String, String> getIndexes() { return indexes; }
+
+    /** 增加一个二级索引后的表定义 */
+    public TableSchema withIndex(String index, String column) {
+        Map<String, String> m = new LinkedHashMap<>(indexes);
+        m.put(index, column);
+        return new TableSchema(name, columns, primaryKey, partitioning, engine, m);
+    }
+
+    /** 删除一个二级索引后的表定义 */
+    public TableSchema withoutIndex(String index) {
+        Map<String, String> m = new LinkedHashMap<>(indexes);
+        m.remove(index);
+        return new TableSchema(name, columns, primaryKey, partitioning, engine, m);
+    }
+
+    /** 列类型（INT/TEXT），列不存在时返回 null */
+    public String columnType(String column) {
+        for (Column c : columns) {
+            if (c.getName().equals(column)) return c.getType();
+        }
+        return null;
+    }
+
+    /** 还原为 CREATE TABLE 语句（新 region 启动时据此建表） */
+    public String toCreateStatement() {
+        StringBuilder sb = new StringBuilder("CREATE TABLE ").append(name).append(" (");
+        for (Column c : columns) {
+            sb.append(c.getName()).append(' ').append(c.getType()).append(", ");
+        }
+        sb.append("PRIMARY KEY(").append(primaryKey).append("))");
+        if (partitioner.isRange()) {
+            sb.append(" PARTITION BY RANGE (").append(partitioner.getLow()).append(", ")
+                    .append(partitioner.getHigh()).append(')');
+        }
+        if (engine != null) sb.append(" ENGINE=").append(engine);
+        return sb.toString();
+    }
+
+    /** 建索引语句（与建表语句一起在新 region 上执行） */
+    public List<String> toIndexStatements() {
+        List<String> stmts = new ArrayList<>();
+        for (Map.Entry<String, String> e : indexes.entrySet()) {
+            stmts.add("CREATE INDEX " + e.getKey() + " ON " + name + " (" + e.getValue() + ")");
+        }
+        return stmts;
+    }
+
+    public byte[] encode() {
+        StringJoiner cols = new StringJoiner(",");
+        for (Column c : columns) cols.add(c.getName() + " " + c.getType());
+        String s = "pk=" + primaryKey + "\npartition=" + partitioning
+                + (engine != null ? "\nengine=" + engine : "") + "\ncolumns=" + cols;
+        if (!indexes.isEmpty()) {
+            StringJoiner idx = new StringJoiner(",");
+            indexes.forEach((k, v) -> idx.add(k + ":" + v));
+            s += "\nindexes=" + idx;
+        }
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static TableSchema decode(String name, byte[] data) {
+        Map<String, String> kv = new HashMap<>();
+        for (String line : new String(data, StandardCharsets.UTF_8).split("\n")) {
+            int eq = line.indexOf('=');
+            if (eq > 0) kv.put(line.substring(0, eq), line.substring(eq + 1));
+        }
+        List<Column> cols = parseColumns(kv.getOrDefault("columns", ""));
+        if (cols == null || !kv.containsKey("pk")) {
+            throw new IllegalArgumentException("Bad catalog entry for " + name);
+        }
+        Map<String, String> indexes = new LinkedHashMap<>();
+        for (String part : kv.getOrDefault("indexes", "").split(",")) {
+            int colon = part.indexOf(':');
+            if (colon > 0) indexes.put(part.substring(0, colon), part.substring(colon + 1));
+        }
+        return new TableSchema(name, cols, kv.get("pk"), kv.getOrDefault("partition", PARTITION_HASH),
+                kv.get("engine"), indexes);
+    }
+
+    private static List<Column> parseColumns(String def) {
+        List<Column> cols = new ArrayList<>();
+        for (String part : def.split(",")) {
+            String[] kv = part.trim().split("\\s+");
+            if (kv.length < 2) return null;
+            cols.add(new Column(kv[0], kv[1]));
+        }
+        return cols;
+    }
+}
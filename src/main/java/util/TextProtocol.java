@@ -0,0 +1,27 @@
+package util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Master ↔ RegionServer 文本协议常量：
+ *  - 单语句模式：发送一行 SQL，读取响应直到连接关闭
+ *  - 长连接模式：首行发送 KEEPALIVE，之后每个响应为 "#行数" + 对应行数的结果
+ */
+public class TextProtocol {
+    public static final String KEEPALIVE = "KEEPALIVE";
+    public static final String PING = "PING";
+    public static final String PONG = "PONG";
+
+    /** 以 "#行数" 帧头写出一个多行响应 */
+    public static void writeFramed(Writer out, String result) throws IOException {
+        String[] lines = result.split("\n", -1);
+        out.write("#" + lines.length);
+        out.write('\n');
+        for (String line : lines) {
+            out.write(line);
+            out.write('\n');
+        }
+        out.flush();
+    }
+}
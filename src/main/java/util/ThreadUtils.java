@@ -0,0 +1,46 @@
+package util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程工具：为"每个连接一个线程"的服务端创建执行器
+ *  - 运行在 JDK 21+ 时使用虚拟线程（Executors.newVirtualThreadPerTaskExecutor）
+ *  - 更低版本 JDK 回退为按需创建的守护平台线程
+ * 编译目标仍为 16，因此通过反射探测虚拟线程 API
+ */
+public class ThreadUtils {
+
+    /** 创建"每任务一线程"的执行器，优先使用虚拟线程 */
+    public static ExecutorService newPerTaskExecutor(String namePrefix) {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonFactory(namePrefix));
+        }
+    }
+
+    /** 当前 JVM 是否支持虚拟线程 */
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /** 带名称前缀的守护线程工厂 */
+    public static ThreadFactory daemonFactory(String namePrefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, namePrefix + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
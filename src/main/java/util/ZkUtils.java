@@ -2,8 +2,13 @@ package util;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 public class ZkUtils {
     private static final String ZK_ADDRESS = "localhost:2181";  // ZooKeeper 默认的服务地址和端口
     private static final int SESSION_TIMEOUT = 15000;
@@ -18,4 +23,21 @@ public class ZkUtils {
         client.start();
         return client;
     }
-}
\ No newline at end of file
+
+    /**
+     * 构建并启动 path 上的 CuratorCache，等待已有节点加载完成（最多一个会话超时）后返回。
+     * 监听器在启动前注册，已有节点同样以创建事件通知
+     */
+    public static CuratorCache startCache(CuratorFramework zk, String path, CuratorCacheListener listener,
+                                          CuratorCache.Options... options) throws InterruptedException {
+        CuratorCache cache = CuratorCache.build(zk, path, options);
+        CountDownLatch initialized = new CountDownLatch(1);
+        cache.listenable().addListener(listener);
+        cache.listenable().addListener(CuratorCacheListener.builder().forInitialized(initialized::countDown).build());
+        cache.start();
+        if (!initialized.await(SESSION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            System.err.println("[ZK] Cache of " + path + " not initialized after " + SESSION_TIMEOUT + "ms");
+        }
+        return cache;
+    }
+}
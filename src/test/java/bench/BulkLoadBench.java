@@ -0,0 +1,68 @@
+package bench;
+
+import minisql.SimpleSQLExecutor;
+import minisql.TableManager;
+import minisql.WriteAheadLog;
+import minisql.parser.SqlParser;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 单个 region 上的批量写入吞吐（预写日志 ASYNC）：逐行 INSERT、不同批大小的多行 INSERT 与 LOAD DATA，
+ * 报告 rows/sec、语句数（经 Master 转发时即往返次数）与日志记录数
+ *  java -cp target/classes:target/test-classes bench.BulkLoadBench [行数]
+ */
+public class BulkLoadBench {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Path dir = Files.createTempDirectory("bulkbench");
+        Path csv = dir.resolve("users.csv");
+        try (BufferedWriter w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            w.write("id,name,age\n");
+            for (int i = 0; i < n; i++) w.write(i + ",user" + i + "," + (i % 90) + "\n");
+        }
+
+        // 预热
+        run(dir, "warmup", n, 1000, false);
+        System.out.printf("%-16s %10s %12s %12s   %s%n", "mode", "rows", "rows/sec", "statements", "wal");
+        for (int batch : new int[]{1, 10, 100, 1000}) run(dir, "insert x" + batch, n, batch, true);
+
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "load", WriteAheadLog.Durability.ASYNC, 10)) {
+            wal.install();
+            SimpleSQLExecutor.execute("CREATE TABLE users (id INT, name TEXT, age INT, PRIMARY KEY(id))");
+            long t0 = System.nanoTime();
+            String r = SimpleSQLExecutor.execute("LOAD DATA " + SqlParser.quote(csv.toString()) + " INTO users");
+            double secs = (System.nanoTime() - t0) / 1e9;
+            System.out.printf("%-16s %10d %12.0f %12d   %s%n", "load data", n, n / secs, 1, wal.stats());
+            System.out.println(r);
+        }
+        TableManager.dropTable("users");
+    }
+
+    private static void run(Path dir, String name, int n, int batch, boolean print) throws Exception {
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, name.replace(' ', '_'), WriteAheadLog.Durability.ASYNC, 10)) {
+            wal.install();
+            SimpleSQLExecutor.execute("CREATE TABLE users (id INT, name TEXT, age INT, PRIMARY KEY(id))");
+            long t0 = System.nanoTime();
+            int statements = 0;
+            StringBuilder sb = new StringBuilder();
+            for (int from = 0; from < n; from += batch) {
+                sb.setLength(0);
+                sb.append("INSERT INTO users (id, name, age) VALUES ");
+                for (int i = from; i < Math.min(n, from + batch); i++) {
+                    if (i > from) sb.append(", ");
+                    sb.append('(').append(i).append(", 'user").append(i).append("', ").append(i % 90).append(')');
+                }
+                SimpleSQLExecutor.execute(sb.toString());
+                statements++;
+            }
+            double secs = (System.nanoTime() - t0) / 1e9;
+            if (print) System.out.printf("%-16s %10d %12.0f %12d   %s%n", name, n, n / secs, statements, wal.stats());
+        }
+        TableManager.dropTable("users");
+    }
+}
@@ -0,0 +1,61 @@
+package bench;
+
+import master.ConsistentHashRing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一致性哈希 vs 取模路由：集群逐个扩容时的 key 迁移比例与单次路由耗时
+ *  java -cp target/classes:target/test-classes bench.HashRingBench [最大region数] [vnodes] [key数]
+ */
+public class HashRingBench {
+
+    public static void main(String[] args) {
+        int maxRegions = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int vnodes     = args.length > 1 ? Integer.parseInt(args[1]) : 160;
+        int keys       = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+
+        String[] keyStrs = new String[keys];
+        for (int i = 0; i < keys; i++) keyStrs[i] = String.valueOf(i);
+
+        System.out.printf("%-6s %12s %12s %12s %14s%n",
+                "n->n+1", "ring moved", "mod moved", "ideal", "ring ns/route");
+        List<String> regions = new ArrayList<>();
+        regions.add("region1");
+        ConsistentHashRing prev = ConsistentHashRing.build(regions, vnodes);
+        for (int n = 1; n < maxRegions; n++) {
+            regions.add("region" + (n + 1));
+            ConsistentHashRing next = ConsistentHashRing.build(regions, vnodes);
+
+            int ringMoved = 0, modMoved = 0;
+            for (String k : keyStrs) {
+                if (!prev.route(k).equals(next.route(k))) ringMoved++;
+                int h = Math.abs(k.hashCode());
+                if (h % n != h % (n + 1)) modMoved++;
+            }
+            System.out.printf("%-6s %11.1f%% %11.1f%% %11.1f%% %14.1f%n",
+                    n + "->" + (n + 1),
+                    100.0 * ringMoved / keys,
+                    100.0 * modMoved / keys,
+                    100.0 / (n + 1),
+                    routeCost(next, keyStrs));
+            prev = next;
+        }
+    }
+
+    /** 预热后测量单次路由平均耗时（纳秒） */
+    private static double routeCost(ConsistentHashRing ring, String[] keys) {
+        long sink = 0;
+        for (int r = 0; r < 3; r++) {
+            for (String k : keys) sink += ring.route(k).length();
+        }
+        long t0 = System.nanoTime();
+        for (int r = 0; r < 5; r++) {
+            for (String k : keys) sink += ring.route(k).length();
+        }
+        long elapsed = System.nanoTime() - t0;
+        if (sink == 42) System.out.print("");
+        return elapsed / (5.0 * keys.length);
+    }
+}
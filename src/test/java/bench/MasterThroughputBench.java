@@ -0,0 +1,90 @@
+package bench;
+
+import util.ThreadUtils;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MasterNode 吞吐压测：逐级提高并发客户端数，统计 ops/s 与延迟分位
+ *  需先启动 ZooKeeper、RegionServer 与 MasterNode
+ *  java -cp target/classes:target/test-classes:target/dependency/* bench.MasterThroughputBench \
+ *       [host] [port] [并发级别,逗号分隔] [每级秒数] [SQL]
+ */
+public class MasterThroughputBench {
+
+    public static void main(String[] args) throws Exception {
+        String host    = args.length > 0 ? args[0] : "localhost";
+        int port       = args.length > 1 ? Integer.parseInt(args[1]) : 8888;
+        int[] levels   = Arrays.stream((args.length > 2 ? args[2] : "1,8,64,256,1024,4096").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        int seconds    = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        String sql     = args.length > 4 ? args[4] : "SELECT * FROM users WHERE id = 1";
+
+        System.out.printf("%-8s %12s %10s %10s %10s %8s%n",
+                "clients", "ops/s", "p50(ms)", "p99(ms)", "max(ms)", "errors");
+        for (int clients : levels) {
+            runLevel(host, port, clients, seconds, sql);
+        }
+    }
+
+    private static void runLevel(String host, int port, int clients, int seconds, String sql)
+            throws InterruptedException {
+        ExecutorService pool = ThreadUtils.newPerTaskExecutor("bench-client");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicLong errors = new AtomicLong();
+        ConcurrentLinkedQueue<long[]> samples = new ConcurrentLinkedQueue<>();
+
+        for (int i = 0; i < clients; i++) {
+            pool.execute(() -> {
+                // 每个客户端线程本地记录延迟，结束时一次性提交
+                long[] lat = new long[1024];
+                int n = 0;
+                while (System.nanoTime() < deadline) {
+                    long t0 = System.nanoTime();
+                    if (!roundTrip(host, port, sql)) errors.incrementAndGet();
+                    if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+                    lat[n++] = System.nanoTime() - t0;
+                }
+                samples.add(Arrays.copyOf(lat, n));
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+
+        long[] all = samples.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        if (all.length == 0) {
+            System.out.printf("%-8d %12s%n", clients, "no samples");
+            return;
+        }
+        System.out.printf("%-8d %12.0f %10.2f %10.2f %10.2f %8d%n",
+                clients,
+                all.length / (double) seconds,
+                all[all.length / 2] / 1e6,
+                all[(int) (all.length * 0.99)] / 1e6,
+                all[all.length - 1] / 1e6,
+                errors.get());
+    }
+
+    private static boolean roundTrip(String host, int port, String sql) {
+        try (Socket s = new Socket(host, port);
+             PrintWriter out = new PrintWriter(
+                     new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true);
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8))) {
+            out.println(sql);
+            String line;
+            boolean ok = true;
+            while ((line = in.readLine()) != null) {
+                if (line.contains("Error")) ok = false;
+            }
+            return ok;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
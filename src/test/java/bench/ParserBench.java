@@ -0,0 +1,119 @@
+package bench;
+
+import minisql.parser.SqlParser;
+import minisql.parser.StatementCache;
+import minisql.parser.Statement;
+import minisql.parser.Value;
+import util.RouteKeys;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQL 解析开销：原先的正则路径（每次 Pattern.compile + split/replaceAll，外加 Master 提取主键的两个正则）
+ * vs 手写词法/语法分析器 vs 语句缓存命中 vs 预编译语句（只绑定参数、取主键）
+ *  java -cp target/classes:target/test-classes bench.ParserBench [语句数] [轮数]
+ */
+public class ParserBench {
+
+    public static void main(String[] args) {
+        int distinct = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int rounds   = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<String> sqls = new ArrayList<>();
+        List<List<String>> params = new ArrayList<>();
+        for (int i = 0; i < distinct; i++) {
+            params.add(List.of(String.valueOf(i), "20", "User" + i, "u" + i + "@example.com", String.valueOf(i % 100)));
+            params.add(List.of(String.valueOf(i)));
+            params.add(List.of(String.valueOf(i % 100), String.valueOf(i)));
+            sqls.add("INSERT INTO users (id, age, name, email, score) VALUES ("
+                    + i + ",20,'User" + i + "','u" + i + "@example.com'," + (i % 100) + ")");
+            sqls.add("SELECT * FROM users WHERE id = " + i);
+            sqls.add("UPDATE users SET score = " + (i % 100) + " WHERE id = " + i);
+        }
+
+        System.out.printf("%-22s %12s%n", "path", "ns/stmt");
+        System.out.printf("%-22s %12.1f%n", "regex (legacy)", measure(sqls, rounds, ParserBench::legacy));
+        System.out.printf("%-22s %12.1f%n", "lexer+parser", measure(sqls, rounds, sql -> SqlParser.parse(sql).hashCode()));
+        StatementCache cache = new StatementCache(sqls.size() * 2);
+        for (String sql : sqls) cache.put(sql, SqlParser.parse(sql));
+        System.out.printf("%-22s %12.1f%n", "statement cache hit", measure(sqls, rounds, sql -> {
+            Statement st = cache.get(sql);
+            return st.hashCode();
+        }));
+        // 预编译：三条语句各解析一次，每次执行只按参数取值（Master 取主键路由，region 取各列值）
+        Statement[] prepared = {
+                SqlParser.parse("INSERT INTO users (id, age, name, email, score) VALUES (?, ?, ?, ?, ?)"),
+                SqlParser.parse("SELECT * FROM users WHERE id = ?"),
+                SqlParser.parse("UPDATE users SET score = ? WHERE id = ?")};
+        int[] next = {0};
+        System.out.printf("%-22s %12.1f%n", "prepared (bind only)", measure(params, rounds, ps -> {
+            Statement st = prepared[next[0]++ % 3];
+            int h = RouteKeys.extractPK(st, "id", ps).hashCode();
+            for (int i = 0; i < ps.size(); i++) h += Value.param(i).resolve(ps).hashCode();
+            return h;
+        }));
+    }
+
+    /** 预热后测量每条语句的平均解析耗时（纳秒） */
+    private static <T> double measure(List<T> sqls, int rounds, ToIntFunction<T> p) {
+        long sink = 0;
+        for (int r = 0; r < 3; r++) {
+            for (T s : sqls) sink += p.applyAsInt(s);
+        }
+        long t0 = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (T s : sqls) sink += p.applyAsInt(s);
+        }
+        long elapsed = System.nanoTime() - t0;
+        if (sink == 42) System.out.print("");
+        return elapsed / ((double) rounds * sqls.size());
+    }
+
+    /** 原先 MasterNode.extractPK + SimpleSQLExecutor 各 handler 的正则解析 */
+    private static int legacy(String sql) {
+        int h = legacyExtractPK(sql, "id").hashCode();
+        String up = sql.trim().toUpperCase(Locale.ROOT);
+        if (up.startsWith("INSERT INTO")) {
+            Matcher m = Pattern.compile("INSERT INTO (\\w+) \\(([^)]+)\\) VALUES \\(([^)]+)\\)",
+                    Pattern.CASE_INSENSITIVE).matcher(sql);
+            if (!m.find()) return h;
+            List<String> cols = Arrays.stream(m.group(2).split(",")).map(String::trim).toList();
+            List<String> vals = Arrays.stream(m.group(3).split(",")).map(String::trim)
+                    .map(s -> s.replaceAll("^'(.*)'$", "$1")).toList();
+            return h + m.group(1).hashCode() + cols.hashCode() + vals.hashCode();
+        } else if (up.startsWith("SELECT")) {
+            Matcher m = Pattern.compile("SELECT \\* FROM (\\w+) WHERE (\\w+)\\s*=\\s*('?\\w+'?)",
+                    Pattern.CASE_INSENSITIVE).matcher(sql);
+            if (!m.find()) return h;
+            return h + m.group(1).hashCode() + m.group(3).replaceAll("'", "").hashCode();
+        } else {
+            Matcher m = Pattern.compile("UPDATE (\\w+) SET (.+?) WHERE (\\w+)\\s*=\\s*('?\\w+'?)",
+                    Pattern.CASE_INSENSITIVE).matcher(sql);
+            if (!m.find()) return h;
+            Map<String, String> values = new HashMap<>();
+            for (String assign : m.group(2).split(",")) {
+                String[] kv = assign.trim().split("=");
+                values.put(kv[0].trim(), kv[1].trim().replaceAll("'", ""));
+            }
+            return h + values.hashCode() + m.group(4).replaceAll("'", "").hashCode();
+        }
+    }
+
+    private static String legacyExtractPK(String sql, String pkCol) {
+        Matcher mIns = Pattern.compile("INSERT INTO \\w+ \\(([^)]+)\\)\\s+VALUES\\s*\\(([^)]+)\\)",
+                Pattern.CASE_INSENSITIVE).matcher(sql);
+        if (mIns.find()) {
+            String[] cols = mIns.group(1).split("\\s*,\\s*");
+            String[] vals = mIns.group(2).split("\\s*,\\s*");
+            for (int i = 0; i < cols.length; i++) {
+                if (cols[i].equalsIgnoreCase(pkCol)) return vals[i].replaceAll("'", "").trim();
+            }
+        }
+        Matcher mWhere = Pattern.compile("WHERE\\s+" + pkCol + "\\s*=\\s*('?\\w+'?)",
+                Pattern.CASE_INSENSITIVE).matcher(sql);
+        return mWhere.find() ? mWhere.group(1).replaceAll("'", "").trim() : "";
+    }
+}
@@ -0,0 +1,65 @@
+package bench;
+
+import minisql.QueryResult;
+import minisql.SimpleSQLExecutor;
+import minisql.TableManager;
+import protocol.BinaryProtocol;
+import protocol.Frame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * 宽表上 SELECT * 与列投影、组合条件的对比：region 返回给 Master 的二进制结果字节数、
+ * 每次查询在 region 上分配的堆字节与耗时（列投影只复制所需的列，条件在 region 上逐行判断）
+ *  java -cp target/classes:target/test-classes bench.ProjectionBench [行数] [列数]
+ */
+public class ProjectionBench {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        StringBuilder ddl = new StringBuilder("CREATE TABLE wide (id INT, age INT");
+        StringBuilder cols = new StringBuilder("id, age");
+        for (int c = 0; c < width; c++) {
+            ddl.append(", c").append(c).append(" TEXT");
+            cols.append(", c").append(c);
+        }
+        SimpleSQLExecutor.execute(ddl.append(", PRIMARY KEY(id))").toString());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.setLength(0);
+            sb.append("INSERT INTO wide (").append(cols).append(") VALUES (").append(i).append(", ").append(i % 80);
+            for (int c = 0; c < width; c++) sb.append(", 'value-").append(c).append('-').append(i).append('\'');
+            SimpleSQLExecutor.execute(sb.append(')').toString());
+        }
+
+        String[] queries = {
+                "SELECT * FROM wide WHERE age >= 20 AND age < 40 OR age = 79",
+                "SELECT id, c0 FROM wide WHERE age >= 20 AND age < 40 OR age = 79",
+                "SELECT * FROM wide",
+                "SELECT id, c0 FROM wide",
+        };
+        for (String q : queries) run(q, 3);
+        System.out.printf("%-66s %8s %14s %14s %10s%n", "query", "rows", "wire bytes", "alloc bytes", "ms");
+        for (String q : queries) run(q, 10);
+        TableManager.dropTable("wide");
+    }
+
+    private static void run(String sql, int iterations) throws Exception {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        QueryResult r = null;
+        long a0 = mx.getThreadAllocatedBytes(tid);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) r = SimpleSQLExecutor.executeQuery(sql);
+        double ms = (System.nanoTime() - t0) / 1e6 / iterations;
+        long alloc = (mx.getThreadAllocatedBytes(tid) - a0) / iterations;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        BinaryProtocol.writeFrame(new DataOutputStream(buf), Frame.result(1, r));
+        if (iterations >= 10) {
+            System.out.printf("%-66s %8d %14d %14d %10.1f%n", sql, r.getRows().size(), buf.size(), alloc, ms);
+        }
+    }
+}
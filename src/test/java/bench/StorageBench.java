@@ -0,0 +1,87 @@
+package bench;
+
+import minisql.Column;
+import minisql.Table;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * 行式 vs 列式 vs 堆外存储：每百万行堆占用、插入耗时（及其中的 GC 耗时）、非主键列等值扫描与主键点查耗时，
+ * 最后打印各表的存储用量（堆外存储的 slab 申请/使用/空闲字节）
+ *  java -Xmx4g -cp target/classes:target/test-classes bench.StorageBench [行数]
+ */
+public class StorageBench {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        List<Column> cols = List.of(new Column("id", "INT"), new Column("age", "INT"),
+                new Column("name", "TEXT"), new Column("email", "TEXT"), new Column("score", "INT"));
+
+        System.out.printf("%-10s %14s %12s %10s %14s %14s%n",
+                "storage", "MB/1M rows", "insert ms", "gc ms", "scan ms", "lookup ns");
+        List<String> usage = new ArrayList<>();
+        for (String storage : List.of(Table.STORAGE_ROW, Table.STORAGE_COLUMNAR, Table.STORAGE_OFFHEAP)) {
+            long before = usedHeap();
+            Table t = new Table("users", cols, "id", storage);
+            long gc0 = gcMillis();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                Map<String, String> row = new HashMap<>();
+                row.put("id", String.valueOf(i));
+                row.put("age", String.valueOf(18 + i % 60));
+                row.put("name", "User" + i);
+                row.put("email", "u" + i + "@example.com");
+                row.put("score", String.valueOf(i % 100));
+                t.insertRow(row);
+            }
+            long insertMs = (System.nanoTime() - t0) / 1_000_000;
+            long gcMs = gcMillis() - gc0;
+            double mb = (usedHeap() - before) / 1e6 * 1_000_000 / n;
+
+            // 非主键列等值扫描（约 1% 的行命中）
+            int scans = 10;
+            long matched = 0;
+            t0 = System.nanoTime();
+            for (int i = 0; i < scans; i++) matched += t.selectWhere("score", String.valueOf(i)).size();
+            double scanMs = (System.nanoTime() - t0) / 1e6 / scans;
+
+            // 主键点查：先预热一轮再计时
+            int lookups = 1_000_000;
+            double lookupNs = 0;
+            for (int round = 0; round < 2; round++) {
+                Random rnd = new Random(1);
+                t0 = System.nanoTime();
+                for (int i = 0; i < lookups; i++) matched += t.selectWhere("id", String.valueOf(rnd.nextInt(n))).size();
+                lookupNs = (System.nanoTime() - t0) / (double) lookups;
+            }
+
+            System.out.printf("%-10s %14.1f %12d %10d %14.1f %14.1f%n", storage, mb, insertMs, gcMs, scanMs, lookupNs);
+            if (matched == 42) System.out.print("");
+            usage.add(t.getUsage());
+            t.clear();
+        }
+        System.out.println();
+        usage.forEach(System.out::println);
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) total += gc.getCollectionTime();
+        return total;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,102 @@
+package bench;
+
+import minisql.SimpleSQLExecutor;
+import minisql.SnapshotStore;
+import minisql.TableManager;
+import minisql.WriteAheadLog;
+import minisql.parser.SqlParser;
+import minisql.parser.Statement;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 预写日志各持久化级别下的插入吞吐：多个写入线程并发执行预编译 INSERT，
+ * 报告 rows/sec 与每次 fsync 平均覆盖的记录数（组提交效果）；最后比较同样行数下只重放日志与从快照载入的恢复耗时
+ *  java -cp target/classes:target/test-classes bench.WalBench [每级行数] [线程数] [刷盘间隔ms]
+ */
+public class WalBench {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int flushMs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        Path dir = Files.createTempDirectory("walbench");
+        Statement insert = SqlParser.parse("INSERT INTO t (id, name) VALUES (?, ?)");
+
+        // 预热：不带日志插入一轮
+        SimpleSQLExecutor.execute("CREATE TABLE t (id INT, name TEXT, PRIMARY KEY(id))");
+        for (int i = 0; i < n; i++) SimpleSQLExecutor.execute(insert, List.of(String.valueOf(i), "user" + i));
+        TableManager.dropTable("t");
+
+        System.out.printf("%-8s %12s %14s   %s%n", "level", "rows", "rows/sec", "wal");
+        for (WriteAheadLog.Durability level : WriteAheadLog.Durability.values()) {
+            try (WriteAheadLog wal = WriteAheadLog.open(dir, level.name(), level, flushMs)) {
+                wal.install();
+                SimpleSQLExecutor.execute("CREATE TABLE t (id INT, name TEXT, PRIMARY KEY(id))");
+                // SYNC 每行都要等待 fsync，行数按比例缩小
+                int rows = level == WriteAheadLog.Durability.SYNC ? Math.max(threads, n / 10) : n;
+                AtomicInteger next = new AtomicInteger();
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                long t0 = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    pool.execute(() -> {
+                        int id;
+                        while ((id = next.getAndIncrement()) < rows) {
+                            SimpleSQLExecutor.execute(insert, List.of(String.valueOf(id), "user" + id));
+                        }
+                    });
+                }
+                pool.shutdown();
+                pool.awaitTermination(1, TimeUnit.HOURS);
+                double secs = (System.nanoTime() - t0) / 1e9;
+                System.out.printf("%-8s %12d %14.0f   %s%n", level, rows, rows / secs,
+                        level == WriteAheadLog.Durability.NONE ? "-" : wal.stats() + ", " + logBytes(dir, level.name()) / 1024 + " KB");
+            }
+            TableManager.dropTable("t");
+        }
+        recovery(dir, n, flushMs);
+    }
+
+    /** 重启恢复耗时：同样 n 行，只重放日志 vs 从快照载入 */
+    private static void recovery(Path dir, int n, int flushMs) throws Exception {
+        Statement insert = SqlParser.parse("INSERT INTO t (id, name) VALUES (?, ?)");
+        SnapshotStore snapshots = new SnapshotStore(dir, "recovery", 1);
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "recovery", WriteAheadLog.Durability.ASYNC, flushMs)) {
+            wal.install();
+            SimpleSQLExecutor.execute("CREATE TABLE t (id INT, name TEXT, PRIMARY KEY(id))");
+            for (int i = 0; i < n; i++) SimpleSQLExecutor.execute(insert, List.of(String.valueOf(i), "user" + i));
+        }
+        TableManager.dropTable("t");
+        long t0 = System.nanoTime();
+        SnapshotStore.Checkpoint c;
+        double replayMs;
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "recovery", WriteAheadLog.Durability.ASYNC, flushMs)) {
+            wal.replay((sql, lsn) -> SimpleSQLExecutor.executeQuery(sql));
+            replayMs = (System.nanoTime() - t0) / 1e6;
+            wal.install();
+            // 重放得到的表再写成快照，两种方式恢复同样的数据
+            c = snapshots.checkpoint(wal);
+        }
+        TableManager.dropTable("t");
+        t0 = System.nanoTime();
+        SnapshotStore.Restored r = snapshots.restore();
+        double loadMs = (System.nanoTime() - t0) / 1e6;
+        System.out.printf("%nrecovery of %d rows: WAL replay %.0f ms, snapshot load %.0f ms (%d KB)%n",
+                r.rows, replayMs, loadMs, c.bytes / 1024);
+        TableManager.dropTable("t");
+    }
+
+    private static long logBytes(Path dir, String name) throws Exception {
+        long total = 0;
+        try (var files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                if (p.getFileName().toString().startsWith(name + "-")) total += Files.size(p);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,122 @@
+package master;
+
+import minisql.Column;
+import minisql.QueryResult;
+import minisql.SimpleSQLExecutor;
+import minisql.Table;
+import minisql.parser.InsertStatement;
+import minisql.parser.SqlParser;
+import minisql.parser.Value;
+import org.junit.jupiter.api.*;
+import util.Partitioning;
+import util.SlotTable;
+import util.Slots;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkLoaderTest {
+
+    private static final List<Column> COLUMNS = List.of(new Column("id", "INT"), new Column("name", "TEXT"));
+
+    // 模拟的 region：各自一张表，收到的多行 INSERT 按 region 上的方式一次插入
+    private final Map<String, Table> regions = new ConcurrentHashMap<>();
+    private final AtomicInteger statements = new AtomicInteger();
+    private final AtomicInteger maxBatch = new AtomicInteger();
+    private final AtomicInteger rounds = new AtomicInteger();
+
+    private CompletableFuture<QueryResult> apply(String region, String sql) {
+        InsertStatement st = (InsertStatement) SqlParser.parse(sql);
+        Table t = regions.computeIfAbsent(region, r -> new Table("users", COLUMNS, "id"));
+        statements.incrementAndGet();
+        maxBatch.accumulateAndGet(st.getRows().size(), Math::max);
+        List<Map<String, String>> batch = new ArrayList<>();
+        for (List<Value> vals : st.getRows()) {
+            Map<String, String> row = new LinkedHashMap<>();
+            for (int i = 0; i < vals.size(); i++) row.put(st.getColumns().get(i), vals.get(i).resolve(List.of()));
+            batch.add(row);
+        }
+        List<String> errors = new ArrayList<>();
+        int n = t.insertRows(batch, errors);
+        return CompletableFuture.supplyAsync(() -> QueryResult.message(
+                SimpleSQLExecutor.insertedMessage(n, errors.size(), errors.isEmpty() ? null : errors.get(0))));
+    }
+
+    private BulkLoader loader(SlotTable slots) {
+        return new BulkLoader("users", List.of("id", "name"), 0, COLUMNS.get(0), Partitioning.HASH,
+                () -> slots, (t, slot) -> "r" + slot % 3, this::apply,
+                round -> {
+                    rounds.incrementAndGet();
+                    round.run();
+                }, 100, 1000, 5_000);
+    }
+
+    @Test
+    void testRoutesBatchesByOwnerAndCountsFailures() {
+        BulkLoader loader = loader(SlotTable.empty());
+        for (int i = 0; i < 5000; i++) loader.add(List.of(String.valueOf(i), "user'" + i));
+        // 主键重复与类型错误的行由 region 跳过，计入失败
+        loader.add(List.of("007", "dup"));
+        loader.add(List.of("x", "bad"));
+        loader.finish();
+
+        assertEquals(5000, loader.getInserted());
+        assertEquals(2, loader.getFailed());
+        // 两行落在同一轮的不同批次，先返回的批次的原因为第一个
+        assertTrue(loader.getFirstError().equals("Duplicate primary key: 7")
+                || loader.getFirstError().startsWith("Type error"), loader.getFirstError());
+        assertEquals(6, rounds.get());
+        assertTrue(maxBatch.get() <= 100);
+        assertTrue(statements.get() >= 50, "statements " + statements.get());
+
+        int total = 0;
+        for (Map.Entry<String, Table> e : regions.entrySet()) {
+            for (Map<String, String> row : e.getValue().selectAll()) {
+                assertEquals(e.getKey(), "r" + Slots.slotOf(row.get("id")) % 3);
+                total++;
+            }
+        }
+        assertEquals(5000, total);
+        assertEquals("user'42", regions.get("r" + Slots.slotOf("42") % 3).selectWhere("id", "42").get(0).get("name"));
+    }
+
+    @Test
+    void testMigratingSlotIsDualWritten() {
+        int slot = Slots.slotOf("1");
+        BulkLoader loader = loader(SlotTable.empty().withMigration(slot, "target"));
+        for (int i = 0; i < 300; i++) loader.add(List.of(String.valueOf(i), "n"));
+        loader.finish();
+
+        assertEquals(300, loader.getInserted());
+        List<Map<String, String>> copied = regions.get("target").selectAll();
+        assertFalse(copied.isEmpty());
+        for (Map<String, String> row : copied) assertEquals(slot, Slots.slotOf(row.get("id")));
+        List<Map<String, String>> owned = new ArrayList<>(regions.get("r" + slot % 3).selectAll());
+        owned.removeIf(r -> Slots.slotOf(r.get("id")) != slot);
+        assertEquals(owned, copied);
+    }
+
+    @Test
+    void testRegionErrorsFailWholeBatch() {
+        BulkLoader loader = new BulkLoader("users", List.of("id", "name"), 0, null, Partitioning.HASH,
+                SlotTable::empty, (t, slot) -> "r" + slot % 2,
+                (region, sql) -> region.equals("r0")
+                        ? CompletableFuture.completedFuture(QueryResult.error("region offline: r0"))
+                        : apply(region, sql),
+                Runnable::run, 10, 10, 5_000);
+        int r0 = 0;
+        for (int i = 0; i < 100; i++) {
+            loader.add(List.of(String.valueOf(i), "n"));
+            if (Slots.slotOf(String.valueOf(i)) % 2 == 0) r0++;
+        }
+        loader.reject("Line 7: expected 2 fields, got 3");
+        loader.finish();
+        assertEquals(100 - r0, loader.getInserted());
+        assertEquals(r0 + 1, loader.getFailed());
+        assertEquals("region offline: r0", loader.getFirstError());
+    }
+}
@@ -0,0 +1,81 @@
+package master;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    private static List<String> regions(int n) {
+        List<String> list = new ArrayList<>();
+        for (int i = 1; i <= n; i++) list.add("region" + i);
+        return list;
+    }
+
+    @Test
+    void testEmptyRing() {
+        assertNull(ConsistentHashRing.build(List.of(), 16).route("1"));
+    }
+
+    @Test
+    void testDeterministicAndOrderIndependent() {
+        List<String> rs = regions(5);
+        ConsistentHashRing a = ConsistentHashRing.build(rs, 64);
+        List<String> shuffled = new ArrayList<>(rs);
+        Collections.reverse(shuffled);
+        ConsistentHashRing b = ConsistentHashRing.build(shuffled, 64);
+        for (int k = 0; k < 1000; k++) {
+            assertEquals(a.route(String.valueOf(k)), b.route(String.valueOf(k)));
+        }
+    }
+
+    @Test
+    void testJoinMovesOnlyAboutOneNth() {
+        int keys = 20_000;
+        ConsistentHashRing before = ConsistentHashRing.build(regions(8), 160);
+        ConsistentHashRing after  = ConsistentHashRing.build(regions(9), 160);
+        int moved = 0;
+        for (int k = 0; k < keys; k++) {
+            String key = String.valueOf(k);
+            String from = before.route(key), to = after.route(key);
+            if (!from.equals(to)) {
+                moved++;
+                // 只会迁移到新加入的节点
+                assertEquals("region9", to);
+            }
+        }
+        double frac = moved / (double) keys;
+        assertTrue(frac > 0.07 && frac < 0.16, "moved fraction " + frac);
+    }
+
+    @Test
+    void testBalancedWithVirtualNodes() {
+        ConsistentHashRing ring = ConsistentHashRing.build(regions(10), 160);
+        Map<String, Integer> counts = new HashMap<>();
+        int keys = 100_000;
+        for (int k = 0; k < keys; k++) counts.merge(ring.route(String.valueOf(k)), 1, Integer::sum);
+        assertEquals(10, counts.size());
+        for (int c : counts.values()) {
+            assertTrue(Math.abs(c - keys / 10) < keys / 10 * 0.25, "unbalanced: " + counts);
+        }
+    }
+
+    @Test
+    void testRouteNPlacesReplicasOnSuccessors() {
+        ConsistentHashRing ring = ConsistentHashRing.build(regions(5), 64);
+        for (int k = 0; k < 1000; k++) {
+            String key = String.valueOf(k);
+            List<String> three = ring.routeN(key, 3);
+            assertEquals(3, new HashSet<>(three).size());
+            assertEquals(ring.route(key), three.get(0));
+            // 第一个 region 离开后，key 改派给原来的第二个
+            List<String> rest = new ArrayList<>(regions(5));
+            rest.remove(three.get(0));
+            assertEquals(three.get(1), ConsistentHashRing.build(rest, 64).route(key));
+        }
+        assertEquals(5, ring.routeN("x", 9).size());
+        assertTrue(ConsistentHashRing.build(List.of(), 16).routeN("x", 2).isEmpty());
+    }
+}
@@ -0,0 +1,62 @@
+package master;
+
+import minisql.SimpleSQLExecutor;
+import minisql.Table;
+import minisql.TableManager;
+import org.junit.jupiter.api.*;
+import region.SlotCommands;
+import util.Slots;
+import util.TableSchema;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RebalancerTest {
+
+    @BeforeEach
+    void clearTables() {
+        TableManager.listTables().forEach(TableManager::dropTable);
+    }
+
+    @Test
+    void testSlotCopyPagesThroughTextKeysWithSpacesAndDash() {
+        SimpleSQLExecutor.execute("CREATE TABLE src (k TEXT, v INT, PRIMARY KEY(k))");
+        SimpleSQLExecutor.execute("CREATE TABLE dst (k TEXT, v INT, PRIMARY KEY(k))");
+        Table src = TableManager.getTable("src");
+        List<String> keys = new ArrayList<>(List.of("-", " -", "- ", "a b", "a  b", " lead", "trail ", "1:x", "3:a b"));
+        for (int i = 0; i < 40; i++) keys.add("k " + i);
+        for (int i = 0; i < keys.size(); i++) {
+            String k = keys.get(i).replace("'", "''");
+            SimpleSQLExecutor.execute("INSERT INTO src (k, v) VALUES ('" + k + "', " + i + ")");
+        }
+        assertEquals(keys.size(), src.size());
+        TableSchema def = TableSchema.parseCreate(SlotCommands.execute("SLOT SCHEMA src").getMessage());
+        assertNotNull(def);
+
+        // 与 Rebalancer.copySlot 相同的分页：每批 1～2 行，游标为上一批最后的主键
+        for (int batch = 1; batch <= 2; batch++) {
+            SimpleSQLExecutor.execute("DELETE FROM dst");
+            int batches = 0;
+            for (int slot = 0; slot < Slots.COUNT; slot++) {
+                String after = null;
+                while (true) {
+                    List<Map<String, String>> rows =
+                            SlotCommands.execute(Rebalancer.scanCommand("src", slot, after, batch)).getRows();
+                    if (!rows.isEmpty()) SimpleSQLExecutor.execute(Rebalancer.insertStatement("dst", rows, def));
+                    assertTrue(++batches <= keys.size() + Slots.COUNT, "paging does not advance");
+                    if (rows.size() < batch) break;
+                    after = rows.get(rows.size() - 1).get("k");
+                }
+            }
+            assertEquals(src.selectAll(), TableManager.getTable("dst").selectAll());
+        }
+    }
+
+    @Test
+    void testScanCommandRejectsBadCursor() {
+        SimpleSQLExecutor.execute("CREATE TABLE src (k TEXT, PRIMARY KEY(k))");
+        assertTrue(SlotCommands.execute("SLOT SCAN src 0 10 5:ab").isError());
+        assertTrue(SlotCommands.execute("SLOT SCAN src 0 10 ab").isError());
+    }
+}
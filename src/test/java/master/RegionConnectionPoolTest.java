@@ -0,0 +1,124 @@
+package master;
+
+import org.junit.jupiter.api.*;
+import util.TextProtocol;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionConnectionPoolTest {
+
+    private StubRegion region;
+    private RegionConnectionPool pool;
+
+    @BeforeEach
+    void start() throws IOException {
+        region = new StubRegion();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        if (pool != null) pool.close();
+        region.close();
+    }
+
+    @Test
+    void testConnectionIsReused() throws Exception {
+        pool = new RegionConnectionPool(4, 60_000, 60_000, 1_000);
+        assertEquals(List.of("ok SELECT 1"), pool.execute(region.addr(), "SELECT 1"));
+        assertEquals(List.of("ok SELECT 2"), pool.execute(region.addr(), "SELECT 2"));
+        assertEquals(1, region.accepted.get());
+        assertEquals(1, pool.idleCount());
+    }
+
+    @Test
+    void testIdleConnectionIsEvicted() throws Exception {
+        pool = new RegionConnectionPool(4, 200, 60_000, 1_000);
+        pool.execute(region.addr(), "SELECT 1");
+        assertEquals(1, pool.idleCount());
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.idleCount() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(50);
+        assertEquals(0, pool.idleCount());
+    }
+
+    @Test
+    void testStaleConnectionRetriesReadOnFreshSocket() throws Exception {
+        pool = new RegionConnectionPool(4, 60_000, 60_000, 1_000);
+        pool.execute(region.addr(), "SELECT 1");
+        // region 收到请求后未回复即关闭连接：只读语句换新连接重试
+        assertEquals(List.of("ok SELECT crash"), pool.execute(region.addr(), "SELECT crash"));
+        assertEquals(2, region.accepted.get());
+        assertEquals(2, region.count("SELECT crash"));
+    }
+
+    @Test
+    void testStaleConnectionDoesNotResendWrite() throws Exception {
+        pool = new RegionConnectionPool(4, 60_000, 60_000, 1_000);
+        pool.execute(region.addr(), "SELECT 1");
+        // region 可能已执行写入后才断开，不能重发
+        String insert = "INSERT INTO t (id) VALUES (1) crash";
+        IOException e = assertThrows(IOException.class, () -> pool.execute(region.addr(), insert));
+        assertTrue(e.getMessage().contains("may have been applied"), e.getMessage());
+        assertEquals(1, region.count(insert));
+        assertEquals(1, region.accepted.get());
+    }
+
+    /** 模拟长连接模式的 RegionServer：回复 "ok <语句>"，含 crash 的语句第一次收到时不回复直接断开 */
+    private static class StubRegion implements Closeable {
+        final ServerSocket server = new ServerSocket(0);
+        final AtomicInteger accepted = new AtomicInteger();
+        final List<String> received = new CopyOnWriteArrayList<>();
+        final ExecutorService threads = Executors.newCachedThreadPool();
+
+        StubRegion() throws IOException {
+            threads.submit(() -> {
+                while (!server.isClosed()) {
+                    Socket s;
+                    try {
+                        s = server.accept();
+                    } catch (IOException e) {
+                        return;
+                    }
+                    accepted.incrementAndGet();
+                    threads.submit(() -> serve(s));
+                }
+            });
+        }
+
+        String addr() {
+            return "127.0.0.1:" + server.getLocalPort();
+        }
+
+        int count(String sql) {
+            return (int) received.stream().filter(sql::equals).count();
+        }
+
+        private void serve(Socket s) {
+            try (s) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8);
+                if (!TextProtocol.KEEPALIVE.equals(in.readLine())) return;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    received.add(line);
+                    if (line.contains("crash") && count(line) == 1) return;
+                    TextProtocol.writeFramed(out, line.equals(TextProtocol.PING) ? TextProtocol.PONG : "ok " + line);
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            threads.shutdownNow();
+        }
+    }
+}
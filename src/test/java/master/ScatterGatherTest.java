@@ -0,0 +1,60 @@
+package master;
+
+import minisql.QueryResult;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScatterGatherTest {
+
+    private final ScheduledExecutorService timer = Executors.newScheduledThreadPool(4);
+
+    @AfterEach
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /** 模拟一个在 delayMs 后返回的 region */
+    private CompletableFuture<QueryResult> reply(String text, long delayMs) {
+        CompletableFuture<QueryResult> f = new CompletableFuture<>();
+        timer.schedule(() -> f.complete(QueryResult.message(text)), delayMs, TimeUnit.MILLISECONDS);
+        return f;
+    }
+
+    @Test
+    void testParallelArrivalOrderAndLatency() {
+        Map<String, Long> delays = Map.of("r1", 300L, "r2", 50L, "r3", 150L);
+        List<String> order = new ArrayList<>();
+        ScatterGather.Summary s = ScatterGather.broadcast(List.of("r1", "r2", "r3"),
+                r -> reply("ok " + r, delays.get(r)), 5_000,
+                (region, result) -> order.add(region));
+
+        assertEquals(List.of("r2", "r3", "r1"), order);
+        assertEquals(0, s.failed);
+        assertNull(s.partialFailureNote());
+        // 并行：总耗时接近最慢 region，而不是三者之和
+        assertTrue(s.elapsedMs < 450, "elapsed " + s.elapsedMs);
+    }
+
+    @Test
+    void testTimeoutAndFailureArePerRegion() {
+        Map<String, QueryResult> results = new HashMap<>();
+        ScatterGather.Summary s = ScatterGather.broadcast(List.of("fast", "slow", "broken"),
+                r -> {
+                    if (r.equals("fast")) return reply("ok", 10);
+                    if (r.equals("slow")) return new CompletableFuture<>();
+                    return CompletableFuture.failedFuture(new IOException("Connection refused"));
+                }, 200, results::put);
+
+        assertEquals(3, results.size());
+        assertFalse(results.get("fast").isError());
+        assertTrue(results.get("slow").getMessage().contains("timeout"));
+        assertEquals("Connection refused", results.get("broken").getMessage());
+        assertEquals(2, s.failed);
+        assertTrue(s.partialFailureNote().contains("2/3"));
+    }
+}
@@ -0,0 +1,101 @@
+package minisql;
+
+import minisql.parser.SelectStatement;
+import minisql.parser.SqlParser;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregationTest {
+
+    private static final String CREATE =
+            "CREATE TABLE emp (id INT, name TEXT, dept TEXT, age INT, PRIMARY KEY(id))";
+    private static final String[] DEPTS = {"eng", "ops", "sales"};
+
+    @BeforeEach
+    void clearTables() {
+        TableManager.listTables().forEach(TableManager::dropTable);
+    }
+
+    private static void insert(int from, int to) {
+        for (int i = from; i < to; i++) {
+            SimpleSQLExecutor.execute("INSERT INTO emp (id, name, dept, age) VALUES (" + i + ", 'n" + i + "', '"
+                    + DEPTS[i % 3] + "', " + (20 + i % 7) + ")");
+        }
+    }
+
+    @Test
+    void testAggregatesOnSingleNode() {
+        SimpleSQLExecutor.execute(CREATE);
+        assertEquals("{COUNT(*)=0, SUM(age)=null, AVG(age)=null, MIN(name)=null}",
+                SimpleSQLExecutor.execute("SELECT COUNT(*), SUM(age), AVG(age), MIN(name) FROM emp"));
+
+        insert(0, 10);
+        assertEquals("{COUNT(*)=10, SUM(age)=224, AVG(age)=22.4, MIN(age)=20, MAX(age)=26}",
+                SimpleSQLExecutor.execute("SELECT COUNT(*), SUM(age), AVG(age), MIN(age), MAX(age) FROM emp"));
+        // INT 按数值比较，分组按分组列排序
+        assertEquals("{dept=eng, COUNT(*)=4, MAX(id)=9}\n{dept=ops, COUNT(*)=3, MAX(id)=7}\n"
+                        + "{dept=sales, COUNT(*)=3, MAX(id)=8}",
+                SimpleSQLExecutor.execute("SELECT dept, COUNT(*), MAX(id) FROM emp GROUP BY dept"));
+        assertEquals("{dept=eng, AVG(age)=21.5}\n{dept=ops, AVG(age)=21}\n{dept=sales, AVG(age)=22}",
+                SimpleSQLExecutor.execute("SELECT dept, AVG(age) FROM emp WHERE id < 4 GROUP BY dept"));
+        assertEquals("Empty result.",
+                SimpleSQLExecutor.execute("SELECT dept, COUNT(*) FROM emp WHERE id > 100 GROUP BY dept"));
+
+        QueryResult r = SimpleSQLExecutor.executeQuery("SELECT dept, COUNT(*), SUM(age) FROM emp GROUP BY dept");
+        assertEquals(List.of("TEXT", "INT", "TEXT"), types(r.getColumns()));
+
+        assertEquals("SUM requires an INT column: name", SimpleSQLExecutor.execute("SELECT SUM(name) FROM emp"));
+        assertEquals("Unknown column: salary", SimpleSQLExecutor.execute("SELECT MAX(salary) FROM emp"));
+    }
+
+    @Test
+    void testMergedPartialsMatchSingleNode() {
+        String sql = "SELECT dept, COUNT(*), SUM(age), AVG(age), MIN(name), MAX(age) FROM emp WHERE id >= ? GROUP BY dept";
+        SelectStatement st = (SelectStatement) SqlParser.parse(sql);
+        List<String> params = List.of("3");
+        String partial = Aggregation.partialSql(st, params);
+        assertEquals("SELECT dept, COUNT(*), SUM(age), COUNT(age), MIN(name), MAX(age) FROM emp "
+                + "WHERE id >= '3' GROUP BY dept", partial);
+
+        // 模拟三个 region：各自只有一部分行，执行部分聚合
+        List<QueryResult> partials = new ArrayList<>();
+        int[] bounds = {0, 40, 41, 100};
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            SimpleSQLExecutor.execute(CREATE);
+            insert(bounds[i], bounds[i + 1]);
+            partials.add(SimpleSQLExecutor.executeQuery(partial));
+            TableManager.dropTable("emp");
+        }
+        // 每个 region 每个分组只返回一行
+        for (QueryResult p : partials) assertTrue(p.getRows().size() <= DEPTS.length);
+
+        Aggregation merged = new Aggregation(st.getItems(), st.getGroupBy(), partials.get(0).getColumns(), true);
+        for (QueryResult p : partials) merged.addAll(p.getRows());
+
+        SimpleSQLExecutor.execute(CREATE);
+        insert(0, 100);
+        QueryResult expected = SimpleSQLExecutor.execute(st, params);
+        assertEquals(expected.getRows(), merged.rows());
+        assertEquals(types(expected.getColumns()), types(merged.getColumns()));
+    }
+
+    @Test
+    void testMergeWithoutRows() {
+        SelectStatement st = (SelectStatement) SqlParser.parse("SELECT COUNT(*), AVG(age), MAX(age) FROM emp");
+        SimpleSQLExecutor.execute(CREATE);
+        QueryResult empty = SimpleSQLExecutor.executeQuery(Aggregation.partialSql(st, List.of()));
+        Aggregation merged = new Aggregation(st.getItems(), st.getGroupBy(), empty.getColumns(), true);
+        merged.addAll(empty.getRows());
+        merged.addAll(empty.getRows());
+        assertEquals("{COUNT(*)=0, AVG(age)=null, MAX(age)=null}", merged.result().toText());
+    }
+
+    private static List<String> types(List<Column> columns) {
+        List<String> types = new ArrayList<>();
+        for (Column c : columns) types.add(c.getType());
+        return types;
+    }
+}
@@ -0,0 +1,38 @@
+package minisql;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarTableTest {
+
+    private static final List<Column> COLUMNS = List.of(
+            new Column("id", "INT"), new Column("name", "TEXT"), new Column("score", "INT"));
+
+    @Test
+    void testTypedColumnsAndLookups() {
+        Table t = new Table("t", COLUMNS, "id", Table.STORAGE_COLUMNAR);
+        assertEquals("COLUMNAR", t.getStorage());
+        assertEquals("OK", t.insertRow(Map.of("id", "1", "name", "多字节 'x'", "score", "-5")));
+        assertEquals("OK", t.insertRow(Map.of("id", "2", "name", "b", "score", "-5")));
+        assertTrue(t.insertRow(Map.of("id", "1", "name", "dup", "score", "0")).startsWith("Duplicate"));
+        assertTrue(t.insertRow(Map.of("id", "x", "name", "a", "score", "0")).startsWith("Type error"));
+
+        assertEquals(List.of("id", "name", "score"), new ArrayList<>(t.selectWhere("id", "1").get(0).keySet()));
+        assertEquals("多字节 'x'", t.selectWhere("id", "1").get(0).get("name"));
+        assertEquals(2, t.selectWhere("score", "-5").size());
+        assertEquals(1, t.selectWhere("name", "b").size());
+        assertTrue(t.selectWhere("score", "abc").isEmpty());
+        assertTrue(t.selectWhere("missing", "1").isEmpty());
+
+        // TEXT 变长更新追加写入，变短原地覆盖
+        assertEquals(1, t.updateWhere("id", "2", Map.of("name", "a much longer value")));
+        assertEquals(1, t.updateWhere("id", "1", Map.of("name", "s")));
+        assertEquals("a much longer value", t.selectWhere("id", "2").get(0).get("name"));
+        assertEquals("s", t.selectWhere("id", "1").get(0).get("name"));
+        assertEquals(2, t.clear());
+        assertTrue(t.selectAll().isEmpty());
+    }
+}
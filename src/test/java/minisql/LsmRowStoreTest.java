@@ -0,0 +1,150 @@
+package minisql;
+
+import org.junit.jupiter.api.*;
+import util.Slots;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LsmRowStoreTest {
+
+    private static final List<Column> COLUMNS = List.of(
+            new Column("id", "INT"), new Column("name", "TEXT"), new Column("score", "INT"));
+
+    @Test
+    void testLatestVersionsSurviveFlushesAndCompactions() throws Exception {
+        // 很小的 memtable：几十行就写出一个 SSTable，三个文件触发一次后台合并
+        LsmRowStore lsm = new LsmRowStore("t", COLUMNS, "id", Slots::slotOf, 2048, 3);
+        try {
+            for (int i = 0; i < 2000; i++) lsm.insert("" + i, row(i, "n" + i));
+            // 更新与删除写入较新的文件，覆盖旧文件中的版本
+            for (int i = 0; i < 2000; i += 3) lsm.update("" + i, Map.of("name", "u" + i));
+            for (int i = 0; i < 2000; i += 5) assertTrue(lsm.remove("" + i));
+            assertFalse(lsm.remove("0"));
+            assertFalse(lsm.usage().contains("sstables=0 "), lsm.usage());
+            assertLatest(lsm);
+
+            // 后台合并最终把文件数压到阈值以下，合并后丢弃删除标记，结果不变
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!lsm.usage().contains("sstables=1 ") && !lsm.usage().contains("sstables=2 ")
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(lsm.usage().contains("compactions=0"), lsm.usage());
+            assertLatest(lsm);
+            assertEquals(1600, lsm.clear());
+            assertTrue(lsm.selectAll().isEmpty());
+            assertNull(lsm.get("1"));
+        } finally {
+            lsm.close();
+        }
+    }
+
+    @Test
+    void testSlotScanReadsOnlyBlocksOfThatSlot() {
+        LsmRowStore lsm = new LsmRowStore("t", COLUMNS, "id", Slots::slotOf, 2048, 100);
+        try {
+            for (int i = 0; i < 3000; i++) lsm.insert("" + i, row(i, "n" + i));
+            int slot = Slots.slotOf("1234");
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) if (Slots.slotOf("" + i) == slot) expected.add("" + i);
+            Collections.sort(expected);
+            // 较新的文件与 memtable 中的删除与更新覆盖旧版本
+            assertTrue(lsm.remove(expected.get(0)));
+            lsm.update(expected.get(1), Map.of("name", "u"));
+            expected.remove(0);
+            assertFalse(lsm.usage().contains("sstables=0 "), lsm.usage());
+
+            List<Map<String, String>> first = lsm.scanSlot(slot, null, 1);
+            assertEquals(expected.get(0), first.get(0).get("id"));
+            assertEquals("u", first.get(0).get("name"));
+            List<String> rest = new ArrayList<>();
+            for (Map<String, String> r : lsm.scanSlot(slot, expected.get(0), 1000)) rest.add(r.get("id"));
+            assertEquals(expected.subList(1, expected.size()), rest);
+            assertEquals(expected.size(), lsm.deleteSlot(slot));
+            assertTrue(lsm.scanSlot(slot, null, 10).isEmpty());
+            assertEquals(3000 - 1 - expected.size(), lsm.size());
+        } finally {
+            lsm.close();
+        }
+    }
+
+    @Test
+    void testFrozenViewKeepsFilesUntilReleased() throws Exception {
+        LsmRowStore lsm = new LsmRowStore("t", COLUMNS, "id", Slots::slotOf, 2048, 2);
+        try {
+            for (int i = 0; i < 500; i++) lsm.insert("" + i, row(i, "n" + i));
+            RowStore.Frozen view = lsm.freeze();
+            // 冻结后的写入、合并与清空都不影响视图
+            for (int i = 0; i < 500; i += 2) lsm.remove("" + i);
+            for (int i = 500; i < 1000; i++) lsm.insert("" + i, row(i, "x"));
+            lsm.clear();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            int n = 0;
+            int k;
+            while ((k = view.next(64, out)) > 0) n += k;
+            assertEquals(500, n);
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            for (int i = 0; i < 500; i++) assertEquals(row(i, "n" + i), SnapshotStore.readRow(buf, COLUMNS));
+            view.release();
+        } finally {
+            lsm.close();
+        }
+    }
+
+    private static Map<String, String> row(int id, String name) {
+        Map<String, String> r = new LinkedHashMap<>();
+        r.put("id", "" + id);
+        r.put("name", name);
+        r.put("score", "" + id % 40);
+        return r;
+    }
+
+    /** 每个主键只见到最新版本，删除的行不可见，整体按主键数值顺序 */
+    private static void assertLatest(LsmRowStore lsm) {
+        List<Map<String, String>> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            if (i % 5 != 0) expected.add(row(i, i % 3 == 0 ? "u" + i : "n" + i));
+        }
+        assertEquals(1600, lsm.size());
+        assertEquals(expected, lsm.selectAll());
+        assertEquals(row(3, "u3"), lsm.get("3"));
+        assertNull(lsm.get("10"));
+        assertEquals(expected.subList(0, 8), lsm.selectRange("id", new KeyRange("1", true, "10", true)));
+    }
+
+    @Test
+    void testCreateTableWithLsmEngine() throws Exception {
+        assertEquals("Table created: events",
+                SimpleSQLExecutor.execute("CREATE TABLE events (id INT, kind TEXT, PRIMARY KEY(id)) ENGINE=LSM"));
+        try {
+            Table t = TableManager.getTable("events");
+            assertEquals(Table.STORAGE_LSM, t.getStorage());
+            for (int i = 0; i < 500; i++) {
+                assertEquals("OK", SimpleSQLExecutor.execute("INSERT INTO events (id, kind) VALUES (" + i + ", 'k" + i % 3 + "')"));
+            }
+            SimpleSQLExecutor.execute("CREATE INDEX idx_kind ON events (kind)");
+            assertEquals(167, t.selectWhere("kind", "k0").size());
+            assertEquals(1, t.deleteWhere("id", "7"));
+            assertEquals(10, t.selectRange("id", new KeyRange("0", true, "10", true)).size());
+            assertTrue(t.getUsage().startsWith("LSM rows=499"), t.getUsage());
+        } finally {
+            SimpleSQLExecutor.execute("DROP TABLE events");
+        }
+        // 删表后该表的文件目录被删除
+        Path base = Paths.get(System.getProperty("minisql.lsm.dir", "data/lsm"));
+        try (var dirs = Files.list(base)) {
+            assertTrue(dirs.noneMatch(p -> p.getFileName().toString().startsWith("events-")));
+        }
+        assertTrue(SimpleSQLExecutor.execute("CREATE TABLE bad (id INT, PRIMARY KEY(id)) ENGINE=NOPE")
+                .startsWith("Unknown storage"));
+    }
+}
@@ -0,0 +1,116 @@
+package minisql;
+
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapTableTest {
+
+    private static final List<Column> COLUMNS = List.of(
+            new Column("id", "INT"), new Column("name", "TEXT"), new Column("score", "INT"));
+
+    @Test
+    void testBinaryRowsAndLookups() {
+        Table t = new Table("t", COLUMNS, "id", Table.STORAGE_OFFHEAP);
+        assertEquals("OFFHEAP", t.getStorage());
+        assertEquals("OK", t.insertRow(Map.of("id", "-1", "name", "多字节 'x'", "score", "-5")));
+        assertEquals("OK", t.insertRow(Map.of("id", "2", "name", "", "score", "-5")));
+        assertTrue(t.insertRow(Map.of("id", "-1", "name", "dup", "score", "0")).startsWith("Duplicate"));
+
+        assertEquals(List.of("id", "name", "score"), new ArrayList<>(t.selectWhere("id", "-1").get(0).keySet()));
+        assertEquals("多字节 'x'", t.selectWhere("id", "-1").get(0).get("name"));
+        assertEquals(2, t.selectWhere("score", "-5").size());
+        assertEquals(1, t.selectWhere("name", "").size());
+        assertTrue(t.selectWhere("score", "abc").isEmpty());
+
+        // 块大小级别变化时迁到新块，旧块进入空闲链表
+        assertEquals(1, t.updateWhere("id", "2", Map.of("name", "v".repeat(100))));
+        assertEquals("v".repeat(100), t.selectWhere("id", "2").get(0).get("name"));
+        assertEquals(List.of("-1", "2"), ids(t.selectAll()));
+        assertTrue(t.getUsage().startsWith("OFFHEAP rows=2 off-heap slabs=1"), t.getUsage());
+        assertEquals(2, t.clear());
+        assertTrue(t.selectAll().isEmpty());
+    }
+
+    @Test
+    void testFreedBlocksAreReused() {
+        SlabAllocator slabs = new SlabAllocator();
+        long a = slabs.allocate(40);
+        long b = slabs.allocate(40);
+        assertEquals(128, slabs.getAllocated());
+        slabs.free(a, 40);
+        assertEquals(64, slabs.getFreeBytes());
+        // 同级的块直接复用，不再切分 slab
+        assertEquals(a, slabs.allocate(33));
+        assertNotEquals(b, slabs.allocate(20));
+        assertEquals(0, slabs.getFreeBytes());
+        assertThrows(IllegalArgumentException.class, () -> slabs.allocate(Integer.MAX_VALUE));
+        slabs.release();
+        assertEquals(0, slabs.getReserved());
+
+        // 反复删除再插入同样大小的行，堆外用量不增长
+        Table t = new Table("t", COLUMNS, "id", Table.STORAGE_OFFHEAP);
+        for (int i = 0; i < 5000; i++) t.insertRow(Map.of("id", "" + i, "name", "n" + i, "score", "1"));
+        String before = t.getUsage();
+        for (int round = 0; round < 5; round++) {
+            t.deleteRange("id", new KeyRange(null, true, null, true));
+            for (int i = 0; i < 5000; i++) t.insertRow(Map.of("id", "" + i, "name", "n" + i, "score", "1"));
+        }
+        assertEquals(before, t.getUsage());
+    }
+
+    @Test
+    void testSnapshotCopiesSlabBytesAndRestoresThem() throws Exception {
+        Table t = new Table("t", COLUMNS, "id", Table.STORAGE_OFFHEAP);
+        for (int i = 0; i < 1000; i++) t.insertRow(Map.of("id", "" + i, "name", "n" + i, "score", "" + (i % 7)));
+        List<Map<String, String>> expected = t.selectAll();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try (Table.Snapshot snap = t.snapshot(() -> 1)) {
+            int n = snap.next(100, out);
+            // 同级原地更新、变长更新与删除都不能改动快照在读的块
+            t.updateWhere("score", "3", Map.of("name", "m"));
+            t.updateWhere("score", "4", Map.of("name", "w".repeat(200)));
+            t.deleteWhere("score", "5");
+            for (int i = 1000; i < 1200; i++) t.insertRow(Map.of("id", "" + i, "name", "x" + i, "score", "0"));
+            int k;
+            while ((k = snap.next(100, out)) > 0) n += k;
+            assertEquals(1000, n);
+            // 清空后旧 slab 交给快照，表换用新的分配器
+            t.clear();
+            t.insertRow(Map.of("id", "1", "name", "after", "score", "0"));
+        }
+        assertEquals(1, t.size());
+
+        Table restored = new Table("r", COLUMNS, "id", Table.STORAGE_OFFHEAP);
+        restored.restoreRows(ByteBuffer.wrap(bytes.toByteArray()), 1000);
+        assertEquals(expected, restored.selectAll());
+        assertEquals("n42", restored.selectWhere("id", "42").get(0).get("name"));
+        assertEquals(1000 / 7 + 1, restored.selectWhere("score", "0").size());
+        t.close();
+        restored.close();
+    }
+
+    @Test
+    void testFreesAreDeferredUntilSnapshotEnds() {
+        Table t = new Table("t", COLUMNS, "id", Table.STORAGE_OFFHEAP);
+        for (int i = 0; i < 100; i++) t.insertRow(Map.of("id", "" + i, "name", "n" + i, "score", "1"));
+        Table.Snapshot snap = t.snapshot(() -> 1);
+        t.deleteRange("id", new KeyRange(null, true, null, true));
+        assertTrue(t.getUsage().contains(" free=0 KB"), t.getUsage());
+        snap.close();
+        assertFalse(t.getUsage().contains(" free=0 KB"), t.getUsage());
+        t.close();
+    }
+
+    private static List<String> ids(List<Map<String, String>> rows) {
+        List<String> out = new ArrayList<>();
+        for (Map<String, String> r : rows) out.add(r.get("id"));
+        return out;
+    }
+}
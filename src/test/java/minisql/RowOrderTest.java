@@ -0,0 +1,96 @@
+package minisql;
+
+import minisql.parser.SelectStatement;
+import minisql.parser.SqlParser;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowOrderTest {
+
+    private static final List<Column> COLUMNS = List.of(new Column("id", "INT"), new Column("name", "TEXT"));
+
+    @BeforeEach
+    void clearTables() {
+        TableManager.listTables().forEach(TableManager::dropTable);
+    }
+
+    private static Map<String, String> row(int id, String name) {
+        Map<String, String> r = new LinkedHashMap<>();
+        r.put("id", String.valueOf(id));
+        r.put("name", name);
+        return r;
+    }
+
+    private static List<String> ids(List<Map<String, String>> rows) {
+        List<String> ids = new ArrayList<>();
+        for (Map<String, String> r : rows) ids.add(r.get("id"));
+        return ids;
+    }
+
+    @Test
+    void testTopKMatchesFullSort() {
+        Random rnd = new Random(7);
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (int i = 0; i < 500; i++) rows.add(row(rnd.nextInt(2000) - 1000, "n" + rnd.nextInt(50)));
+        rows.add(row(0, null));
+
+        SelectStatement st = (SelectStatement) SqlParser.parse("SELECT * FROM t ORDER BY id DESC LIMIT 10 OFFSET 5");
+        Comparator<Map<String, String>> order = RowOrder.comparator(st, COLUMNS);
+        List<Map<String, String>> sorted = new ArrayList<>(rows);
+        sorted.sort(order);
+        assertEquals(ids(sorted.subList(5, 15)), ids(RowOrder.topK(rows, order, 5, 10)));
+        assertEquals(ids(sorted), ids(RowOrder.topK(rows, order, 0, SelectStatement.NO_LIMIT)));
+        assertTrue(RowOrder.topK(rows, order, 600, 10).isEmpty());
+        // offset + limit 超过 int 范围
+        assertEquals(ids(sorted.subList(3, sorted.size())), ids(RowOrder.topK(rows, order, 3, Integer.MAX_VALUE)));
+        assertTrue(RowOrder.topK(rows, order, Integer.MAX_VALUE, Integer.MAX_VALUE).isEmpty());
+
+        // NULL 最小，升序时在最前
+        SelectStatement byName = (SelectStatement) SqlParser.parse("SELECT * FROM t ORDER BY name LIMIT 1");
+        assertNull(RowOrder.topK(rows, RowOrder.comparator(byName, COLUMNS), 0, 1).get(0).get("name"));
+    }
+
+    @Test
+    void testMergeOfSortedRuns() {
+        SelectStatement st = (SelectStatement) SqlParser.parse("SELECT * FROM t ORDER BY id LIMIT 7 OFFSET 3");
+        Comparator<Map<String, String>> order = RowOrder.comparator(st, COLUMNS);
+        List<List<Map<String, String>>> runs = new ArrayList<>();
+        List<Map<String, String>> all = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            List<Map<String, String>> run = new ArrayList<>();
+            for (int i = r; i < 100; i += 4 + r) run.add(row(i * (r % 2 == 0 ? 1 : -1), "r" + r));
+            run.sort(order);
+            runs.add(run);
+            all.addAll(run);
+        }
+        runs.add(List.of());
+        all.sort(order);
+        assertEquals(ids(all.subList(3, 10)), ids(RowOrder.merge(runs, order, 3, 7)));
+        assertEquals(ids(all), ids(RowOrder.merge(runs, order, 0, SelectStatement.NO_LIMIT)));
+        // 没有 ORDER BY 时按 region 顺序截取
+        assertEquals(ids(runs.get(0).subList(2, 5)), ids(RowOrder.merge(runs, null, 2, 3)));
+    }
+
+    @Test
+    void testOrderByAndLimitInExecutor() {
+        SimpleSQLExecutor.execute("CREATE TABLE emp (id INT, name TEXT, dept TEXT, age INT, PRIMARY KEY(id))");
+        for (int i = 1; i <= 12; i++) {
+            SimpleSQLExecutor.execute("INSERT INTO emp (id, name, dept, age) VALUES (" + i + ", 'n" + i + "', 'd"
+                    + i % 3 + "', " + (i * 7 % 10) + ")");
+        }
+        assertEquals("{id=12, name=n12, dept=d0, age=4}\n{id=11, name=n11, dept=d2, age=7}",
+                SimpleSQLExecutor.execute("SELECT * FROM emp ORDER BY id DESC LIMIT 2"));
+        // INT 列按数值排序（9 < 10）
+        assertEquals("{id=9, name=n9, dept=d0, age=3}\n{id=10, name=n10, dept=d1, age=0}",
+                SimpleSQLExecutor.execute("SELECT * FROM emp WHERE id >= 8 ORDER BY id LIMIT 2 OFFSET 1"));
+        assertEquals(3, SimpleSQLExecutor.executeQuery("SELECT * FROM emp LIMIT 3").getRows().size());
+        assertEquals("Empty result.", SimpleSQLExecutor.execute("SELECT * FROM emp LIMIT 0"));
+        // 聚合结果按 SUM 的数值排序（3 < 9 < 15）
+        assertEquals("{dept=d0, SUM(age)=3}\n{dept=d2, SUM(age)=9}\n{dept=d1, SUM(age)=15}",
+                SimpleSQLExecutor.execute("SELECT dept, SUM(age) FROM emp WHERE id < 7 GROUP BY dept ORDER BY SUM(age)"));
+        assertEquals("Unknown column: salary", SimpleSQLExecutor.execute("SELECT * FROM emp ORDER BY salary"));
+    }
+}
@@ -0,0 +1,88 @@
+package minisql;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import util.Partitioning;
+import util.Slots;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 各存储引擎与行存储（MapRowStore）在同一随机操作序列下的结果一致性：
+ * 返回值、行内容、主键顺序，以及按槽分批扫描/删除。引擎特有的行为（合并、块复用等）见各引擎的测试
+ */
+class RowStoreConformanceTest {
+
+    private static final List<Column> COLUMNS = List.of(
+            new Column("id", "INT"), new Column("name", "TEXT"), new Column("score", "INT"));
+
+    @ParameterizedTest
+    @ValueSource(strings = {Table.STORAGE_COLUMNAR, Table.STORAGE_OFFHEAP, Table.STORAGE_LSM})
+    void testMatchesRowStorageUnderRandomWorkload(String engine) {
+        // 范围分区：相邻主键落在同一个槽，槽内有足够多的行验证分批扫描
+        Partitioning range = Partitioning.range(-500, 3000);
+        Table row = new Table("r", COLUMNS, "id", Table.STORAGE_ROW, range);
+        Table other = new Table("o", COLUMNS, "id", engine, range);
+        Random rnd = new Random(engine.hashCode());
+        try {
+            for (int i = 0; i < 20_000; i++) {
+                String id = String.valueOf(rnd.nextInt(3500) - 500);
+                String score = String.valueOf(rnd.nextInt(50));
+                switch (rnd.nextInt(6)) {
+                    case 0:
+                    case 1: {
+                        Map<String, String> r = Map.of("id", id, "name", "n" + rnd.nextInt(1000), "score", score);
+                        assertEquals(row.insertRow(r), other.insertRow(r));
+                        break;
+                    }
+                    case 2: {
+                        boolean byPk = rnd.nextInt(4) > 0;
+                        String c = byPk ? "id" : "score";
+                        String v = byPk ? id : score;
+                        assertEquals(row.deleteWhere(c, v), other.deleteWhere(c, v));
+                        break;
+                    }
+                    case 3: {
+                        Map<String, String> nv = Map.of("name", "u" + "x".repeat(rnd.nextInt(40)), "score", score);
+                        assertEquals(row.updateWhere("id", id, nv), other.updateWhere("id", id, nv));
+                        break;
+                    }
+                    case 4: {
+                        // 主键范围按主键顺序返回，结果与顺序都应一致
+                        KeyRange r = new KeyRange(rnd.nextBoolean() ? id : null, rnd.nextBoolean(),
+                                rnd.nextBoolean() ? String.valueOf(rnd.nextInt(3500) - 500) : null, rnd.nextBoolean());
+                        assertEquals(row.selectRange("id", r), other.selectRange("id", r));
+                        if (rnd.nextInt(20) == 0) assertEquals(row.deleteRange("id", r), other.deleteRange("id", r));
+                        break;
+                    }
+                    default:
+                        assertEquals(sorted(row.selectWhere("score", score)), sorted(other.selectWhere("score", score)));
+                }
+                assertEquals(row.size(), other.size());
+            }
+            assertEquals(row.selectAll(), other.selectAll());
+
+            List<Map<String, String>> all = row.selectAll();
+            int slot = range.slotOf(all.get(all.size() / 2).get("id"));
+            assertEquals(row.scanSlot(slot, null, 1), other.scanSlot(slot, null, 1));
+            String first = row.scanSlot(slot, null, 1).get(0).get("id");
+            assertEquals(row.scanSlot(slot, first, 1000), other.scanSlot(slot, first, 1000));
+            assertEquals(row.deleteSlot(slot), other.deleteSlot(slot));
+            assertEquals(row.selectAll(), other.selectAll());
+            assertEquals(row.scanSlot(Slots.COUNT - 1, null, 10), other.scanSlot(Slots.COUNT - 1, null, 10));
+            assertEquals(row.clear(), other.clear());
+            assertTrue(other.selectAll().isEmpty());
+        } finally {
+            other.close();
+        }
+    }
+
+    private static List<String> sorted(List<Map<String, String>> rows) {
+        List<String> out = new ArrayList<>();
+        for (Map<String, String> r : rows) out.add(r.toString());
+        Collections.sort(out);
+        return out;
+    }
+}
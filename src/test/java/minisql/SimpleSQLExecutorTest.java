@@ -1,7 +1,14 @@
 package minisql;
 
+import minisql.parser.SqlParser;
+import minisql.parser.Statement;
 import org.junit.jupiter.api.*;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class SimpleSQLExecutorTest {
@@ -29,6 +36,193 @@ class SimpleSQLExecutorTest {
         assertTrue(res4.contains("not found"));
     }
 
+    @Test
+    void testWriteCountsSkipRowsHiddenByRowFilter() {
+        SimpleSQLExecutor.execute("CREATE TABLE users (id INT, name TEXT, age INT, PRIMARY KEY(id))");
+        for (int i = 1; i <= 6; i++) {
+            SimpleSQLExecutor.execute("INSERT INTO users (id, name, age) VALUES (" + i + ", 'u" + i + "', 30)");
+        }
+        // 奇数主键的行视为其他 region 的副本：照常修改，但不计入行数
+        SimpleSQLExecutor.setRowFilter((t, r) -> Integer.parseInt(r.get("id")) % 2 == 0);
+        try {
+            assertEquals("Updated rows: 3", SimpleSQLExecutor.execute("UPDATE users SET age = 31 WHERE age = 30"));
+            assertEquals("Updated rows: 0", SimpleSQLExecutor.execute("UPDATE users SET age = 32 WHERE id = 1"));
+            assertEquals("Deleted rows: 2", SimpleSQLExecutor.execute("DELETE FROM users WHERE id <= 4"));
+        } finally {
+            SimpleSQLExecutor.setRowFilter((t, r) -> true);
+        }
+        Table t = TableManager.getTable("users");
+        assertEquals(2, t.size());
+        assertEquals("31", t.selectWhere("id", "5").get(0).get("age"));
+    }
+
+    @Test
+    void testExecuteWithParameters() {
+        SimpleSQLExecutor.execute("CREATE TABLE items (id INT, name TEXT, PRIMARY KEY(id))");
+        Statement insert = SqlParser.parse("INSERT INTO items (id, name) VALUES (?, ?)");
+        assertEquals("OK", SimpleSQLExecutor.execute(insert, List.of("1", "it's A")).getMessage());
+        assertEquals("OK", SimpleSQLExecutor.execute(insert, List.of("2", "B")).getMessage());
+
+        QueryResult r = SimpleSQLExecutor.execute(SqlParser.parse("SELECT * FROM items WHERE id = ?"), List.of("1"));
+        assertEquals(1, r.getRows().size());
+        assertEquals("it's A", r.getRows().get(0).get("name"));
+
+        assertTrue(SimpleSQLExecutor.execute(insert, List.of("3")).getMessage().contains("Parameter count mismatch"));
+    }
+
+    @Test
+    void testCreateAndDropIndex() {
+        SimpleSQLExecutor.execute("CREATE TABLE items (id INT, name TEXT, PRIMARY KEY(id))");
+        SimpleSQLExecutor.execute("INSERT INTO items (id, name) VALUES (1, 'A')");
+        assertEquals("Index created: idx_name", SimpleSQLExecutor.execute("CREATE INDEX idx_name ON items (name)"));
+        assertTrue(SimpleSQLExecutor.execute("CREATE INDEX idx_name ON items (id)").contains("already exists"));
+        assertTrue(SimpleSQLExecutor.execute("CREATE INDEX idx_x ON nope (id)").contains("not found"));
+        assertTrue(SimpleSQLExecutor.execute("SELECT * FROM items WHERE name = 'A'").contains("id=1"));
+        assertEquals("Index dropped: idx_name", SimpleSQLExecutor.execute("DROP INDEX idx_name"));
+        assertEquals("Index not found: idx_name", SimpleSQLExecutor.execute("DROP INDEX idx_name ON items"));
+    }
+
+    @Test
+    void testRangeConditions() {
+        assertEquals("Range partitioning requires an INT primary key", SimpleSQLExecutor.execute(
+                "CREATE TABLE bad (id TEXT, PRIMARY KEY(id)) PARTITION BY RANGE (0, 10)"));
+        assertEquals("Table created: ev", SimpleSQLExecutor.execute(
+                "CREATE TABLE ev (id INT, v TEXT, PRIMARY KEY(id)) PARTITION BY RANGE (0, 1000)"));
+        for (int i = 0; i < 20; i++) SimpleSQLExecutor.execute("INSERT INTO ev (id, v) VALUES (" + i + ", 'x')");
+        assertEquals(5, SimpleSQLExecutor.executeQuery("SELECT * FROM ev WHERE id BETWEEN 3 AND 7").getRows().size());
+        assertEquals(3, SimpleSQLExecutor.executeQuery("SELECT * FROM ev WHERE id < 3").getRows().size());
+        assertEquals("Updated rows: 2", SimpleSQLExecutor.execute("UPDATE ev SET v = 'y' WHERE id >= 18"));
+        assertEquals("Deleted rows: 10", SimpleSQLExecutor.execute("DELETE FROM ev WHERE id > 9"));
+        assertEquals(10, SimpleSQLExecutor.executeQuery("SELECT * FROM ev WHERE id <= 100").getRows().size());
+    }
+
+    @Test
+    void testProjectionAndCompoundConditions() {
+        for (String engine : new String[]{"ROW", "COLUMNAR"}) {
+            SimpleSQLExecutor.execute("CREATE TABLE w (id INT, name TEXT, age INT, note TEXT, PRIMARY KEY(id)) ENGINE="
+                    + engine);
+            for (int i = 1; i <= 12; i++) {
+                SimpleSQLExecutor.execute("INSERT INTO w (id, name, age, note) VALUES (" + i + ", 'n" + i + "', "
+                        + (i * 5) + ", 'long note " + i + "')");
+            }
+            SimpleSQLExecutor.execute("CREATE INDEX idx_w_name ON w (name)");
+
+            QueryResult r = SimpleSQLExecutor.executeQuery("SELECT name, id FROM w WHERE id <= 2");
+            assertEquals(List.of("name", "id"), List.of(r.getColumns().get(0).getName(), r.getColumns().get(1).getName()));
+            assertEquals("{name=n1, id=1}\n{name=n2, id=2}", r.toText());
+
+            // INT 按数值比较（9 < 10）；AND 优先于 OR
+            assertEquals("{id=9}\n{id=10}\n{id=12}", SimpleSQLExecutor.execute(
+                    "SELECT id FROM w WHERE age >= 45 AND age < 55 OR id = 12"));
+            assertEquals("{id=3}", SimpleSQLExecutor.execute(
+                    "SELECT id FROM w WHERE name = 'n3' AND (age = 15 OR age = 99)"));
+            assertEquals("Empty result.", SimpleSQLExecutor.execute(
+                    "SELECT id FROM w WHERE id = 4 AND (note = 'x' OR age > 100)"));
+            // 排序列不在投影中
+            assertEquals("{name=n11}\n{name=n10}", SimpleSQLExecutor.execute(
+                    "SELECT name FROM w WHERE id > 2 AND note >= 'long note 1' ORDER BY age DESC LIMIT 2 OFFSET 1"));
+            assertEquals(2, SimpleSQLExecutor.execute(SqlParser.parse("SELECT id FROM w WHERE id = ? OR age = ?"),
+                    List.of("1", "60")).getRows().size());
+
+            assertEquals("Unknown column: salary", SimpleSQLExecutor.execute("SELECT id, salary FROM w"));
+            assertEquals("Unknown column: salary", SimpleSQLExecutor.execute(
+                    "SELECT id FROM w WHERE id = 1 OR salary = 2"));
+            TableManager.dropTable("w");
+        }
+    }
+
+    /** 逐批读完游标，记录每批行数，返回与一次执行相同格式的文本 */
+    private static String readAll(ResultCursor cursor, int batchRows, List<Integer> sizes) {
+        List<String> lines = new ArrayList<>();
+        QueryResult batch;
+        do {
+            batch = cursor.next(batchRows);
+            sizes.add(batch.getRows().size());
+            if (batch.hasRows()) lines.add(batch.toText());
+        } while (!cursor.isDone());
+        return lines.isEmpty() ? batch.toText() : String.join("\n", lines);
+    }
+
+    @Test
+    void testCursorReadsInBatches() {
+        for (String engine : new String[]{"ROW", "COLUMNAR", "OFFHEAP", "LSM"}) {
+            SimpleSQLExecutor.execute("CREATE TABLE c (id INT, name TEXT, age INT, PRIMARY KEY(id)) ENGINE=" + engine);
+            for (int i = 1; i <= 25; i++) {
+                SimpleSQLExecutor.execute("INSERT INTO c (id, name, age) VALUES (" + i + ", 'n" + i + "', " + i % 4 + ")");
+            }
+            List<Integer> sizes = new ArrayList<>();
+            assertEquals(SimpleSQLExecutor.execute("SELECT * FROM c"),
+                    readAll(SimpleSQLExecutor.openCursor("SELECT * FROM c"), 7, sizes), engine);
+            assertEquals(List.of(7, 7, 7, 4), sizes);
+
+            // 列投影与组合条件在 region 上逐批判断；行数恰好是批大小的整数倍时最后一批为空
+            sizes.clear();
+            String sql = "SELECT name FROM c WHERE age = 1 OR id = 2";
+            assertEquals(SimpleSQLExecutor.execute(sql), readAll(SimpleSQLExecutor.openCursor(sql), 2, sizes));
+            assertEquals(List.of(2, 2, 2, 2, 0), sizes);
+            assertEquals("Empty result.", readAll(SimpleSQLExecutor.openCursor("SELECT * FROM c WHERE age = 9"), 5,
+                    new ArrayList<>()));
+
+            // 批与批之间的写入对之后的批可见
+            ResultCursor cursor = SimpleSQLExecutor.openCursor("SELECT id FROM c");
+            assertEquals("{id=1}\n{id=2}", cursor.next(2).toText());
+            SimpleSQLExecutor.execute("DELETE FROM c WHERE id = 3");
+            SimpleSQLExecutor.execute("INSERT INTO c (id, name, age) VALUES (100, 'late', 0)");
+            String rest = readAll(cursor, 10, new ArrayList<>());
+            assertTrue(rest.startsWith("{id=4}") && rest.endsWith("{id=25}\n{id=100}"), rest);
+
+            // 不能流式执行的语句执行后按批返回
+            sizes.clear();
+            assertEquals("{id=100}\n{id=25}\n{id=24}", readAll(SimpleSQLExecutor.openCursor(
+                    "SELECT id FROM c ORDER BY id DESC LIMIT 3"), 2, sizes));
+            assertEquals(List.of(2, 1), sizes);
+            assertEquals("Unknown column: salary", readAll(SimpleSQLExecutor.openCursor("SELECT id, salary FROM c"), 5,
+                    new ArrayList<>()));
+            TableManager.dropTable("c");
+        }
+        assertEquals("Table not found: c", readAll(SimpleSQLExecutor.openCursor("SELECT * FROM c"), 5,
+                new ArrayList<>()));
+    }
+
+    @Test
+    void testHashJoin() {
+        SimpleSQLExecutor.execute("CREATE TABLE users (id INT, name TEXT, age INT, PRIMARY KEY(id))");
+        SimpleSQLExecutor.execute("CREATE TABLE orders (oid INT, uid TEXT, amount INT, PRIMARY KEY(oid)) ENGINE=COLUMNAR");
+        SimpleSQLExecutor.execute("INSERT INTO users (id, name, age) VALUES (1, 'ann', 20), (2, 'bob', 35), (3, 'cy', 41)");
+        // uid 为 TEXT：与 INT 的 id 比较时先规范化（'02' 与 2 相等），非整数不参与连接
+        SimpleSQLExecutor.execute("INSERT INTO orders (oid, uid, amount) VALUES (10, '1', 5), (11, '02', 7), "
+                + "(12, '1', 9), (13, 'x', 1), (14, '9', 3)");
+
+        assertEquals("{o.oid=10, name=ann}\n{o.oid=11, name=bob}\n{o.oid=12, name=ann}", SimpleSQLExecutor.execute(
+                "SELECT o.oid, name FROM orders o JOIN users u ON o.uid = u.id"));
+        QueryResult all = SimpleSQLExecutor.executeQuery("SELECT * FROM users JOIN orders ON id = uid WHERE age > 30");
+        assertEquals(List.of("users.id", "users.name", "users.age", "orders.oid", "orders.uid", "orders.amount"),
+                all.getColumns().stream().map(Column::getName).toList());
+        assertEquals("{users.id=2, users.name=bob, users.age=35, orders.oid=11, orders.uid=02, orders.amount=7}",
+                all.toText());
+        // 跨表的 OR 在连接后判断；参数代入下推到扫描的条件
+        assertEquals("{oid=10}\n{oid=11}", SimpleSQLExecutor.execute(
+                "SELECT oid FROM orders JOIN users ON uid = id WHERE amount < 8 AND (age > 30 OR oid = 10)"));
+        assertEquals(1, SimpleSQLExecutor.execute(SqlParser.parse(
+                "SELECT oid FROM orders o JOIN users u ON u.id = o.uid WHERE u.name = ? AND o.amount > ?"),
+                List.of("ann", "6")).getRows().size());
+
+        // 探测侧分批读取
+        List<Integer> sizes = new ArrayList<>();
+        readAll(SimpleSQLExecutor.openCursor("SELECT oid FROM orders JOIN users ON uid = id"), 2, sizes);
+        assertEquals(3, sizes.stream().mapToInt(Integer::intValue).sum());
+
+        assertEquals("Empty result.", SimpleSQLExecutor.execute(
+                "SELECT * FROM orders JOIN users ON uid = id WHERE age > 99"));
+        assertEquals("Ambiguous column: id", SimpleSQLExecutor.execute(
+                "SELECT id FROM users a JOIN users b ON a.id = b.id"));
+        assertEquals("Unknown column: u.oid", SimpleSQLExecutor.execute(
+                "SELECT u.oid FROM orders o JOIN users u ON o.uid = u.id"));
+        assertEquals("JOIN condition must compare columns of both tables", SimpleSQLExecutor.execute(
+                "SELECT * FROM orders JOIN users ON oid = amount"));
+        assertEquals("Table not found: nope", SimpleSQLExecutor.execute("SELECT * FROM orders JOIN nope ON uid = id"));
+    }
+
     @Test
     void testInsertAndSelectAll() {
         SimpleSQLExecutor.execute(
@@ -77,4 +271,33 @@ class SimpleSQLExecutorTest {
         String sel = SimpleSQLExecutor.execute("SELECT * FROM u WHERE id = 10");
         assertTrue(sel.contains("Bar"));
     }
+
+    @Test
+    void testMultiRowInsertAndLoadData() throws Exception {
+        SimpleSQLExecutor.execute("CREATE TABLE people (id INT, name TEXT, PRIMARY KEY(id))");
+        assertEquals("Inserted rows: 3", SimpleSQLExecutor.execute(
+                "INSERT INTO people (id, name) VALUES (1, 'a'), (2, 'b'), (3, 'c')"));
+        assertEquals("Inserted rows: 1, failed: 2 (Duplicate primary key: 2)", SimpleSQLExecutor.execute(
+                "INSERT INTO people (id, name) VALUES (4, 'd'), (2, 'dup'), (4, 'dup')"));
+        assertEquals("Column/value count mismatch.", SimpleSQLExecutor.execute(
+                "INSERT INTO people (id, name) VALUES (5, 'e'), (6)"));
+
+        Path csv = Files.createTempFile("people", ".csv");
+        try {
+            Files.writeString(csv, "name,id\n\"Smith, Jo\",10\nx,11\n\ny,oops\nz,12,extra\n");
+            String r = SimpleSQLExecutor.execute("LOAD DATA " + SqlParser.quote(csv.toString()) + " INTO people");
+            assertTrue(r.startsWith("Loaded rows: 2 into people in "), r);
+            assertTrue(r.contains("rows/s), failed: 2 ("), r);
+            assertEquals("Smith, Jo", SimpleSQLExecutor.executeQuery("SELECT * FROM people WHERE id = 10")
+                    .getRows().get(0).get("name"));
+
+            Files.writeString(csv, "20,t\n21,u\n");
+            assertTrue(SimpleSQLExecutor.execute("LOAD DATA " + SqlParser.quote(csv.toString()) + " INTO people (id, name)")
+                    .startsWith("Loaded rows: 2 "));
+            assertEquals(8, SimpleSQLExecutor.executeQuery("SELECT * FROM people").getRows().size());
+        } finally {
+            Files.delete(csv);
+        }
+        assertTrue(SimpleSQLExecutor.execute("LOAD DATA 'no/such.csv' INTO people").startsWith("LOAD DATA failed"));
+    }
 }
@@ -0,0 +1,200 @@
+package minisql;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    @AfterEach
+    void clearTables() {
+        TableManager.listTables().forEach(TableManager::dropTable);
+    }
+
+    /** 模拟重启：清空内存中的表，载入快照后重放快照之后的日志 */
+    private SnapshotStore.Restored restart(SnapshotStore snapshots) throws Exception {
+        clearTables();
+        SnapshotStore.Restored restored = snapshots.restore();
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "r1", WriteAheadLog.Durability.SYNC, 1)) {
+            wal.replay((sql, lsn) -> {
+                if (restored.shouldApply(sql, lsn)) SimpleSQLExecutor.executeQuery(sql);
+            });
+        }
+        return restored;
+    }
+
+    @Test
+    void testSnapshotWhileWritingThenRestart() throws Exception {
+        SnapshotStore snapshots = new SnapshotStore(dir, "r1", 2);
+        Map<String, List<Map<String, String>>> before = new HashMap<>();
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "r1", WriteAheadLog.Durability.ASYNC, 1)) {
+            wal.install();
+            SimpleSQLExecutor.execute("CREATE TABLE a (id INT, name TEXT, PRIMARY KEY(id))");
+            SimpleSQLExecutor.execute("CREATE TABLE b (k TEXT, v INT, PRIMARY KEY(k)) PARTITION BY HASH");
+            SimpleSQLExecutor.execute("CREATE INDEX idx_name ON a (name)");
+            // 写入线程持续修改两张表，期间做两次快照
+            AtomicBoolean stop = new AtomicBoolean();
+            AtomicInteger next = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                writers.add(pool.submit(() -> {
+                    while (!stop.get()) {
+                        int i = next.getAndIncrement();
+                        assertEquals("OK", SimpleSQLExecutor.execute(
+                                "INSERT INTO a (id, name) VALUES (" + i + ", 'n" + i % 7 + "')"));
+                        SimpleSQLExecutor.execute("INSERT INTO b (k, v) VALUES ('k" + i + "', " + i + ")");
+                        if (i % 5 == 0) SimpleSQLExecutor.execute("UPDATE a SET name = 'x' WHERE id = " + i / 2);
+                        if (i % 11 == 0) SimpleSQLExecutor.execute("DELETE FROM b WHERE k = 'k" + i / 3 + "'");
+                    }
+                }));
+            }
+            while (next.get() < 500) Thread.sleep(1);
+            SnapshotStore.Checkpoint first = snapshots.checkpoint(wal);
+            while (next.get() < 1500) Thread.sleep(1);
+            SnapshotStore.Checkpoint second = snapshots.checkpoint(wal);
+            assertTrue(second.lsn > first.lsn);
+            assertEquals(2, second.tables);
+            while (next.get() < 2000) Thread.sleep(1);
+            stop.set(true);
+            for (Future<?> f : writers) f.get();
+            pool.shutdown();
+            SimpleSQLExecutor.execute("CREATE TABLE c (id INT, PRIMARY KEY(id))");
+            SimpleSQLExecutor.execute("INSERT INTO c (id) VALUES (1)");
+            for (String t : TableManager.listTables()) before.put(t, TableManager.getTable(t).selectAll());
+        }
+
+        SnapshotStore.Restored restored = restart(snapshots);
+        assertNotNull(restored.file);
+        assertTrue(restored.rows > 0);
+        assertEquals(before.keySet(), TableManager.listTables());
+        for (String t : before.keySet()) assertEquals(before.get(t), TableManager.getTable(t).selectAll(), t);
+        Table a = TableManager.getTable("a");
+        assertEquals(Map.of("idx_name", "name"), a.getIndexes());
+        assertEquals(a.selectAll().stream().filter(r -> r.get("name").equals("x")).count(),
+                a.selectWhere("name", "x").size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {Table.STORAGE_ROW, Table.STORAGE_COLUMNAR, Table.STORAGE_OFFHEAP, Table.STORAGE_LSM})
+    void testWritersAreNotBlockedWhileSnapshotIsRead(String engine) throws Exception {
+        List<Column> cols = List.of(new Column("id", "INT"), new Column("name", "TEXT"));
+        Table t = new Table("t", cols, "id", engine);
+        try {
+            for (int i = 0; i < 3000; i++) t.insertRow(Map.of("id", "" + i, "name", "n" + i));
+            List<Map<String, String>> expected = t.selectAll();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            ExecutorService writer = Executors.newSingleThreadExecutor();
+            try (Table.Snapshot snap = t.snapshot(() -> 42)) {
+                assertEquals(3000, snap.rowCount);
+                int written = snap.next(500, out);
+                // 快照读到一半时，另一个线程的写入（含已读过与未读到的行）不必等快照结束
+                writer.submit(() -> {
+                    for (int i = 3000; i < 3500; i++) t.insertRow(Map.of("id", "" + i, "name", "new"));
+                    t.updateWhere("id", "10", Map.of("name", "changed"));
+                    t.updateWhere("id", "2500", Map.of("name", "changed"));
+                    t.updateWhere("id", "2600", Map.of("id", "9000"));
+                    t.deleteRange("id", new KeyRange("1000", true, "1500", false));
+                    t.deleteRange("id", new KeyRange("0", true, "100", false));
+                }).get(10, TimeUnit.SECONDS);
+                assertEquals(2900, t.size());
+                assertEquals("n2600", t.selectWhere("id", "9000").get(0).get("name"));
+                int n;
+                while ((n = snap.next(500, out)) > 0) written += n;
+                assertEquals(3000, written);
+            } finally {
+                writer.shutdown();
+            }
+            // 快照内容是冻结时刻的表，与之后的写入无关
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            List<Map<String, String>> actual = new ArrayList<>();
+            while (buf.hasRemaining()) actual.add(SnapshotStore.readRow(buf, cols));
+            actual.sort(Comparator.comparingInt(r -> Integer.parseInt(r.get("id"))));
+            assertEquals(expected, actual);
+            // 快照结束后可以开始下一次
+            try (Table.Snapshot snap = t.snapshot(() -> 43)) {
+                assertEquals(2900, snap.rowCount);
+            }
+        } finally {
+            t.close();
+        }
+    }
+
+    @Test
+    void testRotationDeletesOldSnapshotsAndLogSegments() throws Exception {
+        SnapshotStore snapshots = new SnapshotStore(dir, "r1", 2);
+        List<Map<String, String>> before;
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "r1", WriteAheadLog.Durability.SYNC, 1)) {
+            wal.install();
+            SimpleSQLExecutor.execute("CREATE TABLE t (id INT, name TEXT, PRIMARY KEY(id)) PARTITION BY RANGE (0, 1000)");
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 20; i++) {
+                    int id = round * 20 + i;
+                    SimpleSQLExecutor.execute("INSERT INTO t (id, name) VALUES (" + id + ", 'r" + round + "')");
+                }
+                SimpleSQLExecutor.execute("DELETE FROM t WHERE id < " + round * 5);
+                snapshots.checkpoint(wal);
+            }
+            SimpleSQLExecutor.execute("UPDATE t SET name = 'tail' WHERE id >= 90");
+            before = TableManager.getTable("t").selectAll();
+        }
+        assertEquals(2, files(".snap").size());
+        // 只保留最早的快照仍需要的段，以及正在写入的段
+        assertTrue(files(".wal").size() <= 3, files(".wal").toString());
+
+        restart(snapshots);
+        Table t = TableManager.getTable("t");
+        assertEquals(before, t.selectAll());
+        assertEquals("RANGE(0,1000)", t.getPartitioning().toString());
+        assertEquals(10, t.selectWhere("name", "tail").size());
+    }
+
+    @Test
+    void testCorruptSnapshotFallsBackToOlderOne() throws Exception {
+        SnapshotStore snapshots = new SnapshotStore(dir, "r1", 2);
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "r1", WriteAheadLog.Durability.SYNC, 1)) {
+            wal.install();
+            SimpleSQLExecutor.execute("CREATE TABLE t (id INT, PRIMARY KEY(id))");
+            SimpleSQLExecutor.execute("INSERT INTO t (id) VALUES (1)");
+            snapshots.checkpoint(wal);
+            SimpleSQLExecutor.execute("INSERT INTO t (id) VALUES (2)");
+            snapshots.checkpoint(wal);
+            SimpleSQLExecutor.execute("INSERT INTO t (id) VALUES (3)");
+        }
+        List<Path> snaps = files(".snap");
+        Path newest = snaps.get(snaps.size() - 1);
+        byte[] b = Files.readAllBytes(newest);
+        b[b.length / 2] ^= 0x5A;
+        Files.write(newest, b);
+
+        SnapshotStore.Restored restored = restart(snapshots);
+        assertEquals(snaps.get(0), restored.file);
+        assertEquals(3, TableManager.getTable("t").selectAll().size());
+    }
+
+    private List<Path> files(String suffix) throws Exception {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> p.getFileName().toString().endsWith(suffix)).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package minisql;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableConcurrencyTest {
+
+    @BeforeEach
+    void clearTables() {
+        TableManager.listTables().forEach(TableManager::dropTable);
+    }
+
+    @Test
+    void testConcurrentInsertSelectUpdate() throws Exception {
+        SimpleSQLExecutor.execute(
+                "CREATE TABLE c (id INT, name TEXT, PRIMARY KEY(id))");
+
+        int threads = 8, perThread = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            futures.add(pool.submit(() -> {
+                for (int i = base; i < base + perThread; i++) {
+                    assertEquals("OK", SimpleSQLExecutor.execute(
+                            "INSERT INTO c (id, name) VALUES (" + i + ", 'n" + i + "')"));
+                    assertTrue(SimpleSQLExecutor.execute(
+                            "SELECT * FROM c WHERE id = " + i).contains("name=n" + i));
+                    assertEquals("Updated rows: 1", SimpleSQLExecutor.execute(
+                            "UPDATE c SET name = 'u" + i + "' WHERE id = " + i));
+                    // 并发全表扫描不应抛出 ConcurrentModificationException
+                    TableManager.getTable("c").selectAll();
+                }
+            }));
+        }
+        for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(threads * perThread, TableManager.getTable("c").selectAll().size());
+        assertEquals(0, TableManager.getTable("c").selectWhere("name", "n0").size());
+    }
+
+    @Test
+    void testConcurrentCreateTableOnlyOneWins() throws Exception {
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> SimpleSQLExecutor.execute(
+                    "CREATE TABLE d (id INT, PRIMARY KEY(id))")));
+        }
+        int created = 0;
+        for (Future<String> f : results) {
+            if (f.get().startsWith("Table created")) created++;
+        }
+        pool.shutdown();
+        assertEquals(1, created);
+    }
+}
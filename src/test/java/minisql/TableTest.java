@@ -0,0 +1,126 @@
+package minisql;
+
+import org.junit.jupiter.api.*;
+import util.Slots;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableTest {
+
+    private Table table;
+
+    @BeforeEach
+    void setUp() {
+        table = new Table("t", List.of(new Column("id", "INT"), new Column("name", "TEXT")), "id");
+        for (int i = 0; i < 2000; i++) {
+            assertEquals("OK", table.insertRow(Map.of("id", String.valueOf(i), "name", "n" + i)));
+        }
+    }
+
+    @Test
+    void testScanSlotInBatches() {
+        int slot = Slots.slotOf("42");
+        int expected = 0;
+        for (int i = 0; i < 2000; i++) if (Slots.slotOf(String.valueOf(i)) == slot) expected++;
+
+        Set<String> seen = new HashSet<>();
+        String after = null;
+        while (true) {
+            List<Map<String, String>> batch = table.scanSlot(slot, after, 1);
+            if (batch.isEmpty()) break;
+            for (Map<String, String> r : batch) {
+                assertEquals(slot, Slots.slotOf(r.get("id")));
+                assertTrue(seen.add(r.get("id")));
+            }
+            after = batch.get(batch.size() - 1).get("id");
+        }
+        assertEquals(expected, seen.size());
+        assertTrue(seen.contains("42"));
+
+        assertEquals(expected, table.deleteSlot(slot));
+        assertTrue(table.selectWhere("id", "42").isEmpty());
+        assertEquals(2000 - expected, table.selectAll().size());
+    }
+
+    @Test
+    void testRangeScansInPrimaryKeyOrder() {
+        for (String storage : List.of(Table.STORAGE_ROW, Table.STORAGE_COLUMNAR)) {
+            Table t = new Table("r", List.of(new Column("id", "INT"), new Column("name", "TEXT")), "id", storage);
+            for (int i = 99; i >= -20; i--) t.insertRow(Map.of("id", String.valueOf(i), "name", "n" + i % 10));
+            assertEquals("-20", t.selectAll().get(0).get("id"));
+            assertEquals(List.of("-2", "-1", "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10"),
+                    ids(t.selectRange("id", new KeyRange("-2", true, "10", true))));
+            assertEquals(List.of("98", "99"), ids(t.selectRange("id", new KeyRange("97", false, null, false))));
+            assertEquals(List.of("-20", "-19"), ids(t.selectRange("id", new KeyRange(null, false, "-18", false))));
+            assertEquals(List.of("7", "8"), ids(t.selectRange("id", new KeyRange("007", true, "8", true))));
+            assertTrue(t.selectRange("id", new KeyRange("abc", true, null, false)).isEmpty());
+            // 非主键列范围：全表扫描，TEXT 按字典序
+            assertEquals(20, t.selectRange("name", new KeyRange("n8", true, "n9", true)).size());
+
+            assertEquals(10, t.deleteRange("id", new KeyRange("0", true, "10", false)));
+            assertTrue(t.selectWhere("id", "5").isEmpty());
+            assertEquals(5, t.updateRange("id", new KeyRange("10", true, "14", true), Map.of("name", "x")));
+            assertEquals(5, t.selectWhere("name", "x").size());
+            assertEquals(110, t.selectAll().size());
+        }
+    }
+
+    private static List<String> ids(List<Map<String, String>> rows) {
+        List<String> out = new ArrayList<>();
+        for (Map<String, String> r : rows) out.add(r.get("id"));
+        return out;
+    }
+
+    @Test
+    void testSecondaryIndexStaysInSync() {
+        for (String storage : List.of(Table.STORAGE_ROW, Table.STORAGE_COLUMNAR)) {
+            Table t = new Table("u", List.of(new Column("id", "INT"), new Column("name", "TEXT"),
+                    new Column("age", "INT")), "id", storage);
+            for (int i = 0; i < 100; i++) {
+                t.insertRow(Map.of("id", String.valueOf(i), "name", "n" + i % 10, "age", String.valueOf(i % 7)));
+            }
+            assertEquals("Index created: idx_name", t.createIndex("idx_name", "name"));
+            assertEquals("Index created: idx_age", t.createIndex("idx_age", "age"));
+            assertTrue(t.createIndex("idx_name", "age").startsWith("Index already exists"));
+            assertTrue(t.createIndex("idx_x", "nope").startsWith("Column not found"));
+            assertEquals(10, t.selectWhere("name", "n3").size());
+
+            t.insertRow(Map.of("id", "100", "name", "n3", "age", "1"));
+            assertEquals(11, t.selectWhere("name", "n3").size());
+            assertEquals(1, t.updateWhere("id", "3", Map.of("name", "renamed")));
+            assertEquals(10, t.selectWhere("name", "n3").size());
+            assertEquals("3", t.selectWhere("name", "renamed").get(0).get("id"));
+            assertEquals(1, t.updateWhere("name", "renamed", Map.of("id", "500")));
+            assertEquals("500", t.selectWhere("name", "renamed").get(0).get("id"));
+
+            int age2 = t.selectWhere("age", "2").size();
+            assertEquals(age2, t.deleteWhere("age", "2"));
+            assertTrue(t.selectWhere("age", "2").isEmpty());
+            assertEquals("OK", t.deleteByKey("500"));
+            assertTrue(t.selectWhere("name", "renamed").isEmpty());
+
+            t.deleteSlot(Slots.slotOf("13"));
+            assertTrue(t.selectWhere("name", "n3").stream().noneMatch(r -> r.get("id").equals("13")));
+
+            assertTrue(t.dropIndex("idx_name"));
+            assertFalse(t.dropIndex("idx_name"));
+            assertEquals(Map.of("idx_age", "age"), t.getIndexes());
+            t.clear();
+            assertTrue(t.selectWhere("age", "1").isEmpty());
+        }
+    }
+
+    @Test
+    void testUpdatePrimaryKeyRekeysRow() {
+        assertEquals(1, table.updateWhere("id", "5", Map.of("id", "5000")));
+        assertTrue(table.selectWhere("id", "5").isEmpty());
+        assertEquals("n5", table.selectWhere("id", "5000").get(0).get("name"));
+        assertEquals(1, table.scanSlot(Slots.slotOf("5000"), null, 10).stream()
+                .filter(r -> r.get("id").equals("5000")).count());
+
+        // 改成已存在的主键被拒绝
+        assertEquals(-3, table.updateWhere("id", "6", Map.of("id", "7")));
+    }
+}
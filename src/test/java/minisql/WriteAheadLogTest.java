@@ -0,0 +1,118 @@
+package minisql;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    @AfterEach
+    void clearTables() {
+        TableManager.listTables().forEach(TableManager::dropTable);
+    }
+
+    @Test
+    void testReplayRestoresTablesAfterRestart() throws Exception {
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "r1", WriteAheadLog.Durability.SYNC, 5)) {
+            wal.install();
+            SimpleSQLExecutor.execute("CREATE TABLE t (id INT, name TEXT, PRIMARY KEY(id))");
+            SimpleSQLExecutor.execute("CREATE INDEX idx_name ON t (name)");
+            // 并发写入者共享 fsync
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            List<Future<String>> fs = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int id = i;
+                fs.add(pool.submit(() -> SimpleSQLExecutor.execute(
+                        "INSERT INTO t (id, name) VALUES (" + id + ", 'it''s " + id % 5 + "')")));
+            }
+            for (Future<String> f : fs) assertEquals("OK", f.get());
+            pool.shutdown();
+            SimpleSQLExecutor.execute("UPDATE t SET name = 'big' WHERE id >= 150");
+            SimpleSQLExecutor.execute("DELETE FROM t WHERE id BETWEEN 10 AND 19");
+            SimpleSQLExecutor.execute("DELETE FROM t WHERE id = 3");
+            SimpleSQLExecutor.execute("CREATE TABLE gone (id INT, PRIMARY KEY(id))");
+            SimpleSQLExecutor.execute("DROP TABLE gone");
+        }
+        List<Map<String, String>> before = TableManager.getTable("t").selectAll();
+        clearTables();
+
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "r1", WriteAheadLog.Durability.SYNC, 5)) {
+            assertTrue(wal.replay((sql, lsn) -> SimpleSQLExecutor.execute(sql)) > 200);
+        }
+        Table t = TableManager.getTable("t");
+        assertEquals(before, t.selectAll());
+        assertEquals(189, t.selectAll().size());
+        assertEquals(Map.of("idx_name", "name"), t.getIndexes());
+        assertEquals(50, t.selectWhere("name", "big").size());
+        assertNull(TableManager.getTable("gone"));
+    }
+
+    @Test
+    void testAsyncAppendFailsAfterFlushError() throws Exception {
+        Path sub = Files.createDirectory(dir.resolve("gone"));
+        try (WriteAheadLog wal = WriteAheadLog.open(sub, "r5", WriteAheadLog.Durability.ASYNC, 1)) {
+            wal.install();
+            SimpleSQLExecutor.execute("CREATE TABLE t (id INT, PRIMARY KEY(id))");
+            assertEquals("OK", SimpleSQLExecutor.execute("INSERT INTO t (id) VALUES (1)"));
+            // 下一批写入新段，而目录已不存在：刷盘失败后 ASYNC 写入也应报错，而不是继续缓冲
+            wal.roll();
+            try (var files = Files.list(sub)) {
+                for (Path p : (Iterable<Path>) files::iterator) Files.delete(p);
+            }
+            Files.delete(sub);
+            String r = "OK";
+            for (int i = 2; i < 2000 && r.equals("OK"); i++) {
+                r = SimpleSQLExecutor.execute("INSERT INTO t (id) VALUES (" + i + ")");
+                Thread.sleep(1);
+            }
+            assertTrue(r.contains("WAL write failed"), r);
+            assertTrue(SimpleSQLExecutor.execute("INSERT INTO t (id) VALUES (5000)").contains("WAL write failed"));
+        }
+    }
+
+    @Test
+    void testTornTailIsTruncated() throws IOException {
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "r2", WriteAheadLog.Durability.ASYNC, 1)) {
+            wal.install();
+            SimpleSQLExecutor.execute("CREATE TABLE t (id INT, PRIMARY KEY(id))");
+            SimpleSQLExecutor.execute("INSERT INTO t (id) VALUES (1)");
+            SimpleSQLExecutor.execute("INSERT INTO t (id) VALUES (2)");
+        }
+        Path file = dir.resolve(String.format("r2-%020d.wal", 1));
+        long size = Files.size(file);
+        // 模拟崩溃时最后一条记录只写了一半
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(size - 3);
+        }
+        clearTables();
+
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "r2", WriteAheadLog.Durability.SYNC, 1)) {
+            assertEquals(2, wal.replay((sql, lsn) -> {
+                replayed.add(sql);
+                SimpleSQLExecutor.execute(sql);
+            }));
+            wal.install();
+            SimpleSQLExecutor.execute("INSERT INTO t (id) VALUES (3)");
+        }
+        assertEquals("INSERT INTO t (id) VALUES ('1')", replayed.get(1));
+        clearTables();
+        try (WriteAheadLog wal = WriteAheadLog.open(dir, "r2", WriteAheadLog.Durability.SYNC, 1)) {
+            assertEquals(3, wal.replay((sql, lsn) -> SimpleSQLExecutor.execute(sql)));
+        }
+        assertEquals(2, TableManager.getTable("t").selectAll().size());
+    }
+}
@@ -0,0 +1,279 @@
+package minisql.parser;
+
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlParserTest {
+
+    @Test
+    void testInsertWithQuotedValues() {
+        InsertStatement st = (InsertStatement) SqlParser.parse(
+                "insert into users (id, name, note) values (-7, 'O''Brien', 'a, b (c)');");
+        assertEquals("users", st.getTable());
+        assertEquals(List.of("id", "name", "note"), st.getColumns());
+        assertEquals(List.of(lit("-7"), lit("O'Brien"), lit("a, b (c)")), st.getValues());
+        assertEquals(lit("-7"), st.valueOf("ID"));
+        assertFalse(st.isMultiRow());
+    }
+
+    @Test
+    void testMultiRowInsertAndLoadData() {
+        String sql = "INSERT INTO users (id, name) VALUES (1, 'a'), (2, ?) , (3, 'c');";
+        InsertStatement st = (InsertStatement) SqlParser.parse(sql);
+        assertTrue(st.isMultiRow());
+        assertEquals(3, st.getRows().size());
+        assertEquals(List.of(lit("2"), Value.param(0)), st.getRows().get(1));
+        assertEquals(1, st.getParamCount());
+        // 多行 INSERT 没有单一主键值，不能单点路由；也不进入语句缓存
+        assertNull(st.valueOf("id"));
+        assertEquals(1, st.columnIndex("NAME"));
+        assertNotSame(SqlParser.parseCached(sql), SqlParser.parseCached(sql));
+        assertParseError("Invalid INSERT syntax.", "INSERT INTO t (id) VALUES (1), ");
+
+        LoadDataStatement load = (LoadDataStatement) SqlParser.parse("load data '/tmp/users.csv' into users");
+        assertEquals("/tmp/users.csv", load.getFile());
+        assertEquals("users", load.getTable());
+        assertTrue(load.getColumns().isEmpty());
+        assertEquals(List.of("id", "name"), ((LoadDataStatement) SqlParser.parse(
+                "LOAD DATA 'u.csv' INTO users (id, name)")).getColumns());
+        assertParseError("Invalid LOAD DATA syntax.", "LOAD DATA users.csv INTO users");
+        assertParseError("Unsupported SQL.", "LOAD users");
+    }
+
+    @Test
+    void testSelectUpdateDelete() {
+        SelectStatement sel = (SelectStatement) SqlParser.parse("SELECT * FROM t WHERE name = 'two words'");
+        assertEquals("name", sel.getWhere().getColumn());
+        assertEquals(lit("two words"), sel.getWhere().getValue());
+        assertNull(((SelectStatement) SqlParser.parse("SELECT * FROM t")).getWhere());
+
+        UpdateStatement up = (UpdateStatement) SqlParser.parse("UPDATE t SET a = 1, b='x' WHERE id = 3");
+        assertEquals(Map.of("a", lit("1"), "b", lit("x")), up.getAssignments());
+        assertEquals(lit("3"), up.getWhere().getValue());
+
+        DeleteStatement del = (DeleteStatement) SqlParser.parse("DELETE FROM t");
+        assertNull(del.getWhere());
+    }
+
+    @Test
+    void testCreateTable() {
+        CreateTableStatement st = (CreateTableStatement) SqlParser.parse(
+                "CREATE TABLE users (id INT, name text, PRIMARY KEY(id))");
+        assertEquals("id", st.getPrimaryKey());
+        assertEquals(2, st.getColumns().size());
+        assertEquals("TEXT", st.getColumns().get(1).getType());
+        assertNull(st.getEngine());
+
+        CreateTableStatement lsm = (CreateTableStatement) SqlParser.parse(
+                "CREATE TABLE log (id INT, msg TEXT, PRIMARY KEY(id)) PARTITION BY HASH ENGINE = lsm");
+        assertEquals("LSM", lsm.getEngine());
+        assertEquals("HASH", lsm.getPartitioning());
+        assertEquals("LSM", ((CreateTableStatement) SqlParser.parse(
+                "CREATE TABLE log (id INT, PRIMARY KEY(id)) ENGINE LSM")).getEngine());
+    }
+
+    @Test
+    void testRangeConditionsAndPartitioning() {
+        Condition lt = ((SelectStatement) SqlParser.parse("SELECT * FROM t WHERE id < 10")).getWhere();
+        assertEquals(Condition.Op.LT, lt.getOp());
+        assertFalse(lt.isEquality());
+        assertEquals(Condition.Op.GE,
+                ((DeleteStatement) SqlParser.parse("DELETE FROM t WHERE id >= -3")).getWhere().getOp());
+        Condition between = ((UpdateStatement) SqlParser.parse(
+                "UPDATE t SET a = ? WHERE id BETWEEN ? AND ?")).getWhere();
+        assertEquals(Condition.Op.BETWEEN, between.getOp());
+        assertEquals(Value.param(1), between.getValue());
+        assertEquals(Value.param(2), between.getHigh());
+        assertTrue(((SelectStatement) SqlParser.parse("SELECT * FROM t WHERE id = 1")).getWhere().isEquality());
+
+        assertEquals("HASH", ((CreateTableStatement) SqlParser.parse(
+                "CREATE TABLE t (id INT, PRIMARY KEY(id))")).getPartitioning());
+        assertEquals("RANGE(0,100000)", ((CreateTableStatement) SqlParser.parse(
+                "CREATE TABLE t (id INT, PRIMARY KEY(id)) PARTITION BY RANGE (0, 100000)")).getPartitioning());
+        assertParseError("Invalid CREATE syntax.", "CREATE TABLE t (id INT, PRIMARY KEY(id)) PARTITION BY RANGE (a, 1)");
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM t WHERE id BETWEEN 1");
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM t WHERE id <> 1");
+    }
+
+    @Test
+    void testAggregateSelect() {
+        SelectStatement st = (SelectStatement) SqlParser.parse(
+                "select dept, count(*), avg(age), max(name) from users where age >= 18 group by dept;");
+        assertTrue(st.isAggregate());
+        assertEquals(List.of("dept"), st.getGroupBy());
+        assertEquals(List.of(SelectItem.column("dept"), SelectItem.aggregate(SelectItem.Function.COUNT, null),
+                SelectItem.aggregate(SelectItem.Function.AVG, "age"),
+                SelectItem.aggregate(SelectItem.Function.MAX, "name")), st.getItems());
+        assertEquals("COUNT(*)", st.getItems().get(1).label());
+        assertEquals("AVG(age)", st.getItems().get(2).label());
+        assertEquals("age >= '18'", st.getWhere().toSql(List.of()));
+
+        SelectStatement all = (SelectStatement) SqlParser.parse("SELECT * FROM users");
+        assertFalse(all.isAggregate());
+        assertTrue(all.getItems().isEmpty());
+
+        assertParseError("Invalid SELECT syntax.", "SELECT name, COUNT(*) FROM users");
+        assertParseError("Invalid SELECT syntax.", "SELECT SUM(*) FROM users");
+        assertParseError("Invalid SELECT syntax.", "SELECT MEDIAN(age) FROM users");
+        assertParseError("Invalid SELECT syntax.", "SELECT COUNT(*) FROM users GROUP BY");
+    }
+
+    @Test
+    void testOrderByAndLimit() {
+        SelectStatement st = (SelectStatement) SqlParser.parse(
+                "select * from users where age > ? order by name desc limit 10 offset 20");
+        assertEquals(SelectItem.column("name"), st.getOrderBy());
+        assertTrue(st.isDescending());
+        assertEquals(10, st.getLimit());
+        assertEquals(20, st.getOffset());
+        assertEquals("SELECT * FROM users WHERE age > '18' ORDER BY name DESC LIMIT 30",
+                st.pushdown().toSql(List.of("18")));
+
+        SelectStatement agg = (SelectStatement) SqlParser.parse(
+                "SELECT dept, COUNT(*) FROM users GROUP BY dept ORDER BY COUNT(*) ASC LIMIT 3");
+        assertFalse(agg.isDescending());
+        assertEquals("COUNT(*)", agg.getOrderBy().label());
+        assertSame(agg, agg.pushdown());
+
+        SelectStatement plain = (SelectStatement) SqlParser.parse("SELECT * FROM users LIMIT 5");
+        assertNull(plain.getOrderBy());
+        assertTrue(plain.isOrderedOrLimited());
+        assertFalse(((SelectStatement) SqlParser.parse("SELECT * FROM users")).isOrderedOrLimited());
+
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM users LIMIT -1");
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM users LIMIT 99999999999");
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM users ORDER BY COUNT(*)");
+        assertParseError("Invalid SELECT syntax.", "SELECT dept FROM users GROUP BY dept ORDER BY age");
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM users OFFSET 3");
+    }
+
+    @Test
+    void testProjectionAndCompoundWhere() {
+        SelectStatement st = (SelectStatement) SqlParser.parse(
+                "SELECT id, name FROM users WHERE age > ? AND (name = 'a' OR name = 'b') OR id BETWEEN 1 AND 3");
+        assertTrue(st.isProjection());
+        assertFalse(st.isAggregate());
+        assertEquals(List.of(SelectItem.column("id"), SelectItem.column("name")), st.getItems());
+        // AND 优先于 OR
+        Condition where = st.getWhere();
+        assertEquals(Condition.Op.OR, where.getOp());
+        assertEquals(Condition.Op.AND, where.getChildren().get(0).getOp());
+        assertEquals(Condition.Op.BETWEEN, where.getChildren().get(1).getOp());
+        assertEquals(1, st.getParamCount());
+        assertEquals("(age > '18' AND (name = 'a' OR name = 'b')) OR id BETWEEN '1' AND '3'",
+                where.toSql(List.of("18")));
+        assertNull(where.accessPath("id"));
+
+        Condition and = ((SelectStatement) SqlParser.parse(
+                "SELECT * FROM users WHERE age > 3 AND name = 'x' AND id = 9")).getWhere();
+        assertEquals("id", and.accessPath("id").getColumn());
+        assertEquals("name", and.accessPath("pk").getColumn());
+
+        // 投影不含排序列时，发往 region 的语句加上排序列
+        SelectStatement ordered = (SelectStatement) SqlParser.parse("SELECT name FROM users ORDER BY age LIMIT 2");
+        assertEquals("SELECT name, age FROM users ORDER BY age LIMIT 2", ordered.pushdown().toSql(List.of()));
+
+        // 组合条件只用于 SELECT
+        assertParseError("Invalid DELETE syntax.", "DELETE FROM users WHERE id = 1 AND age = 2");
+        assertParseError("Invalid UPDATE syntax.", "UPDATE users SET age = 1 WHERE id = 1 OR id = 2");
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM users WHERE (id = 1");
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM users WHERE id = 1 AND");
+    }
+
+    @Test
+    void testJoin() {
+        JoinStatement st = (JoinStatement) SqlParser.parse(
+                "SELECT o.id, name FROM orders o INNER JOIN users AS u ON u.id = o.uid WHERE o.amount > ? AND u.age < 30");
+        assertEquals("orders", st.getTable());
+        assertEquals("o", st.getLeftAlias());
+        assertEquals("users", st.getRightTable());
+        assertEquals("u", st.getRightAlias());
+        // ON 两侧按表名前缀调整为左表在前
+        assertEquals("o.uid", st.getLeftColumn());
+        assertEquals("u.id", st.getRightColumn());
+        assertEquals(List.of("o.id", "name"), st.getColumns());
+        assertEquals("o.amount", st.getWhere().getChildren().get(0).getColumn());
+        assertEquals(1, st.getParamCount());
+
+        JoinStatement all = (JoinStatement) SqlParser.parse("select * from a join b on x = y");
+        assertEquals("a", all.getLeftAlias());
+        assertEquals("b", all.getRightAlias());
+        assertTrue(all.getColumns().isEmpty());
+        assertNull(all.getWhere());
+
+        // 带表名的列只用于 JOIN；JOIN 不支持聚合；别名不能重复
+        assertParseError("Invalid SELECT syntax.", "SELECT t.id FROM t");
+        assertParseError("Invalid DELETE syntax.", "DELETE FROM t WHERE t.id = 1");
+        assertParseError("Invalid SELECT syntax.", "SELECT COUNT(*) FROM a JOIN b ON a.x = b.y");
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM t JOIN t ON t.x = t.y");
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM a JOIN b ON a.x");
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM a JOIN b ON a.x = b.y ORDER BY a.x");
+    }
+
+    @Test
+    void testErrors() {
+        assertParseError("Unsupported SQL.", "");
+        assertParseError("Unsupported SQL.", "GRANT ALL");
+        assertParseError("Invalid CREATE syntax.", "CREATE TABLE users id INT, name TEXT PRIMARY KEY(id)");
+        assertParseError("Invalid INSERT syntax.", "INSERT INTO t (id) VALUES (1");
+        assertParseError("Invalid INSERT syntax.", "INSERT INTO t (id) VALUES ('open)");
+        assertParseError("Invalid SELECT syntax.", "SELECT * FROM t WHERE id = 1 garbage");
+        assertParseError("Invalid UPDATE syntax.", "UPDATE t SET a = 1");
+    }
+
+    @Test
+    void testStatementCache() {
+        StatementCache cache = new StatementCache(4);
+        Statement st = SqlParser.parse("DROP TABLE t");
+        cache.put("DROP TABLE t", st);
+        assertSame(st, cache.get("DROP TABLE t"));
+        for (int i = 0; i < 100; i++) cache.put("DROP TABLE t" + i, st);
+        assertTrue(cache.size() <= 16);
+        assertEquals(1, cache.hits());
+
+        String sql = "SELECT * FROM cached WHERE id = 1";
+        assertSame(SqlParser.parseCached(sql), SqlParser.parseCached(sql));
+    }
+
+    @Test
+    void testIndexStatements() {
+        CreateIndexStatement ci = (CreateIndexStatement) SqlParser.parse("create index idx_name on users (name);");
+        assertEquals("users", ci.getTable());
+        assertEquals("idx_name", ci.getIndexName());
+        assertEquals("name", ci.getColumn());
+
+        DropIndexStatement di = (DropIndexStatement) SqlParser.parse("DROP INDEX idx_name ON users");
+        assertEquals("users", di.getTable());
+        assertNull(((DropIndexStatement) SqlParser.parse("DROP INDEX idx_name")).getTable());
+        assertParseError("Invalid CREATE INDEX syntax.", "CREATE INDEX idx ON users name");
+        assertParseError("Invalid DROP INDEX syntax.", "DROP INDEX");
+    }
+
+    @Test
+    void testParameters() {
+        UpdateStatement st = (UpdateStatement) SqlParser.parse("UPDATE t SET name = ?, age = ? WHERE id = ?");
+        assertEquals(3, st.getParamCount());
+        assertTrue(st.getWhere().getValue().isParam());
+        assertEquals("7", st.getWhere().getValue().resolve(List.of("x", "1", "7")));
+        assertEquals(0, SqlParser.parse("SELECT * FROM t WHERE id = 1").getParamCount());
+
+        assertEquals("INSERT INTO t (id, name) VALUES ('1', 'it''s ?')",
+                SqlParser.bindParameters("INSERT INTO t (id, name) VALUES (?, ?)", List.of("1", "it's ?")));
+        assertEquals(List.of("42", "a b", "x"), SqlParser.parseValues("(42, 'a b', x)"));
+        assertEquals(List.of(), SqlParser.parseValues("()"));
+        assertThrows(SqlParseException.class, () -> SqlParser.parseValues("(1, ?)"));
+    }
+
+    private static Value lit(String text) {
+        return Value.literal(text);
+    }
+
+    private static void assertParseError(String message, String sql) {
+        SqlParseException e = assertThrows(SqlParseException.class, () -> SqlParser.parse(sql));
+        assertEquals(message, e.getMessage());
+    }
+}
@@ -0,0 +1,307 @@
+package protocol;
+
+import minisql.Column;
+import minisql.QueryResult;
+import minisql.ResultCursor;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryProtocolTest {
+
+    private static Frame roundTrip(Frame f) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        BinaryProtocol.writeFrame(new DataOutputStream(buf), f);
+        return BinaryProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+    }
+
+    @Test
+    void testTypedRowsRoundTrip() throws IOException {
+        List<Column> cols = List.of(new Column("id", "INT"), new Column("name", "TEXT"));
+        Map<String, String> row = new LinkedHashMap<>();
+        row.put("id", "-42");
+        row.put("name", "multi\nline, 'quoted'");
+        Frame back = roundTrip(Frame.result(7, QueryResult.rows(cols, List.of(row), "Empty result.")));
+
+        assertEquals(7, back.getRequestId());
+        assertEquals(Frame.RESULT, back.getKind());
+        QueryResult r = back.getResult();
+        assertEquals(1, r.getRows().size());
+        assertEquals(row, r.getRows().get(0));
+        assertEquals("INT", r.getColumns().get(0).getType());
+    }
+
+    @Test
+    void testMessageErrorAndQueryRoundTrip() throws IOException {
+        assertEquals("Table created: t", roundTrip(Frame.result(1, QueryResult.message("Table created: t")))
+                .getResult().toText());
+
+        Frame err = roundTrip(Frame.result(2, QueryResult.error("timeout")));
+        assertEquals(Frame.STATUS_ERROR, err.getStatus());
+        assertTrue(err.getResult().isError());
+
+        assertEquals("SELECT * FROM t", roundTrip(Frame.query(3, "SELECT * FROM t")).getSql());
+        assertNull(BinaryProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(new byte[0]))));
+    }
+
+    @Test
+    void testPreparedFramesRoundTrip() throws IOException {
+        Frame prep = roundTrip(Frame.prepare(1, 99L, "SELECT * FROM t WHERE id = ?"));
+        assertEquals(Frame.PREPARE, prep.getKind());
+        assertEquals(99L, prep.getStatementId());
+        assertEquals("SELECT * FROM t WHERE id = ?", prep.getSql());
+
+        Frame exec = roundTrip(Frame.execute(2, 99L, 17, List.of("42", "多字节 'x'")));
+        assertEquals(99L, exec.getStatementId());
+        assertEquals(17, exec.getSlot());
+        assertEquals(List.of("42", "多字节 'x'"), exec.getParams());
+
+        assertEquals(99L, roundTrip(Frame.close(3, 99L)).getStatementId());
+    }
+
+    @Test
+    void testPreparedStatementsArePreparedOncePerConnection() throws Exception {
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        AtomicInteger prepares = new AtomicInteger();
+        AtomicInteger releases = new AtomicInteger();
+        PreparedHandler<String> handler = new PreparedHandler<>() {
+            @Override
+            public String prepare(String sql) {
+                if (sql.startsWith("BAD")) throw new IllegalArgumentException("Invalid syntax.");
+                prepares.incrementAndGet();
+                return sql;
+            }
+
+            @Override
+            public QueryResult execute(String plan, int slot, List<String> params) {
+                return QueryResult.message(plan + " " + slot + " " + params);
+            }
+
+            @Override
+            public void release(String plan) {
+                releases.incrementAndGet();
+            }
+        };
+        try (ServerSocket ss = new ServerSocket(0)) {
+            Thread server = new Thread(() -> {
+                try (Socket s = ss.accept()) {
+                    InputStream in = s.getInputStream();
+                    in.read();
+                    BinaryProtocol.readHandshakeRest(in);
+                    BinaryServer.serve(in, s.getOutputStream(), QueryResult::message, handler, exec, 64);
+                } catch (IOException ignored) {
+                }
+            });
+            server.setDaemon(true);
+            server.start();
+
+            try (MuxConnection conn = new MuxConnection("localhost", ss.getLocalPort(), 1000)) {
+                long id = conn.newStatementId();
+                List<CompletableFuture<QueryResult>> futures = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    futures.add(conn.submitPrepared(id, "Q", i % 2 == 0 ? -1 : 5, List.of(String.valueOf(i))));
+                }
+                for (int i = 0; i < 20; i++) {
+                    assertEquals("Q " + (i % 2 == 0 ? -1 : 5) + " [" + i + "]",
+                            futures.get(i).get(5, TimeUnit.SECONDS).getMessage());
+                }
+                assertEquals(1, prepares.get());
+
+                QueryResult bad = conn.executePrepared(conn.newStatementId(), "BAD", List.of(), 5000);
+                assertTrue(bad.isError());
+                assertEquals("Invalid syntax.", bad.getMessage());
+
+                conn.closeStatement(id);
+                assertEquals("Q -1 []", conn.executePrepared(id, "Q", List.of(), 5000).getMessage());
+                assertEquals(2, prepares.get());
+                assertEquals(1, releases.get());
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    @Test
+    void testCursorFramesRoundTrip() throws IOException {
+        Frame open = roundTrip(Frame.open(1, "SELECT * FROM t", 500));
+        assertEquals(Frame.OPEN, open.getKind());
+        assertEquals("SELECT * FROM t", open.getSql());
+        assertEquals(500, open.getBatchRows());
+
+        Frame fetch = roundTrip(Frame.fetch(2, 1, 250));
+        assertEquals(1, fetch.getCursorId());
+        assertEquals(250, fetch.getBatchRows());
+        assertEquals(1, roundTrip(Frame.closeCursor(3, 1)).getCursorId());
+
+        List<Column> cols = List.of(new Column("id", "INT"));
+        Frame more = roundTrip(Frame.batch(4, QueryResult.rows(cols, List.of(Map.of("id", "1")), ""), true));
+        assertTrue(more.hasMore());
+        assertEquals(1, more.getResult().getRows().size());
+        assertFalse(roundTrip(Frame.batch(5, QueryResult.rows(cols, List.of(), "Empty table."), false)).hasMore());
+    }
+
+    @Test
+    void testCursorIsReadInBatchesOnDemand() throws Exception {
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        AtomicInteger produced = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        List<Column> cols = List.of(new Column("id", "INT"));
+        try (ServerSocket ss = new ServerSocket(0)) {
+            Thread server = new Thread(() -> {
+                try (Socket s = ss.accept()) {
+                    InputStream in = s.getInputStream();
+                    in.read();
+                    BinaryProtocol.readHandshakeRest(in);
+                    // 游标产生 0 .. n-1，只在被 FETCH 时产生下一批
+                    BinaryServer.serve(in, s.getOutputStream(), QueryResult::message, null, sql -> new ResultCursor() {
+                        final int n = Integer.parseInt(sql);
+                        int next;
+
+                        @Override
+                        public QueryResult next(int batchRows) {
+                            List<Map<String, String>> rows = new ArrayList<>();
+                            for (; next < n && rows.size() < batchRows; next++) {
+                                rows.add(Map.of("id", String.valueOf(next)));
+                                produced.incrementAndGet();
+                            }
+                            return QueryResult.rows(cols, rows, "Empty table.");
+                        }
+
+                        @Override
+                        public boolean isDone() {
+                            return next == n;
+                        }
+
+                        @Override
+                        public void close() {
+                            closed.incrementAndGet();
+                        }
+                    }, exec, 64);
+                } catch (IOException ignored) {
+                }
+            });
+            server.setDaemon(true);
+            server.start();
+
+            try (MuxConnection conn = new MuxConnection("localhost", ss.getLocalPort(), 1000)) {
+                RemoteCursor c = conn.openCursor("25", 10);
+                List<Integer> sizes = new ArrayList<>();
+                int expected = 0;
+                do {
+                    QueryResult batch = c.next(5000);
+                    sizes.add(batch.getRows().size());
+                    for (Map<String, String> row : batch.getRows()) assertEquals(String.valueOf(expected++), row.get("id"));
+                } while (c.hasMore());
+                assertEquals(List.of(10, 10, 5), sizes);
+                assertEquals(1, closed.get());
+
+                // 未取完就关闭：服务端不再产生后续批并释放游标
+                produced.set(0);
+                RemoteCursor partial = conn.openCursor("1000", 10);
+                assertEquals(10, partial.next(5000).getRows().size());
+                assertTrue(partial.hasMore());
+                partial.close();
+                for (int i = 0; i < 100 && closed.get() < 2; i++) Thread.sleep(10);
+                assertEquals(2, closed.get());
+                assertEquals(10, produced.get());
+
+                // 打开游标失败时第一批即为错误
+                QueryResult failed = conn.openCursor("x", 10).next(5000);
+                assertTrue(failed.isError());
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    @Test
+    void testPipelinedRequestsOnOneConnection() throws Exception {
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try (ServerSocket ss = new ServerSocket(0)) {
+            Thread server = new Thread(() -> {
+                try (Socket s = ss.accept()) {
+                    InputStream in = s.getInputStream();
+                    assertEquals(BinaryProtocol.MAGIC_FIRST, (byte) in.read());
+                    BinaryProtocol.readHandshakeRest(in);
+                    // 偶数请求故意延迟，使响应乱序返回
+                    BinaryServer.serve(in, s.getOutputStream(), sql -> {
+                        int n = Integer.parseInt(sql);
+                        if (n % 2 == 0) sleep(20);
+                        return QueryResult.message("echo " + n);
+                    }, exec, 64);
+                } catch (IOException ignored) {
+                }
+            });
+            server.setDaemon(true);
+            server.start();
+
+            try (MuxConnection conn = new MuxConnection("localhost", ss.getLocalPort(), 1000)) {
+                List<CompletableFuture<QueryResult>> futures = new ArrayList<>();
+                for (int i = 0; i < 50; i++) futures.add(conn.submit(String.valueOf(i)));
+                for (int i = 0; i < 50; i++) {
+                    assertEquals("echo " + i, futures.get(i).get(5, TimeUnit.SECONDS).getMessage());
+                }
+                assertTrue(conn.ping(1000));
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    @Test
+    void testTimedOutRequestIsNotLeftInFlight() throws Exception {
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ServerSocket ss = new ServerSocket(0)) {
+            Thread server = new Thread(() -> {
+                try (Socket s = ss.accept()) {
+                    InputStream in = s.getInputStream();
+                    assertEquals(BinaryProtocol.MAGIC_FIRST, (byte) in.read());
+                    BinaryProtocol.readHandshakeRest(in);
+                    BinaryServer.serve(in, s.getOutputStream(), sql -> {
+                        if (sql.equals("slow")) {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        return QueryResult.message("echo " + sql);
+                    }, exec, 64);
+                } catch (IOException ignored) {
+                }
+            });
+            server.setDaemon(true);
+            server.start();
+
+            try (MuxConnection conn = new MuxConnection("localhost", ss.getLocalPort(), 1000)) {
+                for (int i = 0; i < 3; i++) {
+                    assertThrows(IOException.class, () -> conn.execute("slow", 50));
+                }
+                assertEquals(0, conn.inFlight());
+                // 迟到的响应被忽略，连接仍可用
+                release.countDown();
+                assertEquals("echo fast", conn.execute("fast", 5000).getMessage());
+                assertEquals(0, conn.inFlight());
+            }
+        } finally {
+            release.countDown();
+            exec.shutdownNow();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
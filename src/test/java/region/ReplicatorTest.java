@@ -0,0 +1,63 @@
+package region;
+
+import minisql.SimpleSQLExecutor;
+import minisql.Table;
+import minisql.TableManager;
+import minisql.parser.SqlParser;
+import minisql.parser.Statement;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicatorTest {
+
+    @BeforeEach
+    void clearTables() {
+        TableManager.listTables().forEach(TableManager::dropTable);
+    }
+
+    @Test
+    void testInsertRowsAreSplitByReplica() {
+        SimpleSQLExecutor.execute("CREATE TABLE users (id INT, name TEXT, PRIMARY KEY(id))");
+        Table table = TableManager.getTable("users");
+        Statement st = SqlParser.parse("INSERT INTO users (id, name) VALUES (1, 'a'), (007, ?), ('x', 'bad')");
+        SortedMap<Integer, List<Integer>> slots = Replicator.slotsOf(st, List.of("it's"), table);
+        // 不是合法整数的主键不复制；"007" 按规范值 7 计算槽
+        assertEquals(Set.of(table.slotOf("1"), table.slotOf("7")), slots.keySet());
+
+        SortedMap<Integer, List<String>> targets = new TreeMap<>();
+        targets.put(table.slotOf("1"), List.of("r2", "r3"));
+        targets.put(table.slotOf("7"), List.of("r3"));
+        Map<String, String> out = Replicator.render(st, List.of("it's"), slots, targets);
+        assertEquals("INSERT INTO users (id, name) VALUES ('1', 'a')", out.get("r2"));
+        assertEquals("INSERT INTO users (id, name) VALUES ('1', 'a'), ('007', 'it''s')", out.get("r3"));
+        assertEquals("Inserted rows: 2", SimpleSQLExecutor.execute(out.get("r3")));
+    }
+
+    @Test
+    void testPointWritesOnlyByPrimaryKey() {
+        SimpleSQLExecutor.execute("CREATE TABLE users (id INT, name TEXT, PRIMARY KEY(id))");
+        Table table = TableManager.getTable("users");
+        Statement update = SqlParser.parse("UPDATE users SET name = ? WHERE id = 5");
+        SortedMap<Integer, List<Integer>> slots = Replicator.slotsOf(update, List.of("b"), table);
+        assertEquals(Set.of(table.slotOf("5")), slots.keySet());
+        SortedMap<Integer, List<String>> targets = new TreeMap<>(Map.of(table.slotOf("5"), List.of("r2")));
+        assertEquals(Map.of("r2", "UPDATE users SET name = 'b' WHERE id = '5'"),
+                Replicator.render(update, List.of("b"), slots, targets));
+        assertEquals(Map.of("r2", "DELETE FROM users WHERE id = '5'"), Replicator.render(
+                SqlParser.parse("DELETE FROM users WHERE id = 5"), List.of(), slots, targets));
+
+        // 非主键条件、主键范围由 Master 直接发给各副本
+        assertTrue(Replicator.slotsOf(SqlParser.parse("DELETE FROM users WHERE name = 'a'"), List.of(), table).isEmpty());
+        assertTrue(Replicator.slotsOf(SqlParser.parse("DELETE FROM users WHERE id > 3"), List.of(), table).isEmpty());
+    }
+
+    @Test
+    void testBatchEncodingRoundTrip() {
+        List<String> batch = List.of("INSERT INTO t (id, v) VALUES ('1', 'a:b\nc')", "", "DELETE FROM t WHERE id = '2'");
+        assertEquals(batch, Replicator.decode(Replicator.encode(batch)));
+        assertThrows(IllegalArgumentException.class, () -> Replicator.decode("99:short"));
+    }
+}
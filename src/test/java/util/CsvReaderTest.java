@@ -0,0 +1,31 @@
+package util;
+
+import org.junit.jupiter.api.*;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvReaderTest {
+
+    @Test
+    void testParseLine() {
+        assertEquals(List.of("1", "Alice", "30"), CsvReader.parseLine("1, Alice ,30"));
+        assertEquals(List.of("2", "Smith, \"Bob\"", ""), CsvReader.parseLine("2,\"Smith, \"\"Bob\"\"\","));
+        assertEquals(List.of(""), CsvReader.parseLine(""));
+        assertThrows(IllegalArgumentException.class, () -> CsvReader.parseLine("3,\"open"));
+    }
+
+    @Test
+    void testSkipsBlankLinesAndCountsLines() throws Exception {
+        try (CsvReader in = new CsvReader(new BufferedReader(new StringReader("id,name\n\n1,a\r\n2,b\n")))) {
+            assertEquals(List.of("id", "name"), in.next());
+            assertEquals(List.of("1", "a"), in.next());
+            assertEquals(3, in.getLine());
+            assertEquals(List.of("2", "b"), in.next());
+            assertNull(in.next());
+        }
+    }
+}
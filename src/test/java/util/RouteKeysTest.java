@@ -0,0 +1,38 @@
+package util;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteKeysTest {
+
+    @Test
+    void testTableOf() {
+        assertEquals("users", RouteKeys.tableOf("INSERT INTO users (id, name) VALUES (1, 'a')"));
+        assertEquals("users", RouteKeys.tableOf("SELECT * FROM users WHERE id = 1"));
+        assertEquals("users", RouteKeys.tableOf("UPDATE users SET name = 'b' WHERE id = 1"));
+        assertEquals("users", RouteKeys.tableOf("delete from users where id = 1"));
+        assertNull(RouteKeys.tableOf("CREATE TABLE"));
+    }
+
+    @Test
+    void testExtractPKUsesGivenColumn() {
+        assertEquals("7", RouteKeys.extractPK(
+                "INSERT INTO orders (customer, order_no) VALUES ('bob', 7)", "order_no"));
+        assertEquals("7", RouteKeys.extractPK("SELECT * FROM orders WHERE order_no = 7", "order_no"));
+        assertEquals("x1", RouteKeys.extractPK("DELETE FROM orders WHERE order_no = 'x1'", "order_no"));
+        // 不是主键列的条件无法单点路由
+        assertNull(RouteKeys.extractPK("SELECT * FROM orders WHERE customer = 'bob'", "order_no"));
+        assertNull(RouteKeys.extractPK("SELECT * FROM orders WHERE id = 7", "order_no"));
+    }
+
+    @Test
+    void testCompoundConditions() {
+        // AND 中的主键等值仍可单点路由，其余条件由 region 判断；OR 只能广播
+        assertEquals("7", RouteKeys.extractPK("SELECT * FROM orders WHERE customer = 'bob' AND order_no = 7",
+                "order_no"));
+        assertNull(RouteKeys.extractPK("SELECT * FROM orders WHERE order_no = 7 OR order_no = 8", "order_no"));
+        assertNull(RouteKeys.extractPK("SELECT * FROM orders WHERE (order_no = 7 OR customer = 'a') AND qty > 1",
+                "order_no"));
+    }
+}
@@ -0,0 +1,103 @@
+package util;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlotTableTest {
+
+    @Test
+    void testEncodeDecodeRoundTrip() {
+        Map<Integer, String> owners = new HashMap<>();
+        for (int s = 0; s < Slots.COUNT; s++) owners.put(s, "region" + (s % 3 + 1));
+        SlotTable t = SlotTable.empty().withOwners(owners).withMigration(5, "region9");
+
+        SlotTable back = SlotTable.decode(t.encode());
+        assertEquals(t.getVersion(), back.getVersion());
+        assertEquals(5, back.getMigratingSlot());
+        assertEquals("region9", back.getMigrationTarget());
+        for (int s = 0; s < Slots.COUNT; s++) assertEquals(t.owner(s), back.owner(s));
+    }
+
+    @Test
+    void testMigrationLifecycle() {
+        SlotTable t = SlotTable.empty().withOwners(Map.of(7, "a"));
+        assertTrue(SlotTable.empty().isEmpty());
+        assertFalse(t.isEmpty());
+
+        SlotTable migrating = t.withMigration(7, "b");
+        assertEquals("a", migrating.owner(7));
+
+        SlotTable done = migrating.completeMigration();
+        assertEquals("b", done.owner(7));
+        assertEquals(-1, done.getMigratingSlot());
+
+        SlotTable aborted = migrating.abortMigration();
+        assertEquals("a", aborted.owner(7));
+        assertTrue(aborted.getVersion() > migrating.getVersion());
+    }
+
+    @Test
+    void testReplicaLifecycle() {
+        SlotTable t = SlotTable.empty().withOwners(Map.of(3, "a", 4, "a"));
+        assertEquals(t.encode().length, SlotTable.decode(t.encode()).encode().length);
+
+        SlotTable syncing = t.withSyncingReplicas(Map.of(3, List.of("b")));
+        assertEquals(List.of("b"), syncing.replicas(3));
+        assertTrue(syncing.readReplicas(3).isEmpty());
+        assertTrue(syncing.isSyncing(3));
+        assertFalse(syncing.isSyncing(4));
+
+        SlotTable ready = SlotTable.decode(syncing.replicaReady(3, "b").withSyncingReplicas(Map.of(3, List.of("c"))).encode());
+        assertEquals(List.of("b", "c"), ready.replicas(3));
+        assertEquals(List.of("b"), ready.readReplicas(3));
+        assertTrue(ready.isReadReplica(3, "b"));
+        assertFalse(ready.isReadReplica(3, "c"));
+        assertEquals(Map.of("b", 1, "c", 1), ready.replicaCounts());
+
+        // 只保留 c 时仍为同步中
+        assertTrue(ready.withReplicas(Map.of(3, List.of("c"))).isSyncing(3));
+
+        // 提升从副本为 owner、迁移到从副本时，它都不再是从副本
+        SlotTable promoted = ready.withOwners(Map.of(3, "b"));
+        assertEquals("b", promoted.owner(3));
+        assertEquals(List.of("c"), promoted.replicas(3));
+        SlotTable migrated = ready.replicaReady(3, "c").withMigration(3, "c").completeMigration();
+        assertEquals("c", migrated.owner(3));
+        assertEquals(List.of("b"), migrated.replicas(3));
+    }
+
+    @Test
+    void testSlotSetRoundTrip() {
+        BitSet slots = new BitSet();
+        slots.set(0);
+        slots.set(100, 300);
+        slots.set(Slots.COUNT - 1);
+        assertEquals(slots, Slots.decodeSet(Slots.encodeSet(slots)));
+        assertEquals("-", Slots.encodeSet(new BitSet()));
+        assertTrue(Slots.decodeSet("-").isEmpty());
+        assertEquals(new BitSet(), Slots.decodeSet(Slots.encodeSet(new BitSet())));
+        for (int slot : new int[]{0, 7, 8, 255, Slots.COUNT - 1}) {
+            BitSet one = new BitSet();
+            one.set(slot);
+            assertEquals(one, Slots.decodeSet(Slots.encodeSet(one)));
+        }
+        BitSet all = new BitSet();
+        all.set(0, Slots.COUNT);
+        assertEquals(all, Slots.decodeSet(Slots.encodeSet(all)));
+        assertThrows(IllegalArgumentException.class, () -> Slots.decodeSet("xyz"));
+        assertThrows(IllegalArgumentException.class, () -> Slots.decodeSet("abc"));
+        assertThrows(IllegalArgumentException.class, () -> Slots.decodeSet(""));
+    }
+
+    @Test
+    void testSlotOfIsStableAndInRange() {
+        for (int k = 0; k < 10_000; k++) {
+            int s = Slots.slotOf(String.valueOf(k));
+            assertTrue(s >= 0 && s < Slots.COUNT);
+            assertEquals(s, Slots.slotOf(String.valueOf(k)));
+        }
+    }
+}
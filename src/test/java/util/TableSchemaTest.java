@@ -0,0 +1,79 @@
+package util;
+
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableSchemaTest {
+
+    @Test
+    void testParseCreate() {
+        TableSchema s = TableSchema.parseCreate(
+                "CREATE TABLE orders (order_no INT, customer TEXT, PRIMARY KEY(order_no))");
+        assertNotNull(s);
+        assertEquals("orders", s.getName());
+        assertEquals("order_no", s.getPrimaryKey());
+        assertEquals(TableSchema.PARTITION_HASH, s.getPartitioning());
+        assertEquals("INT", s.columnType("order_no"));
+        assertEquals("TEXT", s.columnType("customer"));
+        assertNull(s.columnType("missing"));
+    }
+
+    @Test
+    void testParseCreateRejectsInvalid() {
+        assertNull(TableSchema.parseCreate("CREATE TABLE t (id INT)"));
+        assertNull(TableSchema.parseCreate("CREATE TABLE t (id INT, PRIMARY KEY(nope))"));
+    }
+
+    @Test
+    void testRangePartitioning() {
+        TableSchema s = TableSchema.parseCreate(
+                "CREATE TABLE events (id INT, v TEXT, PRIMARY KEY(id)) PARTITION BY RANGE (0, 1024000)");
+        assertEquals("RANGE(0,1024000)", s.getPartitioning());
+        TableSchema back = TableSchema.decode("events", s.encode());
+        assertEquals("CREATE TABLE events (id INT, v TEXT, PRIMARY KEY(id)) PARTITION BY RANGE (0, 1024000)",
+                back.toCreateStatement());
+        assertTrue(back.partitioner().isRange());
+        assertNull(TableSchema.parseCreate("CREATE TABLE t (id TEXT, PRIMARY KEY(id)) PARTITION BY RANGE (0, 10)"));
+        assertNull(TableSchema.parseCreate("CREATE TABLE t (id INT, PRIMARY KEY(id)) PARTITION BY RANGE (10, 10)"));
+
+        Partitioning p = back.partitioner();
+        assertEquals(0, p.slotOf("-5"));
+        assertEquals(0, p.slotOf("999"));
+        assertEquals(1, p.slotOf("1000"));
+        assertEquals(Slots.COUNT - 1, p.slotOf("5000000"));
+        assertArrayEquals(new int[]{2, 5}, p.slotSpan("2500", "5999"));
+        assertArrayEquals(new int[]{0, Slots.COUNT - 1}, p.slotSpan(null, null));
+        assertArrayEquals(new int[]{0, Slots.COUNT - 1}, Partitioning.HASH.slotSpan("1", "2"));
+        assertEquals(Slots.slotOf("42"), Partitioning.HASH.slotOf("42"));
+    }
+
+    @Test
+    void testEncodeDecodeRoundTrip() {
+        TableSchema s = TableSchema.parseCreate(
+                "CREATE TABLE users (uid INT, name TEXT, PRIMARY KEY(uid))");
+        TableSchema back = TableSchema.decode("users", s.encode());
+        assertEquals(s.toCreateStatement(), back.toCreateStatement());
+        assertEquals("uid", back.getPrimaryKey());
+        assertEquals("CREATE TABLE users (uid INT, name TEXT, PRIMARY KEY(uid))", back.toCreateStatement());
+        assertTrue(back.getIndexes().isEmpty());
+
+        TableSchema indexed = TableSchema.decode("users", s.withIndex("idx_name", "name").encode());
+        assertEquals(List.of("CREATE INDEX idx_name ON users (name)"), indexed.toIndexStatements());
+        assertTrue(indexed.withoutIndex("idx_name").getIndexes().isEmpty());
+    }
+
+    @Test
+    void testEngineRoundTrip() {
+        TableSchema s = TableSchema.parseCreate(
+                "CREATE TABLE log (id INT, msg TEXT, PRIMARY KEY(id)) ENGINE=lsm");
+        assertEquals("LSM", s.getEngine());
+        TableSchema back = TableSchema.decode("log", s.withIndex("idx_msg", "msg").encode());
+        assertEquals("LSM", back.getEngine());
+        assertEquals("CREATE TABLE log (id INT, msg TEXT, PRIMARY KEY(id)) ENGINE=LSM", back.toCreateStatement());
+        assertNull(TableSchema.parseCreate("CREATE TABLE log (id INT, PRIMARY KEY(id)) ENGINE=NOPE"));
+        assertNull(TableSchema.parseCreate("CREATE TABLE log (id INT, PRIMARY KEY(id))").getEngine());
+    }
+}